@@ -40,6 +40,46 @@ INSERT INTO `manufacturer` (`mID`, `Website`, `CompanyName`) VALUES
 
 -- --------------------------------------------------------
 
+--
+-- Table structure for table `orders`
+--
+
+CREATE TABLE IF NOT EXISTS `orders` (
+  `OrderID` int(11) NOT NULL AUTO_INCREMENT,
+  `UserID` int(11) NOT NULL,
+  `ShippingAddress` varchar(256) NOT NULL,
+  `ShippingPrice` double NOT NULL,
+  `Total` double NOT NULL,
+  `Date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`OrderID`),
+  KEY `UserID` (`UserID`,`Date`,`OrderID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1 AUTO_INCREMENT=1 ;
+
+--
+-- An order is a checkout of the shopping cart, several products bought in one transaction.
+-- Total is the price of every unit plus the shipping price. Each unit is also recorded in
+-- `purchases` with the order's ID, so purchase history and reviews see orders like any other
+-- purchase.
+--
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `order_lines`
+--
+
+CREATE TABLE IF NOT EXISTS `order_lines` (
+  `OrderID` int(11) NOT NULL,
+  `LineNumber` int(11) NOT NULL,
+  `ProductID` int(11) DEFAULT NULL,
+  `Quantity` int(11) NOT NULL,
+  `Price` double NOT NULL,
+  PRIMARY KEY (`OrderID`,`LineNumber`),
+  KEY `ProductID` (`ProductID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+-- --------------------------------------------------------
+
 --
 -- Table structure for table `product`
 --
@@ -52,19 +92,77 @@ CREATE TABLE IF NOT EXISTS `product` (
   `Stock` int(11) NOT NULL DEFAULT '0',
   `Image` varchar(32) NOT NULL DEFAULT 'missing.jpg',
   `Description` text NOT NULL,
+  `ReviewCount` int(11) NOT NULL DEFAULT '0',
+  `RatingSum` int(11) NOT NULL DEFAULT '0',
+  `SalesCount` int(11) NOT NULL DEFAULT '0',
   PRIMARY KEY (`ProductID`),
   KEY `ManufacturerID` (`ManufacturerID`)
 ) ENGINE=InnoDB  DEFAULT CHARSET=latin1 AUTO_INCREMENT=5 ;
 
+--
+-- ReviewCount and RatingSum total the product's reviews, kept up to date as reviews are added
+-- and deleted. To upgrade an older database, add them with
+--   ALTER TABLE `product` ADD `ReviewCount` int(11) NOT NULL DEFAULT '0', ADD `RatingSum` int(11) NOT NULL DEFAULT '0';
+-- then use "Rebuild product rating totals" on the admin statistics page.
+--
+-- SalesCount is the number of units of the product sold, counted as purchases are checked out.
+-- To upgrade an older database, add it with
+--   ALTER TABLE `product` ADD `SalesCount` int(11) NOT NULL DEFAULT '0';
+--   UPDATE `product` p SET `SalesCount` = ( SELECT COUNT(*) FROM `purchases` pu WHERE pu.`ProductID` = p.`ProductID` );
+--
+
 --
 -- Dumping data for table `product`
 --
 
-INSERT INTO `product` (`ProductID`, `Name`, `ManufacturerID`, `Price`, `Stock`, `Image`, `Description`) VALUES
-(1, 'Rock', 2, 2, 997, 'rock.jpg', 'It''s a rock'),
-(2, 'Paper', 1, 0.1, 1, 'paper.jpg', 'Acme paper'),
-(3, 'Sand (10 lbs)', 3, 5, 3, 'sand.jpg', 'Sand, 10 pounds of it'),
-(4, 'Slightly used paper', 1, 0.05, 8, 'usedpaper.jpg', 'It''s slightly used paper');
+INSERT INTO `product` (`ProductID`, `Name`, `ManufacturerID`, `Price`, `Stock`, `Image`, `Description`, `ReviewCount`, `RatingSum`, `SalesCount`) VALUES
+(1, 'Rock', 2, 2, 997, 'rock.jpg', 'It''s a rock', 3, 17, 3),
+(2, 'Paper', 1, 0.1, 1, 'paper.jpg', 'Acme paper', 0, 0, 0),
+(3, 'Sand (10 lbs)', 3, 5, 3, 'sand.jpg', 'Sand, 10 pounds of it', 1, 8, 2),
+(4, 'Slightly used paper', 1, 0.05, 8, 'usedpaper.jpg', 'It''s slightly used paper', 1, 5, 2);
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `product_stock_bucket`
+--
+
+CREATE TABLE IF NOT EXISTS `product_stock_bucket` (
+  `ProductID` int(11) NOT NULL,
+  `Bucket` tinyint(4) NOT NULL,
+  `Stock` int(11) NOT NULL DEFAULT '0',
+  `Sold` int(11) NOT NULL DEFAULT '0',
+  PRIMARY KEY (`ProductID`,`Bucket`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+--
+-- In the sharded inventory mode each product's stock is split across inventory.buckets rows of
+-- this table, and a checkout takes its unit from a random bucket, so concurrent buyers of one
+-- product lock different rows. Sold counts the units taken from a bucket since it was last
+-- rebalanced. The buckets are the product's true stock; product.Stock and product.SalesCount
+-- are brought up to date when the buckets are rebalanced. The rows are created when the
+-- application starts and folded back into the product table when another mode is used.
+--
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `purchase_log_checkpoint`
+--
+
+CREATE TABLE IF NOT EXISTS `purchase_log_checkpoint` (
+  `CheckpointID` tinyint(4) NOT NULL,
+  `Segment` bigint(20) NOT NULL,
+  `Position` int(11) NOT NULL,
+  PRIMARY KEY (`CheckpointID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+--
+-- With purchases.writer = wal, checkouts are written to a local purchase log before they are
+-- recorded in `purchases`. This single row holds the log segment and position of the last
+-- logged purchase recorded, saved in the same transaction as the purchases, so the log is
+-- replayed from there after a restart.
+--
 
 -- --------------------------------------------------------
 
@@ -74,17 +172,36 @@ INSERT INTO `product` (`ProductID`, `Name`, `ManufacturerID`, `Price`, `Stock`,
 
 CREATE TABLE IF NOT EXISTS `purchases` (
   `PurchaseID` int(11) NOT NULL AUTO_INCREMENT,
-  `UserID` int(11) NOT NULL,
+  `UserID` int(11) DEFAULT NULL,
   `ProductID` int(11) DEFAULT NULL,
   `Price` double NOT NULL,
   `ShippingAddress` varchar(256) NOT NULL,
   `Date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `ShippingPrice` double NOT NULL,
+  `StockPending` tinyint(1) NOT NULL DEFAULT '0',
+  `OrderID` int(11) DEFAULT NULL,
   PRIMARY KEY (`PurchaseID`),
-  KEY `UserID` (`UserID`),
-  KEY `ProductID` (`ProductID`)
+  KEY `UserID` (`UserID`,`Date`,`PurchaseID`),
+  KEY `ProductID` (`ProductID`),
+  KEY `Date` (`Date`,`PurchaseID`),
+  KEY `StockPending` (`StockPending`),
+  KEY `OrderID` (`OrderID`)
 ) ENGINE=InnoDB  DEFAULT CHARSET=latin1 AUTO_INCREMENT=16 ;
 
+--
+-- StockPending marks purchases whose stock decrease hasn't been written to the product yet, in
+-- the memory inventory mode. Marked purchases are applied when the application starts.
+-- To upgrade an older database, add it with
+--   ALTER TABLE `purchases` ADD `StockPending` tinyint(1) NOT NULL DEFAULT '0', ADD KEY `StockPending` (`StockPending`);
+-- OrderID is the order a purchase was checked out in, NULL for purchases bought on their own.
+-- To upgrade an older database, create `orders` and `order_lines`, then add it with
+--   ALTER TABLE `purchases` ADD `OrderID` int(11) DEFAULT NULL, ADD KEY `OrderID` (`OrderID`),
+--     ADD CONSTRAINT `purchases_ibfk_5` FOREIGN KEY (`OrderID`) REFERENCES `orders` (`OrderID`) ON DELETE SET NULL;
+-- UserID is NULL for purchases from the purchase log whose user was deleted before they were
+-- applied. To upgrade an older database, allow it with
+--   ALTER TABLE `purchases` MODIFY `UserID` int(11) DEFAULT NULL;
+--
+
 --
 -- Dumping data for table `purchases`
 --
@@ -160,18 +277,38 @@ INSERT INTO `users` (`UserID`, `Username`, `Password`, `Email`, `FirstName`, `La
 -- Constraints for dumped tables
 --
 
+--
+-- Constraints for table `orders`
+--
+ALTER TABLE `orders`
+  ADD CONSTRAINT `orders_ibfk_1` FOREIGN KEY (`UserID`) REFERENCES `users` (`UserID`) ON DELETE CASCADE;
+
+--
+-- Constraints for table `order_lines`
+--
+ALTER TABLE `order_lines`
+  ADD CONSTRAINT `order_lines_ibfk_2` FOREIGN KEY (`ProductID`) REFERENCES `product` (`ProductID`) ON DELETE SET NULL,
+  ADD CONSTRAINT `order_lines_ibfk_1` FOREIGN KEY (`OrderID`) REFERENCES `orders` (`OrderID`) ON DELETE CASCADE;
+
 --
 -- Constraints for table `product`
 --
 ALTER TABLE `product`
   ADD CONSTRAINT `product_ibfk_1` FOREIGN KEY (`ManufacturerID`) REFERENCES `manufacturer` (`mID`);
 
+--
+-- Constraints for table `product_stock_bucket`
+--
+ALTER TABLE `product_stock_bucket`
+  ADD CONSTRAINT `product_stock_bucket_ibfk_1` FOREIGN KEY (`ProductID`) REFERENCES `product` (`ProductID`) ON DELETE CASCADE;
+
 --
 -- Constraints for table `purchases`
 --
 ALTER TABLE `purchases`
   ADD CONSTRAINT `purchases_ibfk_4` FOREIGN KEY (`ProductID`) REFERENCES `product` (`ProductID`) ON DELETE SET NULL ON UPDATE SET NULL,
-  ADD CONSTRAINT `purchases_ibfk_3` FOREIGN KEY (`UserID`) REFERENCES `users` (`UserID`) ON DELETE CASCADE;
+  ADD CONSTRAINT `purchases_ibfk_3` FOREIGN KEY (`UserID`) REFERENCES `users` (`UserID`) ON DELETE CASCADE,
+  ADD CONSTRAINT `purchases_ibfk_5` FOREIGN KEY (`OrderID`) REFERENCES `orders` (`OrderID`) ON DELETE SET NULL;
 
 --
 -- Constraints for table `reviews`
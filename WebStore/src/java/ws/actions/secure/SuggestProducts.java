@@ -0,0 +1,87 @@
+package ws.actions.secure;
+
+import com.opensymphony.xwork2.ActionSupport;
+import java.util.List;
+import ws.utils.Database;
+import ws.utils.Suggestion;
+import ws.utils.Utils;
+
+/**
+ * Suggests product names for the search box while a name is being typed
+ * @author Team 10
+ */
+public class SuggestProducts extends ActionSupport
+{
+	/**
+	 * Start of the name, as typed
+	 */
+	private String prefix;
+	/**
+	 * Most suggestions to return, 0 for all the index keeps
+	 */
+	private int limit;
+	/**
+	 * Suggested products
+	 */
+	private List<Suggestion> suggestions;
+
+	/**
+	 * Suggested products, best selling first
+	 * @return the suggestions
+	 */
+	public List<Suggestion> getSuggestions()
+	{
+		if (suggestions == null)
+		{
+			// The index caps the suggestions at what it keeps for each prefix
+			int size = (getLimit() < 1) ? Integer.MAX_VALUE : getLimit();
+			suggestions = Database.getInstance().suggestProducts(getPrefix(), size);
+		}
+
+		return suggestions;
+	}
+
+	/**
+	 * Escapes a value for the JSON list of suggestions
+	 * @param value - Value to escape
+	 * @return Escaped value, to be placed between quotes
+	 */
+	public String json(String value)
+	{
+		return Utils.escapeJson(value);
+	}
+
+	/**
+	 * Start of the name, set from the request
+	 * @return the prefix
+	 */
+	public String getPrefix()
+	{
+		return prefix;
+	}
+
+	/**
+	 * @param prefix the prefix to set
+	 */
+	public void setPrefix(String prefix)
+	{
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Most suggestions to return, set from the request
+	 * @return the limit
+	 */
+	public int getLimit()
+	{
+		return limit;
+	}
+
+	/**
+	 * @param limit the limit to set
+	 */
+	public void setLimit(int limit)
+	{
+		this.limit = limit;
+	}
+}
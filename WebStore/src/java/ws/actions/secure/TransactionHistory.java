@@ -1,11 +1,12 @@
 package ws.actions.secure;
 
 import com.opensymphony.xwork2.ActionSupport;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 import org.apache.struts2.interceptor.SessionAware;
 import ws.utils.Account;
 import ws.utils.Database;
+import ws.utils.Page;
 import ws.utils.Transaction;
 
 /**
@@ -19,33 +20,54 @@ public class TransactionHistory extends ActionSupport implements SessionAware
 	 */
 	private Map session;
 	/**
-	 * List of valid transactions
+	 * Cursor of the page to continue after
 	 */
-	private Vector<Transaction> transactions;
+	private String after;
+	/**
+	 * Cursor of the page to continue before
+	 */
+	private String before;
+	/**
+	 * Number of transactions to show, 0 for the default
+	 */
+	private int pageSize;
+	/**
+	 * Requested page of transactions
+	 */
+	private Page<Transaction> page;
 
 	/**
-	 * Retrieves a list of transactions. For users, only their own transactions are retrieved. Admin
-	 *   account will get all transactions
+	 * Retrieves a page of transactions, newest first. For users, only their own transactions are
+	 *   retrieved. Admin account will get all transactions
 	 *
-	 * @return Returns a list of current user's transactions, or every transaction if user is an admin.
+	 * @return Returns a page of current user's transactions, or of every transaction if user is an admin.
 	 */
-	public Vector<Transaction> getTransactions()
+	public Page<Transaction> getPage()
 	{
-		if (transactions == null)
+		if (page == null)
 		{
 			Account currentUser = (Account) session.get("user");
 
 			if (currentUser.isAdmin())
 			{
-				transactions = Database.getInstance().getTransactions();
+				page = Database.getInstance().getTransactions(getAfter(), getBefore(), getPageSize());
 			}
 			else
 			{
-				transactions = Database.getInstance().getTransactions(currentUser.getId());
+				page = Database.getInstance().getTransactions(currentUser.getId(), getAfter(), getBefore(), getPageSize());
 			}
 		}
 
-		return transactions;
+		return page;
+	}
+
+	/**
+	 * Transactions on the requested page
+	 * @return the transactions
+	 */
+	public List<Transaction> getTransactions()
+	{
+		return getPage().getItems();
 	}
 
 	/**
@@ -56,4 +78,55 @@ public class TransactionHistory extends ActionSupport implements SessionAware
 	{
 		this.session = session;
 	}
+
+	/**
+	 * Cursor of the page to continue after, set from the request
+	 * @return the after
+	 */
+	public String getAfter()
+	{
+		return after;
+	}
+
+	/**
+	 * @param after the after to set
+	 */
+	public void setAfter(String after)
+	{
+		this.after = after;
+	}
+
+	/**
+	 * Cursor of the page to continue before, set from the request
+	 * @return the before
+	 */
+	public String getBefore()
+	{
+		return before;
+	}
+
+	/**
+	 * @param before the before to set
+	 */
+	public void setBefore(String before)
+	{
+		this.before = before;
+	}
+
+	/**
+	 * Number of transactions to show, set from the request
+	 * @return the pageSize
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize the pageSize to set
+	 */
+	public void setPageSize(int pageSize)
+	{
+		this.pageSize = pageSize;
+	}
 }
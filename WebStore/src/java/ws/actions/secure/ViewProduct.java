@@ -2,7 +2,11 @@ package ws.actions.secure;
 
 import com.opensymphony.xwork2.ActionSupport;
 import ws.utils.Database;
+import ws.utils.Page;
 import ws.utils.Product;
+import ws.utils.Review;
+import ws.utils.Settings;
+import ws.utils.Utils;
 
 /**
  *
@@ -10,6 +14,10 @@ import ws.utils.Product;
  */
 public class ViewProduct extends ActionSupport
 {
+	/**
+	 * Reviews shown at once when the request doesn't ask for a page size
+	 */
+	private static final int REVIEW_PAGE_SIZE = Settings.getInt("page.reviewSize", 10);
 	/**
 	 * Product being viewed
 	 */
@@ -18,6 +26,18 @@ public class ViewProduct extends ActionSupport
 	 * ID of product to view
 	 */
 	private Integer productId;
+	/**
+	 * Cursor of the page of reviews to continue after
+	 */
+	private String after;
+	/**
+	 * Number of reviews to show, 0 for the default
+	 */
+	private int pageSize;
+	/**
+	 * Requested page of reviews
+	 */
+	private Page<Review> reviewPage;
 
 	/**
 	 * @return
@@ -55,6 +75,66 @@ public class ViewProduct extends ActionSupport
 		return product;
 	}
 
+	/**
+	 * Requested page of the product's reviews, newest first, with the reviewers' names already
+	 *   loaded. Further pages are fetched by the product page through viewReviews.
+	 * @return the reviewPage
+	 */
+	public Page<Review> getReviewPage()
+	{
+		if (reviewPage == null)
+		{
+			int size = (getPageSize() < 1) ? REVIEW_PAGE_SIZE : getPageSize();
+			reviewPage = Database.getInstance().getReviews(getProductId(), getAfter(), null, size);
+		}
+
+		return reviewPage;
+	}
+
+	/**
+	 * Escapes a value for the JSON list of reviews
+	 * @param value - Value to escape
+	 * @return Escaped value, to be placed between quotes
+	 */
+	public String json(String value)
+	{
+		return Utils.escapeJson(value);
+	}
+
+	/**
+	 * Cursor of the page of reviews to continue after, set from the request
+	 * @return the after
+	 */
+	public String getAfter()
+	{
+		return after;
+	}
+
+	/**
+	 * @param after the after to set
+	 */
+	public void setAfter(String after)
+	{
+		this.after = after;
+	}
+
+	/**
+	 * Number of reviews to show, set from the request
+	 * @return the pageSize
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize the pageSize to set
+	 */
+	public void setPageSize(int pageSize)
+	{
+		this.pageSize = pageSize;
+	}
+
 	/**
 	 * ID of product to view
 	 * @return the productId
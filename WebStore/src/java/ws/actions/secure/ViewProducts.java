@@ -3,7 +3,11 @@ package ws.actions.secure;
 import ws.utils.Database;
 import ws.utils.Product;
 import com.opensymphony.xwork2.ActionSupport;
-import java.util.Vector;
+import java.util.List;
+import org.apache.commons.lang.xwork.StringUtils;
+import ws.utils.Page;
+import ws.utils.ProductSelection;
+import ws.utils.SortIndex;
 
 /**
  *
@@ -12,9 +16,45 @@ import java.util.Vector;
 public class ViewProducts extends ActionSupport
 {
 	/**
-	 * List of every product
+	 * Words to search the products for, all products are listed when empty
 	 */
-	private Vector<Product> products;
+	private String query;
+	/**
+	 * Manufacturer to list products of, null for any
+	 */
+	private Integer manufacturerId;
+	/**
+	 * Price band to list products in, null for any
+	 */
+	private Integer priceBand;
+	/**
+	 * Flag set to list only products in stock
+	 */
+	private boolean inStock;
+	/**
+	 * Order to list products in, null for the default
+	 */
+	private SortIndex.Order sort;
+	/**
+	 * Cursor of the page to continue after
+	 */
+	private String after;
+	/**
+	 * Cursor of the page to continue before
+	 */
+	private String before;
+	/**
+	 * Number of products to show, 0 for the default
+	 */
+	private int pageSize;
+	/**
+	 * Requested page of products
+	 */
+	private Page<Product> page;
+	/**
+	 * Products matching the search and facets, with the facet counts
+	 */
+	private ProductSelection selection;
 
 	/**
 	 * @return
@@ -24,20 +64,227 @@ public class ViewProducts extends ActionSupport
 	@Override
 	public String execute() throws Exception
 	{
-		// TODO: Searching, should already be implemented in database just needs interface for it
 		return super.execute();
 	}
 
 	/**
+	 * Requested page of products, with their manufacturer name and rating already loaded so
+	 *   listing them doesn't need any further queries. When searching or narrowing by facets, the
+	 *   matching products, best match first unless sorted.
+	 * @return the page
+	 */
+	public Page<Product> getPage()
+	{
+		if (page == null)
+		{
+			if (isFiltered())
+			{
+				page = Database.getInstance().getProductListing(getSelection().getIds(), getAfter(), getBefore(), getPageSize());
+			}
+			else if (getSort() != null)
+			{
+				page = Database.getInstance().getProductListing(getSort(), getAfter(), getBefore(), getPageSize());
+			}
+			else
+			{
+				page = Database.getInstance().getProductListing(getAfter(), getBefore(), getPageSize());
+			}
+		}
+
+		return page;
+	}
+
+	/**
+	 * Products matching the search and facets, with the number of products each facet value
+	 *   would leave
+	 * @return the selection
+	 */
+	public ProductSelection getSelection()
+	{
+		if (selection == null)
+		{
+			selection = Database.getInstance().selectProducts(getQuery(), getManufacturerId(), getPriceBand(), isInStock(), getSort());
+		}
+
+		return selection;
+	}
+
+	/**
+	 * @return true when searching or narrowing by a facet
+	 */
+	public boolean isFiltered()
+	{
+		return StringUtils.isNotBlank(getQuery()) || getManufacturerId() != null || getPriceBand() != null || isInStock();
+	}
+
+	/**
+	 * Products on the requested page
 	 * @return the products
 	 */
-	public Vector<Product> getProducts()
+	public List<Product> getProducts()
+	{
+		return getPage().getItems();
+	}
+
+	/**
+	 * Words to search the products for, set from the request
+	 * @return the query
+	 */
+	public String getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * @param query the query to set
+	 */
+	public void setQuery(String query)
+	{
+		this.query = query;
+	}
+
+	/**
+	 * Manufacturer to list products of, set from the request
+	 * @return the manufacturerId
+	 */
+	public Integer getManufacturerId()
+	{
+		return manufacturerId;
+	}
+
+	/**
+	 * @param manufacturerId the manufacturerId to set
+	 */
+	public void setManufacturerId(String manufacturerId)
+	{
+		this.manufacturerId = parseId(manufacturerId);
+	}
+
+	/**
+	 * Price band to list products in, set from the request
+	 * @return the priceBand
+	 */
+	public Integer getPriceBand()
+	{
+		return priceBand;
+	}
+
+	/**
+	 * @param priceBand the priceBand to set
+	 */
+	public void setPriceBand(String priceBand)
+	{
+		this.priceBand = parseId(priceBand);
+	}
+
+	/**
+	 * Flag set to list only products in stock, set from the request
+	 * @return the inStock
+	 */
+	public boolean isInStock()
 	{
-		if (products == null)
+		return inStock;
+	}
+
+	/**
+	 * @param inStock the inStock to set
+	 */
+	public void setInStock(String inStock)
+	{
+		this.inStock = Boolean.parseBoolean(inStock);
+	}
+
+	/**
+	 * Order to list products in, set from the request
+	 * @return the sort
+	 */
+	public SortIndex.Order getSort()
+	{
+		return sort;
+	}
+
+	/**
+	 * @param sort the sort to set, unknown orders list products in the default order
+	 */
+	public void setSort(String sort)
+	{
+		this.sort = SortIndex.Order.parse(sort);
+	}
+
+	/**
+	 * Orders products can be listed in
+	 * @return the sort orders
+	 */
+	public SortIndex.Order[] getSortOrders()
+	{
+		return SortIndex.Order.values();
+	}
+
+	/**
+	 * Reads a facet value from the request. Empty values clear the facet
+	 * @param value - Value to read
+	 * @return The value, null when empty or not a number
+	 */
+	private static Integer parseId(String value)
+	{
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException numberFormatException)
 		{
-			products = Database.getInstance().getProducts();
+			return null;
 		}
+	}
+
+	/**
+	 * Cursor of the page to continue after, set from the request
+	 * @return the after
+	 */
+	public String getAfter()
+	{
+		return after;
+	}
+
+	/**
+	 * @param after the after to set
+	 */
+	public void setAfter(String after)
+	{
+		this.after = after;
+	}
+
+	/**
+	 * Cursor of the page to continue before, set from the request
+	 * @return the before
+	 */
+	public String getBefore()
+	{
+		return before;
+	}
+
+	/**
+	 * @param before the before to set
+	 */
+	public void setBefore(String before)
+	{
+		this.before = before;
+	}
 
-		return products;
+	/**
+	 * Number of products to show, set from the request
+	 * @return the pageSize
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize the pageSize to set
+	 */
+	public void setPageSize(int pageSize)
+	{
+		this.pageSize = pageSize;
 	}
 }
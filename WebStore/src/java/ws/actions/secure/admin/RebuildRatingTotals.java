@@ -0,0 +1,56 @@
+package ws.actions.secure.admin;
+
+import ws.utils.Database;
+
+/**
+ * Recomputes every product's stored review count and rating total from its reviews, then shows
+ *   the statistics page again
+ * @author Team 10
+ */
+public class RebuildRatingTotals extends ViewStatistics
+{
+	/**
+	 * Flag set when user has submitted the request
+	 */
+	private boolean submit;
+
+	/**
+	 * @return
+	 * @throws Exception
+	 * @see com.opensymphony.xwork2.ActionSupport#execute()
+	 */
+	@Override
+	public String execute() throws Exception
+	{
+		if (!isSubmit())
+		{
+			return SUCCESS;
+		}
+
+		if (!Database.getInstance().rebuildRatingTotals())
+		{
+			addActionError("Failed to rebuild rating totals");
+			return ERROR;
+		}
+
+		addActionMessage("Rating totals rebuilt");
+		return SUCCESS;
+	}
+
+	/**
+	 * Flag set when user has submitted the request
+	 * @return the submit
+	 */
+	public boolean isSubmit()
+	{
+		return submit;
+	}
+
+	/**
+	 * @param submit the submit to set
+	 */
+	public void setSubmit(boolean submit)
+	{
+		this.submit = submit;
+	}
+}
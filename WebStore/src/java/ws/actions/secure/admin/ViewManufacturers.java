@@ -1,9 +1,10 @@
 package ws.actions.secure.admin;
 
 import com.opensymphony.xwork2.ActionSupport;
-import java.util.Vector;
+import java.util.List;
 import ws.utils.Database;
 import ws.utils.Manufacturer;
+import ws.utils.Page;
 
 /**
  *
@@ -11,18 +12,93 @@ import ws.utils.Manufacturer;
  */
 public class ViewManufacturers extends ActionSupport
 {
-	private Vector<Manufacturer> manufacturers;
+	/**
+	 * Cursor of the page to continue after
+	 */
+	private String after;
+	/**
+	 * Cursor of the page to continue before
+	 */
+	private String before;
+	/**
+	 * Number of manufacturers to show, 0 for the default
+	 */
+	private int pageSize;
+	/**
+	 * Requested page of manufacturers
+	 */
+	private Page<Manufacturer> page;
 
 	/**
-	 * @return the manufacturers
+	 * Requested page of manufacturers
+	 * @return the page
 	 */
-	public Vector<Manufacturer> getManufacturers()
+	public Page<Manufacturer> getPage()
 	{
-		if (manufacturers == null)
+		if (page == null)
 		{
-			manufacturers = Database.getInstance().getManufacturers();
+			page = Database.getInstance().getManufacturers(getAfter(), getBefore(), getPageSize());
 		}
 
-		return manufacturers;
+		return page;
+	}
+
+	/**
+	 * @return the manufacturers
+	 */
+	public List<Manufacturer> getManufacturers()
+	{
+		return getPage().getItems();
+	}
+
+	/**
+	 * Cursor of the page to continue after, set from the request
+	 * @return the after
+	 */
+	public String getAfter()
+	{
+		return after;
+	}
+
+	/**
+	 * @param after the after to set
+	 */
+	public void setAfter(String after)
+	{
+		this.after = after;
+	}
+
+	/**
+	 * Cursor of the page to continue before, set from the request
+	 * @return the before
+	 */
+	public String getBefore()
+	{
+		return before;
+	}
+
+	/**
+	 * @param before the before to set
+	 */
+	public void setBefore(String before)
+	{
+		this.before = before;
+	}
+
+	/**
+	 * Number of manufacturers to show, set from the request
+	 * @return the pageSize
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize the pageSize to set
+	 */
+	public void setPageSize(int pageSize)
+	{
+		this.pageSize = pageSize;
 	}
 }
@@ -0,0 +1,120 @@
+package ws.actions.secure.admin;
+
+import com.opensymphony.xwork2.ActionSupport;
+import java.util.List;
+import ws.utils.Cache;
+import ws.utils.ConnectionPool;
+import ws.utils.Database;
+import ws.utils.ExistenceFilter;
+import ws.utils.InventoryMode;
+import ws.utils.NameIndex;
+import ws.utils.PurchaseLog;
+import ws.utils.PurchaseWriter;
+import ws.utils.SearchIndex;
+import ws.utils.StockCounters;
+
+/**
+ * Displays runtime statistics of the data layer for monitoring
+ * @author Team 10
+ */
+public class ViewStatistics extends ActionSupport
+{
+	/**
+	 * Database connection pool statistics
+	 * @return the connection pool
+	 */
+	public ConnectionPool getConnectionPool()
+	{
+		return Database.getInstance().getConnectionPool();
+	}
+
+	/**
+	 * Statistics of the database caches
+	 * @return the caches
+	 */
+	public List<Cache<?, ?>> getCaches()
+	{
+		return Database.getInstance().getCaches();
+	}
+
+	/**
+	 * Statistics of the database existence filters
+	 * @return the filters
+	 */
+	public List<ExistenceFilter> getExistenceFilters()
+	{
+		return Database.getInstance().getExistenceFilters();
+	}
+
+	/**
+	 * Where stock is kept while selling
+	 * @return the inventory mode
+	 */
+	public InventoryMode getInventoryMode()
+	{
+		return Database.getInstance().getInventoryMode();
+	}
+
+	/**
+	 * Statistics of the stock held in memory
+	 * @return the stock counters, null unless the memory inventory mode is loaded
+	 */
+	public StockCounters getStockCounters()
+	{
+		return Database.getInstance().getStockCounters();
+	}
+
+	/**
+	 * Statistics of the purchase log
+	 * @return the purchase log, null unless checkouts are logged
+	 */
+	public PurchaseLog getPurchaseLog()
+	{
+		return Database.getInstance().getPurchaseLog();
+	}
+
+	/**
+	 * Statistics of the group purchase writer
+	 * @return the purchase writer, null when checkouts are written directly
+	 */
+	public PurchaseWriter getPurchaseWriter()
+	{
+		return Database.getInstance().getPurchaseWriter();
+	}
+
+	/**
+	 * Rows each product's stock is split across
+	 * @return the number of stock buckets per product, 0 unless in the sharded inventory mode
+	 */
+	public int getStockBucketCount()
+	{
+		return Database.getInstance().getStockBucketCount();
+	}
+
+	/**
+	 * Products sold from since their stock buckets were last rebalanced
+	 * @return the unbalanced product count
+	 */
+	public int getUnbalancedProductCount()
+	{
+		return Database.getInstance().getUnbalancedProductCount();
+	}
+
+	/**
+	 * Statistics of the product search index
+	 * @return the search index
+	 */
+	public SearchIndex getSearchIndex()
+	{
+		return Database.getInstance().getSearchIndex();
+	}
+
+	/**
+	 * Statistics of the product name suggestion index
+	 * @return the name index
+	 */
+	public NameIndex getNameIndex()
+	{
+		return Database.getInstance().getNameIndex();
+	}
+}
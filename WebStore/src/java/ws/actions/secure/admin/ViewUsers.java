@@ -3,20 +3,103 @@ package ws.actions.secure.admin;
 import ws.utils.Account;
 import ws.utils.Database;
 import com.opensymphony.xwork2.ActionSupport;
-import java.util.Vector;
+import java.util.List;
+import ws.utils.Page;
 
 /**
- * Lists all accounts
+ * Lists all accounts, a page at a time
  * @author Team 10
  */
 public class ViewUsers extends ActionSupport
 {
 	/**
-	 * Obtains a list of all account
-	 * @return A list of all account
+	 * Cursor of the page to continue after
 	 */
-	public Vector<Account> getUsers()
+	private String after;
+	/**
+	 * Cursor of the page to continue before
+	 */
+	private String before;
+	/**
+	 * Number of accounts to show, 0 for the default
+	 */
+	private int pageSize;
+	/**
+	 * Requested page of accounts
+	 */
+	private Page<Account> page;
+
+	/**
+	 * Requested page of accounts
+	 * @return the page
+	 */
+	public Page<Account> getPage()
+	{
+		if (page == null)
+		{
+			page = Database.getInstance().getUsers(getAfter(), getBefore(), getPageSize());
+		}
+
+		return page;
+	}
+
+	/**
+	 * Obtains the accounts on the requested page
+	 * @return A list of accounts
+	 */
+	public List<Account> getUsers()
+	{
+		return getPage().getItems();
+	}
+
+	/**
+	 * Cursor of the page to continue after, set from the request
+	 * @return the after
+	 */
+	public String getAfter()
+	{
+		return after;
+	}
+
+	/**
+	 * @param after the after to set
+	 */
+	public void setAfter(String after)
+	{
+		this.after = after;
+	}
+
+	/**
+	 * Cursor of the page to continue before, set from the request
+	 * @return the before
+	 */
+	public String getBefore()
+	{
+		return before;
+	}
+
+	/**
+	 * @param before the before to set
+	 */
+	public void setBefore(String before)
+	{
+		this.before = before;
+	}
+
+	/**
+	 * Number of accounts to show, set from the request
+	 * @return the pageSize
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize the pageSize to set
+	 */
+	public void setPageSize(int pageSize)
 	{
-		return Database.getInstance().getUsers();
+		this.pageSize = pageSize;
 	}
 }
@@ -0,0 +1,115 @@
+package ws.actions.secure.user;
+
+import com.opensymphony.xwork2.ActionSupport;
+import java.util.Map;
+import org.apache.struts2.interceptor.SessionAware;
+import ws.utils.Cart;
+import ws.utils.Database;
+
+/**
+ *
+ * @author Team 10
+ */
+public class AddToCart extends ActionSupport implements SessionAware
+{
+	/**
+	 * ID of product to add
+	 */
+	private Integer productId;
+	/**
+	 * Units to add
+	 */
+	private Integer quantity = 1;
+	/**
+	 * Current session map
+	 */
+	private Map session;
+
+	/**
+	 * @return
+	 * @throws Exception
+	 * @see com.opensymphony.xwork2.ActionSupport#execute()
+	 */
+	@Override
+	public String execute() throws Exception
+	{
+		if (getProductId() == null || Database.getInstance().getProduct(getProductId()) == null)
+		{
+			addActionError("Invalid product");
+			return ERROR;
+		}
+
+		if (getQuantity() == null || getQuantity() < 1)
+		{
+			addActionError("Invalid quantity");
+			return ERROR;
+		}
+
+		if (!Cart.of(session).add(getProductId(), getQuantity()))
+		{
+			addActionError("Your cart is full");
+			return ERROR;
+		}
+
+		return SUCCESS;
+	}
+
+	/**
+	 * ID of product to add
+	 * @return the productId
+	 */
+	public Integer getProductId()
+	{
+		return productId;
+	}
+
+	/**
+	 * ID of product to add
+	 * @param productId the productId to set
+	 */
+	public void setProductId(String productId)
+	{
+		try
+		{
+			this.productId = Integer.parseInt(productId);
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			this.productId = null;
+		}
+	}
+
+	/**
+	 * Units to add
+	 * @return the quantity
+	 */
+	public Integer getQuantity()
+	{
+		return quantity;
+	}
+
+	/**
+	 * Units to add
+	 * @param quantity the quantity to set
+	 */
+	public void setQuantity(String quantity)
+	{
+		try
+		{
+			this.quantity = Integer.parseInt(quantity);
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			this.quantity = null;
+		}
+	}
+
+	/**
+	 * Current session map
+	 * @param session
+	 */
+	public void setSession(Map session)
+	{
+		this.session = session;
+	}
+}
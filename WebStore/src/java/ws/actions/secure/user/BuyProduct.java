@@ -5,6 +5,7 @@ import java.util.Map;
 import org.apache.commons.lang.xwork.StringUtils;
 import org.apache.struts2.interceptor.SessionAware;
 import ws.utils.Account;
+import ws.utils.CheckoutResult;
 import ws.utils.Database;
 import ws.utils.Product;
 import ws.utils.Constants;
@@ -31,10 +32,18 @@ public class BuyProduct extends ActionSupport implements SessionAware
 	 * Shipping address
 	 */
 	private String shippingAddress;
+	/**
+	 * One-time token of the purchase confirmation, issued when it is shown
+	 */
+	private String checkoutToken;
 	/**
 	 * Current session map
 	 */
 	private Map session;
+	/**
+	 * ID of the purchase made, set on success
+	 */
+	private int purchaseId;
 
 	/**
 	 * @return
@@ -50,32 +59,36 @@ public class BuyProduct extends ActionSupport implements SessionAware
 			return ERROR;
 		}
 
+		Account currentUser = (Account) session.get("user");
+
 		if (!isSubmit())
 		{
+			checkoutToken = Database.getInstance().issueCheckoutToken(currentUser.getId(), getProductId());
 			return INPUT;
 		}
 
-		if (getProduct().getStock() <= 0)
-		{
-			addActionError("Product is out of stock");
-			return ERROR;
-		}
-
-		Account currentUser = (Account) session.get("user");
+		// Repeated submissions of the confirmation get the outcome of the first, so this comes
+		//   before any stock check: the first may have bought the last unit
+		CheckoutResult result = Database.getInstance().checkout(checkoutToken, currentUser.getId(), getProductId(), 5.0, shippingAddress);
 
-		if (!Database.getInstance().addTransaction(currentUser.getId(), product.getId(), product.getPrice(), 5.0, shippingAddress))
+		if (result == null)
 		{
-			addActionError("Failed to create transaction report");
+			addActionError("Purchase confirmation has expired, please confirm the purchase again");
 			return ERROR;
 		}
 
-		if (!Database.getInstance().decreaseProductStock(getProductId()))
+		switch (result.getStatus())
 		{
-			addActionError("Failed to decrease product stock");
-			return ERROR;
+			case SUCCESS:
+				purchaseId = result.getPurchaseId();
+				return SUCCESS;
+			case SOLD_OUT:
+				addActionError("Product is out of stock");
+				return ERROR;
+			default:
+				addActionError("Failed to complete purchase");
+				return ERROR;
 		}
-
-		return SUCCESS;
 	}
 
 	/**
@@ -143,6 +156,33 @@ public class BuyProduct extends ActionSupport implements SessionAware
 		return product;
 	}
 
+	/**
+	 * ID of the purchase made, set on success
+	 * @return the purchaseId
+	 */
+	public int getPurchaseId()
+	{
+		return purchaseId;
+	}
+
+	/**
+	 * One-time token of the purchase confirmation
+	 * @return the checkoutToken
+	 */
+	public String getCheckoutToken()
+	{
+		return checkoutToken;
+	}
+
+	/**
+	 * One-time token of the purchase confirmation
+	 * @param checkoutToken the checkoutToken to set
+	 */
+	public void setCheckoutToken(String checkoutToken)
+	{
+		this.checkoutToken = checkoutToken;
+	}
+
 	/**
 	 * Obtains access to the session map, set automatically
 	 * @param session - Current session map
@@ -0,0 +1,141 @@
+package ws.actions.secure.user;
+
+import org.apache.commons.lang.xwork.StringUtils;
+import ws.utils.Account;
+import ws.utils.CheckoutResult;
+import ws.utils.Constants;
+import ws.utils.Database;
+import ws.utils.Product;
+
+/**
+ *
+ * @author Team 10
+ */
+public class CheckoutCart extends ViewCart
+{
+	/**
+	 * Flag to determine if data was submitted
+	 */
+	private boolean submit;
+	/**
+	 * Shipping address
+	 */
+	private String shippingAddress;
+	/**
+	 * ID of the order placed, set on success
+	 */
+	private int orderId;
+
+	/**
+	 * @return
+	 * @throws Exception
+	 * @see com.opensymphony.xwork2.ActionSupport#execute()
+	 */
+	@Override
+	public String execute() throws Exception
+	{
+		// Read before the checkout empties the cart, for the confirmation and the success page
+		if (getLines().isEmpty())
+		{
+			addActionError("Your cart is empty");
+			return ERROR;
+		}
+
+		if (!isSubmit())
+		{
+			return INPUT;
+		}
+
+		Account currentUser = (Account) getSession().get("user");
+
+		// A repeated submission finds the cart already emptied by the first
+		CheckoutResult result = Database.getInstance().checkoutOrder(currentUser.getId(), getCart(), SHIPPING_PRICE, shippingAddress);
+
+		if (result == null)
+		{
+			addActionError("Your cart is empty, it may already have been checked out");
+			return ERROR;
+		}
+
+		switch (result.getStatus())
+		{
+			case SUCCESS:
+				orderId = result.getPurchaseId();
+				return SUCCESS;
+			case SOLD_OUT:
+				Product product = Database.getInstance().getProduct(result.getSoldOutProductId());
+				addActionError((product == null) ? "A product in your cart is out of stock"
+						: "There isn't enough of " + product.getName() + " in stock, please change your cart");
+				return ERROR;
+			default:
+				addActionError("Failed to complete order");
+				return ERROR;
+		}
+	}
+
+	/**
+	 * @see com.opensymphony.xwork2.ActionSupport#validate()
+	 */
+	@Override
+	public void validate()
+	{
+		if (!isSubmit())
+		{
+			return;
+		}
+
+		if (StringUtils.isEmpty(getShippingAddress()))
+		{
+			addFieldError("shippingAddress", "Missing shipping address");
+		}
+		else if (getShippingAddress().length() > Constants.LEN_PURCHASE_SHIPPINGADDRESS)
+		{
+			addFieldError("shippingAddress", "Address too long");
+		}
+	}
+
+	/**
+	 * Flag to determine if data was submitted
+	 * @return the submit
+	 */
+	public boolean isSubmit()
+	{
+		return submit;
+	}
+
+	/**
+	 * Flag to determine if data was submitted
+	 * @param submit the submit to set
+	 */
+	public void setSubmit(boolean submit)
+	{
+		this.submit = submit;
+	}
+
+	/**
+	 * Shipping address
+	 * @return the shippingAddress
+	 */
+	public String getShippingAddress()
+	{
+		return shippingAddress;
+	}
+
+	/**
+	 * Shipping address
+	 * @param shippingAddress the shippingAddress to set
+	 */
+	public void setShippingAddress(String shippingAddress)
+	{
+		this.shippingAddress = shippingAddress;
+	}
+
+	/**
+	 * ID of the order placed, set on success
+	 * @return the orderId
+	 */
+	public int getOrderId()
+	{
+		return orderId;
+	}
+}
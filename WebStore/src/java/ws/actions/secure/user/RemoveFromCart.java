@@ -0,0 +1,74 @@
+package ws.actions.secure.user;
+
+import com.opensymphony.xwork2.ActionSupport;
+import java.util.Map;
+import org.apache.struts2.interceptor.SessionAware;
+import ws.utils.Cart;
+
+/**
+ *
+ * @author Team 10
+ */
+public class RemoveFromCart extends ActionSupport implements SessionAware
+{
+	/**
+	 * ID of product to remove
+	 */
+	private Integer productId;
+	/**
+	 * Current session map
+	 */
+	private Map session;
+
+	/**
+	 * @return
+	 * @throws Exception
+	 * @see com.opensymphony.xwork2.ActionSupport#execute()
+	 */
+	@Override
+	public String execute() throws Exception
+	{
+		if (getProductId() == null)
+		{
+			addActionError("Invalid product");
+			return ERROR;
+		}
+
+		Cart.of(session).remove(getProductId());
+		return SUCCESS;
+	}
+
+	/**
+	 * ID of product to remove
+	 * @return the productId
+	 */
+	public Integer getProductId()
+	{
+		return productId;
+	}
+
+	/**
+	 * ID of product to remove
+	 * @param productId the productId to set
+	 */
+	public void setProductId(String productId)
+	{
+		try
+		{
+			this.productId = Integer.parseInt(productId);
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			this.productId = null;
+		}
+	}
+
+	/**
+	 * Current session map
+	 * @param session
+	 */
+	public void setSession(Map session)
+	{
+		this.session = session;
+	}
+}
@@ -0,0 +1,114 @@
+package ws.actions.secure.user;
+
+import com.opensymphony.xwork2.ActionSupport;
+import java.util.Map;
+import org.apache.struts2.interceptor.SessionAware;
+import ws.utils.Cart;
+
+/**
+ *
+ * @author Team 10
+ */
+public class UpdateCart extends ActionSupport implements SessionAware
+{
+	/**
+	 * ID of product to change the quantity of
+	 */
+	private Integer productId;
+	/**
+	 * Units wanted, 0 removes the product
+	 */
+	private Integer quantity;
+	/**
+	 * Current session map
+	 */
+	private Map session;
+
+	/**
+	 * @return
+	 * @throws Exception
+	 * @see com.opensymphony.xwork2.ActionSupport#execute()
+	 */
+	@Override
+	public String execute() throws Exception
+	{
+		if (getProductId() == null)
+		{
+			addActionError("Invalid product");
+			return ERROR;
+		}
+
+		if (getQuantity() == null || getQuantity() < 0)
+		{
+			addActionError("Invalid quantity");
+			return ERROR;
+		}
+
+		if (!Cart.of(session).set(getProductId(), getQuantity()))
+		{
+			addActionError("Product is not in your cart");
+			return ERROR;
+		}
+
+		return SUCCESS;
+	}
+
+	/**
+	 * ID of product to change the quantity of
+	 * @return the productId
+	 */
+	public Integer getProductId()
+	{
+		return productId;
+	}
+
+	/**
+	 * ID of product to change the quantity of
+	 * @param productId the productId to set
+	 */
+	public void setProductId(String productId)
+	{
+		try
+		{
+			this.productId = Integer.parseInt(productId);
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			this.productId = null;
+		}
+	}
+
+	/**
+	 * Units wanted, 0 removes the product
+	 * @return the quantity
+	 */
+	public Integer getQuantity()
+	{
+		return quantity;
+	}
+
+	/**
+	 * Units wanted, 0 removes the product
+	 * @param quantity the quantity to set
+	 */
+	public void setQuantity(String quantity)
+	{
+		try
+		{
+			this.quantity = Integer.parseInt(quantity);
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			this.quantity = null;
+		}
+	}
+
+	/**
+	 * Current session map
+	 * @param session
+	 */
+	public void setSession(Map session)
+	{
+		this.session = session;
+	}
+}
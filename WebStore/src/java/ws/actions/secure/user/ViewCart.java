@@ -0,0 +1,131 @@
+package ws.actions.secure.user;
+
+import com.opensymphony.xwork2.ActionSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.struts2.interceptor.SessionAware;
+import ws.utils.Cart;
+import ws.utils.Database;
+import ws.utils.Product;
+
+/**
+ *
+ * @author Team 10
+ */
+public class ViewCart extends ActionSupport implements SessionAware
+{
+	/**
+	 * Shipping price of an order, whatever is in it
+	 */
+	protected static final double SHIPPING_PRICE = 5.0;
+	/**
+	 * Products in the cart with their quantities
+	 */
+	private List<Cart.Line> lines;
+	/**
+	 * Current session map
+	 */
+	private Map session;
+
+	/**
+	 * @return
+	 * @throws Exception
+	 * @see com.opensymphony.xwork2.ActionSupport#execute()
+	 */
+	@Override
+	public String execute() throws Exception
+	{
+		return SUCCESS;
+	}
+
+	/**
+	 * Cart of the current session
+	 * @return the cart
+	 */
+	public Cart getCart()
+	{
+		return Cart.of(session);
+	}
+
+	/**
+	 * Products in the cart with their quantities. Products deleted since they were added are
+	 *   taken out of the cart.
+	 * @return the lines
+	 */
+	public List<Cart.Line> getLines()
+	{
+		if (lines == null)
+		{
+			lines = new ArrayList<Cart.Line>();
+
+			for (Map.Entry<Integer, Integer> line : getCart().getQuantities().entrySet())
+			{
+				Product product = Database.getInstance().getProduct(line.getKey());
+
+				if (product == null)
+				{
+					getCart().remove(line.getKey());
+				}
+				else
+				{
+					lines.add(new Cart.Line(product, line.getValue()));
+				}
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Price of everything in the cart, without shipping
+	 * @return the subtotal
+	 */
+	public double getSubtotal()
+	{
+		double subtotal = 0;
+
+		for (Cart.Line line : getLines())
+		{
+			subtotal += line.getTotal();
+		}
+
+		return subtotal;
+	}
+
+	/**
+	 * Shipping price of an order
+	 * @return the shippingPrice
+	 */
+	public double getShippingPrice()
+	{
+		return SHIPPING_PRICE;
+	}
+
+	/**
+	 * Price of everything in the cart, with shipping
+	 * @return the total
+	 */
+	public double getTotal()
+	{
+		return getSubtotal() + SHIPPING_PRICE;
+	}
+
+	/**
+	 * Current session map
+	 * @return the session
+	 */
+	protected Map getSession()
+	{
+		return session;
+	}
+
+	/**
+	 * Current session map
+	 * @param session
+	 */
+	public void setSession(Map session)
+	{
+		this.session = session;
+	}
+}
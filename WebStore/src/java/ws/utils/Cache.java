@@ -0,0 +1,744 @@
+package ws.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory cache with a per-entry time to live. Reads don't block; writes and evictions
+ *   are serialized by a lock.
+ *
+ * When the cache is full, the least recently used entry is the eviction candidate, but a new entry
+ *   only replaces it if the new key has been requested more often recently (TinyLFU admission).
+ *   This keeps a burst of one-off lookups from flushing out the popular entries.
+ *
+ * Misses loaded through get() are coalesced: while one caller loads a key, other callers asking
+ *   for the same key wait for its result instead of running the same query again.
+ *
+ * Keys a loader found no value for are remembered too, for a shorter time, so lookups of missing
+ *   rows don't query the database every time.
+ *
+ * Sizes and time to live are read from the cache.&lt;name&gt;.maximumSize,
+ *   cache.&lt;name&gt;.expireAfterWriteMs and cache.&lt;name&gt;.negativeExpireAfterWriteMs settings.
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ * @author Team 10
+ */
+public class Cache<K, V>
+{
+	/**
+	 * Name of the cache, for settings and monitoring
+	 */
+	private final String name;
+	/**
+	 * Most entries kept at once
+	 */
+	private final int maximumSize;
+	/**
+	 * Milliseconds an entry lives after it is written, unless put with its own time to live
+	 */
+	private final long expireAfterWriteMs;
+	/**
+	 * Milliseconds a key the loader found no value for is remembered. 0 disables negative caching
+	 */
+	private final long negativeExpireAfterWriteMs;
+	/**
+	 * Flag set when new entries have to win the TinyLFU admission to replace another
+	 */
+	private final boolean admission;
+	/**
+	 * Cached entries
+	 */
+	private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+	/**
+	 * Keys in access order, least recently used first. Guarded by lock
+	 */
+	private final LinkedHashMap<K, Boolean> accessOrder = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+	/**
+	 * Estimates how often each key has been requested recently. Guarded by lock
+	 */
+	private final FrequencySketch sketch;
+	/**
+	 * Loads in progress, by key. A load is only cached if it is still registered here when it
+	 *   finishes, so invalidating a key also discards any load of it already running.
+	 */
+	private final ConcurrentHashMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+	/**
+	 * Serializes changes to the entries and the eviction policy
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	// Statistics for monitoring
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong negativeHitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong expirationCount = new AtomicLong();
+	private final AtomicLong rejectionCount = new AtomicLong();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong coalescedLoadCount = new AtomicLong();
+
+	/**
+	 * Cached value and when it expires
+	 */
+	private static class Entry<V>
+	{
+		/**
+		 * Cached value. Null for a key known to have no value
+		 */
+		final V value;
+		/**
+		 * Milliseconds since epoch the entry expires at
+		 */
+		final long expiresAt;
+
+		/**
+		 * @param value - Value to cache
+		 * @param expiresAt - Milliseconds since epoch the entry expires at
+		 */
+		Entry(V value, long expiresAt)
+		{
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * @param now - Current time in milliseconds since epoch
+		 * @return true if the entry has expired
+		 */
+		boolean isExpired(long now)
+		{
+			return now >= expiresAt;
+		}
+	}
+
+	/**
+	 * Count-min sketch of 4 bit counters. Counts are approximate and can only be overestimated.
+	 *   All counters are halved periodically so the estimates follow recent popularity.
+	 */
+	private static class FrequencySketch
+	{
+		/**
+		 * Largest value a counter can reach
+		 */
+		private static final int MAX_COUNT = 15;
+		/**
+		 * Multipliers giving each row of the sketch its own hash
+		 */
+		private static final int[] SEEDS = { 0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F };
+		/**
+		 * One row of counters per seed, stored row after row
+		 */
+		private final byte[] counters;
+		/**
+		 * Counters per row minus one. Rows are a power of two wide
+		 */
+		private final int mask;
+		/**
+		 * Increments after which all counters are halved
+		 */
+		private final int sampleSize;
+		/**
+		 * Increments since the counters were last halved
+		 */
+		private int additions;
+
+		/**
+		 * @param maximumSize - Maximum size of the cache the sketch is for
+		 */
+		FrequencySketch(int maximumSize)
+		{
+			int width = 16;
+			while (width < maximumSize)
+			{
+				width <<= 1;
+			}
+
+			counters = new byte[width * SEEDS.length];
+			mask = width - 1;
+			sampleSize = 10 * Math.max(maximumSize, 16);
+		}
+
+		/**
+		 * @param hash - Hash of the key
+		 * @param row - Row of the sketch
+		 * @return Position of the key's counter in the row
+		 */
+		private int indexOf(int hash, int row)
+		{
+			int spread = hash * SEEDS[row];
+			spread ^= spread >>> 16;
+			return row * (mask + 1) + (spread & mask);
+		}
+
+		/**
+		 * Records a request for a key
+		 * @param key - Key requested
+		 */
+		void increment(Object key)
+		{
+			int hash = key.hashCode();
+
+			for (int row = 0; row < SEEDS.length; row++)
+			{
+				int index = indexOf(hash, row);
+				if (counters[index] < MAX_COUNT)
+				{
+					counters[index]++;
+				}
+			}
+
+			if (++additions >= sampleSize)
+			{
+				for (int i = 0; i < counters.length; i++)
+				{
+					counters[i] >>= 1;
+				}
+				additions /= 2;
+			}
+		}
+
+		/**
+		 * @param key - Key to look up
+		 * @return Estimated number of recent requests for the key
+		 */
+		int frequency(Object key)
+		{
+			int hash = key.hashCode();
+			int frequency = MAX_COUNT;
+
+			for (int row = 0; row < SEEDS.length; row++)
+			{
+				frequency = Math.min(frequency, counters[indexOf(hash, row)]);
+			}
+
+			return frequency;
+		}
+	}
+
+	/**
+	 * Creates a cache, using the cache.&lt;name&gt;.* settings when present
+	 * @param name - Name of the cache, for settings and monitoring
+	 * @param defaultMaximumSize - Most entries kept at once, when not set
+	 * @param defaultExpireAfterWriteMs - Milliseconds an entry lives after it is written, when not set
+	 */
+	public Cache(String name, int defaultMaximumSize, long defaultExpireAfterWriteMs)
+	{
+		this(name, defaultMaximumSize, defaultExpireAfterWriteMs, true);
+	}
+
+	/**
+	 * Creates a cache, using the cache.&lt;name&gt;.* settings when present
+	 * @param name - Name of the cache, for settings and monitoring
+	 * @param defaultMaximumSize - Most entries kept at once, when not set
+	 * @param defaultExpireAfterWriteMs - Milliseconds an entry lives after it is written, when not set
+	 * @param admission - false to always let new entries replace the least recently used one. For
+	 *   keys written once and never requested before, such as one-time tokens, which would always
+	 *   lose the admission.
+	 */
+	public Cache(String name, int defaultMaximumSize, long defaultExpireAfterWriteMs, boolean admission)
+	{
+		this.name = name;
+		this.admission = admission;
+		this.maximumSize = Math.max(1, Settings.getInt("cache." + name + ".maximumSize", defaultMaximumSize));
+		this.expireAfterWriteMs = Settings.getLong("cache." + name + ".expireAfterWriteMs", defaultExpireAfterWriteMs);
+		this.negativeExpireAfterWriteMs = Math.min(expireAfterWriteMs,
+				Settings.getLong("cache." + name + ".negativeExpireAfterWriteMs", 30000));
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	/**
+	 * Looks up a cached value
+	 * @param key - Key of the value
+	 * @return Cached value. Null when the key isn't cached, is known to have no value or its entry
+	 *   has expired.
+	 */
+	public V getIfPresent(K key)
+	{
+		Entry<V> entry = lookup(key);
+
+		if (entry == null)
+		{
+			return null;
+		}
+
+		return entry.value;
+	}
+
+	/**
+	 * Finds the live entry of a key and records the lookup
+	 * @param key - Key to look up
+	 * @return Entry of the key, its value is null if the key is known to have no value. Null when
+	 *   the key isn't cached or its entry has expired.
+	 */
+	private Entry<V> lookup(K key)
+	{
+		Entry<V> entry = entries.get(key);
+		recordAccess(key, entry != null);
+
+		if (entry == null)
+		{
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		if (entry.isExpired(System.currentTimeMillis()))
+		{
+			if (remove(key, entry))
+			{
+				expirationCount.incrementAndGet();
+			}
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		hitCount.incrementAndGet();
+		if (entry.value == null)
+		{
+			negativeHitCount.incrementAndGet();
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Looks up a cached value without counting it as a request, for updating entries in place
+	 * @param key - Key of the value
+	 * @return Cached value. Null when the key isn't cached or its entry has expired.
+	 */
+	public V peek(K key)
+	{
+		Entry<V> entry = entries.get(key);
+
+		if (entry == null || entry.isExpired(System.currentTimeMillis()))
+		{
+			return null;
+		}
+
+		return entry.value;
+	}
+
+	/**
+	 * Replaces a cached value, only if it is still the one the caller read. The entry keeps its
+	 *   original expiry time.
+	 * @param key - Key of the value
+	 * @param expected - Value the caller read with peek
+	 * @param value - New value
+	 * @return true if the value was replaced, false if the entry changed or is gone
+	 */
+	public boolean replace(K key, V expected, V value)
+	{
+		lock.lock();
+		try
+		{
+			Entry<V> entry = entries.get(key);
+
+			if (entry == null || expected == null || entry.value != expected)
+			{
+				return false;
+			}
+
+			entries.put(key, new Entry<V>(value, entry.expiresAt));
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Looks up a cached value, loading it on a miss. Only one load per key runs at a time; callers
+	 *   missing on a key that is already being loaded wait for that load instead of starting their own.
+	 * @param key - Key of the value
+	 * @param loader - Loads the value on a miss
+	 * @return Value of the key. Null when the loader found none, now or recently.
+	 */
+	public V get(final K key, final CacheLoader<K, V> loader)
+	{
+		Entry<V> entry = lookup(key);
+
+		if (entry != null)
+		{
+			return entry.value;
+		}
+
+		FutureTask<V> task = new FutureTask<V>(new Callable<V>()
+		{
+			public V call()
+			{
+				return loader.load(key);
+			}
+		});
+		FutureTask<V> running = loading.putIfAbsent(key, task);
+
+		if (running == null)
+		{
+			loadCount.incrementAndGet();
+			running = task;
+			task.run();
+			completeLoad(key, task);
+		}
+		else
+		{
+			coalescedLoadCount.incrementAndGet();
+		}
+
+		return await(running);
+	}
+
+	/**
+	 * Caches the result of a finished load, unless the key was invalidated or written while it ran
+	 * @param key - Key loaded
+	 * @param task - Finished load
+	 */
+	private void completeLoad(K key, FutureTask<V> task)
+	{
+		lock.lock();
+		try
+		{
+			if (!loading.remove(key, task))
+			{
+				// Invalidated or replaced while loading, the result may be stale
+				return;
+			}
+
+			V value = await(task);
+			if (value != null)
+			{
+				store(key, value, expireAfterWriteMs);
+			}
+			else if (negativeExpireAfterWriteMs > 0)
+			{
+				// Remember the key has no value, but not for long in case it's added
+				store(key, null, negativeExpireAfterWriteMs);
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			// Reported to every caller waiting on the load, nothing to cache
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for a load to finish
+	 * @param task - Load to wait for
+	 * @return Loaded value. Null if the wait was interrupted.
+	 */
+	private V await(FutureTask<V> task)
+	{
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ex.getCause();
+			}
+
+			throw new IllegalStateException("Failed to load cache " + name, ex.getCause());
+		}
+	}
+
+	/**
+	 * Caches a value for the cache's time to live
+	 * @param key - Key of the value
+	 * @param value - Value to cache, not null
+	 */
+	public void put(K key, V value)
+	{
+		put(key, value, expireAfterWriteMs);
+	}
+
+	/**
+	 * Caches a value with its own time to live
+	 * @param key - Key of the value
+	 * @param value - Value to cache, not null
+	 * @param timeToLiveMs - Milliseconds the entry lives
+	 */
+	public void put(K key, V value, long timeToLiveMs)
+	{
+		lock.lock();
+		try
+		{
+			// A load already running may return an older value, don't let it overwrite this one
+			loading.remove(key);
+			store(key, value, timeToLiveMs);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds an entry, evicting another if the cache is over its maximum size. Must hold lock.
+	 * @param key - Key of the value
+	 * @param value - Value to cache, null to remember the key has no value
+	 * @param timeToLiveMs - Milliseconds the entry lives
+	 */
+	private void store(K key, V value, long timeToLiveMs)
+	{
+		Entry<V> entry = new Entry<V>(value, System.currentTimeMillis() + timeToLiveMs);
+
+		sketch.increment(key);
+		accessOrder.put(key, Boolean.TRUE);
+
+		if (entries.put(key, entry) == null && entries.size() > maximumSize)
+		{
+			evict(key);
+		}
+	}
+
+	/**
+	 * Removes a key from the cache. A load of the key already running is not cached.
+	 * @param key - Key to remove
+	 */
+	public void invalidate(K key)
+	{
+		lock.lock();
+		try
+		{
+			loading.remove(key);
+			entries.remove(key);
+			accessOrder.remove(key);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every entry from the cache
+	 */
+	public void invalidateAll()
+	{
+		lock.lock();
+		try
+		{
+			loading.clear();
+			entries.clear();
+			accessOrder.clear();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes an entry, unless it has already been replaced
+	 * @param key - Key of the entry
+	 * @param entry - Entry to remove
+	 * @return true if the entry was removed
+	 */
+	private boolean remove(K key, Entry<V> entry)
+	{
+		lock.lock();
+		try
+		{
+			if (!entries.remove(key, entry))
+			{
+				return false;
+			}
+
+			accessOrder.remove(key);
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records a lookup in the eviction policy. Skipped when another thread holds the lock, so reads
+	 *   never wait; the policy only needs an approximate picture of what is popular.
+	 * @param key - Key looked up
+	 * @param present - true if the key is cached
+	 */
+	private void recordAccess(K key, boolean present)
+	{
+		if (!lock.tryLock())
+		{
+			return;
+		}
+
+		try
+		{
+			sketch.increment(key);
+			if (present)
+			{
+				accessOrder.get(key);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Brings the cache back to its maximum size after a new entry was added. The least recently used
+	 *   entry is evicted if the new entry is more popular, otherwise the new entry is dropped.
+	 *   Expired entries are always evicted first. Must hold lock.
+	 * @param candidate - Key just added
+	 */
+	private void evict(K candidate)
+	{
+		// The candidate was just used, so it is never the least recently used key
+		Iterator<K> keys = accessOrder.keySet().iterator();
+		K victim = keys.next();
+
+		Entry<V> victimEntry = entries.get(victim);
+		if (victimEntry != null && victimEntry.isExpired(System.currentTimeMillis()))
+		{
+			entries.remove(victim);
+			keys.remove();
+			expirationCount.incrementAndGet();
+			return;
+		}
+
+		if (!admission || sketch.frequency(candidate) > sketch.frequency(victim))
+		{
+			entries.remove(victim);
+			keys.remove();
+			evictionCount.incrementAndGet();
+		}
+		else
+		{
+			entries.remove(candidate);
+			accessOrder.remove(candidate);
+			rejectionCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return Name of the cache
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return Number of entries in the cache, including expired entries not yet removed
+	 */
+	public int getSize()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return Most entries kept at once
+	 */
+	public int getMaximumSize()
+	{
+		return maximumSize;
+	}
+
+	/**
+	 * @return Milliseconds an entry lives after it is written
+	 */
+	public long getExpireAfterWriteMs()
+	{
+		return expireAfterWriteMs;
+	}
+
+	/**
+	 * @return Number of lookups answered from the cache, including remembered missing keys
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	/**
+	 * @return Number of lookups answered by a remembered missing key
+	 */
+	public long getNegativeHitCount()
+	{
+		return negativeHitCount.get();
+	}
+
+	/**
+	 * @return Number of lookups that didn't find a value
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+
+	/**
+	 * @return Fraction of lookups that found a value
+	 */
+	public double getHitRate()
+	{
+		long hits = hitCount.get();
+		long requests = hits + missCount.get();
+
+		if (requests == 0)
+		{
+			return 0;
+		}
+
+		return hits / (double) requests;
+	}
+
+	/**
+	 * @return Number of entries evicted to make room for more popular ones
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return Number of entries removed because they expired
+	 */
+	public long getExpirationCount()
+	{
+		return expirationCount.get();
+	}
+
+	/**
+	 * @return Number of misses that ran the loader
+	 */
+	public long getLoadCount()
+	{
+		return loadCount.get();
+	}
+
+	/**
+	 * @return Number of misses that waited for a load already running instead of loading again
+	 */
+	public long getCoalescedLoadCount()
+	{
+		return coalescedLoadCount.get();
+	}
+
+	/**
+	 * @return Number of new entries dropped because they were less popular than the entry they
+	 *   would have replaced
+	 */
+	public long getRejectionCount()
+	{
+		return rejectionCount.get();
+	}
+}
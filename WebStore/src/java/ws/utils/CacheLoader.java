@@ -0,0 +1,17 @@
+package ws.utils;
+
+/**
+ * Computes values for a Cache on a miss. See Cache.get
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ * @author Team 10
+ */
+public interface CacheLoader<K, V>
+{
+	/**
+	 * Loads the value of a key
+	 * @param key - Key to load
+	 * @return Value of the key. Null when there is none, which is not cached.
+	 */
+	V load(K key);
+}
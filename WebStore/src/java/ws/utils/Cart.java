@@ -0,0 +1,254 @@
+package ws.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shopping cart of a user, held in their session until it is checked out. Holds the quantity
+ *   wanted of each product, in the order the products were added. Nothing is reserved while a
+ *   product is in the cart, stock is only checked when the cart is checked out, see
+ *   Database.checkoutOrder.
+ *
+ * The number of products in a cart and the quantity of each are limited by the cart.maxLines and
+ *   cart.maxQuantity settings.
+ * @author Team 10
+ */
+public class Cart
+{
+	/**
+	 * Most products in one cart
+	 */
+	public static final int MAX_LINES = Math.max(1, Settings.getInt("cart.maxLines", 50));
+	/**
+	 * Most units of one product in a cart
+	 */
+	public static final int MAX_QUANTITY = Math.max(1, Settings.getInt("cart.maxQuantity", 99));
+	/**
+	 * Key of the cart in the session map
+	 */
+	private static final String SESSION_KEY = "cart";
+	/**
+	 * Quantity of each product, by product ID. Guarded by this
+	 */
+	private final LinkedHashMap<Integer, Integer> quantities = new LinkedHashMap<Integer, Integer>();
+
+	/**
+	 * A product in the cart with the quantity wanted, for showing the cart
+	 */
+	public static class Line
+	{
+		/**
+		 * Product in the cart
+		 */
+		private final Product product;
+		/**
+		 * Units wanted
+		 */
+		private final int quantity;
+
+		/**
+		 * @param product - Product in the cart
+		 * @param quantity - Units wanted
+		 */
+		public Line(Product product, int quantity)
+		{
+			this.product = product;
+			this.quantity = quantity;
+		}
+
+		/**
+		 * Product in the cart
+		 * @return the product
+		 */
+		public Product getProduct()
+		{
+			return product;
+		}
+
+		/**
+		 * Units wanted
+		 * @return the quantity
+		 */
+		public int getQuantity()
+		{
+			return quantity;
+		}
+
+		/**
+		 * Price of the units at the product's current price
+		 * @return the total
+		 */
+		public double getTotal()
+		{
+			return product.getPrice() * quantity;
+		}
+	}
+
+	/**
+	 * Finds the cart of a session, creating it on first use
+	 * @param session - Current session map
+	 * @return Cart of the session
+	 */
+	public static Cart of(Map session)
+	{
+		Cart cart = (Cart) session.get(SESSION_KEY);
+
+		if (cart == null)
+		{
+			cart = new Cart();
+			session.put(SESSION_KEY, cart);
+		}
+
+		return cart;
+	}
+
+	/**
+	 * Adds units of a product, on top of any already in the cart. The quantity is capped at
+	 *   MAX_QUANTITY.
+	 * @param productId - ID of the product
+	 * @param quantity - Units to add
+	 * @return true if added, false if the quantity isn't positive or the cart is full
+	 */
+	public synchronized boolean add(int productId, int quantity)
+	{
+		if (quantity <= 0)
+		{
+			return false;
+		}
+
+		Integer current = quantities.get(productId);
+
+		if (current == null)
+		{
+			if (quantities.size() >= MAX_LINES)
+			{
+				return false;
+			}
+
+			current = 0;
+		}
+
+		quantities.put(productId, (int) Math.min((long) current + quantity, MAX_QUANTITY));
+		return true;
+	}
+
+	/**
+	 * Changes the quantity of a product already in the cart, capped at MAX_QUANTITY
+	 * @param productId - ID of the product
+	 * @param quantity - Units wanted, 0 or less removes the product
+	 * @return true if changed, false if the product isn't in the cart
+	 */
+	public synchronized boolean set(int productId, int quantity)
+	{
+		if (!quantities.containsKey(productId))
+		{
+			return false;
+		}
+
+		if (quantity <= 0)
+		{
+			quantities.remove(productId);
+		}
+		else
+		{
+			quantities.put(productId, Math.min(quantity, MAX_QUANTITY));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes a product from the cart
+	 * @param productId - ID of the product
+	 */
+	public synchronized void remove(int productId)
+	{
+		quantities.remove(productId);
+	}
+
+	/**
+	 * Empties the cart
+	 */
+	public synchronized void clear()
+	{
+		quantities.clear();
+	}
+
+	/**
+	 * Empties the cart for a checkout, so a second checkout of the same cart, such as from a
+	 *   repeated submission, finds nothing to buy
+	 * @return Quantities the cart held, by product ID
+	 */
+	public synchronized Map<Integer, Integer> take()
+	{
+		Map<Integer, Integer> taken = getQuantities();
+		quantities.clear();
+		return taken;
+	}
+
+	/**
+	 * Puts back quantities taken for a checkout that didn't go through. Products added since are
+	 *   kept, and the quantities are added to theirs.
+	 * @param taken - Quantities from take
+	 */
+	public synchronized void putBack(Map<Integer, Integer> taken)
+	{
+		for (Map.Entry<Integer, Integer> line : taken.entrySet())
+		{
+			add(line.getKey(), line.getValue());
+		}
+	}
+
+	/**
+	 * @param productId - ID of the product
+	 * @return Units of the product in the cart, 0 when not in it
+	 */
+	public synchronized int get(int productId)
+	{
+		Integer quantity = quantities.get(productId);
+
+		return (quantity == null) ? 0 : quantity;
+	}
+
+	/**
+	 * Quantity of each product, in the order the products were added
+	 * @return Copy of the quantities, by product ID
+	 */
+	public synchronized Map<Integer, Integer> getQuantities()
+	{
+		return new LinkedHashMap<Integer, Integer>(quantities);
+	}
+
+	/**
+	 * Number of products in the cart
+	 * @return the line count
+	 */
+	public synchronized int getLineCount()
+	{
+		return quantities.size();
+	}
+
+	/**
+	 * Number of units of every product in the cart
+	 * @return the item count
+	 */
+	public synchronized int getItemCount()
+	{
+		int count = 0;
+
+		for (Integer quantity : quantities.values())
+		{
+			count += quantity;
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return true if the cart holds nothing
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return quantities.isEmpty();
+	}
+}
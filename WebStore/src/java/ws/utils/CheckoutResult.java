@@ -0,0 +1,120 @@
+package ws.utils;
+
+/**
+ * Outcome of buying a product, or of checking out an order of several products
+ * @author Team 10
+ */
+public class CheckoutResult
+{
+	/**
+	 * Possible outcomes of a checkout
+	 */
+	public enum Status
+	{
+		/**
+		 * Purchase recorded and stock decreased
+		 */
+		SUCCESS,
+		/**
+		 * Product had no stock left, nothing was recorded
+		 */
+		SOLD_OUT,
+		/**
+		 * Purchase could not be recorded, nothing was changed
+		 */
+		FAILURE
+	}
+	/**
+	 * Outcome of the checkout
+	 */
+	private final Status status;
+	/**
+	 * ID of the purchase created on success, or of the order for an order checkout
+	 */
+	private final int purchaseId;
+	/**
+	 * ID of the product that ran out when sold out, 0 when not known
+	 */
+	private final int soldOutProductId;
+
+	/**
+	 * @param status - Outcome of the checkout
+	 * @param purchaseId - ID of the purchase or order created on success
+	 * @param soldOutProductId - ID of the product that ran out
+	 */
+	private CheckoutResult(Status status, int purchaseId, int soldOutProductId)
+	{
+		this.status = status;
+		this.purchaseId = purchaseId;
+		this.soldOutProductId = soldOutProductId;
+	}
+
+	/**
+	 * @param purchaseId - ID of the purchase or order created
+	 * @return Result of a successful checkout
+	 */
+	public static CheckoutResult success(int purchaseId)
+	{
+		return new CheckoutResult(Status.SUCCESS, purchaseId, 0);
+	}
+
+	/**
+	 * @return Result of a checkout of a product without stock
+	 */
+	public static CheckoutResult soldOut()
+	{
+		return new CheckoutResult(Status.SOLD_OUT, 0, 0);
+	}
+
+	/**
+	 * @param productId - ID of the product without enough stock
+	 * @return Result of an order checkout one of whose products ran out
+	 */
+	public static CheckoutResult soldOut(int productId)
+	{
+		return new CheckoutResult(Status.SOLD_OUT, 0, productId);
+	}
+
+	/**
+	 * @return Result of a checkout that failed
+	 */
+	public static CheckoutResult failure()
+	{
+		return new CheckoutResult(Status.FAILURE, 0, 0);
+	}
+
+	/**
+	 * Outcome of the checkout
+	 * @return the status
+	 */
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return true if the purchase was recorded
+	 */
+	public boolean isSuccess()
+	{
+		return status == Status.SUCCESS;
+	}
+
+	/**
+	 * ID of the purchase created on success, or of the order for an order checkout
+	 * @return the purchaseId
+	 */
+	public int getPurchaseId()
+	{
+		return purchaseId;
+	}
+
+	/**
+	 * ID of the product that ran out when sold out
+	 * @return the soldOutProductId, 0 when not known
+	 */
+	public int getSoldOutProductId()
+	{
+		return soldOutProductId;
+	}
+}
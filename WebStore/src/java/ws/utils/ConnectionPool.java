@@ -0,0 +1,617 @@
+package ws.utils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of database connections. Connections are validated before they are handed out,
+ *   idle connections above the minimum size are closed after a while and connections held for
+ *   too long are reported as possible leaks.
+ * @author Team 10
+ */
+public class ConnectionPool
+{
+	/**
+	 * Connection string of the database
+	 */
+	private final String url;
+	/**
+	 * Name of the user to connect to the database as
+	 */
+	private final String user;
+	/**
+	 * Password of the user to connect to the database as
+	 */
+	private final String password;
+	/**
+	 * Number of connections kept open even when idle
+	 */
+	private final int minSize;
+	/**
+	 * Maximum number of open connections
+	 */
+	private final int maxSize;
+	/**
+	 * Milliseconds a borrower waits for a free connection before failing
+	 */
+	private final long maxWaitMs;
+	/**
+	 * Milliseconds an idle connection above minSize is kept open
+	 */
+	private final long idleTimeoutMs;
+	/**
+	 * Query used to validate connections before they are handed out
+	 */
+	private final String validationQuery;
+	/**
+	 * Connections returned more recently than this are handed out without validation
+	 */
+	private final long validationIntervalMs;
+	/**
+	 * Milliseconds a connection may be held before it is reported as a leak. 0 disables
+	 */
+	private final long leakThresholdMs;
+	/**
+	 * Number of prepared statements cached on each connection
+	 */
+	private final int statementCacheSize;
+	/**
+	 * Idle connections, most recently returned first. Guarded by this
+	 */
+	private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+	/**
+	 * Connections currently borrowed. Guarded by this
+	 */
+	private final Set<PooledConnection> borrowed = new HashSet<PooledConnection>();
+	/**
+	 * Number of open connections plus connections being opened. Guarded by this
+	 */
+	private int totalConnections = 0;
+	/**
+	 * Flag set once the pool has been closed. Guarded by this
+	 */
+	private boolean closed = false;
+	/**
+	 * Runs idle eviction and leak detection
+	 */
+	private final Timer maintenanceTimer;
+	// Statistics for monitoring
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong waitTimeNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong destroyedCount = new AtomicLong();
+	private final AtomicLong validationFailureCount = new AtomicLong();
+	private final AtomicLong leakCount = new AtomicLong();
+
+	/**
+	 * Creates a pool using the db.* and pool.* settings. Connections are opened in the background
+	 *   so a missing database doesn't stop the application from starting.
+	 */
+	public ConnectionPool()
+	{
+		url = Settings.get("db.url", "jdbc:mysql://localhost:3306/webstore");
+		user = Settings.get("db.user", "4710");
+		password = Settings.get("db.password", "asdf");
+		maxSize = Math.max(1, Settings.getInt("pool.maxSize", 20));
+		minSize = Math.min(maxSize, Math.max(0, Settings.getInt("pool.minSize", 2)));
+		maxWaitMs = Settings.getLong("pool.maxWaitMs", 5000);
+		idleTimeoutMs = Settings.getLong("pool.idleTimeoutMs", 300000);
+		validationQuery = Settings.get("pool.validationQuery", "SELECT 1");
+		validationIntervalMs = Settings.getLong("pool.validationIntervalMs", 5000);
+		leakThresholdMs = Settings.getLong("pool.leakThresholdMs", 30000);
+		statementCacheSize = Math.max(1, Settings.getInt("pool.statementCacheSize", 32));
+
+		String driver = Settings.get("db.driver", "com.mysql.jdbc.Driver");
+		try
+		{
+			Class.forName(driver);
+		}
+		catch (ClassNotFoundException ex)
+		{
+			Logger.getLogger(ConnectionPool.class.getName()).log(Level.SEVERE, "Unable to load database driver " + driver, ex);
+		}
+
+		long maintenanceIntervalMs = Math.max(1000, Settings.getLong("pool.maintenanceIntervalMs", 30000));
+		maintenanceTimer = new Timer("ConnectionPool maintenance", true);
+		maintenanceTimer.schedule(new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				maintain();
+			}
+		}, 0, maintenanceIntervalMs);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if none are idle and the pool isn't
+	 *   full. Waits up to maxWaitMs for a connection to be released otherwise.
+	 * @return Connection that must be returned with release()
+	 * @throws SQLException when no connection could be obtained
+	 */
+	public PooledConnection borrow() throws SQLException
+	{
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+		boolean waited = false;
+
+		while (true)
+		{
+			PooledConnection candidate = null;
+
+			synchronized (this)
+			{
+				while (candidate == null)
+				{
+					if (closed)
+					{
+						throw new SQLException("Connection pool is closed");
+					}
+
+					if (!idle.isEmpty())
+					{
+						candidate = idle.removeFirst();
+						break;
+					}
+
+					if (totalConnections < maxSize)
+					{
+						// Reserve the slot now, open the connection outside of the lock
+						totalConnections++;
+						break;
+					}
+
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+					{
+						timeoutCount.incrementAndGet();
+						throw new SQLException("Timed out after " + maxWaitMs + "ms waiting for a database connection");
+					}
+
+					waited = true;
+					try
+					{
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+					catch (InterruptedException ex)
+					{
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection");
+					}
+				}
+			}
+
+			if (candidate == null)
+			{
+				try
+				{
+					candidate = open();
+				}
+				catch (SQLException ex)
+				{
+					synchronized (this)
+					{
+						totalConnections--;
+						notifyAll();
+					}
+					throw ex;
+				}
+			}
+			else if (!validate(candidate))
+			{
+				validationFailureCount.incrementAndGet();
+				destroy(candidate);
+				continue;
+			}
+
+			candidate.leased(leakThresholdMs > 0 ? new Throwable("Connection borrowed here") : null);
+
+			synchronized (this)
+			{
+				borrowed.add(candidate);
+			}
+
+			recordBorrow(System.nanoTime() - start, waited);
+			return candidate;
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool. Closed connections are discarded.
+	 * @param pooledConnection - Connection to return. May be null.
+	 */
+	public void release(PooledConnection pooledConnection)
+	{
+		if (pooledConnection == null)
+		{
+			return;
+		}
+
+		synchronized (this)
+		{
+			if (!borrowed.remove(pooledConnection))
+			{
+				// Already returned, and maybe borrowed again since, so it mustn't be reset
+				return;
+			}
+		}
+
+		boolean reusable = reset(pooledConnection);
+
+		synchronized (this)
+		{
+			if (reusable && !closed)
+			{
+				pooledConnection.returned();
+				idle.addFirst(pooledConnection);
+				notify();
+				return;
+			}
+		}
+
+		destroy(pooledConnection);
+	}
+
+	/**
+	 * Closes every idle connection and stops handing out new ones. Borrowed connections are closed
+	 *   as they are released.
+	 */
+	public void close()
+	{
+		List<PooledConnection> toClose;
+
+		synchronized (this)
+		{
+			closed = true;
+			toClose = new ArrayList<PooledConnection>(idle);
+			idle.clear();
+			notifyAll();
+		}
+
+		maintenanceTimer.cancel();
+
+		for (PooledConnection pooledConnection : toClose)
+		{
+			destroy(pooledConnection);
+		}
+	}
+
+	/**
+	 * Opens a new connection to the database
+	 * @return New pooled connection
+	 * @throws SQLException on failure
+	 */
+	private PooledConnection open() throws SQLException
+	{
+		Connection connection = DriverManager.getConnection(url, user, password);
+		createdCount.incrementAndGet();
+		return new PooledConnection(connection, this, statementCacheSize);
+	}
+
+	/**
+	 * Closes a connection and frees its slot in the pool
+	 * @param pooledConnection - Connection to close
+	 */
+	private void destroy(PooledConnection pooledConnection)
+	{
+		try
+		{
+			pooledConnection.getConnection().close();
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(ConnectionPool.class.getName()).log(Level.FINE, "Failed to close pooled connection", ex);
+		}
+
+		destroyedCount.incrementAndGet();
+
+		synchronized (this)
+		{
+			totalConnections--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Checks that an idle connection is still usable. Recently returned connections are trusted.
+	 * @param pooledConnection - Connection to check
+	 * @return true when the connection can be handed out
+	 */
+	private boolean validate(PooledConnection pooledConnection)
+	{
+		if (System.currentTimeMillis() - pooledConnection.getLastReturned() < validationIntervalMs)
+		{
+			return true;
+		}
+
+		Statement statement = null;
+
+		try
+		{
+			statement = pooledConnection.getConnection().createStatement();
+			statement.execute(validationQuery);
+			return true;
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(ConnectionPool.class.getName()).log(Level.FINE, "Pooled connection failed validation", ex);
+			return false;
+		}
+		finally
+		{
+			if (statement != null)
+			{
+				try
+				{
+					statement.close();
+				}
+				catch (SQLException ex)
+				{
+					Logger.getLogger(ConnectionPool.class.getName()).log(Level.FINE, "Failed to close validation statement", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Puts a returned connection back into its default state
+	 * @param pooledConnection - Connection being returned
+	 * @return false when the connection is closed or couldn't be reset
+	 */
+	private boolean reset(PooledConnection pooledConnection)
+	{
+		Connection connection = pooledConnection.getConnection();
+		pooledConnection.closeUncachedStatements();
+
+		try
+		{
+			if (connection.isClosed())
+			{
+				return false;
+			}
+
+			// Never hand an open transaction to the next borrower
+			if (!connection.getAutoCommit())
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+
+			return true;
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(ConnectionPool.class.getName()).log(Level.WARNING, "Failed to reset pooled connection", ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Closes connections that have been idle too long, tops the pool back up to minSize and
+	 *   reports connections that look leaked
+	 */
+	private void maintain()
+	{
+		List<PooledConnection> expired = new ArrayList<PooledConnection>();
+		int missing;
+		long now = System.currentTimeMillis();
+
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+
+			// The oldest idle connections are at the end of the list
+			ListIterator<PooledConnection> oldestFirst = idle.listIterator(idle.size());
+			while (oldestFirst.hasPrevious() && totalConnections - expired.size() > minSize)
+			{
+				PooledConnection pooledConnection = oldestFirst.previous();
+
+				if (now - pooledConnection.getLastReturned() < idleTimeoutMs)
+				{
+					break;
+				}
+
+				oldestFirst.remove();
+				expired.add(pooledConnection);
+			}
+
+			if (leakThresholdMs > 0)
+			{
+				for (PooledConnection pooledConnection : borrowed)
+				{
+					if (!pooledConnection.isLeakReported() && now - pooledConnection.getBorrowedAt() > leakThresholdMs)
+					{
+						pooledConnection.setLeakReported(true);
+						leakCount.incrementAndGet();
+						Logger.getLogger(ConnectionPool.class.getName()).log(Level.WARNING,
+								"Connection held for over " + leakThresholdMs + "ms, possible leak", pooledConnection.getBorrowTrace());
+					}
+				}
+			}
+
+			missing = minSize - (totalConnections - expired.size());
+			if (missing > 0)
+			{
+				totalConnections += missing;
+			}
+		}
+
+		for (PooledConnection pooledConnection : expired)
+		{
+			destroy(pooledConnection);
+		}
+
+		for (int i = 0; i < missing; i++)
+		{
+			try
+			{
+				PooledConnection pooledConnection = open();
+
+				synchronized (this)
+				{
+					idle.addLast(pooledConnection);
+					notify();
+				}
+			}
+			catch (SQLException ex)
+			{
+				Logger.getLogger(ConnectionPool.class.getName()).log(Level.WARNING, "Unable to open idle connection", ex);
+
+				synchronized (this)
+				{
+					totalConnections -= missing - i;
+					// Borrowers waiting for capacity can open the connections themselves
+					notifyAll();
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Updates the borrow statistics
+	 * @param waitNanos - Nanoseconds spent obtaining the connection
+	 * @param waited - true if the borrower had to wait for a connection to be released
+	 */
+	private void recordBorrow(long waitNanos, boolean waited)
+	{
+		borrowCount.incrementAndGet();
+
+		if (!waited)
+		{
+			return;
+		}
+
+		waitCount.incrementAndGet();
+		waitTimeNanos.addAndGet(waitNanos);
+
+		long currentMax = maxWaitNanos.get();
+		while (waitNanos > currentMax && !maxWaitNanos.compareAndSet(currentMax, waitNanos))
+		{
+			currentMax = maxWaitNanos.get();
+		}
+	}
+
+	/**
+	 * @return Number of connections currently borrowed
+	 */
+	public synchronized int getActiveCount()
+	{
+		return borrowed.size();
+	}
+
+	/**
+	 * @return Number of idle connections
+	 */
+	public synchronized int getIdleCount()
+	{
+		return idle.size();
+	}
+
+	/**
+	 * @return Maximum number of open connections
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * @return Number of connections handed out since startup
+	 */
+	public long getBorrowCount()
+	{
+		return borrowCount.get();
+	}
+
+	/**
+	 * @return Number of borrows that had to wait for a connection to be released
+	 */
+	public long getWaitCount()
+	{
+		return waitCount.get();
+	}
+
+	/**
+	 * @return Average milliseconds waited by borrows that had to wait
+	 */
+	public double getAverageWaitMs()
+	{
+		long waits = waitCount.get();
+
+		if (waits == 0)
+		{
+			return 0;
+		}
+
+		return waitTimeNanos.get() / (double) waits / 1000000.0;
+	}
+
+	/**
+	 * @return Longest time in milliseconds any borrower waited for a connection
+	 */
+	public double getMaxWaitMs()
+	{
+		return maxWaitNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return Number of borrows that timed out
+	 */
+	public long getTimeoutCount()
+	{
+		return timeoutCount.get();
+	}
+
+	/**
+	 * @return Number of connections opened since startup
+	 */
+	public long getCreatedCount()
+	{
+		return createdCount.get();
+	}
+
+	/**
+	 * @return Number of connections closed since startup
+	 */
+	public long getDestroyedCount()
+	{
+		return destroyedCount.get();
+	}
+
+	/**
+	 * @return Number of idle connections that failed validation
+	 */
+	public long getValidationFailureCount()
+	{
+		return validationFailureCount.get();
+	}
+
+	/**
+	 * @return Number of connections reported as possible leaks
+	 */
+	public long getLeakCount()
+	{
+		return leakCount.get();
+	}
+}
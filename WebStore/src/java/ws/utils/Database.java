@@ -1,12 +1,25 @@
 package ws.utils;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Vector;
-import java.util.concurrent.ConcurrentHashMap;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.xwork.StringUtils;
@@ -18,956 +31,4021 @@ import org.apache.commons.lang.xwork.StringUtils;
 public class Database
 {
 	/**
-	 * Connection string of the database
+	 * Pool of open connections to the database
 	 */
-	private static final String connectionString = "jdbc:mysql://localhost:3306/webstore";
+	private final ConnectionPool pool = new ConnectionPool();
 	/**
-	 * Name of the user to connect to the database as
+	 * Selects products along with their manufacturer's name, so listings don't need a query per
+	 *   product. Review counts and ratings are stored on the product. Read with RowMappers.PRODUCT_LISTING
 	 */
-	private static final String connectionName = "4710";
+	private static final String PRODUCT_LISTING_QUERY = "SELECT p.*, m.`CompanyName` AS `ManufacturerName` "
+			+ "FROM `product` p "
+			+ "LEFT JOIN `manufacturer` m ON m.`mID` = p.`ManufacturerID` ";
 	/**
-	 * Password of the user to connect to the database as
+	 * Selects purchases along with the names of the product and user, so transaction pages don't
+	 *   need a query per purchase. Read with RowMappers.TRANSACTION_DETAILS
 	 */
-	private static final String connectionPass = "asdf";
-	// Temporary caches for frequently accessed data. Has to be cleared whenever data is edited or deleted!
-	private ConcurrentHashMap<Integer, String> productNameCache = new ConcurrentHashMap<Integer, String>();
-	private ConcurrentHashMap<Integer, Double> productRatingCache = new ConcurrentHashMap<Integer, Double>();
-	private ConcurrentHashMap<Integer, String> userNameCache = new ConcurrentHashMap<Integer, String>();
-	private ConcurrentHashMap<Integer, String> manufacturerNameCache = new ConcurrentHashMap<Integer, String>();
-	// Milliseconds since the last time we cleared the cache data
-	long lastCacheRefresh = 0;
-	// Milliseconds to pass before clearing cache
-	private static final long cacheRefreshFrequencyInMs = 60000 * 10;
+	private static final String TRANSACTION_DETAILS_QUERY = "SELECT pu.*, p.`Name` AS `ProductName`, u.`Username` AS `UserName` "
+			+ "FROM `purchases` pu "
+			+ "LEFT JOIN `product` p ON p.`ProductID` = pu.`ProductID` "
+			+ "LEFT JOIN `users` u ON u.`UserID` = pu.`UserID` ";
+	/**
+	 * Selects reviews along with the name of the reviewer, so review lists don't need a query per
+	 *   review. Read with RowMappers.REVIEW_WITH_USER
+	 */
+	private static final String REVIEW_WITH_USER_QUERY = "SELECT r.*, u.`Username` AS `UserName` "
+			+ "FROM `reviews` r "
+			+ "JOIN `users` u ON u.`UserID` = r.`UserID` ";
+	/**
+	 * Rows on a page when the request doesn't ask for a page size
+	 */
+	private static final int DEFAULT_PAGE_SIZE = Settings.getInt("page.defaultSize", 25);
+	/**
+	 * Most rows a request may ask for on one page
+	 */
+	private static final int MAX_PAGE_SIZE = Settings.getInt("page.maxSize", 100);
+	/**
+	 * Pages accounts by ID
+	 */
+	private static final Keyset<Account> USER_KEYSET = new Keyset<Account>(false, "`UserID`")
+	{
+		@Override
+		protected long[] key(Account item)
+		{
+			return new long[] { item.getId() };
+		}
+	};
+	/**
+	 * Pages products by ID. Column is qualified for PRODUCT_LISTING_QUERY
+	 */
+	private static final Keyset<Product> PRODUCT_KEYSET = new Keyset<Product>(false, "p.`ProductID`")
+	{
+		@Override
+		protected long[] key(Product item)
+		{
+			return new long[] { item.getId() };
+		}
+	};
+	/**
+	 * Pages manufacturers by ID
+	 */
+	private static final Keyset<Manufacturer> MANUFACTURER_KEYSET = new Keyset<Manufacturer>(false, "`mID`")
+	{
+		@Override
+		protected long[] key(Manufacturer item)
+		{
+			return new long[] { item.getId() };
+		}
+	};
+	/**
+	 * Pages reviews by ID
+	 */
+	private static final Keyset<Review> REVIEW_KEYSET = new Keyset<Review>(false, "`ReviewID`")
+	{
+		@Override
+		protected long[] key(Review item)
+		{
+			return new long[] { item.getId() };
+		}
+	};
+	/**
+	 * Pages the reviews of a product newest first. The index on the product ID also holds the
+	 *   review ID, so seeking within a product's reviews is an index range scan. Column is
+	 *   qualified for REVIEW_WITH_USER_QUERY
+	 */
+	private static final Keyset<Review> PRODUCT_REVIEW_KEYSET = new Keyset<Review>(true, "r.`ReviewID`")
+	{
+		@Override
+		protected long[] key(Review item)
+		{
+			return new long[] { item.getId() };
+		}
+	};
+	/**
+	 * Pages purchases newest first. The purchase ID breaks ties between purchases made in the same
+	 *   second. Columns are qualified for TRANSACTION_DETAILS_QUERY
+	 */
+	private static final Keyset<Transaction> TRANSACTION_KEYSET = new Keyset<Transaction>(true, "pu.`Date`", "pu.`PurchaseID`")
+	{
+		@Override
+		protected long[] key(Transaction item)
+		{
+			return new long[] { item.getDate().getTime(), item.getId() };
+		}
+
+		@Override
+		protected Object toParameter(int column, long value)
+		{
+			if (column == 0)
+			{
+				return new Timestamp(value);
+			}
+
+			return value;
+		}
+	};
+	// Caches of frequently accessed data. Entries have to be invalidated whenever data is edited or deleted!
+	// Cached products are shared, only copies may be handed out
+	private final Cache<Integer, Product> productCache = new Cache<Integer, Product>("product", 10000, 600000);
+	private final Cache<Integer, String> productNameCache = new Cache<Integer, String>("productName", 10000, 600000);
+	private final Cache<Integer, Double> productRatingCache = new Cache<Integer, Double>("productRating", 10000, 600000);
+	private final Cache<Integer, String> userNameCache = new Cache<Integer, String>("userName", 10000, 600000);
+	private final Cache<Integer, String> manufacturerNameCache = new Cache<Integer, String>("manufacturerName", 1000, 600000);
+	// Checkout tokens issued by the purchase confirmation page, see issueCheckoutToken
+	private final Cache<String, CheckoutToken> checkoutTokenCache = new Cache<String, CheckoutToken>("checkoutToken", 100000, 1800000, false);
+	/**
+	 * Generates checkout tokens
+	 */
+	private final SecureRandom tokenRandom = new SecureRandom();
+	// Loaders filling the caches on a miss. Concurrent misses on the same key share one query
+	private final CacheLoader<Integer, Product> productLoader = new CacheLoader<Integer, Product>()
+	{
+		public Product load(Integer id)
+		{
+			String query = "SELECT * FROM `product` WHERE `ProductId` = ? LIMIT 1";
+			return executeQuerySingleRow(query, RowMappers.PRODUCT, id);
+		}
+	};
+	private final CacheLoader<Integer, String> productNameLoader = new CacheLoader<Integer, String>()
+	{
+		public String load(Integer id)
+		{
+			String query = "SELECT `Name` FROM `product` WHERE `ProductId` = ? LIMIT 1";
+			return unsanatizeResult(executeQuerySingleResult(query, id));
+		}
+	};
+	private final CacheLoader<Integer, Double> productRatingLoader = new CacheLoader<Integer, Double>()
+	{
+		public Double load(Integer id)
+		{
+			// Totals are kept up to date by addReview and deleteReview, so no reviews need to be read
+			String query = "SELECT `RatingSum` / NULLIF( `ReviewCount`, 0 ) FROM `product` WHERE `ProductID` = ?";
+			Object average = executeQuerySingleResult(query, id);
+
+			// NULL when the product has no reviews
+			if (average == null)
+			{
+				return null;
+			}
+
+			return ((Number) average).doubleValue() / 10.0;
+		}
+	};
+	private final CacheLoader<Integer, String> userNameLoader = new CacheLoader<Integer, String>()
+	{
+		public String load(Integer id)
+		{
+			String query = "SELECT `username` FROM `users` WHERE `UserId` = ? LIMIT 1";
+			return unsanatizeResult(executeQuerySingleResult(query, id));
+		}
+	};
+	private final CacheLoader<Integer, String> manufacturerNameLoader = new CacheLoader<Integer, String>()
+	{
+		public String load(Integer id)
+		{
+			String query = "SELECT `CompanyName` FROM `manufacturer` WHERE `mId` = ? LIMIT 1";
+			return unsanatizeResult(executeQuerySingleResult(query, id));
+		}
+	};
+	// Filters of the keys that exist, so checks for keys that don't can skip the database. Keys
+	//   are added whenever rows are added, see loadExistenceFilters
+	private final ExistenceFilter userNameFilter = new ExistenceFilter("userName", 100000, 0.01);
+	private final ExistenceFilter reviewFilter = new ExistenceFilter("review", 1000000, 0.01);
+	// In-memory indexes over the product catalog, see loadCatalog
+	private final SearchIndex searchIndex = new SearchIndex();
+	private final FacetIndex facetIndex = new FacetIndex();
+	private final NameIndex nameIndex = new NameIndex();
+	private final SortIndex sortIndex = new SortIndex();
+	private final List<ProductIndex> productIndexes = Arrays.<ProductIndex>asList(searchIndex, facetIndex, nameIndex, sortIndex);
+	/**
+	 * Flag set once the product indexes have been loaded
+	 */
+	private volatile boolean catalogLoaded;
+	/**
+	 * Where stock is kept while selling, see InventoryMode
+	 */
+	private final InventoryMode inventoryMode = InventoryMode.fromSettings();
+	/**
+	 * Inventory of the inventory mode, null until it has been loaded, see loadInventory
+	 */
+	private volatile Inventory inventory;
+	/**
+	 * Inventory being loaded while the checkouts left in the purchase log are recorded through it,
+	 *   null otherwise. See prepareInventory
+	 */
+	private volatile Inventory recoveringInventory;
+	/**
+	 * Serializes loading the inventory
+	 */
+	private final Object inventoryLock = new Object();
+	/**
+	 * Writes checkouts in groups, null when each checkout writes its own purchase. See the
+	 *   purchases.writer setting
+	 */
+	private final PurchaseWriter purchaseWriter = PurchaseWriter.fromSettings(this);
+	/**
+	 * Log checkouts are acknowledged from before they reach the database, null unless the
+	 *   purchases.writer setting is wal
+	 */
+	private final PurchaseLog purchaseLog = PurchaseLog.fromSettings(this, inventoryMode);
+
+	/**
+	 * Work done inside a database transaction. See executeTransaction
+	 */
+	private interface TransactionWork<T>
+	{
+		/**
+		 * @param connection - Connection the transaction is running on
+		 * @return Result of the work
+		 * @throws SQLException to roll the transaction back
+		 */
+		T run(PooledConnection connection) throws SQLException;
+	}
+
+	/**
+	 * One-time token of a purchase confirmation, see issueCheckoutToken
+	 */
+	private static class CheckoutToken
+	{
+		/**
+		 * ID of the user the token was issued to
+		 */
+		final int userId;
+		/**
+		 * ID of the product being bought
+		 */
+		final int productId;
+		/**
+		 * Outcome of the successful checkout made with the token, set once it has committed, null
+		 *   until then. Guarded by this
+		 */
+		CheckoutResult result;
+		/**
+		 * true while a checkout with the token is running or waiting for its transaction to end.
+		 *   Guarded by this
+		 */
+		boolean pending;
+
+		/**
+		 * @param userId - ID of the user the token was issued to
+		 * @param productId - ID of the product being bought
+		 */
+		CheckoutToken(int userId, int productId)
+		{
+			this.userId = userId;
+			this.productId = productId;
+		}
+	}
+
+	/**
+	 * Builds an UPDATE statement that only sets the columns being changed
+	 */
+	private static class UpdateBuilder
+	{
+		/**
+		 * Table to update
+		 */
+		private final String table;
+		/**
+		 * Assignments of the columns being changed, with a placeholder for each value
+		 */
+		private final List<String> assignments = new ArrayList<String>();
+		/**
+		 * New values of the columns, in the same order
+		 */
+		private final List<Object> values = new ArrayList<Object>();
+
+		/**
+		 * @param table - Table to update
+		 */
+		UpdateBuilder(String table)
+		{
+			this.table = table;
+		}
+
+		/**
+		 * Adds a column to change
+		 * @param column - Name of the column
+		 * @param value - New value of the column
+		 */
+		void set(String column, Object value)
+		{
+			assignments.add("`" + column + "` = ?");
+			values.add(value);
+		}
+
+		/**
+		 * Adds a column to change by an amount, relative to its value when the update runs
+		 * @param column - Name of the column
+		 * @param amount - Amount to add, negative to subtract
+		 */
+		void add(String column, Object amount)
+		{
+			assignments.add("`" + column + "` = `" + column + "` + ?");
+			values.add(amount);
+		}
+
+		/**
+		 * @return true if no columns are being changed
+		 */
+		boolean isEmpty()
+		{
+			return assignments.isEmpty();
+		}
+
+		/**
+		 * @param keyColumn - Primary key column of the table
+		 * @return UPDATE query with a placeholder for every value and the key
+		 */
+		String toSql(String keyColumn)
+		{
+			StringBuilder query = new StringBuilder("UPDATE `").append(table).append("` SET ");
+
+			for (int i = 0; i < assignments.size(); i++)
+			{
+				if (i > 0)
+				{
+					query.append(", ");
+				}
+				query.append(assignments.get(i));
+			}
+
+			return query.append(" WHERE `").append(keyColumn).append("` = ? LIMIT 1").toString();
+		}
+
+		/**
+		 * @param id - Primary key of the row to change
+		 * @return Values for the placeholders of toSql
+		 */
+		Object[] getParameters(int id)
+		{
+			List<Object> parameters = new ArrayList<Object>(values);
+			parameters.add(id);
+			return parameters.toArray();
+		}
+	}
+
+	/**
+	 * Part of singleton pattern
+	 * http://en.wikipedia.org/wiki/Initialization_on_demand_holder_idiom
+	 */
+	private static class LazyHolder
+	{
+		private static final Database database = new Database();
+	}
+
+	/**
+	 * Retrieves the database instance
+	 * @return Instance of the database.
+	 */
+	public static Database getInstance()
+	{
+		return LazyHolder.database;
+	}
+
+	/**
+	 * Borrows a connection to the database from the connection pool. Inside a unit of work the
+	 *   request's shared connection is used instead.
+	 * @return Connection to the database, must be returned with closeConnections
+	 */
+	private PooledConnection connect() throws SQLException
+	{
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		if (unitOfWork != null)
+		{
+			return unitOfWork.getConnection();
+		}
+
+		return pool.borrow();
+	}
+
+	/**
+	 * Starts a unit of work on the current thread. Until it ends, every call shares one connection
+	 *   and writes are held in one transaction. See UnitOfWorkInterceptor.
+	 * @return The new unit of work, must be ended with UnitOfWork.end()
+	 */
+	public UnitOfWork beginUnitOfWork()
+	{
+		return UnitOfWork.begin(pool);
+	}
+
+	/**
+	 * Connection pool statistics, for monitoring
+	 * @return the connection pool
+	 */
+	public ConnectionPool getConnectionPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Writes any sales still held by the inventory to the product table and closes all pooled
+	 *   connections. Called when the application is shut down.
+	 */
+	public void shutdown()
+	{
+		// Queued checkouts are written first, their sales may still be held by the inventory
+		if (purchaseWriter != null)
+		{
+			purchaseWriter.close();
+		}
+		if (purchaseLog != null)
+		{
+			purchaseLog.close();
+		}
+
+		// Sales still held by the inventory reach the product table before the connections go
+		Inventory loaded = inventory;
+		if (loaded != null)
+		{
+			loaded.close();
+		}
+
+		pool.close();
+	}
+
+	/**
+	 * Caches of the data layer, for monitoring
+	 * @return the caches
+	 */
+	public List<Cache<?, ?>> getCaches()
+	{
+		List<Cache<?, ?>> caches = new ArrayList<Cache<?, ?>>();
+		caches.add(productCache);
+		caches.add(productNameCache);
+		caches.add(productRatingCache);
+		caches.add(userNameCache);
+		caches.add(manufacturerNameCache);
+		caches.add(checkoutTokenCache);
+		return caches;
+	}
+
+	/**
+	 * Existence filters of the data layer, for monitoring
+	 * @return the filters
+	 */
+	public List<ExistenceFilter> getExistenceFilters()
+	{
+		List<ExistenceFilter> filters = new ArrayList<ExistenceFilter>();
+		filters.add(userNameFilter);
+		filters.add(reviewFilter);
+		return filters;
+	}
+
+	/**
+	 * Loads the existence filters with every username and review in the database. Until a filter
+	 *   is loaded, checks against it go to the database.
+	 */
+	public void loadExistenceFilters()
+	{
+		loadExistenceFilter(userNameFilter, false);
+		loadExistenceFilter(reviewFilter, false);
+	}
+
+	/**
+	 * Loads the product indexes with every product in the database. Afterwards they are kept up to
+	 *   date as products change.
+	 * @return true on success
+	 */
+	public boolean loadCatalog()
+	{
+		synchronized (productIndexes)
+		{
+			List<Product> products;
+
+			try
+			{
+				products = fetch(PRODUCT_LISTING_QUERY, RowMappers.PRODUCT_LISTING);
+			}
+			catch (SQLException ex)
+			{
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to load product catalog", ex);
+				return false;
+			}
+
+			for (ProductIndex index : productIndexes)
+			{
+				index.clear();
+
+				for (Product product : products)
+				{
+					index.index(product);
+				}
+			}
+
+			catalogLoaded = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the inventory of the inventory mode ready for checkouts. The inventory first brings the
+	 *   place it keeps the stock up to date with what the other modes left behind, such as sales
+	 *   held in memory or stock buckets when the server stopped, see Inventory.prepare. Checkouts
+	 *   left in the purchase log are then recorded through it, whatever the purchase writer, and
+	 *   only then is it loaded, see Inventory.load.
+	 *
+	 * Called on startup, and again by the first checkout if that failed. The load never joins the
+	 *   request's unit of work: the sales it applies must commit even if the request rolls back,
+	 *   and the stock it then reads on another connection has to include them.
+	 * @return true on success
+	 */
+	public boolean loadInventory()
+	{
+		UnitOfWork unitOfWork = UnitOfWork.suspend();
+
+		try
+		{
+			return prepareInventory();
+		}
+		finally
+		{
+			UnitOfWork.resume(unitOfWork);
+		}
+	}
+
+	/**
+	 * Gets the inventory ready for checkouts, outside of any unit of work. See loadInventory
+	 * @return true on success
+	 */
+	private boolean prepareInventory()
+	{
+		synchronized (inventoryLock)
+		{
+			// Loading again would forget sales held in memory that haven't been written yet
+			if (inventory != null)
+			{
+				return true;
+			}
+
+			Inventory loading = inventoryMode.createInventory(this);
+
+			try
+			{
+				loading.prepare();
+			}
+			catch (SQLException ex)
+			{
+				// Selling now would sell units that are already gone
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to prepare inventory", ex);
+				return false;
+			}
+
+			// Checkouts are refused until the logged ones are recorded, as they hold purchase IDs too
+			recoveringInventory = loading;
+
+			try
+			{
+				if (!recoverPurchases())
+				{
+					return false;
+				}
+			}
+			finally
+			{
+				recoveringInventory = null;
+			}
+
+			try
+			{
+				loading.load();
+			}
+			catch (SQLException ex)
+			{
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to load inventory", ex);
+				return false;
+			}
+
+			inventory = loading;
+			return true;
+		}
+	}
+
+	/**
+	 * Inventory of the inventory mode, loading it first if that hasn't succeeded yet
+	 * @return The inventory, null when it can't be loaded
+	 */
+	private Inventory inventory()
+	{
+		Inventory loaded = inventory;
+
+		if (loaded == null && loadInventory())
+		{
+			loaded = inventory;
+		}
+
+		return loaded;
+	}
+
+	/**
+	 * Applies the checkouts the purchase log holds that haven't reached the database, such as when
+	 *   the server stopped, opening the log first with the wal purchase writer. With another
+	 *   purchase writer, checkouts left by an earlier run with the wal writer are applied and the
+	 *   log is deleted. Called before the stock is loaded, which has to include them.
+	 * @return true on success
+	 */
+	private boolean recoverPurchases()
+	{
+		if (purchaseLog == null && !PurchaseLog.hasSegments())
+		{
+			return true;
+		}
+
+		if (purchaseLog == null || !purchaseLog.isOpen())
+		{
+			// Segment and position the database reached, and the highest purchase ID it has
+			final long[] checkpoint = new long[3];
+
+			try
+			{
+				executeTransaction(new TransactionWork<Void>()
+				{
+					public Void run(PooledConnection connection) throws SQLException
+					{
+						ResultSet result = prepare(connection, "SELECT `Segment`, `Position` FROM `purchase_log_checkpoint` WHERE `CheckpointID` = 1").executeQuery();
+
+						try
+						{
+							if (result.next())
+							{
+								checkpoint[0] = result.getLong(1);
+								checkpoint[1] = result.getInt(2);
+							}
+						}
+						finally
+						{
+							result.close();
+						}
+
+						result = prepare(connection, "SELECT COALESCE(MAX(`PurchaseID`), 0) FROM `purchases`").executeQuery();
+
+						try
+						{
+							result.next();
+							checkpoint[2] = result.getInt(1);
+						}
+						finally
+						{
+							result.close();
+						}
+
+						return null;
+					}
+				});
+
+				if (purchaseLog == null)
+				{
+					return PurchaseLog.applyLeftover(this, checkpoint[0], (int) checkpoint[1]);
+				}
+
+				purchaseLog.open(checkpoint[0], (int) checkpoint[1], (int) checkpoint[2]);
+			}
+			catch (SQLException ex)
+			{
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to read purchase log checkpoint", ex);
+				return false;
+			}
+			catch (IOException ex)
+			{
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to open purchase log", ex);
+				return false;
+			}
+		}
+
+		return purchaseLog.applyPending();
+	}
+
+	/**
+	 * Records a batch of checkouts from the purchase log in a single transaction, with saving the
+	 *   log position reached. Purchases keep the IDs the log gave them. The units sold of each
+	 *   product are recorded through the inventory once for the whole batch, see
+	 *   Inventory.recordSold, so in the sharded inventory mode they come out of the stock buckets.
+	 *   Purchases of products or users
+	 *   deleted since are recorded without the product or user, as if they were made before it was
+	 *   deleted, since their stock is already gone and the buyer was told they went through.
+	 *
+	 * The batch is written on a connection of its own, never in the unit of work of the request
+	 *   that happens to apply it: the log forgets the batch once this returns, so it must not be
+	 *   rolled back with the request.
+	 * @param batch - Logged checkouts, in log order
+	 * @return true on success
+	 */
+	boolean applyLoggedPurchases(List<PurchaseLog.LoggedPurchase> batch)
+	{
+		UnitOfWork unitOfWork = UnitOfWork.suspend();
+
+		try
+		{
+			return writeLoggedPurchases(batch);
+		}
+		finally
+		{
+			UnitOfWork.resume(unitOfWork);
+		}
+	}
+
+	/**
+	 * Records a batch of checkouts from the purchase log, outside of any unit of work. See
+	 *   applyLoggedPurchases
+	 * @param batch - Logged checkouts, in log order
+	 * @return true on success
+	 */
+	private boolean writeLoggedPurchases(final List<PurchaseLog.LoggedPurchase> batch)
+	{
+		Inventory loaded = inventory;
+		final Inventory target = (loaded != null) ? loaded : recoveringInventory;
+
+		// The inventory failed to load, the batch stays in the log until it does
+		if (target == null)
+		{
+			return false;
+		}
+
+		final TreeMap<Integer, Integer> units = byProduct();
+		final List<Object> userIds = new ArrayList<Object>();
+
+		for (PurchaseLog.LoggedPurchase purchase : batch)
+		{
+			addUnits(units, purchase.productId, 1);
+			userIds.add(purchase.userId);
+		}
+
+		try
+		{
+			executeTransaction(new TransactionWork<Void>()
+			{
+				public Void run(PooledConnection connection) throws SQLException
+				{
+					target.recordSold(connection, units);
+
+					Object[] productParameters = padInList(new ArrayList<Object>(units.keySet()));
+					String query = "SELECT `ProductID` FROM `product` WHERE `ProductID` IN " + inList(productParameters.length);
+
+					Set<Integer> products = new HashSet<Integer>();
+					ResultSet result = prepare(connection, query, productParameters).executeQuery();
+
+					try
+					{
+						while (result.next())
+						{
+							products.add(result.getInt(1));
+						}
+					}
+					finally
+					{
+						result.close();
+					}
+
+					Object[] userParameters = padInList(userIds);
+					query = "SELECT `UserID` FROM `users` WHERE `UserID` IN " + inList(userParameters.length);
+
+					Set<Integer> users = new HashSet<Integer>();
+					result = prepare(connection, query, userParameters).executeQuery();
+
+					try
+					{
+						while (result.next())
+						{
+							users.add(result.getInt(1));
+						}
+					}
+					finally
+					{
+						result.close();
+					}
+
+					List<Object> values = new ArrayList<Object>();
+					StringBuilder insert = new StringBuilder("INSERT INTO `purchases` ( `PurchaseID`, `UserID`, `ProductID`, `Price`, `ShippingAddress`, `Date`, `ShippingPrice` ) VALUES ");
+
+					for (PurchaseLog.LoggedPurchase purchase : batch)
+					{
+						boolean userExists = users.contains(purchase.userId);
+
+						if (!userExists)
+						{
+							Logger.getLogger(Database.class.getName()).log(Level.WARNING, "Recording logged purchase " + purchase.purchaseId
+									+ " without a user, user " + purchase.userId + " was deleted");
+						}
+
+						insert.append(values.isEmpty() ? "( ?, ?, ?, ?, ?, ?, ? )" : ", ( ?, ?, ?, ?, ?, ?, ? )");
+						values.add(purchase.purchaseId);
+						values.add(userExists ? purchase.userId : null);
+						values.add(products.contains(purchase.productId) ? purchase.productId : null);
+						values.add(purchase.price);
+						values.add(purchase.shippingAddress);
+						values.add(new Timestamp(purchase.date));
+						values.add(purchase.shippingPrice);
+					}
+
+					bind(connection.prepareUncached(insert.toString(), false), values.toArray()).executeUpdate();
+
+					PurchaseLog.LoggedPurchase last = batch.get(batch.size() - 1);
+					String checkpoint = "INSERT INTO `purchase_log_checkpoint` ( `CheckpointID`, `Segment`, `Position` ) VALUES ( 1, ?, ? ) "
+							+ "ON DUPLICATE KEY UPDATE `Segment` = VALUES(`Segment`), `Position` = VALUES(`Position`)";
+					prepare(connection, checkpoint, last.segment, last.end).executeUpdate();
+					return null;
+				}
+			});
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to apply " + batch.size() + " logged purchases", ex);
+			return false;
+		}
+
+		for (Integer productId : units.keySet())
+		{
+			productChanged(productId);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a map of what a write does to each product, sorted by product ID. Writes that change
+	 *   several product rows in one transaction go through them in this order, so concurrent
+	 *   writers lock the rows in the same order and can't deadlock each other.
+	 * @return Empty map, by product ID
+	 */
+	private static <T> TreeMap<Integer, T> byProduct()
+	{
+		return new TreeMap<Integer, T>();
+	}
+
+	/**
+	 * Adds units of a product to the units a write changes
+	 * @param units - Units of each product, from byProduct
+	 * @param productId - ID of the product
+	 * @param quantity - Units to add
+	 */
+	private static void addUnits(Map<Integer, Integer> units, int productId, int quantity)
+	{
+		Integer previous = units.get(productId);
+		units.put(productId, (previous == null) ? quantity : previous + quantity);
+	}
+
+	/**
+	 * Reads the stock of every product from the product table
+	 * @return Units in stock, by product ID
+	 * @throws SQLException on failure
+	 */
+	Map<Integer, Integer> readStock() throws SQLException
+	{
+		return executeTransaction(new TransactionWork<Map<Integer, Integer>>()
+		{
+			public Map<Integer, Integer> run(PooledConnection connection) throws SQLException
+			{
+				Map<Integer, Integer> stock = new HashMap<Integer, Integer>();
+				ResultSet result = prepare(connection, "SELECT `ProductID`, `Stock` FROM `product`").executeQuery();
+
+				try
+				{
+					while (result.next())
+					{
+						stock.put(result.getInt(1), result.getInt(2));
+					}
+				}
+				finally
+				{
+					result.close();
+				}
+
+				return stock;
+			}
+		});
+	}
+
+	/**
+	 * Decreases the stock of the products sold by purchases marked as StockPending, in one
+	 *   transaction with clearing the marks
+	 * @throws SQLException on failure
+	 */
+	void applyPendingSales() throws SQLException
+	{
+		executeTransaction(new TransactionWork<Void>()
+		{
+			public Void run(PooledConnection connection) throws SQLException
+			{
+				String decrease = "UPDATE `product` p JOIN ( "
+						+ "SELECT `ProductID`, COUNT(*) AS `Units` FROM `purchases` WHERE `StockPending` = 1 GROUP BY `ProductID` "
+						+ ") s ON s.`ProductID` = p.`ProductID` "
+						+ "SET p.`Stock` = GREATEST(p.`Stock` - s.`Units`, 0), p.`SalesCount` = p.`SalesCount` + s.`Units`";
+				prepare(connection, decrease).executeUpdate();
+				prepare(connection, "UPDATE `purchases` SET `StockPending` = 0 WHERE `StockPending` = 1").executeUpdate();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Writes one batch of sales held in memory to the product table, in a single transaction with
+	 *   clearing the StockPending mark of their purchases. The stock decrease of each product is
+	 *   added up across the batch, so a product sold many times is updated once.
+	 * @param sales - Sales to write
+	 * @return true on success
+	 */
+	boolean writeSales(final List<StockCounters.Sale> sales)
+	{
+		final Map<Integer, Integer> units = byProduct();
+		final List<Object> purchaseIds = new ArrayList<Object>();
+
+		for (StockCounters.Sale sale : sales)
+		{
+			addUnits(units, sale.productId, sale.quantity);
+			purchaseIds.add(sale.purchaseId);
+		}
+
+		try
+		{
+			executeTransaction(new TransactionWork<Void>()
+			{
+				public Void run(PooledConnection connection) throws SQLException
+				{
+					String decrease = "UPDATE `product` SET `Stock` = GREATEST(`Stock` - ?, 0), `SalesCount` = `SalesCount` + ? WHERE `ProductID` = ?";
+
+					for (Map.Entry<Integer, Integer> product : units.entrySet())
+					{
+						prepare(connection, decrease, product.getValue(), product.getValue(), product.getKey()).executeUpdate();
+					}
+
+					Object[] purchaseParameters = padInList(purchaseIds);
+					String clear = "UPDATE `purchases` SET `StockPending` = 0 WHERE `PurchaseID` IN " + inList(purchaseParameters.length);
+
+					prepare(connection, clear, purchaseParameters).executeUpdate();
+					return null;
+				}
+			});
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to write sales", ex);
+			return false;
+		}
+
+		for (Integer productId : units.keySet())
+		{
+			productChanged(productId);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Takes units of products from the product table, if every product has enough. A single
+	 *   product is taken with one conditional UPDATE. Several products are locked in one query,
+	 *   checked, and decreased in one UPDATE.
+	 * @param connection - Connection of the sale's transaction
+	 * @param units - Units of each product, sorted by product ID
+	 * @return ID of the first product without enough stock, null when every unit was taken
+	 * @throws SQLException on failure
+	 */
+	Integer takeFromProductStock(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		if (units.size() == 1)
+		{
+			int productId = units.firstKey();
+			int quantity = units.get(productId);
+			String decrease = "UPDATE `product` SET `Stock` = `Stock` - ?, `SalesCount` = `SalesCount` + ? WHERE `ProductID` = ? AND `Stock` >= ?";
+
+			return (prepare(connection, decrease, quantity, quantity, productId, quantity).executeUpdate() > 0) ? null : productId;
+		}
+
+		Map<Integer, Integer> stock = new HashMap<Integer, Integer>();
+		Object[] productParameters = padInList(new ArrayList<Object>(units.keySet()));
+		String query = "SELECT `ProductID`, `Stock` FROM `product` WHERE `ProductID` IN " + inList(productParameters.length) + " ORDER BY `ProductID` FOR UPDATE";
+		ResultSet result = prepare(connection, query, productParameters).executeQuery();
+
+		try
+		{
+			while (result.next())
+			{
+				stock.put(result.getInt(1), result.getInt(2));
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+
+		// Nothing has been written yet, so the take can end here
+		for (Map.Entry<Integer, Integer> line : units.entrySet())
+		{
+			Integer left = stock.get(line.getKey());
+
+			if (left == null || left < line.getValue())
+			{
+				return line.getKey();
+			}
+		}
+
+		// Stock was checked under the row locks
+		List<Object> values = new ArrayList<Object>();
+		StringBuilder decrease = new StringBuilder("UPDATE `product` p JOIN ( ");
+
+		for (Map.Entry<Integer, Integer> line : units.entrySet())
+		{
+			decrease.append(values.isEmpty() ? "SELECT ? AS `ProductID`, ? AS `Units`" : " UNION ALL SELECT ?, ?");
+			values.add(line.getKey());
+			values.add(line.getValue());
+		}
+
+		decrease.append(" ) s ON s.`ProductID` = p.`ProductID` "
+				+ "SET p.`Stock` = p.`Stock` - s.`Units`, p.`SalesCount` = p.`SalesCount` + s.`Units`");
+		bind(connection.prepareUncached(decrease.toString(), false), values.toArray()).executeUpdate();
+		return null;
+	}
+
+	/**
+	 * Writes the stock of a product to the product table
+	 * @param connection - Connection of the transaction the stock is written in
+	 * @param productId - ID of the product
+	 * @param stock - New stock, or the change in stock when relative
+	 * @param relative - true if stock is a change rather than the new stock
+	 * @throws SQLException on failure, or when there is no such product
+	 */
+	void writeProductStock(PooledConnection connection, int productId, int stock, boolean relative) throws SQLException
+	{
+		String update = relative
+				? "UPDATE `product` SET `Stock` = `Stock` + ? WHERE `ProductID` = ?"
+				: "UPDATE `product` SET `Stock` = ? WHERE `ProductID` = ?";
+
+		if (prepare(connection, update, stock, productId).executeUpdate() == 0)
+		{
+			throw new SQLException("Product " + productId + " doesn't exist");
+		}
+	}
+
+	/**
+	 * Brings the cached product and the product indexes up to date with a stock change written to
+	 *   the product table, once it has committed
+	 * @param productId - ID of the product
+	 * @param change - Amount the stock changed by
+	 */
+	void stockWritten(int productId, int change)
+	{
+		applyCachedStock(productId, change);
+		productChanged(productId);
+	}
+
+	/**
+	 * Decreases the stock of products already sold to their buyers, down to nothing, and adds the
+	 *   units to their sales counts
+	 * @param connection - Connection of the transaction recording the purchases
+	 * @param units - Units sold of each product, sorted by product ID
+	 * @throws SQLException on failure
+	 */
+	void writeSoldStock(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		String decrease = "UPDATE `product` SET `Stock` = GREATEST(`Stock` - ?, 0), `SalesCount` = `SalesCount` + ? WHERE `ProductID` = ?";
+
+		for (Map.Entry<Integer, Integer> product : units.entrySet())
+		{
+			prepare(connection, decrease, product.getValue(), product.getValue(), product.getKey()).executeUpdate();
+		}
+	}
+
+	/**
+	 * Gives stock buckets to every product without them, for the sharded inventory mode
+	 * @param buckets - Buckets to share each product's stock between
+	 * @return IDs of the products that already had buckets
+	 * @throws SQLException on failure
+	 */
+	Set<Integer> createStockBuckets(final int buckets) throws SQLException
+	{
+		return executeTransaction(new TransactionWork<Set<Integer>>()
+		{
+			public Set<Integer> run(PooledConnection connection) throws SQLException
+			{
+				String query = "SELECT `ProductID`, `Stock` FROM `product` p "
+						+ "WHERE NOT EXISTS ( SELECT 1 FROM `product_stock_bucket` b WHERE b.`ProductID` = p.`ProductID` )";
+				Map<Integer, Integer> stock = byProduct();
+				ResultSet result = prepare(connection, query).executeQuery();
+
+				try
+				{
+					while (result.next())
+					{
+						stock.put(result.getInt(1), result.getInt(2));
+					}
+				}
+				finally
+				{
+					result.close();
+				}
+
+				// Read before the new buckets are written, those are already in step with the product
+				Set<Integer> existing = new HashSet<Integer>();
+				result = prepare(connection, "SELECT DISTINCT `ProductID` FROM `product_stock_bucket`").executeQuery();
+
+				try
+				{
+					while (result.next())
+					{
+						existing.add(result.getInt(1));
+					}
+				}
+				finally
+				{
+					result.close();
+				}
+
+				for (Map.Entry<Integer, Integer> product : stock.entrySet())
+				{
+					writeStockBuckets(connection, product.getKey(), product.getValue(), buckets);
+				}
+
+				return existing;
+			}
+		});
+	}
+
+	/**
+	 * Moves the stock and sales held in stock buckets back into the product table and drops the
+	 *   buckets, when the sharded inventory mode is no longer used
+	 * @throws SQLException on failure
+	 */
+	void foldStockBuckets() throws SQLException
+	{
+		executeTransaction(new TransactionWork<Void>()
+		{
+			public Void run(PooledConnection connection) throws SQLException
+			{
+				String fold = "UPDATE `product` p JOIN ( "
+						+ "SELECT `ProductID`, SUM(`Stock`) AS `Stock`, SUM(`Sold`) AS `Sold` FROM `product_stock_bucket` GROUP BY `ProductID` "
+						+ ") b ON b.`ProductID` = p.`ProductID` "
+						+ "SET p.`Stock` = b.`Stock`, p.`SalesCount` = p.`SalesCount` + b.`Sold`";
+				prepare(connection, fold).executeUpdate();
+				prepare(connection, "DELETE FROM `product_stock_bucket`").executeUpdate();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Replaces the stock buckets of a product with buckets sharing its stock evenly
+	 * @param connection - Connection of the transaction the buckets are written in
+	 * @param productId - ID of the product
+	 * @param stock - Units to share between the buckets
+	 * @param buckets - Number of buckets
+	 * @throws SQLException on failure
+	 */
+	private void writeStockBuckets(PooledConnection connection, int productId, int stock, int buckets) throws SQLException
+	{
+		int units = Math.max(0, stock);
+		String insert = "INSERT INTO `product_stock_bucket` ( `ProductID`, `Bucket`, `Stock`, `Sold` ) VALUES ( ?, ?, ?, 0 )";
+
+		prepare(connection, "DELETE FROM `product_stock_bucket` WHERE `ProductID` = ?", productId).executeUpdate();
+
+		for (int bucket = 0; bucket < buckets; bucket++)
+		{
+			int share = units / buckets + ((bucket < units % buckets) ? 1 : 0);
+			prepare(connection, insert, productId, bucket, share).executeUpdate();
+		}
+	}
+
+	/**
+	 * Sets the stock of a product in its stock buckets, in the sharded inventory mode. Sales still
+	 *   held in the old buckets are added to the product first.
+	 * @param connection - Connection of the transaction the buckets are written in
+	 * @param productId - ID of the product
+	 * @param stock - New stock
+	 * @param buckets - Number of buckets
+	 * @throws SQLException on failure
+	 */
+	void distributeStock(PooledConnection connection, int productId, int stock, int buckets) throws SQLException
+	{
+		String sold = "UPDATE `product` SET `SalesCount` = `SalesCount` + "
+				+ "( SELECT COALESCE(SUM(`Sold`), 0) FROM `product_stock_bucket` WHERE `ProductID` = ? ) "
+				+ "WHERE `ProductID` = ?";
+		prepare(connection, sold, productId, productId).executeUpdate();
+		writeStockBuckets(connection, productId, stock, buckets);
+	}
+
+	/**
+	 * Takes units of products from their stock buckets, in the sharded inventory mode. Either every
+	 *   unit is taken or none are.
+	 * @param connection - Connection of the sale's transaction
+	 * @param units - Units of each product, sorted by product ID
+	 * @return ID of the first product without enough stock, null when every unit was taken
+	 * @throws SQLException on failure
+	 */
+	Integer takeFromStockBuckets(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		if (units.size() == 1)
+		{
+			int productId = units.firstKey();
+			return takeFromStockBuckets(connection, productId, units.get(productId)) ? null : productId;
+		}
+
+		// Rolling back to here returns the products already taken to the buckets they came from
+		Savepoint savepoint = connection.getConnection().setSavepoint();
+
+		for (Map.Entry<Integer, Integer> line : units.entrySet())
+		{
+			if (!takeFromStockBuckets(connection, line.getKey(), line.getValue()))
+			{
+				connection.getConnection().rollback(savepoint);
+				return line.getKey();
+			}
+		}
+
+		connection.getConnection().releaseSavepoint(savepoint);
+		return null;
+	}
+
+	/**
+	 * Takes units of products already sold to their buyers from their stock buckets, in the sharded
+	 *   inventory mode. Buckets are emptied in order until the units are taken; units the buckets
+	 *   don't have are still counted as sold in the first bucket, so the sales count is right once
+	 *   the product is rebalanced. Products without buckets, such as deleted ones, are skipped.
+	 * @param connection - Connection of the transaction recording the purchases
+	 * @param units - Units sold of each product, sorted by product ID
+	 * @throws SQLException on failure
+	 */
+	void takeSoldFromStockBuckets(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		String query = "SELECT `Bucket`, `Stock` FROM `product_stock_bucket` WHERE `ProductID` = ? ORDER BY `Bucket` FOR UPDATE";
+		String take = "UPDATE `product_stock_bucket` SET `Stock` = `Stock` - ?, `Sold` = `Sold` + ? WHERE `ProductID` = ? AND `Bucket` = ?";
+
+		for (Map.Entry<Integer, Integer> product : units.entrySet())
+		{
+			List<int[]> buckets = new ArrayList<int[]>();
+			ResultSet result = prepare(connection, query, product.getKey()).executeQuery();
+
+			try
+			{
+				while (result.next())
+				{
+					buckets.add(new int[] { result.getInt(1), result.getInt(2) });
+				}
+			}
+			finally
+			{
+				result.close();
+			}
+
+			int remaining = product.getValue();
+
+			for (int[] bucket : buckets)
+			{
+				int taken = Math.min(remaining, Math.max(0, bucket[1]));
+
+				if (taken > 0)
+				{
+					prepare(connection, take, taken, taken, product.getKey(), bucket[0]).executeUpdate();
+					remaining -= taken;
+				}
+			}
+
+			if (remaining > 0 && !buckets.isEmpty())
+			{
+				prepare(connection, take, 0, remaining, product.getKey(), buckets.get(0)[0]).executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Takes units of a product from its stock buckets, in the sharded inventory mode. Buckets with
+	 *   stock left are tried in random order, so concurrent buyers mostly lock different rows. Either
+	 *   every unit is taken or none are.
+	 * @param connection - Connection of the checkout's transaction
+	 * @param productId - ID of the product
+	 * @param quantity - Units to take
+	 * @return true if the units were taken, false if there weren't enough
+	 * @throws SQLException on failure
+	 */
+	private boolean takeFromStockBuckets(PooledConnection connection, int productId, int quantity) throws SQLException
+	{
+		List<int[]> buckets = new ArrayList<int[]>();
+		ResultSet result = prepare(connection, "SELECT `Bucket`, `Stock` FROM `product_stock_bucket` WHERE `ProductID` = ? AND `Stock` > 0", productId).executeQuery();
+
+		try
+		{
+			while (result.next())
+			{
+				buckets.add(new int[] { result.getInt(1), result.getInt(2) });
+			}
+		}
+		finally
+		{
+			result.close();
+		}
+
+		Collections.shuffle(buckets);
+
+		String take = "UPDATE `product_stock_bucket` SET `Stock` = `Stock` - ?, `Sold` = `Sold` + ? "
+				+ "WHERE `ProductID` = ? AND `Bucket` = ? AND `Stock` >= ?";
+		List<int[]> taken = new ArrayList<int[]>();
+		int remaining = quantity;
+
+		for (int[] bucket : buckets)
+		{
+			if (remaining == 0)
+			{
+				break;
+			}
+
+			// Buckets emptied by another buyer since they were read are skipped
+			int units = Math.min(remaining, bucket[1]);
+			if (prepare(connection, take, units, units, productId, bucket[0], units).executeUpdate() > 0)
+			{
+				taken.add(new int[] { bucket[0], units });
+				remaining -= units;
+			}
+		}
+
+		if (remaining == 0)
+		{
+			return true;
+		}
+
+		// Not enough left, put back what was taken so the transaction can still commit
+		for (int[] bucket : taken)
+		{
+			prepare(connection, take, -bucket[1], -bucket[1], productId, bucket[0], -bucket[1]).executeUpdate();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Shares a product's remaining stock evenly between its buckets again, so sales don't run into
+	 *   empty buckets, and writes its total stock and new sales to the product table
+	 * @param productId - ID of the product
+	 * @param buckets - Number of buckets
+	 * @return true on success
+	 */
+	boolean rebalanceStockBuckets(final int productId, final int buckets)
+	{
+		try
+		{
+			executeTransaction(new TransactionWork<Void>()
+			{
+				public Void run(PooledConnection connection) throws SQLException
+				{
+					String query = "SELECT SUM(`Stock`), SUM(`Sold`), COUNT(*) FROM `product_stock_bucket` WHERE `ProductID` = ? FOR UPDATE";
+					ResultSet result = prepare(connection, query, productId).executeQuery();
+					int stock;
+					int sold;
+
+					try
+					{
+						result.next();
+						stock = result.getInt(1);
+						sold = result.getInt(2);
+
+						// Deleted along with the product
+						if (result.getInt(3) == 0)
+						{
+							return null;
+						}
+					}
+					finally
+					{
+						result.close();
+					}
+
+					String update = "UPDATE `product` SET `Stock` = ?, `SalesCount` = `SalesCount` + ? WHERE `ProductID` = ?";
+					prepare(connection, update, stock, sold, productId).executeUpdate();
+					writeStockBuckets(connection, productId, stock, buckets);
+					return null;
+				}
+			});
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to rebalance stock buckets of product " + productId, ex);
+			return false;
+		}
+
+		productCache.invalidate(productId);
+		productChanged(productId);
+		return true;
+	}
+
+	/**
+	 * Current stock of a product held in its stock buckets, in the sharded inventory mode
+	 * @param productId - ID of the product
+	 * @return Units left in the buckets, null if the product has none
+	 */
+	Integer readBucketStock(int productId)
+	{
+		Object stock = executeQuerySingleResult("SELECT SUM(`Stock`) FROM `product_stock_bucket` WHERE `ProductID` = ?", productId);
+
+		return (stock == null) ? null : ((Number) stock).intValue();
+	}
+
+	/**
+	 * Rows each product's stock is split across, for monitoring
+	 * @return the number of stock buckets per product, 0 unless the sharded inventory mode is loaded
+	 */
+	public int getStockBucketCount()
+	{
+		Inventory loaded = inventory;
+
+		return (loaded instanceof ShardedInventory) ? ((ShardedInventory) loaded).getBucketCount() : 0;
+	}
+
+	/**
+	 * Products waiting to be rebalanced, for monitoring
+	 * @return the number of products sold from since their buckets were last rebalanced
+	 */
+	public int getUnbalancedProductCount()
+	{
+		Inventory loaded = inventory;
+
+		return (loaded instanceof ShardedInventory) ? ((ShardedInventory) loaded).getUnbalancedProductCount() : 0;
+	}
+
+	/**
+	 * Inventory mode, for monitoring
+	 * @return the inventory mode
+	 */
+	public InventoryMode getInventoryMode()
+	{
+		return inventoryMode;
+	}
+
+	/**
+	 * Stock held in memory, for monitoring
+	 * @return the stock counters, null unless the memory inventory mode is loaded
+	 */
+	public StockCounters getStockCounters()
+	{
+		Inventory loaded = inventory;
+
+		return (loaded instanceof MemoryInventory) ? ((MemoryInventory) loaded).getStockCounters() : null;
+	}
+
+	/**
+	 * Purchase log, for monitoring
+	 * @return the purchase log, null unless checkouts are logged
+	 */
+	public PurchaseLog getPurchaseLog()
+	{
+		return purchaseLog;
+	}
+
+	/**
+	 * Group purchase writer, for monitoring
+	 * @return the purchase writer, null when checkouts are written directly
+	 */
+	public PurchaseWriter getPurchaseWriter()
+	{
+		return purchaseWriter;
+	}
+
+	/**
+	 * Product search index, for monitoring
+	 * @return the search index
+	 */
+	public SearchIndex getSearchIndex()
+	{
+		return searchIndex;
+	}
+
+	/**
+	 * Product name suggestion index, for monitoring
+	 * @return the name index
+	 */
+	public NameIndex getNameIndex()
+	{
+		return nameIndex;
+	}
+
+	/**
+	 * Adds a new account to the database
+	 * @param username - Username of the user to add
+	 * @param email - Email address of the user to add
+	 * @param password - Password of the user to add
+	 * @param firstName - First name of the user to add
+	 * @param lastName - Last name of the user to add
+	 * @param phone - Phone number of the user to add
+	 * @param address - Address of the user to add
+	 * @param admin - Flag to determine if the user is an administrator
+	 * @return True on success, false on failure
+	 */
+	public boolean addUser(String username, String email, String password, String firstName, String lastName, String phone, String address, Boolean admin)
+	{
+		String query = "INSERT INTO `users` ( `Username`, `email`, `Password`, `FirstName`, `LastName`, `Address`, `Phone`, `IsAdmin` ) "
+				+ "VALUES ( ?, ?, ?, ?, ?, ?, ?, ? )";
+
+		Integer id = executeInsert(query,
+				Utils.sanitize(username),
+				Utils.sanitize(email),
+				Utils.hash(password),
+				Utils.sanitize(firstName),
+				Utils.sanitize(lastName),
+				Utils.sanitize(address),
+				Utils.sanitize(phone),
+				admin ? 1 : 0);
+
+		if (id == null)
+		{
+			return false;
+		}
+
+		invalidateAfterCommit(userNameCache, id);
+		addAfterCommit(userNameFilter, userNameKey(username));
+		return true;
+	}
+
+	/**
+	 * Adds a new product to the database
+	 * @param name - Name of the product
+	 * @param manufacturerId - ID of the product's manufacturer
+	 * @param price - Price of the product
+	 * @param stock - Amount of the product in stock
+	 * @param image - Filename of the product image
+	 * @param description - Description of the product
+	 * @return True on success
+	 */
+	public boolean addProduct(String name, int manufacturerId, double price, int stock, String image, String description)
+	{
+		// TODO: Check manufacturer id to see if it exists?
+		Integer id;
+
+		if (StringUtils.isNotEmpty(image))
+		{
+			String query = "INSERT INTO `product` ( `Name`, `ManufacturerID`, `Price`, `Stock`, `Image`, `Description` ) "
+					+ "VALUES ( ?, ?, ?, ?, ?, ? )";
+
+			id = executeInsert(query, Utils.sanitize(name), manufacturerId, price, stock, Utils.sanitize(image), Utils.sanitize(description));
+		}
+		else
+		{
+			String query = "INSERT INTO `product` ( `Name`, `ManufacturerID`, `Price`, `Stock`, `Description` ) "
+					+ "VALUES ( ?, ?, ?, ?, ? )";
+
+			id = executeInsert(query, Utils.sanitize(name), manufacturerId, price, stock, Utils.sanitize(description));
+		}
+
+		if (id == null)
+		{
+			return false;
+		}
+
+		invalidateAfterCommit(productCache, id);
+		invalidateAfterCommit(productNameCache, id);
+		productChanged(id);
+
+		// An inventory loaded later reads the new product's stock from the product table
+		Inventory loaded = inventory;
+		if (loaded != null && !setStock(loaded, id, stock))
+		{
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds a new manufacturer to the database
+	 * @param name - Name of the manufacturer
+	 * @param website - Manufacturer's website
+	 * @return True on success
+	 */
+	public boolean addManufacturer(String name, String website)
+	{
+		String query = "INSERT INTO `manufacturer` ( `Website`, `CompanyName` ) VALUES ( ?, ? )";
+		Integer id = executeInsert(query, Utils.sanitize(website), Utils.sanitize(name));
+
+		if (id == null)
+		{
+			return false;
+		}
+
+		invalidateAfterCommit(manufacturerNameCache, id);
+		return true;
+	}
+
+	/**
+	 * Adds a new review to the database
+	 * @param userId - Unique ID of user making the review
+	 * @param productId - Unique ID of product reviewed
+	 * @param rating - User rating
+	 * @param comment - Review text
+	 * @return True on success
+	 */
+	public boolean addReview(final int userId, final int productId, final int rating, final String comment)
+	{
+		// TODO: Check user id to see if it exists?
+		// TODO: Check rating to see if it's within range? [1..10]?
+		try
+		{
+			boolean added = executeTransaction(new TransactionWork<Boolean>()
+			{
+				public Boolean run(PooledConnection connection) throws SQLException
+				{
+					// The product's totals are updated first, which also checks the product exists
+					String totals = "UPDATE `product` SET `ReviewCount` = `ReviewCount` + 1, `RatingSum` = `RatingSum` + ? WHERE `ProductID` = ?";
+
+					if (prepare(connection, totals, rating, productId).executeUpdate() == 0)
+					{
+						return false;
+					}
+
+					String insert = "INSERT INTO `reviews` ( `UserID`, `ProductID`, `Rating`, `Comment` ) VALUES ( ?, ?, ?, ? )";
+					prepare(connection, insert, userId, productId, rating, Utils.sanitize(comment)).executeUpdate();
+
+					return true;
+				}
+			});
+
+			if (added)
+			{
+				addAfterCommit(reviewFilter, reviewKey(productId, userId));
+			}
+
+			ratingChanged(productId);
+			return added;
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to add review of product " + productId, ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes a review, taking it out of its product's rating
+	 * @param reviewId - ID of review to delete
+	 * @return true on success, false if there is no such review or on failure
+	 */
+	public boolean deleteReview(final int reviewId)
+	{
+		try
+		{
+			Integer productId = executeTransaction(new TransactionWork<Integer>()
+			{
+				public Integer run(PooledConnection connection) throws SQLException
+				{
+					String select = "SELECT `ProductID`, `Rating` FROM `reviews` WHERE `ReviewID` = ? FOR UPDATE";
+					ResultSet result = prepare(connection, select, reviewId).executeQuery();
+					int productId;
+					int rating;
+
+					try
+					{
+						if (!result.next())
+						{
+							return null;
+						}
+
+						productId = result.getInt(1);
+						rating = result.getInt(2);
+					}
+					finally
+					{
+						result.close();
+					}
+
+					prepare(connection, "DELETE FROM `reviews` WHERE `ReviewID` = ?", reviewId).executeUpdate();
+
+					String totals = "UPDATE `product` SET `ReviewCount` = `ReviewCount` - 1, `RatingSum` = `RatingSum` - ? WHERE `ProductID` = ?";
+					prepare(connection, totals, rating, productId).executeUpdate();
+
+					return productId;
+				}
+			});
+
+			if (productId == null)
+			{
+				return false;
+			}
+
+			ratingChanged(productId);
+			return true;
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to delete review " + reviewId, ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Recomputes the stored review count and rating total of every product from the reviews table.
+	 *   Used to fill in the totals of an existing database, or to repair them.
+	 * @return true on success
+	 */
+	public boolean rebuildRatingTotals()
+	{
+		String query = "UPDATE `product` p "
+				+ "LEFT JOIN ( SELECT `ProductID`, COUNT(*) AS `ReviewCount`, SUM( `Rating` ) AS `RatingSum` FROM `reviews` GROUP BY `ProductID` ) r "
+				+ "ON r.`ProductID` = p.`ProductID` "
+				+ "SET p.`ReviewCount` = COALESCE( r.`ReviewCount`, 0 ), p.`RatingSum` = COALESCE( r.`RatingSum`, 0 )";
+
+		boolean rebuilt = executeQueryUpdate(query);
+		afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				productCache.invalidateAll();
+				productRatingCache.invalidateAll();
+			}
+		});
+
+		return rebuilt;
+	}
+
+	/**
+	 * Drops the cached rating of a product after its reviews changed
+	 * @param productId - ID of product
+	 */
+	private void ratingChanged(int productId)
+	{
+		forgetLoaded(Product.class, productId);
+		invalidateAfterCommit(productCache, productId);
+		invalidateAfterCommit(productRatingCache, productId);
+	}
+
+	/**
+	 * Retrieves a user based on unique ID
+	 * @param userId - Unique ID of the user to retrieve
+	 * @return Null when user ID is invalid. Account of user with ID of userId when successful
+	 */
+	public Account getUser(int userId)
+	{
+		Account loaded = findLoaded(Account.class, userId);
+
+		if (loaded != null)
+		{
+			return loaded;
+		}
+
+		String query = "SELECT * FROM `users` WHERE `UserId` = ? LIMIT 1";
+
+		return registerLoaded(Account.class, userId, executeQuerySingleRow(query, RowMappers.ACCOUNT, userId));
+	}
+
+	/**
+	 * Retrieves a user based on a username and password
+	 * @param userName - User username
+	 * @param password - User password
+	 * @return Null when invalid credentials. Account of user on success
+	 */
+	public Account getUser(String userName, String password)
+	{
+		String query = "SELECT * FROM `users` WHERE `userName` = ? AND `password` = ? LIMIT 1";
+
+		return executeQuerySingleRow(query, RowMappers.ACCOUNT, Utils.sanitize(userName), Utils.hash(password));
+	}
+
+	/**
+	 * Returns the user's name
+	 * @param id - ID of user
+	 * @return Name of user. Null when there is no such user
+	 */
+	public String getUserName(int id)
+	{
+		return getCached(userNameCache, userNameLoader, id);
+	}
+
+	/**
+	 * Returns the product with specified ID
+	 * @param id - Unique product id to get
+	 * @return null on failure, product on success
+	 */
+	public Product getProduct(int id)
+	{
+		Product loaded = findLoaded(Product.class, id);
+
+		if (loaded != null)
+		{
+			return loaded;
+		}
+
+		Product product = getCached(productCache, productLoader, id);
+
+		if (product == null)
+		{
+			return null;
+		}
+
+		// The cached product is shared, callers get their own copy to change or load reviews into
+		Product copy = new Product(product);
+
+		// The product table lags behind sales held by the inventory
+		Inventory current = inventory;
+		Integer stock = (current == null) ? null : current.getStock(id);
+		if (stock != null)
+		{
+			copy.setStock(stock);
+		}
+
+		return registerLoaded(Product.class, id, copy);
+	}
+
+	/**
+	 * Returns the product's name
+	 * @param id - ID of product
+	 * @return Name of product. Null when there is no such product, such as after it was deleted
+	 */
+	public String getProductName(int id)
+	{
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		// Names of the whole catalog are in memory once it is loaded, the cache covers the rest
+		if (catalogLoaded && (unitOfWork == null || !unitOfWork.isTransactionOpen()))
+		{
+			String name = nameIndex.getName(id);
+
+			if (name != null)
+			{
+				return name;
+			}
+		}
+
+		return getCached(productNameCache, productNameLoader, id);
+	}
+
+	/**
+	 * Returns the manufacturer with specified ID
+	 * @param id - Unique ID of manufacturer to get
+	 * @return null on failure, product on success
+	 */
+	public Manufacturer getManufacturer(int id)
+	{
+		Manufacturer loaded = findLoaded(Manufacturer.class, id);
+
+		if (loaded != null)
+		{
+			return loaded;
+		}
+
+		String query = "SELECT * FROM `manufacturer` WHERE `mId` = ? LIMIT 1";
+
+		return registerLoaded(Manufacturer.class, id, executeQuerySingleRow(query, RowMappers.MANUFACTURER, id));
+	}
+
+	/**
+	 * Returns the manufacturer's name
+	 * @param id - ID of manufacturer
+	 * @return Name of manufacturer. Null when there is no such manufacturer
+	 */
+	public String getManufacturerName(int id)
+	{
+		return getCached(manufacturerNameCache, manufacturerNameLoader, id);
+	}
+
+	/**
+	 * Returns the review with specified ID
+	 * @param id - Unique ID of review to get
+	 * @return null on failure, Review on success
+	 */
+	public Review getReview(int id)
+	{
+		String query = "SELECT * FROM `reviews` WHERE `ReviewId` = ? LIMIT 1";
+
+		return executeQuerySingleRow(query, RowMappers.REVIEW, id);
+	}
+
+	/**
+	 * Returns the average rating for the specified product
+	 * @param id - ID of product
+	 * @return the average rating. Null when the product has no reviews
+	 */
+	public Double getReviewRating(int id)
+	{
+		return getCached(productRatingCache, productRatingLoader, id);
+	}
+
+	/**
+	 * Returns the transaction with specified ID
+	 * @param id - Unique ID of transaction to get
+	 * @return null on failure, Transaction on success
+	 */
+	public Transaction getTransaction(int id)
+	{
+		String query = TRANSACTION_DETAILS_QUERY + "WHERE pu.`PurchaseID` = ? LIMIT 1";
+
+		return executeQuerySingleRow(query, RowMappers.TRANSACTION_DETAILS, id);
+	}
+
+	/**
+	 * Edits user information. Fields may be null or empty if change is not desired.
+	 * @param id - Unique user ID
+	 * @param userName - Username
+	 * @param email - E-mail address
+	 * @param firstName - First name
+	 * @param lastName - Last name
+	 * @param phone - Phone number ( May be blank )
+	 * @param address - Address
+	 * @param admin - Flag to determine if the user is an administrator
+	 * @param password - New user password
+	 * @return True on success, false on failure
+	 */
+	public boolean editUser(int id, String userName, String email, String firstName, String lastName, String phone, String address, Boolean admin, String password)
+	{
+		UpdateBuilder update = new UpdateBuilder("users");
+
+		if (!StringUtils.isEmpty(userName))
+		{
+			update.set("username", Utils.sanitize(userName));
+		}
+		if (!StringUtils.isEmpty(email))
+		{
+			update.set("email", Utils.sanitize(email));
+		}
+		if (!StringUtils.isEmpty(firstName))
+		{
+			update.set("firstName", Utils.sanitize(firstName));
+		}
+		if (!StringUtils.isEmpty(lastName))
+		{
+			update.set("lastName", Utils.sanitize(lastName));
+		}
+		// Empty string is valid for phone number, but if it's null don't modify it
+		if (phone != null)
+		{
+			update.set("phone", Utils.sanitize(phone));
+		}
+		if (!StringUtils.isEmpty(address))
+		{
+			update.set("address", Utils.sanitize(address));
+		}
+		if (admin != null)
+		{
+			update.set("isadmin", admin ? 1 : 0);
+		}
+		if (!StringUtils.isEmpty(password))
+		{
+			update.set("password", Utils.hash(password));
+		}
+
+		boolean updated = executeUpdate(update, "UserId", id);
+		forgetLoaded(Account.class, id);
+		invalidateAfterCommit(userNameCache, id);
+
+		// The old name stays in the filter, it is only a false positive from now on
+		if (updated && !StringUtils.isEmpty(userName))
+		{
+			addAfterCommit(userNameFilter, userNameKey(userName));
+		}
+
+		return updated;
+	}
+
+	/**
+	 * Edits product information. Fields may be null if change is not desired.
+	 * @param id - ID of product to edit
+	 * @param name - Name of the product
+	 * @param manufacturerId - ID of the product's manufacturer
+	 * @param price - Price of the product
+	 * @param stock - Amount of the product in stock
+	 * @param image - Filename of the product image
+	 * @param description - Description of the product
+	 * @return true on success
+	 */
+	public boolean editProduct(int id, String name, Integer manufacturerId, Double price, Integer stock, String image, String description)
+	{
+		// The stock is set through the inventory, which may hold sales the product table lacks
+		Inventory loaded = null;
+		if (stock != null)
+		{
+			loaded = inventory();
+
+			if (loaded == null)
+			{
+				return false;
+			}
+		}
+
+		UpdateBuilder update = new UpdateBuilder("product");
+
+		if (StringUtils.isNotEmpty(name))
+		{
+			update.set("name", Utils.sanitize(name));
+		}
+		if (manufacturerId != null)
+		{
+			update.set("ManufacturerId", manufacturerId);
+		}
+		if (price != null)
+		{
+			update.set("price", price);
+		}
+		if (image != null)
+		{
+			update.set("image", Utils.sanitize(image));
+		}
+		if (description != null)
+		{
+			update.set("description", Utils.sanitize(description));
+		}
+
+		boolean updated = executeUpdate(update, "ProductId", id);
+		forgetLoaded(Product.class, id);
+		invalidateAfterCommit(productCache, id);
+		invalidateAfterCommit(productNameCache, id);
+		productChanged(id);
+
+		if (updated && stock != null)
+		{
+			updated = setStock(loaded, id, stock);
+		}
+
+		return updated;
+	}
+
+	/**
+	 * Sets the stock of a product through the inventory, in a single transaction
+	 * @param inventory - Inventory of the inventory mode
+	 * @param productId - ID of the product
+	 * @param stock - New stock
+	 * @return true on success
+	 */
+	private boolean setStock(final Inventory inventory, final int productId, final int stock)
+	{
+		try
+		{
+			executeTransaction(new TransactionWork<Void>()
+			{
+				public Void run(PooledConnection connection) throws SQLException
+				{
+					inventory.setStock(connection, productId, stock);
+					return null;
+				}
+			});
+
+			return true;
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to set stock of product " + productId, ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Issues a one-time checkout token for a purchase confirmation. Submitting the confirmation
+	 *   checks out with the token, see checkout(String, int, int, double, String), so repeated
+	 *   submissions of the same confirmation buy only once. Tokens are kept in memory for
+	 *   cache.checkoutToken.expireAfterWriteMs.
+	 * @param userId - ID of the user confirming the purchase
+	 * @param productId - ID of the product being bought
+	 * @return The token
+	 */
+	public String issueCheckoutToken(int userId, int productId)
+	{
+		byte[] bytes = new byte[16];
+		tokenRandom.nextBytes(bytes);
+
+		StringBuilder token = new StringBuilder();
+		for (byte b : bytes)
+		{
+			token.append(String.format("%02x", b));
+		}
+
+		checkoutTokenCache.put(token.toString(), new CheckoutToken(userId, productId));
+		return token.toString();
+	}
+
+	/**
+	 * Buys one unit of a product with a checkout token. The first submission with a token checks
+	 *   out; later ones, such as double clicks and browser retries, get its outcome back without
+	 *   touching the database, waiting for it while it is running or its transaction is still
+	 *   open. Only a checkout that committed is remembered; one that failed, rolled back or found
+	 *   the product sold out can be tried again with the same token, such as after a restock.
+	 * @param token - Token from issueCheckoutToken
+	 * @param userId - Unique ID of user making the purchase
+	 * @param productId - Unique ID of product purchased
+	 * @param shippingPrice - Shipping price
+	 * @param shippingAddress - Shipping address
+	 * @return Outcome of the checkout, with the ID of the purchase on success. Null when the token
+	 *   is unknown, has expired, or was issued for another user or product.
+	 */
+	public CheckoutResult checkout(String token, int userId, int productId, double shippingPrice, String shippingAddress)
+	{
+		CheckoutToken checkoutToken = (token == null) ? null : checkoutTokenCache.getIfPresent(token);
+
+		if (checkoutToken == null || checkoutToken.userId != userId || checkoutToken.productId != productId)
+		{
+			return null;
+		}
+
+		final CheckoutToken usedToken = checkoutToken;
+
+		synchronized (usedToken)
+		{
+			boolean interrupted = false;
+
+			// Another submission of the token is checking out, its outcome is only known once it commits
+			while (usedToken.pending)
+			{
+				try
+				{
+					usedToken.wait();
+				}
+				catch (InterruptedException interruptedException)
+				{
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			if (usedToken.result != null)
+			{
+				return usedToken.result;
+			}
+
+			usedToken.pending = true;
+		}
+
+		CheckoutResult result = null;
+
+		try
+		{
+			result = checkout(userId, productId, shippingPrice, shippingAddress);
+		}
+		finally
+		{
+			if (result != null && result.isSuccess())
+			{
+				final CheckoutResult committed = result;
+
+				// The purchase may still be rolled back with the rest of the request
+				afterCommit(new Runnable()
+				{
+					public void run()
+					{
+						settleCheckoutToken(usedToken, committed);
+					}
+				});
+				afterRollback(new Runnable()
+				{
+					public void run()
+					{
+						settleCheckoutToken(usedToken, null);
+					}
+				});
+			}
+			else
+			{
+				settleCheckoutToken(usedToken, null);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Ends the checkout running with a token and wakes the submissions waiting on it
+	 * @param checkoutToken - Token the checkout was made with
+	 * @param result - Outcome to give later submissions, null to let them try again
+	 */
+	private static void settleCheckoutToken(CheckoutToken checkoutToken, CheckoutResult result)
+	{
+		synchronized (checkoutToken)
+		{
+			checkoutToken.result = result;
+			checkoutToken.pending = false;
+			checkoutToken.notifyAll();
+		}
+	}
+
+	/**
+	 * Buys one unit of a product. Taking the unit from the inventory and recording the purchase
+	 *   happen in a single transaction, and the inventory only gives out units it has, so
+	 *   concurrent buyers can't oversell a product. The purchase is recorded at the product's
+	 *   current price.
+	 * @param userId - Unique ID of user making the purchase
+	 * @param productId - Unique ID of product purchased
+	 * @param shippingPrice - Shipping price
+	 * @param shippingAddress - Shipping address
+	 * @return Outcome of the checkout, with the ID of the new purchase on success
+	 */
+	public CheckoutResult checkout(final int userId, final int productId, final double shippingPrice, final String shippingAddress)
+	{
+		if (purchaseLog != null)
+		{
+			return checkoutToLog(userId, productId, shippingPrice, shippingAddress);
+		}
+
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		// A checkout after other writes of the request commits with them, so it can't join a batch
+		if (purchaseWriter != null && (unitOfWork == null || !unitOfWork.isTransactionOpen()))
+		{
+			// The writer borrows from the same pool, so a buyer mustn't hold a connection while waiting
+			if (unitOfWork != null)
+			{
+				unitOfWork.releaseConnection();
+			}
+
+			PurchaseWriter.PendingPurchase purchase = purchaseWriter.submit(userId, productId, shippingPrice, Utils.sanitize(shippingAddress));
+			CheckoutResult result = (purchase == null) ? null : purchase.await();
+
+			if (result != null)
+			{
+				if (result.isSuccess())
+				{
+					forgetLoaded(Product.class, productId);
+				}
+
+				return result;
+			}
+		}
+
+		final Inventory inventory = inventory();
+
+		if (inventory == null)
+		{
+			return CheckoutResult.failure();
+		}
+
+		final TreeMap<Integer, Integer> units = byProduct();
+		units.put(productId, 1);
+		CheckoutResult result;
+
+		try
+		{
+			result = executeTransaction(new TransactionWork<CheckoutResult>()
+			{
+				public CheckoutResult run(PooledConnection connection) throws SQLException
+				{
+					if (inventory.take(connection, units) != null)
+					{
+						return CheckoutResult.soldOut();
+					}
+
+					String insert = "INSERT INTO `purchases` ( `UserID`, `ProductID`, `Price`, `ShippingAddress`, `ShippingPrice`, `StockPending` ) "
+							+ "SELECT ?, `ProductID`, `Price`, ?, ?, ? FROM `product` WHERE `ProductID` = ?";
+
+					PreparedStatement statement = bind(connection.prepareInsert(insert), userId, Utils.sanitize(shippingAddress), shippingPrice,
+							inventory.holdsSales() ? 1 : 0, productId);
+
+					// The product was deleted since the inventory gave out its unit
+					if (statement.executeUpdate() == 0)
+					{
+						throw new SQLException("Product " + productId + " doesn't exist");
+					}
+
+					return CheckoutResult.success(getGeneratedKey(statement));
+				}
+			});
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to checkout product " + productId, ex);
+			inventory.release(units);
+			return CheckoutResult.failure();
+		}
+
+		if (result.isSuccess())
+		{
+			saleRecorded(inventory, units, Collections.singletonList(result.getPurchaseId()));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Buys one unit of a product with the wal purchase writer. A unit is reserved in memory and the
+	 *   purchase is acknowledged once it is in the purchase log on disk, at the product's current
+	 *   price. It reaches the database later, see applyLoggedPurchases. Every checkout goes through
+	 *   the log, as the log gives out the purchase IDs.
+	 * @param userId - Unique ID of user making the purchase
+	 * @param productId - Unique ID of product purchased
+	 * @param shippingPrice - Shipping price
+	 * @param shippingAddress - Shipping address
+	 * @return Outcome of the checkout, with the ID of the new purchase on success
+	 */
+	private CheckoutResult checkoutToLog(int userId, int productId, double shippingPrice, String shippingAddress)
+	{
+		// The purchase log is only used with the memory inventory mode, see PurchaseLog.fromSettings
+		MemoryInventory inventory = (MemoryInventory) inventory();
+
+		if (inventory == null)
+		{
+			return CheckoutResult.failure();
+		}
+
+		Product product = getProduct(productId);
+
+		if (product == null)
+		{
+			return CheckoutResult.failure();
+		}
+
+		if (!inventory.reserve(productId, 1))
+		{
+			return CheckoutResult.soldOut();
+		}
+
+		PurchaseLog.LoggedPurchase purchase;
+
+		try
+		{
+			purchase = purchaseLog.append(userId, productId, product.getPrice(), shippingPrice, Utils.sanitize(shippingAddress));
+		}
+		catch (IOException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to log checkout of product " + productId, ex);
+			inventory.release(productId, 1);
+			return CheckoutResult.failure();
+		}
+
+		forgetLoaded(Product.class, productId);
+		return CheckoutResult.success(purchase.purchaseId);
+	}
+
+	/**
+	 * Records a batch of checkouts from the purchase writer in a single transaction. The units of
+	 *   each product are taken from the inventory once for all of its buyers in the batch, and the
+	 *   purchases are inserted with one multi-row INSERT. Buyers of a product are served in the
+	 *   order they checked out, those left when it runs out are told it's sold out.
+	 * @param batch - Checkouts to record. Each is completed with its outcome once the batch has
+	 *   committed. Checkouts left uncompleted, such as when the write failed, are failures.
+	 */
+	void writePurchases(List<PurchaseWriter.PendingPurchase> batch)
+	{
+		final Inventory inventory = inventory();
+
+		if (inventory == null)
+		{
+			return;
+		}
+
+		final Map<Integer, List<PurchaseWriter.PendingPurchase>> buyers = byProduct();
+
+		for (PurchaseWriter.PendingPurchase purchase : batch)
+		{
+			List<PurchaseWriter.PendingPurchase> productBuyers = buyers.get(purchase.productId);
+
+			if (productBuyers == null)
+			{
+				productBuyers = new ArrayList<PurchaseWriter.PendingPurchase>();
+				buyers.put(purchase.productId, productBuyers);
+			}
+
+			productBuyers.add(purchase);
+		}
+
+		// Units taken of each product found, and the purchases recorded with their IDs
+		final TreeMap<Integer, Integer> sold = byProduct();
+		final List<PurchaseWriter.PendingPurchase> recorded = new ArrayList<PurchaseWriter.PendingPurchase>();
+		final List<Integer> purchaseIds = new ArrayList<Integer>();
+
+		try
+		{
+			executeTransaction(new TransactionWork<Void>()
+			{
+				public Void run(PooledConnection connection) throws SQLException
+				{
+					Map<Integer, Double> prices = new HashMap<Integer, Double>();
+					List<Object> productIds = new ArrayList<Object>(buyers.keySet());
+
+					Object[] productParameters = padInList(productIds);
+					String query = "SELECT `ProductID`, `Price` FROM `product` WHERE `ProductID` IN " + inList(productParameters.length);
+					ResultSet result = prepare(connection, query, productParameters).executeQuery();
+
+					try
+					{
+						while (result.next())
+						{
+							prices.put(result.getInt(1), result.getDouble(2));
+						}
+					}
+					finally
+					{
+						result.close();
+					}
+
+					List<Object> values = new ArrayList<Object>();
+					StringBuilder insert = new StringBuilder("INSERT INTO `purchases` ( `UserID`, `ProductID`, `Price`, `ShippingAddress`, `ShippingPrice`, `StockPending` ) VALUES ");
+
+					for (Map.Entry<Integer, List<PurchaseWriter.PendingPurchase>> product : buyers.entrySet())
+					{
+						// Products deleted since they were shown are left uncompleted, as failures
+						if (!prices.containsKey(product.getKey()))
+						{
+							continue;
+						}
+
+						int units = takeAvailable(inventory, connection, product.getKey(), product.getValue().size());
+						sold.put(product.getKey(), units);
+
+						for (PurchaseWriter.PendingPurchase purchase : product.getValue().subList(0, units))
+						{
+							insert.append(recorded.isEmpty() ? "( ?, ?, ?, ?, ?, ? )" : ", ( ?, ?, ?, ?, ?, ? )");
+							values.add(purchase.userId);
+							values.add(purchase.productId);
+							values.add(prices.get(product.getKey()));
+							values.add(purchase.shippingAddress);
+							values.add(purchase.shippingPrice);
+							values.add(inventory.holdsSales() ? 1 : 0);
+							recorded.add(purchase);
+						}
+					}
+
+					if (recorded.isEmpty())
+					{
+						return null;
+					}
+
+					PreparedStatement statement = bind(connection.prepareUncached(insert.toString(), true), values.toArray());
+					statement.executeUpdate();
+					ResultSet keys = statement.getGeneratedKeys();
+
+					try
+					{
+						while (keys.next())
+						{
+							purchaseIds.add(keys.getInt(1));
+						}
+					}
+					finally
+					{
+						keys.close();
+					}
+
+					if (purchaseIds.size() != recorded.size())
+					{
+						throw new SQLException("Expected " + recorded.size() + " generated keys, got " + purchaseIds.size());
+					}
+
+					return null;
+				}
+			});
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to write " + batch.size() + " purchases", ex);
+			inventory.release(sold);
+			return;
+		}
+
+		for (int i = 0; i < recorded.size(); i++)
+		{
+			recorded.get(i).complete(CheckoutResult.success(purchaseIds.get(i)));
+		}
+
+		TreeMap<Integer, Integer> taken = byProduct();
+
+		for (Map.Entry<Integer, Integer> product : sold.entrySet())
+		{
+			List<PurchaseWriter.PendingPurchase> productBuyers = buyers.get(product.getKey());
+
+			for (PurchaseWriter.PendingPurchase purchase : productBuyers.subList(product.getValue(), productBuyers.size()))
+			{
+				purchase.complete(CheckoutResult.soldOut());
+			}
+
+			if (product.getValue() > 0)
+			{
+				taken.put(product.getKey(), product.getValue());
+			}
+		}
+
+		saleRecorded(inventory, taken, purchaseIds);
+	}
+
+	/**
+	 * Takes as many units of a product as the inventory has, up to what the buyers in a batch of
+	 *   checkouts want
+	 * @param inventory - Inventory of the inventory mode
+	 * @param connection - Connection of the batch's transaction
+	 * @param productId - ID of the product
+	 * @param wanted - Units the buyers want
+	 * @return Units taken, less than wanted when the product ran out
+	 * @throws SQLException on failure
+	 */
+	private int takeAvailable(Inventory inventory, PooledConnection connection, int productId, int wanted) throws SQLException
+	{
+		TreeMap<Integer, Integer> units = byProduct();
+		units.put(productId, wanted);
+
+		if (inventory.take(connection, units) == null)
+		{
+			return wanted;
+		}
+
+		// Not enough for every buyer, so the first ones are served one unit at a time
+		int taken = 0;
+		units.put(productId, 1);
+
+		while (taken < wanted && inventory.take(connection, units) == null)
+		{
+			taken++;
+		}
+
+		return taken;
+	}
+
+	/**
+	 * Settles units taken from the inventory for purchases that were recorded: the inventory is
+	 *   told they were sold once the transaction commits, or gets them back if it rolls back
+	 * @param inventory - Inventory the units were taken from
+	 * @param units - Units taken of each product, by product ID
+	 * @param purchaseIds - IDs of the purchases recording the units, in the order of units, one
+	 *   for each unit
+	 */
+	private void saleRecorded(final Inventory inventory, final Map<Integer, Integer> units, final List<Integer> purchaseIds)
+	{
+		for (Integer productId : units.keySet())
+		{
+			forgetLoaded(Product.class, productId);
+		}
+
+		afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				int first = 0;
+
+				for (Map.Entry<Integer, Integer> product : units.entrySet())
+				{
+					inventory.sold(product.getKey(), purchaseIds.subList(first, first + product.getValue()));
+					first += product.getValue();
+				}
+			}
+		});
+		afterRollback(new Runnable()
+		{
+			public void run()
+			{
+				inventory.release(units);
+			}
+		});
+	}
+
+	/**
+	 * Checks out a shopping cart as one order. The stock of every product in the cart is checked
+	 *   and taken, and the order and its purchases recorded, in a single transaction: either every
+	 *   product is bought or none are. The cart is emptied first, so a repeated submission finds
+	 *   nothing to buy, and is filled again if the order doesn't go through.
+	 * @param userId - Unique ID of user placing the order
+	 * @param cart - Cart of the user
+	 * @param shippingPrice - Shipping price of the whole order
+	 * @param shippingAddress - Shipping address
+	 * @return Outcome of the checkout, with the ID of the new order on success, or the product
+	 *   that ran out when sold out. Null when the cart is empty.
+	 */
+	public CheckoutResult checkoutOrder(int userId, final Cart cart, double shippingPrice, String shippingAddress)
+	{
+		final Map<Integer, Integer> quantities = cart.take();
+
+		if (quantities.isEmpty())
+		{
+			return null;
+		}
+
+		CheckoutResult result = checkoutOrder(userId, quantities, shippingPrice, shippingAddress);
+
+		if (!result.isSuccess())
+		{
+			cart.putBack(quantities);
+			return result;
+		}
+
+		// The order may still be rolled back with the rest of the request
+		afterRollback(new Runnable()
+		{
+			public void run()
+			{
+				cart.putBack(quantities);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Records an order of several products in one transaction, taking their units from the
+	 *   inventory. The product rows are read in one query, and the order header, its lines and a
+	 *   purchase for every unit bought are each written with one INSERT. The purchases carry the
+	 *   order's ID, and the first carries its shipping price, so purchase history and sales counts
+	 *   treat them like any other purchase.
+	 * @param userId - Unique ID of user placing the order
+	 * @param quantities - Units wanted of each product, by product ID
+	 * @param shippingPrice - Shipping price of the whole order
+	 * @param shippingAddress - Shipping address
+	 * @return Outcome of the checkout, with the ID of the new order on success
+	 */
+	private CheckoutResult checkoutOrder(final int userId, Map<Integer, Integer> quantities, final double shippingPrice, final String shippingAddress)
+	{
+		final Inventory inventory = inventory();
+
+		if (inventory == null)
+		{
+			return CheckoutResult.failure();
+		}
+
+		final TreeMap<Integer, Integer> lines = byProduct();
+		int units = 0;
+
+		for (Map.Entry<Integer, Integer> line : quantities.entrySet())
+		{
+			addUnits(lines, line.getKey(), line.getValue());
+			units += line.getValue();
+		}
+
+		// The purchase log gives out the purchase IDs, so it must give out those of the order too
+		final int firstPurchaseId;
+
+		try
+		{
+			firstPurchaseId = (purchaseLog != null) ? purchaseLog.allocatePurchaseIds(units) : 0;
+		}
+		catch (IOException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to checkout order", ex);
+			return CheckoutResult.failure();
+		}
+
+		final List<Integer> purchaseIds = new ArrayList<Integer>();
+		CheckoutResult result;
+
+		try
+		{
+			result = executeTransaction(new TransactionWork<CheckoutResult>()
+			{
+				public CheckoutResult run(PooledConnection connection) throws SQLException
+				{
+					Map<Integer, Double> prices = new HashMap<Integer, Double>();
+					List<Object> productIds = new ArrayList<Object>(lines.keySet());
+
+					Object[] productParameters = padInList(productIds);
+					String query = "SELECT `ProductID`, `Price` FROM `product` WHERE `ProductID` IN " + inList(productParameters.length);
+					ResultSet products = prepare(connection, query, productParameters).executeQuery();
+
+					try
+					{
+						while (products.next())
+						{
+							prices.put(products.getInt(1), products.getDouble(2));
+						}
+					}
+					finally
+					{
+						products.close();
+					}
+
+					// Nothing has been taken yet, so the checkout can end here
+					for (Integer productId : lines.keySet())
+					{
+						// The product was deleted since it was put in the cart
+						if (!prices.containsKey(productId))
+						{
+							return CheckoutResult.failure();
+						}
+					}
+
+					Integer soldOut = inventory.take(connection, lines);
+
+					if (soldOut != null)
+					{
+						return CheckoutResult.soldOut(soldOut);
+					}
+
+					double total = shippingPrice;
+					for (Map.Entry<Integer, Integer> line : lines.entrySet())
+					{
+						total += prices.get(line.getKey()) * line.getValue();
+					}
+
+					String insertOrder = "INSERT INTO `orders` ( `UserID`, `ShippingAddress`, `ShippingPrice`, `Total` ) VALUES ( ?, ?, ?, ? )";
+					PreparedStatement statement = bind(connection.prepareInsert(insertOrder), userId, Utils.sanitize(shippingAddress), shippingPrice, total);
+					statement.executeUpdate();
+					int orderId = getGeneratedKey(statement);
+
+					List<Object> lineValues = new ArrayList<Object>();
+					List<Object> purchaseValues = new ArrayList<Object>();
+					StringBuilder insertLines = new StringBuilder("INSERT INTO `order_lines` ( `OrderID`, `LineNumber`, `ProductID`, `Quantity`, `Price` ) VALUES ");
+					StringBuilder insertPurchases = new StringBuilder((purchaseLog != null)
+							? "INSERT INTO `purchases` ( `PurchaseID`, `UserID`, `ProductID`, `Price`, `ShippingAddress`, `ShippingPrice`, `StockPending`, `OrderID` ) VALUES "
+							: "INSERT INTO `purchases` ( `UserID`, `ProductID`, `Price`, `ShippingAddress`, `ShippingPrice`, `StockPending`, `OrderID` ) VALUES ");
+					int lineNumber = 0;
+					int purchaseCount = 0;
+
+					for (Map.Entry<Integer, Integer> line : lines.entrySet())
+					{
+						insertLines.append((lineNumber == 0) ? "( ?, ?, ?, ?, ? )" : ", ( ?, ?, ?, ?, ? )");
+						lineValues.add(orderId);
+						lineValues.add(++lineNumber);
+						lineValues.add(line.getKey());
+						lineValues.add(line.getValue());
+						lineValues.add(prices.get(line.getKey()));
+
+						for (int unit = 0; unit < line.getValue(); unit++)
+						{
+							insertPurchases.append((purchaseCount == 0) ? "( " : ", ( ");
+
+							if (purchaseLog != null)
+							{
+								insertPurchases.append("?, ");
+								purchaseValues.add(firstPurchaseId + purchaseCount);
+							}
+
+							// The order is shipped once, so only its first purchase carries the shipping price
+							insertPurchases.append("?, ?, ?, ?, ?, ?, ? )");
+							purchaseValues.add(userId);
+							purchaseValues.add(line.getKey());
+							purchaseValues.add(prices.get(line.getKey()));
+							purchaseValues.add(Utils.sanitize(shippingAddress));
+							purchaseValues.add((purchaseCount == 0) ? shippingPrice : 0.0);
+							purchaseValues.add(inventory.holdsSales() ? 1 : 0);
+							purchaseValues.add(orderId);
+							purchaseCount++;
+						}
+					}
+
+					bind(connection.prepareUncached(insertLines.toString(), false), lineValues.toArray()).executeUpdate();
+
+					if (purchaseLog != null)
+					{
+						bind(connection.prepareUncached(insertPurchases.toString(), false), purchaseValues.toArray()).executeUpdate();
+
+						for (int i = 0; i < purchaseCount; i++)
+						{
+							purchaseIds.add(firstPurchaseId + i);
+						}
+
+						return CheckoutResult.success(orderId);
+					}
+
+					statement = bind(connection.prepareUncached(insertPurchases.toString(), true), purchaseValues.toArray());
+					statement.executeUpdate();
+					ResultSet keys = statement.getGeneratedKeys();
+
+					try
+					{
+						while (keys.next())
+						{
+							purchaseIds.add(keys.getInt(1));
+						}
+					}
+					finally
+					{
+						keys.close();
+					}
+
+					if (purchaseIds.size() != purchaseCount)
+					{
+						throw new SQLException("Expected " + purchaseCount + " generated keys, got " + purchaseIds.size());
+					}
+
+					return CheckoutResult.success(orderId);
+				}
+			});
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to checkout order", ex);
+			inventory.release(lines);
+			return CheckoutResult.failure();
+		}
+
+		// The inventory takes every line or none, so an order that didn't go through holds nothing
+		if (result.isSuccess())
+		{
+			saleRecorded(inventory, lines, purchaseIds);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Applies a committed stock change to the cached product, so buying doesn't evict it. Falls
+	 *   back to invalidating when another thread changed the entry at the same time. Cached stock
+	 *   is only used for display and early checks, checkout always takes the stock from the
+	 *   inventory.
+	 * @param productId - ID of product whose stock changed
+	 * @param change - Amount the stock changed by
+	 */
+	private void applyCachedStock(int productId, int change)
+	{
+		Product cached = productCache.peek(productId);
+
+		if (cached == null)
+		{
+			return;
+		}
+
+		Product updated = new Product(cached);
+		updated.setStock(cached.getStock() + change);
+
+		if (!productCache.replace(productId, cached, updated))
+		{
+			productCache.invalidate(productId);
+		}
+	}
+
+	/**
+	 * Edits manufacturer information. Fields may be null if change is not desired.
+	 * @param id - ID of manufacturer to edit
+	 * @param name - Name of the manufacturer
+	 * @param website - Manufacturer's website
+	 * @return true on success
+	 */
+	public boolean editManufacturer(int id, String name, String website)
+	{
+		UpdateBuilder update = new UpdateBuilder("manufacturer");
+
+		if (StringUtils.isNotEmpty(name))
+		{
+			update.set("CompanyName", Utils.sanitize(name));
+		}
+		if (website != null)
+		{
+			update.set("Website", Utils.sanitize(website));
+		}
+
+		boolean updated = executeUpdate(update, "mId", id);
+		forgetLoaded(Manufacturer.class, id);
+		invalidateAfterCommit(manufacturerNameCache, id);
+
+		// Products are indexed by their manufacturer's name
+		if (updated && StringUtils.isNotEmpty(name))
+		{
+			manufacturerChanged(id);
+		}
+
+		return updated;
+	}
+
+	/**
+	 * Obtains a page of the users, ordered by ID. For use in user management system.
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of users on the page, 0 for the default
+	 * @return Page of users
+	 */
+	public Page<Account> getUsers(String after, String before, int pageSize)
+	{
+		String query = "SELECT * FROM `users`";
+
+		return executePageQuery(query, null, RowMappers.ACCOUNT, USER_KEYSET, after, before, pageSize);
+	}
+
+	/**
+	 * Returns a list containing all products in the database
+	 * @return List of all product
+	 */
+	public List<Product> getProducts()
+	{
+		String query = "SELECT * FROM `product`";
+
+		return executeQuery(query, RowMappers.PRODUCT);
+	}
+
+	/**
+	 * Returns a page of products, ordered by ID, with their manufacturer name, review count and
+	 *   average rating already filled in. Uses a single query no matter how many products there are.
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of products on the page, 0 for the default
+	 * @return Page of products
+	 */
+	public Page<Product> getProductListing(String after, String before, int pageSize)
+	{
+		return executePageQuery(PRODUCT_LISTING_QUERY, null, RowMappers.PRODUCT_LISTING, PRODUCT_KEYSET, after, before, pageSize);
+	}
+
+	/**
+	 * Returns a page of all products in a sort order, with their manufacturer name and rating.
+	 *   The page is read from the sorted catalog, see SortIndex, so a page in any order costs
+	 *   the same as one in ID order.
+	 * @param order - Order of the products
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of products on the page, 0 for the default
+	 * @return Page of products
+	 */
+	public Page<Product> getProductListing(SortIndex.Order order, String after, String before, int pageSize)
+	{
+		if (!catalogLoaded)
+		{
+			loadCatalog();
+		}
+
+		int size = (pageSize < 1) ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+		Page<Integer> ids = sortIndex.page(order, after, before, size);
+
+		return new Page<Product>(getListedProducts(ids.getItems()), ids.getNextCursor(), ids.getPreviousCursor(), size);
+	}
+
+	/**
+	 * Finds the products matching a search and facets, without querying the database. Products
+	 *   are searched by name, manufacturer name and description, see SearchIndex, narrowed down
+	 *   by facets, see FacetIndex, and sorted, see SortIndex. Read pages of them with
+	 *   getProductListing.
+	 * @param query - Words to search for, null or blank for all products
+	 * @param manufacturerId - Manufacturer to keep products of, null for any
+	 * @param priceBand - Price band to keep products in, null for any
+	 * @param inStockOnly - true to keep only products in stock
+	 * @param order - Order of the products, null for best match first or by ID without a search
+	 * @return Matching products and facet counts
+	 */
+	public ProductSelection selectProducts(String query, Integer manufacturerId, Integer priceBand, boolean inStockOnly, SortIndex.Order order)
+	{
+		if (!catalogLoaded)
+		{
+			loadCatalog();
+		}
+
+		List<Integer> candidates = StringUtils.isBlank(query) ? null : searchIndex.search(query);
+		ProductSelection selection = facetIndex.select(candidates, manufacturerId, priceBand, inStockOnly);
+
+		if (order == null)
+		{
+			return selection;
+		}
+
+		// Only the matches are sorted, the catalog is already sorted for listing all products
+		return new ProductSelection(sortIndex.sort(order, selection.getIds()), selection.getManufacturers(),
+				selection.getPriceBands(), selection.getInStockCount());
+	}
+
+	/**
+	 * Suggests products for a partly typed name, without querying the database. See NameIndex
+	 * @param prefix - Start of the name, as typed
+	 * @param limit - Most suggestions to return
+	 * @return Best selling matching products first
+	 */
+	public List<Suggestion> suggestProducts(String prefix, int limit)
+	{
+		if (!catalogLoaded)
+		{
+			loadCatalog();
+		}
+
+		return nameIndex.suggest(prefix, limit);
+	}
+
+	/**
+	 * Returns a list containing all products in the database with specified manufacturer ID
+	 * @param manufacturerId - ID of manufacturer
+	 * @return List of all product with specified manufacturer
+	 */
+	public List<Product> getProducts(int manufacturerId)
+	{
+		String query = "SELECT * FROM `product` WHERE `manufacturerId` = ?";
+
+		return executeQuery(query, RowMappers.PRODUCT, manufacturerId);
+	}
+
+	/**
+	 * Returns a page of the manufacturers in the database, ordered by ID
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of manufacturers on the page, 0 for the default
+	 * @return Page of manufacturers
+	 */
+	public Page<Manufacturer> getManufacturers(String after, String before, int pageSize)
+	{
+		String query = "SELECT * FROM `manufacturer`";
+
+		return executePageQuery(query, null, RowMappers.MANUFACTURER, MANUFACTURER_KEYSET, after, before, pageSize);
+	}
+
+	/**
+	 * Returns a page of the reviews in the database, ordered by ID
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of reviews on the page, 0 for the default
+	 * @return Page of reviews
+	 */
+	public Page<Review> getReviews(String after, String before, int pageSize)
+	{
+		String query = "SELECT * FROM `reviews`";
+
+		return executePageQuery(query, null, RowMappers.REVIEW, REVIEW_KEYSET, after, before, pageSize);
+	}
 
 	/**
-	 * Type of data to fetch from database. Mainly used in executeQuery(String, DataType)
+	 * Returns a list containing all reviews of specified product
+	 * @param productId - ID of product
+	 * @return List of reviews for specified product
 	 */
-	private enum DataType
+	public List<Review> getReviews(int productId)
 	{
-		Account,
-		Product,
-		Manufacturer,
-		Review,
-		Transaction
+		String query = "SELECT * FROM `reviews` WHERE `ProductId` = ?";
+
+		return executeQuery(query, RowMappers.REVIEW, productId);
 	}
 
 	/**
-	 * Part of singleton pattern
-	 * http://en.wikipedia.org/wiki/Initialization_on_demand_holder_idiom
+	 * Returns a page of the reviews of specified product, newest first, with the reviewers' names
+	 *   already loaded
+	 * @param productId - ID of product
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of reviews on the page, 0 for the default
+	 * @return Page of reviews for specified product
 	 */
-	private static class LazyHolder
+	public Page<Review> getReviews(int productId, String after, String before, int pageSize)
 	{
-		private static final Database database = new Database();
+		return executePageQuery(REVIEW_WITH_USER_QUERY, "r.`ProductID` = ?", RowMappers.REVIEW_WITH_USER, PRODUCT_REVIEW_KEYSET, after, before, pageSize, productId);
 	}
 
 	/**
-	 * Retrieves the database instance
-	 * @return Instance of the database.
+	 * Returns a page of the transactions in the database, newest first
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of transactions on the page, 0 for the default
+	 * @return Page of transactions
 	 */
-	public static Database getInstance()
+	public Page<Transaction> getTransactions(String after, String before, int pageSize)
 	{
-		return LazyHolder.database;
+		return executePageQuery(TRANSACTION_DETAILS_QUERY, null, RowMappers.TRANSACTION_DETAILS, TRANSACTION_KEYSET, after, before, pageSize);
 	}
 
 	/**
-	 * Creates a connection to the database
-	 * @return Connection to the database
+	 * Returns a page of the transactions of a specified user, newest first
+	 * @param userId - ID of user
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of transactions on the page, 0 for the default
+	 * @return Page of transactions of user
 	 */
-	private Connection connect() throws ClassNotFoundException, SQLException, InstantiationException, IllegalAccessException
+	public Page<Transaction> getTransactions(int userId, String after, String before, int pageSize)
 	{
-		Class.forName("com.mysql.jdbc.Driver").newInstance();
-		return DriverManager.getConnection(connectionString, connectionName, connectionPass);
+		return executePageQuery(TRANSACTION_DETAILS_QUERY, "pu.`UserID` = ?", RowMappers.TRANSACTION_DETAILS, TRANSACTION_KEYSET, after, before, pageSize, userId);
 	}
 
 	/**
-	 * Clears caches if it's been a while since the last time they were cleared.
-	 * TODO: Timer/scheduler would be much better, but this will do for now
+	 * Deletes the specified product from the database
+	 * @param productId - ID of product to delete
+	 * @return true on success
 	 */
-	public void checkCache()
+	public boolean DeleteProduct(final int productId)
 	{
-		if (System.currentTimeMillis() - lastCacheRefresh > cacheRefreshFrequencyInMs)
-		{
-			System.out.println("Clearing cache...");
+		String query = "DELETE FROM `product` WHERE `ProductID` = ? LIMIT 1";
 
-			productNameCache.clear();
-			productRatingCache.clear();
-			userNameCache.clear();
-			manufacturerNameCache.clear();
+		boolean deleted = executeQueryUpdate(query, productId);
+		forgetLoaded(Product.class, productId);
+		invalidateAfterCommit(productCache, productId);
+		invalidateAfterCommit(productNameCache, productId);
+		invalidateAfterCommit(productRatingCache, productId);
+		productChanged(productId);
 
-			lastCacheRefresh = System.currentTimeMillis();
+		final Inventory loaded = inventory;
+		if (deleted && loaded != null)
+		{
+			afterCommit(new Runnable()
+			{
+				public void run()
+				{
+					loaded.deleted(productId);
+				}
+			});
 		}
-	}
-
-	/**
-	 * Adds a new account to the database
-	 * @param username - Username of the user to add
-	 * @param email - Email address of the user to add
-	 * @param password - Password of the user to add
-	 * @param firstName - First name of the user to add
-	 * @param lastName - Last name of the user to add
-	 * @param phone - Phone number of the user to add
-	 * @param address - Address of the user to add
-	 * @param admin - Flag to determine if the user is an administrator
-	 * @return True on success, false on failure
-	 */
-	public boolean addUser(String username, String email, String password, String firstName, String lastName, String phone, String address, Boolean admin)
-	{
-		// TODO: Might look better with String.format? It's a mess right now
-		String query = "INSERT INTO `webstore`.`users` ( `UserID`, `Username`, `email`, `Password`, `FirstName`, `LastName`, `Address`, `Phone`, `IsAdmin` ) "
-				+ "VALUES ( NULL , '"
-				+ Utils.sanitize(username) + "', '"
-				+ Utils.sanitize(email) + "', '"
-				+ Utils.hash(password) + "', '"
-				+ Utils.sanitize(firstName) + "', '"
-				+ Utils.sanitize(lastName) + "', '"
-				+ Utils.sanitize(address) + "', '"
-				+ Utils.sanitize(phone) + "', '"
-				+ (admin ? 1 : 0) + "');";
 
-		return executeQueryUpdate(query);
+		return deleted;
 	}
 
 	/**
-	 * Adds a new product to the database
-	 * @param name - Name of the product
-	 * @param manufacturerId - ID of the product's manufacturer
-	 * @param price - Price of the product
-	 * @param stock - Amount of the product in stock
-	 * @param image - Filename of the product image
-	 * @param description - Description of the product
-	 * @return True on success
+	 * Checks to see if a username already exists
+	 * @param username - Username to check to see if it's a duplicate
+	 * @return true if username already exists
 	 */
-	public boolean addProduct(String name, int manufacturerId, double price, int stock, String image, String description)
+	public boolean checkForExistingAccount(String username)
 	{
-		// TODO: Check manufacturer id to see if it exists?
-
-		String query;
-
-		if (StringUtils.isNotEmpty(image))
+		if (!mightExist(userNameFilter, userNameKey(username)))
 		{
-			query = "INSERT INTO `webstore`.`product` ( `ProductID`, `Name`, `ManufacturerID`, `Price`, `Stock`, `Image`, `Description` ) "
-					+ "VALUES ( NULL , '"
-					+ Utils.sanitize(name) + "', '"
-					+ manufacturerId + "', '"
-					+ price + "', '"
-					+ stock + "', '"
-					+ Utils.sanitize(image) + "', '"
-					+ Utils.sanitize(description) + "');";
+			return false;
 		}
-		else
+
+		String query = "SELECT 1 FROM `users` WHERE `username` = ? LIMIT 1";
+		boolean exists = executeQuerySingleResult(query, Utils.sanitize(username)) != null;
+
+		if (!exists)
 		{
-			query = "INSERT INTO `webstore`.`product` ( `ProductID`, `Name`, `ManufacturerID`, `Price`, `Stock`, `Description` ) "
-					+ "VALUES ( NULL , '"
-					+ Utils.sanitize(name) + "', '"
-					+ manufacturerId + "', '"
-					+ price + "', '"
-					+ stock + "', '"
-					+ Utils.sanitize(description) + "');";
+			userNameFilter.recordFalsePositive();
 		}
 
-		return executeQueryUpdate(query);
+		return exists;
 	}
 
 	/**
-	 * Adds a new manufacturer to the database
-	 * @param name - Name of the manufacturer
-	 * @param website - Manufacturer's website
-	 * @return True on success
+	 * Checks to see if a user has already reviewed a product
+	 * @param productId - ID of product
+	 * @param userId - ID of user
+	 * @return true if user has already reviewed product
 	 */
-	public boolean addManufacturer(String name, String website)
+	public boolean checkForExistingReview(int productId, int userId)
 	{
-		String query = "INSERT INTO `webstore`.`manufacturer` ( `mID`, `Website`, `CompanyName` ) "
-				+ "VALUES ( NULL , '"
-				+ Utils.sanitize(website) + "', '"
-				+ Utils.sanitize(name) + "');";
+		if (!mightExist(reviewFilter, reviewKey(productId, userId)))
+		{
+			return false;
+		}
+
+		String query = "SELECT 1 FROM `reviews` WHERE `ProductId` = ? AND `UserId` = ? LIMIT 1";
+		boolean exists = executeQuerySingleResult(query, productId, userId) != null;
+
+		if (!exists)
+		{
+			reviewFilter.recordFalsePositive();
+		}
 
-		return executeQueryUpdate(query);
+		return exists;
 	}
 
 	/**
-	 * Adds a new review to the database
-	 * @param userId - Unique ID of user making the review
-	 * @param productId - Unique ID of product reviewed
-	 * @param rating - User rating
-	 * @param comment - Review text
-	 * @return True on success
+	 * Key of a username in the username filter. Usernames are compared without regard to case by
+	 *   the database, so the key is lower case.
+	 * @param username - Username, as entered
+	 * @return Filter key
 	 */
-	public boolean addReview(int userId, int productId, int rating, String comment)
+	private static String userNameKey(String username)
 	{
-		// TODO: Check product id to see if it exists?
-		// TODO: Check user id to see if it exists?
-		// TODO: Check rating to see if it's within range? [1..10]?
-		String query = "INSERT INTO `webstore`.`reviews` ( `ReviewID`, `UserID`, `ProductID`, `Rating`, `Comment` ) "
-				+ "VALUES ( NULL , '"
-				+ userId + "', '"
-				+ productId + "', '"
-				+ rating + "', '"
-				+ Utils.sanitize(comment) + "');";
-
-		productRatingCache.remove(productId);
-		return executeQueryUpdate(query);
+		return Utils.sanitize(username).toLowerCase(Locale.ENGLISH);
 	}
 
 	/**
-	 * Adds a new transaction report to the database
-	 * @param userId - Unique ID of user making the purchase
-	 * @param productId - Unique ID of product purchased
-	 * @param price - Price of product at time of transaction
-	 * @param shippingPrice - Shipping price
-	 * @param shippingAddress - Shipping address
-	 * @return True on success
+	 * Key of a review in the review filter
+	 * @param productId - ID of the reviewed product
+	 * @param userId - ID of the reviewer
+	 * @return Filter key
 	 */
-	public boolean addTransaction(int userId, int productId, double price, double shippingPrice, String shippingAddress)
+	private static String reviewKey(int productId, int userId)
 	{
-		// TODO: Check user id to see if it exists?
-		// TODO: Check product id to see if it exists?
-		String query = "INSERT INTO `webstore`.`purchases` ( `PurchaseID`, `Date`, `UserID`, `ProductID`, `Price`, `ShippingAddress`, `ShippingPrice` )"
-				+ "VALUES ( NULL, NULL, '"
-				+ userId + "', '"
-				+ productId + "', '"
-				+ price + "', '"
-				+ Utils.sanitize(shippingAddress) + "', '"
-				+ shippingPrice + "');";
-
-		return executeQueryUpdate(query);
+		return productId + ":" + userId;
 	}
 
 	/**
-	 * Retrieves a user based on unique ID
-	 * @param userId - Unique ID of the user to retrieve
-	 * @return Null when user ID is invalid. Account of user with ID of userId when successful
+	 * Checks an existence filter. While the request has uncommitted writes they aren't in the
+	 *   filters yet, so the database is always asked.
+	 * @param filter - Filter to check
+	 * @param key - Key to check for
+	 * @return false if the key certainly doesn't exist
 	 */
-	public Account getUser(int userId)
+	private boolean mightExist(ExistenceFilter filter, String key)
 	{
-		String query = "SELECT * FROM `users` WHERE `UserId` = " + userId + " LIMIT 1 ;";
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		Vector<Account> fetchedUsers = (Vector<Account>) executeQuery(query, DataType.Account);
-
-		if (fetchedUsers.size() != 1)
+		if (unitOfWork != null && unitOfWork.isTransactionOpen())
 		{
-			return null;
+			return true;
 		}
 
-		return fetchedUsers.get(0);
+		return filter.mightContain(key);
 	}
 
 	/**
-	 * Retrieves a user based on a username and password
-	 * @param userName - User username
-	 * @param password - User password
-	 * @return Null when invalid credentials. Account of user on success
+	 * Adds a key to an existence filter once the current write is committed. Reloads the filter
+	 *   if it has filled up.
+	 * @param filter - Filter to add to
+	 * @param key - Key of the new row
 	 */
-	public Account getUser(String userName, String password)
+	private void addAfterCommit(final ExistenceFilter filter, final String key)
 	{
-		String query = "SELECT * FROM `users` WHERE `userName` = '" + Utils.sanitize(userName) + "' AND `password` = '" + Utils.hash(password) + "' LIMIT 1 ;";
-
-		Vector<Account> fetchedUsers = (Vector<Account>) executeQuery(query, DataType.Account);
+		afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				filter.put(key);
+			}
+		});
 
-		if (fetchedUsers.size() != 1)
+		if (filter.isOverCapacity())
 		{
-			return null;
+			loadExistenceFilter(filter, true);
 		}
-
-		return fetchedUsers.get(0);
 	}
 
 	/**
-	 * Returns the user's name
-	 * @param id - ID of user
-	 * @return Name of user
+	 * Loads an existence filter with every key in the database. Runs on its own connection, so
+	 *   rows committed by other requests while it runs are either read or put into the new filter.
+	 * @param filter - Filter to load
+	 * @param onlyIfFull - true to skip the load unless the filter has filled up, for when another
+	 *   request may have just reloaded it
 	 */
-	public String getUserName(int id)
+	private void loadExistenceFilter(ExistenceFilter filter, boolean onlyIfFull)
 	{
-		checkCache();
+		boolean userNames = (filter == userNameFilter);
+		String countQuery = userNames ? "SELECT COUNT(*) FROM `users`" : "SELECT COUNT(*) FROM `reviews`";
+		String query = userNames ? "SELECT `Username` FROM `users`" : "SELECT `ProductID`, `UserID` FROM `reviews`";
 
-		if (userNameCache.containsKey(id))
+		synchronized (filter)
 		{
-			return userNameCache.get(id);
-		}
+			if (onlyIfFull && !filter.isOverCapacity())
+			{
+				return;
+			}
 
-		String query = "SELECT `username` FROM `users` WHERE `UserId` = " + id + " LIMIT 1 ;";
-		String result = Utils.unsanatize(executeQuerySingleResult(query).toString());
-		userNameCache.put(id, result);
+			PooledConnection connection = null;
+			ResultSet result = null;
 
-		return result;
+			try
+			{
+				connection = pool.borrow();
+
+				result = connection.prepareStatement(countQuery).executeQuery();
+				result.next();
+				filter.beginRebuild(result.getInt(1));
+				result.close();
+
+				result = connection.prepareStatement(query).executeQuery();
+				while (result.next())
+				{
+					if (userNames)
+					{
+						// Stored usernames are already sanitized
+						filter.put(result.getString(1).toLowerCase(Locale.ENGLISH));
+					}
+					else
+					{
+						filter.put(reviewKey(result.getInt(1), result.getInt(2)));
+					}
+				}
+
+				filter.finishRebuild();
+			}
+			catch (SQLException ex)
+			{
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to load existence filter " + filter.getName(), ex);
+				filter.abortRebuild();
+			}
+			finally
+			{
+				closeConnections(connection, result);
+			}
+		}
 	}
 
 	/**
-	 * Returns the product with specified ID
-	 * @param id - Unique product id to get
-	 * @return null on failure, product on success
+	 * Executes a single query and returns the first column of the first row
+	 * @param query - SQL Query to execute, with ? placeholders
+	 * @param parameters - Values for the query placeholders
+	 * @return First result of query. Null on failure or when there are no rows.
 	 */
-	public Product getProduct(int id)
+	private Object executeQuerySingleResult(String query, Object... parameters)
 	{
-		String query = "SELECT * FROM `product` WHERE `ProductId` = '" + id + "' LIMIT 1 ;";
+		PooledConnection connection = null;
+		ResultSet result = null;
+
+		try
+		{
+			connection = connect();
+			PreparedStatement statement = prepare(connection, query, parameters);
+			result = statement.executeQuery();
 
-		Vector<Product> fetchedData = (Vector<Product>) executeQuery(query, DataType.Product);
+			if (!result.next())
+			{
+				return null;
+			}
 
-		if (fetchedData.size() != 1)
+			return result.getObject(1);
+		}
+		catch (Exception ex)
 		{
-			return null;
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeQuerySingleResult", ex);
+		}
+		finally
+		{
+			closeConnections(connection, result);
 		}
 
-		return fetchedData.get(0);
+		return null;
 	}
 
 	/**
-	 * Returns the product's name
-	 * @param id - ID of product
-	 * @return Name of product
+	 * Executes an SQL query and retrieves a list of the results
+	 * @param query - SQL query string, with ? placeholders
+	 * @param mapper - Converts each row of the result into an object
+	 * @param parameters - Values for the query placeholders
+	 * @return Results of the query. Empty on failure.
 	 */
-	public String getProductName(int id)
+	private <T> List<T> executeQuery(String query, RowMapper<T> mapper, Object... parameters)
 	{
-		checkCache();
-
-		if (productNameCache.containsKey(id))
+		try
 		{
-			//	System.out.println(String.format("Got cached product name: %d -> %s", id, productNameCache.get(id)));
-			return productNameCache.get(id);
+			return fetch(query, mapper, parameters);
+		}
+		catch (Exception ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeQuery", ex);
+			return new ArrayList<T>();
 		}
-
-		String query = "SELECT `Name` FROM `product` WHERE `ProductId` = '" + id + "' LIMIT 1 ;";
-		String result = Utils.unsanatize(executeQuerySingleResult(query).toString());
-		productNameCache.put(id, result);
-
-		return result;
 	}
 
 	/**
-	 * Returns the manufacturer with specified ID
-	 * @param id - Unique ID of manufacturer to get
-	 * @return null on failure, product on success
+	 * Executes an SQL query and retrieves a list of the results, for callers that must tell a
+	 *   failure apart from an empty result
+	 * @param query - SQL query string, with ? placeholders
+	 * @param mapper - Converts each row of the result into an object
+	 * @param parameters - Values for the query placeholders
+	 * @return Results of the query
+	 * @throws SQLException on failure
 	 */
-	public Manufacturer getManufacturer(int id)
+	private <T> List<T> fetch(String query, RowMapper<T> mapper, Object... parameters) throws SQLException
 	{
-		String query = "SELECT * FROM `manufacturer` WHERE `mId` = '" + id + "' LIMIT 1 ;";
+		List<T> fetched = new ArrayList<T>();
+		PooledConnection connection = null;
+		ResultSet result = null;
 
-		Vector<Manufacturer> fetchedData = (Vector<Manufacturer>) executeQuery(query, DataType.Manufacturer);
+		try
+		{
+			connection = connect();
+			result = prepare(connection, query, parameters).executeQuery();
 
-		if (fetchedData.size() != 1)
+			int[] index = mapper.resolve(result.getMetaData());
+			while (result.next())
+			{
+				fetched.add(mapper.map(result, index));
+			}
+		}
+		finally
 		{
-			return null;
+			closeConnections(connection, result);
 		}
 
-		return fetchedData.get(0);
+		return fetched;
 	}
 
 	/**
-	 * Returns the manufacturer's name
-	 * @param id - ID of manufacturer
-	 * @return Name of manufacturer
+	 * Reads a page of products out of a list of product IDs answered by the product indexes. The
+	 *   cursors of the page are positions in the list.
+	 * @param ids - IDs of the products, in display order
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of products on the page, 0 for the default
+	 * @return Page of products, with their manufacturer name and rating loaded
 	 */
-	public String getManufacturerName(int id)
+	public Page<Product> getProductListing(List<Integer> ids, String after, String before, int pageSize)
 	{
-		checkCache();
+		int size = (pageSize < 1) ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+		int start = 0;
 
-		if (manufacturerNameCache.containsKey(id))
+		// Malformed cursors fall back to the first page
+		try
+		{
+			if (StringUtils.isNotEmpty(after))
+			{
+				start = Math.max(0, Integer.parseInt(after));
+			}
+			else if (StringUtils.isNotEmpty(before))
+			{
+				start = Math.max(0, Integer.parseInt(before) - size);
+			}
+		}
+		catch (NumberFormatException numberFormatException)
 		{
-			return manufacturerNameCache.get(id);
+			start = 0;
 		}
 
-		String query = "SELECT `CompanyName` FROM `manufacturer` WHERE `mId` = '" + id + "' LIMIT 1 ;";
-		String result = Utils.unsanatize(executeQuerySingleResult(query).toString());
-		manufacturerNameCache.put(id, result);
+		start = Math.min(start, ids.size());
+		int end = Math.min(start + size, ids.size());
 
-		return result;
+		return new Page<Product>(getListedProducts(ids.subList(start, end)),
+				(end < ids.size()) ? Integer.toString(end) : null,
+				(start > 0) ? Integer.toString(start) : null,
+				size);
 	}
 
 	/**
-	 * Returns the review with specified ID
-	 * @param id - Unique ID of review to get
-	 * @return null on failure, Review on success
+	 * Reads the products on a page answered by the product indexes, in a single query
+	 * @param ids - IDs of the products, in display order
+	 * @return Products, with their manufacturer name and rating loaded. Products deleted since
+	 *   the index answered are left out.
 	 */
-	public Review getReview(int id)
+	private List<Product> getListedProducts(List<Integer> ids)
 	{
-		String query = "SELECT * FROM `reviews` WHERE `ReviewId` = '" + id + "' LIMIT 1 ;";
-
-		Vector<Review> fetchedData = (Vector<Review>) executeQuery(query, DataType.Review);
+		List<Product> items = new ArrayList<Product>();
 
-		if (fetchedData.size() != 1)
+		if (ids.isEmpty())
 		{
-			return null;
+			return items;
 		}
 
-		return fetchedData.get(0);
-	}
-
-	/**
-	 * Returns the average rating for the specified review
-	 * @param id - ID of review
-	 * @return the average rating
-	 */
-	public Double getReviewRating(int id)
-	{
-		checkCache();
+		Object[] parameters = padInList(ids);
+		String query = PRODUCT_LISTING_QUERY + "WHERE p.`ProductID` IN " + inList(parameters.length);
 
-		if (productRatingCache.containsKey(id))
+		Map<Integer, Product> products = new HashMap<Integer, Product>();
+		for (Product product : executeQuery(query, RowMappers.PRODUCT_LISTING, parameters))
 		{
-			return productRatingCache.get(id);
+			products.put(product.getId(), product);
 		}
 
-		String query = "SELECT AVG( `Rating` ) FROM `reviews` WHERE `ProductID` = '" + id + "' LIMIT 1 ;";
-
-		Double result = Double.parseDouble(executeQuerySingleResult(query).toString());
-
-		if (result != null)
+		for (Integer id : ids)
 		{
-			result /= 10.0;
-		}
+			Product product = products.get(id);
 
-		productRatingCache.put(id, result);
+			if (product != null)
+			{
+				items.add(product);
+			}
+		}
 
-		return result;
+		return items;
 	}
 
 	/**
-	 * Returns the transaction with specified ID
-	 * @param id - Unique ID of transaction to get
-	 * @return null on failure, Transaction on success
+	 * Updates the product indexes once the current write to a product is committed
+	 * @param productId - ID of the product added, edited or deleted
 	 */
-	public Transaction getTransaction(int id)
+	private void productChanged(final int productId)
 	{
-		String query = "SELECT * FROM `purchases` WHERE `purchaseId` = '" + id + "' LIMIT 1 ;";
+		afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				reindex(PRODUCT_LISTING_QUERY + "WHERE p.`ProductID` = ?", productId, productId);
+			}
+		});
+	}
 
-		Vector<Transaction> fetchedData = (Vector<Transaction>) executeQuery(query, DataType.Transaction);
+	/**
+	 * Updates the product indexes once the current write to a manufacturer is committed
+	 * @param manufacturerId - ID of the manufacturer edited
+	 */
+	private void manufacturerChanged(final int manufacturerId)
+	{
+		afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				reindex(PRODUCT_LISTING_QUERY + "WHERE p.`ManufacturerID` = ?", null, manufacturerId);
+			}
+		});
+	}
 
-		if (fetchedData.size() != 1)
+	/**
+	 * Reads products again and updates the product indexes with them. Reindexing is serialized and
+	 *   only reads committed data, so the indexes end up with the latest version of each product.
+	 * @param query - Product listing query selecting the products to reindex
+	 * @param productId - ID of a single product to reindex, removed from the indexes if the query
+	 *   doesn't find it. Null when reindexing several products.
+	 * @param parameter - Value for the query placeholder
+	 */
+	private void reindex(String query, Integer productId, int parameter)
+	{
+		if (!catalogLoaded)
 		{
-			return null;
+			return;
 		}
 
-		return fetchedData.get(0);
+		synchronized (productIndexes)
+		{
+			List<Product> products;
+
+			try
+			{
+				products = fetch(query, RowMappers.PRODUCT_LISTING, parameter);
+			}
+			catch (SQLException ex)
+			{
+				// Leaves the indexes stale rather than dropping the product
+				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to reindex products", ex);
+				return;
+			}
+
+			for (ProductIndex index : productIndexes)
+			{
+				if (productId != null && products.isEmpty())
+				{
+					index.remove(productId);
+				}
+
+				for (Product product : products)
+				{
+					index.index(product);
+				}
+			}
+		}
 	}
 
 	/**
-	 * Edits user information. Fields may be null or empty if change is not desired.
-	 * @param id - Unique user ID
-	 * @param userName - Username
-	 * @param email - E-mail address
-	 * @param firstName - First name
-	 * @param lastName - Last name
-	 * @param phone - Phone number ( May be blank )
-	 * @param address - Address
-	 * @param admin - Flag to determine if the user is an administrator
-	 * @param password - New user password
-	 * @return True on success, false on failure
+	 * Executes a query one page at a time. Only the rows of the requested page, plus one to tell
+	 *   whether there is another page, are read, using the keyset to seek straight to them.
+	 * @param query - SQL query without WHERE, ORDER BY or LIMIT clauses
+	 * @param filter - Condition rows must match, with ? placeholders. May be null.
+	 * @param mapper - Converts each row of the result into an object
+	 * @param keyset - Order of the rows and how to seek to a cursor
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param pageSize - Number of rows on the page, 0 for the default
+	 * @param filterParameters - Values for the filter placeholders
+	 * @return Page of results. Empty on failure.
 	 */
-	public boolean editUser(int id, String userName, String email, String firstName, String lastName, String phone, String address, Boolean admin, String password)
+	private <T> Page<T> executePageQuery(String query, String filter, RowMapper<T> mapper, Keyset<T> keyset,
+			String after, String before, int pageSize, Object... filterParameters)
 	{
-		StringBuilder query = new StringBuilder();
-
-		query.append("UPDATE `users` SET   ");
+		int size = (pageSize < 1) ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+		boolean forward = true;
+		Object[] key = null;
 
-		if (!StringUtils.isEmpty(userName))
+		// Malformed cursors fall back to the first page
+		if (StringUtils.isNotEmpty(after))
 		{
-			query.append(String.format("`%s` = '%s', ", "username", Utils.sanitize(userName)));
-			userNameCache.remove(id);
+			key = keyset.decode(after);
 		}
-		if (!StringUtils.isEmpty(email))
+		else if (StringUtils.isNotEmpty(before))
 		{
-			query.append(String.format("`%s` = '%s', ", "email", Utils.sanitize(email)));
+			key = keyset.decode(before);
+			forward = (key == null);
 		}
-		if (!StringUtils.isEmpty(firstName))
+
+		StringBuilder sql = new StringBuilder(query);
+		List<Object> parameters = new ArrayList<Object>(Arrays.asList(filterParameters));
+
+		if (filter != null)
 		{
-			query.append(String.format("`%s` = '%s', ", "firstName", Utils.sanitize(firstName)));
+			sql.append(" WHERE ").append(filter);
 		}
-		if (!StringUtils.isEmpty(lastName))
+		if (key != null)
 		{
-			query.append(String.format("`%s` = '%s', ", "lastName", Utils.sanitize(lastName)));
+			sql.append(filter == null ? " WHERE " : " AND ").append(keyset.seekCondition(forward));
+			parameters.addAll(Arrays.asList(keyset.seekParameters(key)));
 		}
-		// Empty string is valid for phone number, but if it's null don't modify it
-		if (phone != null)
+
+		sql.append(' ').append(keyset.orderBy(forward)).append(" LIMIT ?");
+		parameters.add(size + 1);
+
+		List<T> items = executeQuery(sql.toString(), mapper, parameters.toArray());
+		boolean more = items.size() > size;
+
+		if (more)
 		{
-			query.append(String.format("`%s` = '%s', ", "phone", Utils.sanitize(phone)));
+			items.remove(size);
 		}
-		if (!StringUtils.isEmpty(address))
+		if (!forward)
 		{
-			query.append(String.format("`%s` = '%s', ", "address", Utils.sanitize(address)));
+			Collections.reverse(items);
 		}
-		if (admin != null)
+		if (items.isEmpty())
 		{
-			query.append(String.format("`%s` = '%s', ", "isadmin", admin ? "1" : "0"));
+			return new Page<T>(items, null, null, size);
 		}
-		if (!StringUtils.isEmpty(password))
+
+		String first = keyset.encode(items.get(0));
+		String last = keyset.encode(items.get(items.size() - 1));
+
+		if (forward)
 		{
-			query.append(String.format("`%s` = '%s', ", "password", Utils.hash(password)));
+			return new Page<T>(items, more ? last : null, (key != null) ? first : null, size);
 		}
 
-		// Just to remove the trailing comma. There are much better ways of going about this, but
-		//   I just want to get this done.
-		query.delete(query.length() - 2, query.length() + 1);
-		query.append(String.format("WHERE `UserId` = %d LIMIT 1", id));
-
-		return executeQueryUpdate(query.toString());
+		return new Page<T>(items, last, more ? first : null, size);
 	}
 
 	/**
-	 * Edits product information. Fields may be null if change is not desired.
-	 * @param id - ID of product to edit
-	 * @param name - Name of the product
-	 * @param manufacturerId - ID of the product's manufacturer
-	 * @param price - Price of the product
-	 * @param stock - Amount of the product in stock
-	 * @param image - Filename of the product image
-	 * @param description - Description of the product
-	 * @return true on success
+	 * Executes an SQL query expected to return at most one row
+	 * @param query - SQL query string, with ? placeholders
+	 * @param mapper - Converts the row of the result into an object
+	 * @param parameters - Values for the query placeholders
+	 * @return The first row of the result. Null when there are no rows or on failure.
 	 */
-	public boolean editProduct(int id, String name, Integer manufacturerId, Double price, Integer stock, String image, String description)
+	private <T> T executeQuerySingleRow(String query, RowMapper<T> mapper, Object... parameters)
 	{
-		StringBuilder query = new StringBuilder();
-
-		query.append("UPDATE `product` SET ");
+		PooledConnection connection = null;
+		ResultSet result = null;
 
-		if (StringUtils.isNotEmpty(name))
+		try
 		{
-			query.append(String.format("`%s` = '%s', ", "name", Utils.sanitize(name)));
-			productNameCache.remove(id);
+			connection = connect();
+			result = prepare(connection, query, parameters).executeQuery();
+
+			if (!result.next())
+			{
+				return null;
+			}
+
+			return mapper.map(result, mapper.resolve(result.getMetaData()));
 		}
-		if (manufacturerId != null)
+		catch (Exception ex)
 		{
-			query.append(String.format("`%s` = '%d', ", "ManufacturerId", manufacturerId));
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeQuerySingleRow", ex);
 		}
-		if (price != null)
+		finally
 		{
-			query.append(String.format("`%s` = '%f', ", "price", price));
+			closeConnections(connection, result);
 		}
-		if (stock != null)
+
+		return null;
+	}
+
+	/**
+	 * Executes an update query
+	 * @param query - Query to execute, with ? placeholders
+	 * @param parameters - Values for the query placeholders
+	 * @return true on success, false on failure
+	 */
+	private boolean executeQueryUpdate(String query, Object... parameters)
+	{
+		PooledConnection connection = null;
+
+		try
 		{
-			query.append(String.format("`%s` = '%d', ", "stock", stock));
+			connection = connect();
+			beginWrite();
+			prepare(connection, query, parameters).executeUpdate();
+			return true;
 		}
-		if (image != null)
+		catch (Exception ex)
 		{
-			query.append(String.format("`%s` = '%s', ", "image", Utils.sanitize(image)));
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeQueryUpdate", ex);
+			writeFailed();
 		}
-		if (description != null)
+		finally
 		{
-			query.append(String.format("`%s` = '%s', ", "description", Utils.sanitize(description)));
+			closeConnections(connection, null);
 		}
 
-		// Just to remove the trailing comma. There are much better ways of going about this, but
-		//   I just want to get this done.
-		query.delete(query.length() - 2, query.length() + 1);
-		query.append(String.format("WHERE `ProductId` = %d LIMIT 1", id));
-
-		return executeQueryUpdate(query.toString());
+		return false;
 	}
 
 	/**
-	 * Decreases the stock of specified product
-	 * @param id - Product id
-	 * @return true on success
+	 * Executes an insert and reads the key generated for the new row
+	 * @param query - INSERT query to execute, with ? placeholders
+	 * @param parameters - Values for the query placeholders
+	 * @return Generated key of the new row. Null on failure.
 	 */
-	public boolean decreaseProductStock(int id)
+	private Integer executeInsert(String query, Object... parameters)
 	{
-		String query = String.format("UPDATE `product` SET `stock` = `stock` - 1 WHERE `ProductId` = %d LIMIT 1", id);
+		PooledConnection connection = null;
+
+		try
+		{
+			connection = connect();
+			beginWrite();
+			PreparedStatement statement = bind(connection.prepareInsert(query), parameters);
+			statement.executeUpdate();
+			return getGeneratedKey(statement);
+		}
+		catch (Exception ex)
+		{
+			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeInsert", ex);
+			writeFailed();
+		}
+		finally
+		{
+			closeConnections(connection, null);
+		}
 
-		return executeQueryUpdate(query);
+		return null;
 	}
 
 	/**
-	 * Edits manufacturer information. Fields may be null if change is not desired.
-	 * @param id - ID of manufacturer to edit
-	 * @param name - Name of the manufacturer
-	 * @param website - Manufacturer's website
-	 * @return true on success
+	 * Converts a stored text value back into its original form
+	 * @param result - Value from executeQuerySingleResult, may be null
+	 * @return Unsanitized text. Null when the value is null, such as when no row was found.
 	 */
-	public boolean editManufacturer(int id, String name, String website)
+	private static String unsanatizeResult(Object result)
 	{
-		StringBuilder query = new StringBuilder();
-
-		query.append("UPDATE `manufacturer` SET ");
-
-		if (StringUtils.isNotEmpty(name))
-		{
-			query.append(String.format("`%s` = '%s', ", "CompanyName", Utils.sanitize(name)));
-			manufacturerNameCache.remove(id);
-		}
-		if (website != null)
+		if (result == null)
 		{
-			query.append(String.format("`%s` = '%s', ", "Website", Utils.sanitize(website)));
+			return null;
 		}
 
-		// Just to remove the trailing comma. There are much better ways of going about this, but
-		//   I just want to get this done.
-		query.delete(query.length() - 2, query.length() + 1);
-		query.append(String.format("WHERE `mId` = %d LIMIT 1", id));
-
-		return executeQueryUpdate(query.toString());
+		return Utils.unsanatize(result.toString());
 	}
 
 	/**
-	 * Obtains a list of all the users. For use in user management system.
-	 * @return List of all users
+	 * Executes an update built from only the columns being changed
+	 * @param update - Columns to change
+	 * @param keyColumn - Primary key column of the table
+	 * @param id - Primary key of the row to change
+	 * @return true on success, false on failure
 	 */
-	public Vector<Account> getUsers()
+	private boolean executeUpdate(UpdateBuilder update, String keyColumn, int id)
 	{
-		String query = "SELECT * FROM `users`";
+		if (update.isEmpty())
+		{
+			// Nothing to change
+			return true;
+		}
 
-		return (Vector<Account>) executeQuery(query, DataType.Account);
+		return executeQueryUpdate(update.toSql(keyColumn), update.getParameters(id));
 	}
 
 	/**
-	 * Returns a list containing all products in the database
-	 * @return List of all product
+	 * Runs work inside a transaction on a single connection. The transaction is committed when the
+	 *   work returns and rolled back when it throws. Inside a unit of work the work joins the
+	 *   request's transaction instead, which is committed with the request's other writes.
+	 * @param work - Work to do in the transaction
+	 * @return Result of the work
+	 * @throws SQLException when the work or the commit failed
 	 */
-	public Vector<Product> getProducts()
+	private <T> T executeTransaction(TransactionWork<T> work) throws SQLException
 	{
-		String query = "SELECT * FROM `product`";
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		if (unitOfWork != null)
+		{
+			boolean succeeded = false;
+
+			try
+			{
+				unitOfWork.beginTransaction();
+				T result = work.run(unitOfWork.getConnection());
+				succeeded = true;
+				return result;
+			}
+			finally
+			{
+				if (!succeeded)
+				{
+					unitOfWork.setRollbackOnly();
+				}
+			}
+		}
+
+		PooledConnection connection = connect();
+		boolean committed = false;
 
-		return (Vector<Product>) executeQuery(query, DataType.Product);
+		try
+		{
+			connection.getConnection().setAutoCommit(false);
+			T result = work.run(connection);
+			connection.getConnection().commit();
+			committed = true;
+			return result;
+		}
+		finally
+		{
+			if (!committed)
+			{
+				try
+				{
+					connection.getConnection().rollback();
+				}
+				catch (SQLException ex)
+				{
+					Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to roll back transaction", ex);
+				}
+			}
+
+			// Returning the connection to the pool restores auto commit
+			closeConnections(connection, null);
+		}
 	}
 
 	/**
-	 * Returns a list containing all products in the database with specified manufacturer ID
-	 * @param manufacturerId - ID of manufacturer
-	 * @return List of all product with specified manufacturer
+	 * Opens the request's transaction before a write. Outside a unit of work writes commit on
+	 *   their own.
+	 * @throws SQLException on failure
 	 */
-	public Vector<Product> getProducts(int manufacturerId)
+	private void beginWrite() throws SQLException
 	{
-		String query = String.format("SELECT * FROM `product` WHERE `manufacturerId` = '%d'", manufacturerId);
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		return (Vector<Product>) executeQuery(query, DataType.Product);
+		if (unitOfWork != null)
+		{
+			unitOfWork.beginTransaction();
+		}
 	}
 
 	/**
-	 * Returns a list containing all manufacturers in the database
-	 * @return List of all manufacturers
+	 * Makes sure the request's transaction is rolled back after one of its writes failed
 	 */
-	public Vector<Manufacturer> getManufacturers()
+	private void writeFailed()
 	{
-		String query = "SELECT * FROM `Manufacturer`";
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		return (Vector<Manufacturer>) executeQuery(query, DataType.Manufacturer);
+		if (unitOfWork != null)
+		{
+			unitOfWork.setRollbackOnly();
+		}
 	}
 
 	/**
-	 * Returns a list containing all reviews in the database
-	 * @return List of all reviews
+	 * Runs work once the current write is committed. Outside a transaction it already is, so the
+	 *   work runs straight away.
+	 * @param task - Work to run
 	 */
-	public Vector<Review> getReviews()
+	void afterCommit(Runnable task)
 	{
-		String query = "SELECT * FROM `reviews`";
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		return (Vector<Review>) executeQuery(query, DataType.Review);
+		if (unitOfWork != null && unitOfWork.isTransactionOpen())
+		{
+			unitOfWork.afterCommit(task);
+		}
+		else
+		{
+			task.run();
+		}
 	}
 
 	/**
-	 * Returns a list containing all reviews of specified product
-	 * @param productId - ID of product
-	 * @return List of reviews for specified product
+	 * Runs work if the current write is rolled back. Outside a transaction it is already
+	 *   committed, so the work is dropped.
+	 * @param task - Work to run
 	 */
-	public Vector<Review> getReviews(int productId)
+	private void afterRollback(Runnable task)
 	{
-		String query = String.format("SELECT * FROM `reviews` WHERE `ProductId` = '%d'", productId);
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		return (Vector<Review>) executeQuery(query, DataType.Review);
+		if (unitOfWork != null && unitOfWork.isTransactionOpen())
+		{
+			unitOfWork.afterRollback(task);
+		}
 	}
 
 	/**
-	 * Returns a list containing all transactions in the database
-	 * @return List of all transactions
+	 * Invalidates a cache entry once the current write is committed, so a lookup running alongside
+	 *   can't cache the old value again. Also used after an insert, as the new ID may have been
+	 *   looked up, and remembered as missing, before it existed.
+	 * @param cache - Cache holding the entry
+	 * @param id - Key of the entry
 	 */
-	public Vector<Transaction> getTransactions()
+	private void invalidateAfterCommit(final Cache<Integer, ?> cache, final int id)
 	{
-		String query = "SELECT * FROM `purchases`";
-
-		return (Vector<Transaction>) executeQuery(query, DataType.Transaction);
+		afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				cache.invalidate(id);
+			}
+		});
 	}
 
 	/**
-	 * Returns a list containing all transactions of a specified user
-	 * @param userId - ID of user
-	 * @return List of all transactions of user
+	 * Looks up a value through a shared cache. While the request has uncommitted writes its
+	 *   connection can see them, so it reads from the database without touching the cache.
+	 * @param cache - Cache to look in
+	 * @param loader - Loads the value on a miss
+	 * @param id - Key of the value
+	 * @return The value, null if there is none
 	 */
-	public Vector<Transaction> getTransactions(int userId)
+	private <V> V getCached(Cache<Integer, V> cache, CacheLoader<Integer, V> loader, int id)
 	{
-		String query = String.format("SELECT * FROM `purchases` WHERE `UserId` = '%d'", userId);
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		return (Vector<Transaction>) executeQuery(query, DataType.Transaction);
+		if (unitOfWork != null && unitOfWork.isTransactionOpen())
+		{
+			return loader.load(id);
+		}
+
+		return cache.get(id, loader);
 	}
 
 	/**
-	 * Deletes the specified product from the database
-	 * @param productId - ID of product to delete
-	 * @return true on success
+	 * Looks up an entity already loaded by the current request
+	 * @param type - Type of the entity
+	 * @param id - ID of the entity
+	 * @return The loaded entity, null if it hasn't been loaded or there is no unit of work
 	 */
-	public boolean DeleteProduct(int productId)
+	private <T> T findLoaded(Class<T> type, int id)
 	{
-		String query = "DELETE FROM `webstore`.`product` WHERE `product`.`ProductID` = " + productId + " LIMIT 1";
-		productNameCache.remove(productId);
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		if (unitOfWork == null)
+		{
+			return null;
+		}
 
-		return executeQueryUpdate(query);
+		return unitOfWork.find(type, id);
 	}
 
 	/**
-	 * Checks to see if a username already exists
-	 * @param username - Username to check to see if it's a duplicate
-	 * @return true if username already exists
+	 * Remembers an entity loaded by the current request
+	 * @param type - Type of the entity
+	 * @param id - ID of the entity
+	 * @param entity - Loaded entity, may be null
+	 * @return The entity
 	 */
-	public boolean checkForExistingAccount(String username)
+	private <T> T registerLoaded(Class<T> type, int id, T entity)
 	{
-		String query = String.format("SELECT 1 FROM `users` WHERE `username` = '" + Utils.sanitize(username) + "'  LIMIT 1;");
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		if (unitOfWork != null && entity != null)
+		{
+			unitOfWork.register(type, id, entity);
+		}
 
-		return executeQuerySingleResult(query) != null;
+		return entity;
 	}
 
 	/**
-	 * Checks to see if a user has already reviewed a product
-	 * @param productId - ID of product
-	 * @param userId - ID of user
-	 * @return true if user has already reviewed product
+	 * Forgets an entity the current request changed, so it is loaded again next time
+	 * @param type - Type of the entity
+	 * @param id - ID of the entity
 	 */
-	public boolean checkForExistingReview(int productId, int userId)
+	private void forgetLoaded(Class<?> type, int id)
 	{
-		String query = String.format("SELECT 1 FROM `reviews` WHERE `ProductId` = '" + productId + "' AND `UserId` = '" + userId + "'  LIMIT 1;");
+		UnitOfWork unitOfWork = UnitOfWork.current();
 
-		return executeQuerySingleResult(query) != null;
+		if (unitOfWork != null)
+		{
+			unitOfWork.forget(type, id);
+		}
 	}
 
 	/**
-	 * Executes a single query string and returns the first result as an Integer
-	 * @param query - SQL Query to execute
-	 * @return Integer result of query. Null on failure.
+	 * Reads the key generated by an INSERT prepared with PooledConnection.prepareInsert
+	 * @param statement - Executed insert statement
+	 * @return Generated key of the inserted row
+	 * @throws SQLException when no key was generated
 	 */
-	private Object executeQuerySingleResult(String query)
+	private int getGeneratedKey(PreparedStatement statement) throws SQLException
 	{
-		System.out.println("Executing: " + query.toString());
-		Connection connection = null;
-		Statement statement = null;
-		ResultSet result = null;
+		ResultSet keys = statement.getGeneratedKeys();
 
 		try
 		{
-			connection = connect();
-			statement = connection.createStatement();
-			result = statement.executeQuery(query);
-
-			if (!result.next())
+			if (!keys.next())
 			{
-				return null;
+				throw new SQLException("No key generated");
 			}
 
-			return result.getObject(1);
-		}
-		catch (Exception ex)
-		{
-			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeQuerySingleResult", ex);
+			return keys.getInt(1);
 		}
 		finally
 		{
-			closeConnections(connection, statement, result);
+			keys.close();
 		}
-
-		return null;
 	}
 
 	/**
-	 * Executes an SQL query and retrieves a list of the results
-	 * @param query - SQL query string
-	 * @param dataType - Type of data to be retrieved
-	 * @return Results of the query, a list of objects based on dataType
-	 */
-	private Vector<?> executeQuery(String query, DataType dataType)
-	{
-		System.out.println("Executing: " + query);
-		// TODO: ? Break this function down or get rid of it, it's a horrible mess
-		Vector<Account> fetchedAccount = null;
-		Vector<Product> fetchedProduct = null;
-		Vector<Manufacturer> fetchedManufacturer = null;
-		Vector<Review> fetchedReview = null;
-		Vector<Transaction> fetchedTransaction = null;
-
-		Connection connection = null;
-		Statement statement = null;
-		ResultSet result = null;
+	 * Fetches the cached prepared statement for a query and binds its parameters
+	 * @param connection - Connection to prepare the statement on
+	 * @param query - SQL query with ? placeholders
+	 * @param parameters - Values for the placeholders, in order
+	 * @return Statement ready to execute. Owned by the connection, must not be closed.
+	 * @throws SQLException on failure
+	 */
+	private PreparedStatement prepare(PooledConnection connection, String query, Object... parameters) throws SQLException
+	{
+		return bind(connection.prepareStatement(query), parameters);
+	}
 
-		// Create only the dataType container that we will be using
-		switch (dataType)
+	/**
+	 * Pads the values of an IN list to a power of four by repeating the last one, so lists of
+	 *   similar length share one statement in the connection's statement cache instead of every
+	 *   length preparing its own. Repeated values don't change what the list matches.
+	 * @param values - Values of the list, at least one
+	 * @return Padded values, as many as the placeholders from inList
+	 */
+	private static Object[] padInList(Collection<?> values)
+	{
+		int size = 1;
+		while (size < values.size())
 		{
-			case Account:
-				fetchedAccount = new Vector<Account>();
-				break;
-			case Product:
-				fetchedProduct = new Vector<Product>();
-				break;
-			case Manufacturer:
-				fetchedManufacturer = new Vector<Manufacturer>();
-				break;
-			case Review:
-				fetchedReview = new Vector<Review>();
-				break;
-			case Transaction:
-				fetchedTransaction = new Vector<Transaction>();
-				break;
+			size <<= 2;
 		}
 
-		try
-		{
-			connection = connect();
-			statement = connection.createStatement();
-			result = statement.executeQuery(query);
-
-			while (result.next())
-			{
-				// Fill the dataType container with information from the query result
-				switch (dataType)
-				{
-					case Account:
-						if (result.getBoolean("isadmin"))
-						{
-							fetchedAccount.add(
-									new Admin(
-									result.getInt("UserId"),
-									Utils.unsanatize(result.getString("userName")),
-									Utils.unsanatize(result.getString("email")),
-									Utils.unsanatize(result.getString("firstName")),
-									Utils.unsanatize(result.getString("lastName")),
-									Utils.unsanatize(result.getString("phone")),
-									Utils.unsanatize(result.getString("address"))));
-						}
-						else
-						{
-							fetchedAccount.add(
-									new User(
-									result.getInt("UserId"),
-									Utils.unsanatize(result.getString("userName")),
-									Utils.unsanatize(result.getString("email")),
-									Utils.unsanatize(result.getString("firstName")),
-									Utils.unsanatize(result.getString("lastName")),
-									Utils.unsanatize(result.getString("phone")),
-									Utils.unsanatize(result.getString("address"))));
-						}
-						break;
-					case Product:
-						fetchedProduct.add(
-								new Product(
-								result.getInt("ProductId"),
-								Utils.unsanatize(result.getString("name")),
-								result.getInt("ManufacturerID"),
-								result.getDouble("price"),
-								result.getInt("stock"),
-								Utils.unsanatize(result.getString("image")),
-								Utils.unsanatize(result.getString("description"))));
-						break;
-					case Manufacturer:
-						fetchedManufacturer.add(
-								new Manufacturer(
-								result.getInt("mId"),
-								Utils.unsanatize(result.getString("CompanyName")),
-								Utils.unsanatize(result.getString("Website"))));
-						break;
-					case Review:
-						fetchedReview.add(
-								new Review(
-								result.getInt("ReviewId"),
-								result.getInt("UserId"),
-								result.getInt("ProductId"),
-								result.getInt("Rating"),
-								Utils.unsanatize(result.getString("Comment"))));
-						break;
-					case Transaction:
-						fetchedTransaction.add(
-								new Transaction(
-								result.getInt("PurchaseId"),
-								result.getInt("UserId"),
-								result.getInt("ProductId"),
-								result.getDouble("Price"),
-								result.getDouble("ShippingPrice"),
-								Utils.unsanatize(result.getString("ShippingAddress")),
-								result.getTimestamp("date")));
-						break;
-				}
-			}
-		}
-		catch (Exception ex)
-		{
-			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to get data type " + dataType.name() + " in executeQuery", ex);
-		}
-		finally
-		{
-			closeConnections(connection, statement, result);
-		}
+		Object[] padded = new Object[size];
+		int count = 0;
 
-		// Return the dataType container
-		switch (dataType)
+		for (Object value : values)
 		{
-			case Account:
-				return fetchedAccount;
-			case Manufacturer:
-				return fetchedManufacturer;
-			case Product:
-				return fetchedProduct;
-			case Review:
-				return fetchedReview;
-			case Transaction:
-				return fetchedTransaction;
+			padded[count++] = value;
 		}
 
-		return new Vector<Object>();
+		Arrays.fill(padded, count, size, padded[count - 1]);
+		return padded;
 	}
 
 	/**
-	 * Executes an update query
-	 * @param query - Query to execute
-	 * @return true on success, false on failure
+	 * Placeholders of an IN list
+	 * @param count - Number of values, from padInList
+	 * @return The list, such as ( ?, ?, ? )
 	 */
-	private boolean executeQueryUpdate(String query)
+	private static String inList(int count)
 	{
-		System.out.println("Executing: " + query.toString());
-		Connection connection = null;
-		Statement statement = null;
+		StringBuilder list = new StringBuilder("( ?");
 
-		try
-		{
-			connection = connect();
-			statement = connection.createStatement();
-			statement.executeUpdate(query);
-			return true;
-		}
-		catch (Exception ex)
-		{
-			Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to executeQueryUpdate", ex);
-		}
-		finally
+		for (int i = 1; i < count; i++)
 		{
-			closeConnections(connection, statement, null);
+			list.append(", ?");
 		}
 
-		return false;
+		return list.append(" )").toString();
 	}
 
 	/**
-	 * Closes all of the listed connections.
-	 * @param connection - Connection to be closed. May be null.
-	 * @param statement - Statement to be closed. May be null.
-	 * @param result - ResultSet to be closed. May be null.
+	 * Binds parameters to a prepared statement
+	 * @param statement - Statement to bind to
+	 * @param parameters - Values for the placeholders, in order
+	 * @return The statement
+	 * @throws SQLException on failure
 	 */
-	private void closeConnections(Connection connection, Statement statement, ResultSet result)
+	private PreparedStatement bind(PreparedStatement statement, Object... parameters) throws SQLException
 	{
-		if (connection != null)
+		for (int i = 0; i < parameters.length; i++)
 		{
-			try
+			if (parameters[i] == null)
 			{
-				connection.close();
+				statement.setNull(i + 1, Types.NULL);
 			}
-			catch (SQLException ex)
+			else
 			{
-				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to close connection", ex);
+				statement.setObject(i + 1, parameters[i]);
 			}
 		}
 
-		if (statement != null)
-		{
-			try
-			{
-				statement.close();
-			}
-			catch (SQLException ex)
-			{
-				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to close statement", ex);
-			}
-		}
+		return statement;
+	}
 
+	/**
+	 * Closes the result and returns the connection to the pool. Prepared statements stay open in
+	 *   the connection's statement cache.
+	 * @param connection - Connection to be returned to the pool. May be null.
+	 * @param result - ResultSet to be closed. May be null.
+	 */
+	private void closeConnections(PooledConnection connection, ResultSet result)
+	{
 		if (result != null)
 		{
 			try
@@ -979,6 +4057,22 @@ public class Database
 				Logger.getLogger(Database.class.getName()).log(Level.SEVERE, "Failed to close result", ex);
 			}
 		}
+
+		// The connection of a unit of work is released when the unit of work ends
+		if (connection != null && !isUnitOfWorkConnection(connection))
+		{
+			connection.release();
+		}
 	}
-}
 
+	/**
+	 * @param connection - Connection to check
+	 * @return true if the connection is shared by the current unit of work
+	 */
+	private static boolean isUnitOfWorkConnection(PooledConnection connection)
+	{
+		UnitOfWork unitOfWork = UnitOfWork.current();
+
+		return unitOfWork != null && unitOfWork.owns(connection);
+	}
+}
@@ -0,0 +1,132 @@
+package ws.utils;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Inventory of the database inventory mode. The stock is kept in the product table, and a sale
+ *   decreases it in the transaction recording the purchases, under the product rows' locks.
+ * @author Team 10
+ */
+public class DatabaseInventory implements Inventory
+{
+	/**
+	 * Database holding the stock
+	 */
+	private final Database database;
+
+	/**
+	 * @param database - Database holding the stock
+	 */
+	DatabaseInventory(Database database)
+	{
+		this.database = database;
+	}
+
+	/**
+	 * Brings the product table up to date with stock held elsewhere by the other modes: stock
+	 *   buckets left from the sharded inventory mode are folded back into it, and sales recorded
+	 *   marked StockPending by the memory inventory mode that were never written are applied
+	 * @throws SQLException on failure
+	 */
+	public void prepare() throws SQLException
+	{
+		database.foldStockBuckets();
+		database.applyPendingSales();
+	}
+
+	/**
+	 * Nothing to load, checkouts read the product table
+	 */
+	public void load()
+	{
+	}
+
+	/**
+	 * Nothing is held outside the product table
+	 */
+	public void close()
+	{
+	}
+
+	/**
+	 * Decreases the stock in the product rows, if every product has enough
+	 * @param connection - Connection of the sale's transaction
+	 * @param units - Units of each product, sorted by product ID
+	 * @return ID of the first product without enough stock, null when every unit was taken
+	 * @throws SQLException on failure
+	 */
+	public Integer take(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		return database.takeFromProductStock(connection, units);
+	}
+
+	/**
+	 * Decreases the stock in the product rows, down to nothing
+	 * @param connection - Connection of the transaction recording the purchases
+	 * @param units - Units sold of each product, sorted by product ID
+	 * @throws SQLException on failure
+	 */
+	public void recordSold(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		database.writeSoldStock(connection, units);
+	}
+
+	/**
+	 * Nothing to give back, the rollback restored the product table
+	 * @param units - Units taken of each product
+	 */
+	public void release(Map<Integer, Integer> units)
+	{
+	}
+
+	/**
+	 * Brings the cached product and the product indexes up to date with the stock sold
+	 * @param productId - ID of the product sold
+	 * @param purchaseIds - IDs of the purchases recording the sale, one for each unit
+	 */
+	public void sold(int productId, List<Integer> purchaseIds)
+	{
+		database.stockWritten(productId, -purchaseIds.size());
+	}
+
+	/**
+	 * @return false, sales are written to the product table straight away
+	 */
+	public boolean holdsSales()
+	{
+		return false;
+	}
+
+	/**
+	 * Writes the stock to the product row
+	 * @param connection - Connection of the edit's transaction
+	 * @param productId - ID of the product
+	 * @param stock - New stock
+	 * @throws SQLException on failure
+	 */
+	public void setStock(PooledConnection connection, int productId, int stock) throws SQLException
+	{
+		database.writeProductStock(connection, productId, stock, false);
+	}
+
+	/**
+	 * Nothing to forget, the stock went with the product row
+	 * @param productId - ID of the product deleted
+	 */
+	public void deleted(int productId)
+	{
+	}
+
+	/**
+	 * The product table is always up to date
+	 * @param productId - ID of the product
+	 * @return null
+	 */
+	public Integer getStock(int productId)
+	{
+		return null;
+	}
+}
@@ -0,0 +1,354 @@
+package ws.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory Bloom filter answering whether a key might exist in the database. A "no" is always
+ *   right, so the database only has to be asked about keys the filter reports as possibly present.
+ *   Keys can't be removed; a key deleted from the database just becomes a false positive.
+ *
+ * The filter is empty and answers "maybe" to everything until it has been loaded. It is loaded,
+ *   and reloaded when it fills up, by Database. Keys put while a reload is running go into both
+ *   the old and the new filter, so none are lost in the swap.
+ *
+ * Sizes are read from the filter.&lt;name&gt;.expectedInsertions and
+ *   filter.&lt;name&gt;.falsePositiveRate settings.
+ * @author Team 10
+ */
+public class ExistenceFilter
+{
+	/**
+	 * Name of the filter, for settings and monitoring
+	 */
+	private final String name;
+	/**
+	 * Smallest number of keys a filter is sized for
+	 */
+	private final int expectedInsertions;
+	/**
+	 * Rate of false positives the filter is sized for
+	 */
+	private final double falsePositiveRate;
+	/**
+	 * Filter being checked. Null until loaded
+	 */
+	private volatile BloomFilter filter;
+	/**
+	 * Filter being loaded to replace the current one. Null when no load is running
+	 */
+	private volatile BloomFilter rebuilding;
+	// Statistics for monitoring
+	private final AtomicLong checkCount = new AtomicLong();
+	private final AtomicLong negativeCount = new AtomicLong();
+	private final AtomicLong falsePositiveCount = new AtomicLong();
+
+	/**
+	 * Fixed size bit array with the bit positions of each key derived from one 64 bit hash
+	 */
+	private static class BloomFilter
+	{
+		/**
+		 * Bits of the filter, 64 to a word
+		 */
+		private final AtomicLongArray words;
+		/**
+		 * Number of bits
+		 */
+		private final long bitCount;
+		/**
+		 * Bits set per key
+		 */
+		private final int hashCount;
+		/**
+		 * Keys the filter was sized for
+		 */
+		private final int capacity;
+		/**
+		 * Keys put into the filter, counting repeats
+		 */
+		private final AtomicInteger size = new AtomicInteger();
+
+		/**
+		 * @param capacity - Keys the filter is sized for
+		 * @param falsePositiveRate - Rate of false positives once the filter holds capacity keys
+		 */
+		BloomFilter(int capacity, double falsePositiveRate)
+		{
+			double ln2 = Math.log(2);
+			long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+
+			words = new AtomicLongArray((int) Math.max(1, (bits + 63) / 64));
+			bitCount = words.length() * 64L;
+			hashCount = Math.max(1, Math.min(16, (int) Math.round((double) bitCount / capacity * ln2)));
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Hashes a key with FNV-1a, then mixes the result so both halves are usable
+		 * @param key - Key to hash
+		 * @return 64 bit hash
+		 */
+		private static long hash(String key)
+		{
+			long hash = 0xcbf29ce484222325L;
+
+			for (int i = 0; i < key.length(); i++)
+			{
+				hash ^= key.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+			hash *= 0xc4ceb9fe1a85ec53L;
+			hash ^= hash >>> 33;
+
+			return hash;
+		}
+
+		/**
+		 * Position of one of a key's bits. Positions come from combining the two halves of the
+		 *   key's hash, which is as good as hashing the key once per bit.
+		 * @param hash - Hash of the key
+		 * @param i - Which of the key's bits
+		 * @return Bit position
+		 */
+		private long bitOf(long hash, int i)
+		{
+			long combined = (hash & 0xffffffffL) + i * (hash >>> 32);
+
+			return (combined & Long.MAX_VALUE) % bitCount;
+		}
+
+		/**
+		 * Sets the bits of a key
+		 * @param key - Key to add
+		 */
+		void put(String key)
+		{
+			long hash = hash(key);
+
+			for (int i = 0; i < hashCount; i++)
+			{
+				long bit = bitOf(hash, i);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << (bit & 63);
+
+				while (true)
+				{
+					long current = words.get(word);
+
+					if ((current & mask) != 0 || words.compareAndSet(word, current, current | mask))
+					{
+						break;
+					}
+				}
+			}
+
+			size.incrementAndGet();
+		}
+
+		/**
+		 * @param key - Key to check
+		 * @return false if the key was never put, true if it might have been
+		 */
+		boolean mightContain(String key)
+		{
+			long hash = hash(key);
+
+			for (int i = 0; i < hashCount; i++)
+			{
+				long bit = bitOf(hash, i);
+
+				if ((words.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0)
+				{
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * @param name - Name of the filter, for settings and monitoring
+	 * @param defaultExpectedInsertions - Keys to size the filter for, unless set in the settings
+	 * @param defaultFalsePositiveRate - Rate of false positives to size the filter for, unless set
+	 *   in the settings
+	 */
+	public ExistenceFilter(String name, int defaultExpectedInsertions, double defaultFalsePositiveRate)
+	{
+		this.name = name;
+		this.expectedInsertions = Math.max(1, Settings.getInt("filter." + name + ".expectedInsertions", defaultExpectedInsertions));
+
+		double rate = Settings.getDouble("filter." + name + ".falsePositiveRate", defaultFalsePositiveRate);
+		this.falsePositiveRate = (rate > 0 && rate < 1) ? rate : defaultFalsePositiveRate;
+	}
+
+	/**
+	 * Checks whether a key might exist. Before the filter is loaded every key might.
+	 * @param key - Key to check
+	 * @return false if the key certainly doesn't exist
+	 */
+	public boolean mightContain(String key)
+	{
+		BloomFilter current = filter;
+		checkCount.incrementAndGet();
+
+		if (current == null || current.mightContain(key))
+		{
+			return true;
+		}
+
+		negativeCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Records that a key the filter reported as possibly present turned out not to exist
+	 */
+	public void recordFalsePositive()
+	{
+		if (filter != null)
+		{
+			falsePositiveCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a key that now exists
+	 * @param key - Key to add
+	 */
+	public void put(String key)
+	{
+		// The new filter first, so a key is never missing from both sides of a swap
+		BloomFilter next = rebuilding;
+		if (next != null)
+		{
+			next.put(key);
+		}
+
+		BloomFilter current = filter;
+		if (current != null)
+		{
+			current.put(key);
+		}
+	}
+
+	/**
+	 * Starts loading a new filter. Every existing key must then be put before finishRebuild.
+	 * @param rows - Number of keys about to be loaded
+	 */
+	void beginRebuild(int rows)
+	{
+		// Room to grow, so the filter isn't reloaded again soon
+		rebuilding = new BloomFilter(Math.max(expectedInsertions, rows * 2), falsePositiveRate);
+	}
+
+	/**
+	 * Replaces the filter with the one just loaded
+	 */
+	void finishRebuild()
+	{
+		filter = rebuilding;
+		rebuilding = null;
+	}
+
+	/**
+	 * Discards a load that failed. The current filter stays in use.
+	 */
+	void abortRebuild()
+	{
+		rebuilding = null;
+	}
+
+	/**
+	 * @return true if the filter holds more keys than it was sized for, and should be reloaded
+	 */
+	boolean isOverCapacity()
+	{
+		BloomFilter current = filter;
+
+		return current != null && rebuilding == null && current.size.get() > current.capacity;
+	}
+
+	/**
+	 * Name of the filter
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return true once the filter has been loaded
+	 */
+	public boolean isReady()
+	{
+		return filter != null;
+	}
+
+	/**
+	 * Keys the filter is sized for
+	 * @return the capacity, 0 before the filter is loaded
+	 */
+	public int getCapacity()
+	{
+		BloomFilter current = filter;
+
+		return (current == null) ? 0 : current.capacity;
+	}
+
+	/**
+	 * Keys put into the filter, counting repeats
+	 * @return the size, 0 before the filter is loaded
+	 */
+	public int getSize()
+	{
+		BloomFilter current = filter;
+
+		return (current == null) ? 0 : current.size.get();
+	}
+
+	/**
+	 * Memory used by the filter's bits
+	 * @return the number of bytes
+	 */
+	public long getByteCount()
+	{
+		BloomFilter current = filter;
+
+		return (current == null) ? 0 : current.bitCount / 8;
+	}
+
+	/**
+	 * Number of keys checked
+	 * @return the checkCount
+	 */
+	public long getCheckCount()
+	{
+		return checkCount.get();
+	}
+
+	/**
+	 * Number of checks answered without the database
+	 * @return the negativeCount
+	 */
+	public long getNegativeCount()
+	{
+		return negativeCount.get();
+	}
+
+	/**
+	 * Number of keys reported as possibly present that didn't exist
+	 * @return the falsePositiveCount
+	 */
+	public long getFalsePositiveCount()
+	{
+		return falsePositiveCount.get();
+	}
+}
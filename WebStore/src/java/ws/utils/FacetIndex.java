@@ -0,0 +1,401 @@
+package ws.utils;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bitmaps of the products having each facet value: one per manufacturer, one per price band and
+ *   one of the products in stock. Bit n of a bitmap is the product with ID n, so narrowing the
+ *   catalog by several facets is an AND of a few bitmaps, and counting the products a facet value
+ *   would leave is the size of one more.
+ *
+ * Price bands are read from the facet.priceBands setting, a list of ascending prices each band
+ *   ends before.
+ * @author Team 10
+ */
+public class FacetIndex implements ProductIndex
+{
+	/**
+	 * Prices each price band ends before, ascending. The last band has no upper bound
+	 */
+	private final double[] priceBandBounds;
+	/**
+	 * Every indexed product. Guarded by lock
+	 */
+	private final BitSet all = new BitSet();
+	/**
+	 * Products with stock left. Guarded by lock
+	 */
+	private final BitSet inStock = new BitSet();
+	/**
+	 * Products of each manufacturer, by manufacturer ID. Guarded by lock
+	 */
+	private final Map<Integer, BitSet> manufacturers = new TreeMap<Integer, BitSet>();
+	/**
+	 * Products in each price band. Guarded by lock
+	 */
+	private final BitSet[] priceBands;
+	/**
+	 * Manufacturer ID and price band of each indexed product, to clear its bits. Guarded by lock
+	 */
+	private final Map<Integer, int[]> documents = new HashMap<Integer, int[]>();
+	/**
+	 * Selections share the bitmaps, changes are serialized
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates an empty index with the configured price bands
+	 */
+	public FacetIndex()
+	{
+		priceBandBounds = parseBounds(Settings.get("facet.priceBands", "10,25,50,100,250"));
+		priceBands = new BitSet[priceBandBounds.length + 1];
+
+		for (int i = 0; i < priceBands.length; i++)
+		{
+			priceBands[i] = new BitSet();
+		}
+	}
+
+	/**
+	 * Reads the price band bounds setting
+	 * @param setting - Comma separated ascending prices
+	 * @return Bounds, empty when the setting is malformed
+	 */
+	private static double[] parseBounds(String setting)
+	{
+		String[] parts = setting.split(",");
+		double[] bounds = new double[parts.length];
+
+		try
+		{
+			for (int i = 0; i < parts.length; i++)
+			{
+				bounds[i] = Double.parseDouble(parts[i].trim());
+
+				if (i > 0 && bounds[i] <= bounds[i - 1])
+				{
+					throw new NumberFormatException("Price bands must be ascending");
+				}
+			}
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			Logger.getLogger(FacetIndex.class.getName()).log(Level.WARNING, "Invalid value for facet.priceBands, using a single band", numberFormatException);
+			return new double[0];
+		}
+
+		return bounds;
+	}
+
+	/**
+	 * Empties the index
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			all.clear();
+			inStock.clear();
+			manufacturers.clear();
+			for (BitSet band : priceBands)
+			{
+				band.clear();
+			}
+			documents.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the bits of a product's manufacturer, price band and stock
+	 * @param product - Product to index
+	 */
+	public void index(Product product)
+	{
+		int id = product.getId();
+		int band = priceBandOf(product.getPrice());
+
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(id);
+
+			BitSet manufacturer = manufacturers.get(product.getManufacturerId());
+			if (manufacturer == null)
+			{
+				manufacturer = new BitSet();
+				manufacturers.put(product.getManufacturerId(), manufacturer);
+			}
+
+			manufacturer.set(id);
+			priceBands[band].set(id);
+			inStock.set(id, product.getStock() > 0);
+			all.set(id);
+			documents.put(id, new int[] { product.getManufacturerId(), band });
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Clears the bits of a product
+	 * @param productId - ID of the product
+	 */
+	public void remove(int productId)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(productId);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Clears the bits of a product. Lock must be held for writing
+	 * @param productId - ID of the product
+	 */
+	private void removeDocument(int productId)
+	{
+		int[] document = documents.remove(productId);
+
+		if (document == null)
+		{
+			return;
+		}
+
+		BitSet manufacturer = manufacturers.get(document[0]);
+		manufacturer.clear(productId);
+		if (manufacturer.isEmpty())
+		{
+			manufacturers.remove(document[0]);
+		}
+
+		priceBands[document[1]].clear(productId);
+		inStock.clear(productId);
+		all.clear(productId);
+	}
+
+	/**
+	 * Narrows products down by facets. Each facet is counted with the other selected facets
+	 *   applied but not itself, so the counts show what picking a different value would leave.
+	 * @param candidates - IDs of the products to narrow down, in display order. Null for all
+	 *   products, in ID order.
+	 * @param manufacturerId - Manufacturer to keep products of, null for any
+	 * @param priceBand - Price band to keep products in, null for any
+	 * @param inStockOnly - true to keep only products in stock
+	 * @return Matching products and facet counts
+	 */
+	public ProductSelection select(List<Integer> candidates, Integer manufacturerId, Integer priceBand, boolean inStockOnly)
+	{
+		List<Integer> ids = new ArrayList<Integer>();
+		Map<Integer, Integer> manufacturerCounts = new TreeMap<Integer, Integer>();
+		int[] priceBandCounts = new int[priceBands.length];
+		int inStockCount;
+
+		lock.readLock().lock();
+		try
+		{
+			BitSet base = (BitSet) all.clone();
+
+			if (candidates != null)
+			{
+				BitSet candidateBits = new BitSet();
+				for (Integer id : candidates)
+				{
+					candidateBits.set(id);
+				}
+				base.and(candidateBits);
+			}
+
+			// Out of range price bands are ignored, like malformed cursors
+			BitSet manufacturerFilter = null;
+			BitSet priceBandFilter = null;
+			BitSet stockFilter = inStockOnly ? inStock : null;
+
+			if (manufacturerId != null)
+			{
+				manufacturerFilter = manufacturers.get(manufacturerId);
+				if (manufacturerFilter == null)
+				{
+					manufacturerFilter = new BitSet();
+				}
+			}
+			if (priceBand != null && priceBand >= 0 && priceBand < priceBands.length)
+			{
+				priceBandFilter = priceBands[priceBand];
+			}
+
+			for (Map.Entry<Integer, BitSet> manufacturer : manufacturers.entrySet())
+			{
+				int count = countOf(base, manufacturer.getValue(), priceBandFilter, stockFilter);
+				if (count > 0 || manufacturer.getKey().equals(manufacturerId))
+				{
+					manufacturerCounts.put(manufacturer.getKey(), count);
+				}
+			}
+			for (int i = 0; i < priceBands.length; i++)
+			{
+				priceBandCounts[i] = countOf(base, priceBands[i], manufacturerFilter, stockFilter);
+			}
+			inStockCount = countOf(base, inStock, manufacturerFilter, priceBandFilter);
+
+			BitSet matches = intersect(base, manufacturerFilter, priceBandFilter, stockFilter);
+
+			if (candidates != null)
+			{
+				for (Integer id : candidates)
+				{
+					if (matches.get(id))
+					{
+						ids.add(id);
+					}
+				}
+			}
+			else
+			{
+				for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1))
+				{
+					ids.add(id);
+				}
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		// Names are looked up outside the lock, they may need a query
+		List<FacetValue> manufacturerValues = new ArrayList<FacetValue>();
+		for (Map.Entry<Integer, Integer> count : manufacturerCounts.entrySet())
+		{
+			String name = Database.getInstance().getManufacturerName(count.getKey());
+			if (name == null)
+			{
+				name = "Manufacturer " + count.getKey();
+			}
+
+			manufacturerValues.add(new FacetValue(count.getKey(), name, count.getValue()));
+		}
+
+		List<FacetValue> priceBandValues = new ArrayList<FacetValue>();
+		for (int i = 0; i < priceBandCounts.length; i++)
+		{
+			if (priceBandCounts[i] > 0 || (priceBand != null && priceBand == i))
+			{
+				priceBandValues.add(new FacetValue(i, priceBandLabel(i), priceBandCounts[i]));
+			}
+		}
+
+		return new ProductSelection(ids, manufacturerValues, priceBandValues, inStockCount);
+	}
+
+	/**
+	 * ANDs bitmaps together into a new bitmap
+	 * @param base - First bitmap, not modified
+	 * @param filters - Bitmaps to AND with, null ones are skipped
+	 * @return Intersection of the bitmaps
+	 */
+	private static BitSet intersect(BitSet base, BitSet... filters)
+	{
+		BitSet result = (BitSet) base.clone();
+
+		for (BitSet filter : filters)
+		{
+			if (filter != null)
+			{
+				result.and(filter);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Counts the products in every bitmap
+	 * @param base - First bitmap
+	 * @param filters - Bitmaps to AND with, null ones are skipped
+	 * @return Size of the intersection
+	 */
+	private static int countOf(BitSet base, BitSet... filters)
+	{
+		return intersect(base, filters).cardinality();
+	}
+
+	/**
+	 * @param price - Price of a product
+	 * @return Price band of the price
+	 */
+	private int priceBandOf(double price)
+	{
+		int band = 0;
+
+		while (band < priceBandBounds.length && price >= priceBandBounds[band])
+		{
+			band++;
+		}
+
+		return band;
+	}
+
+	/**
+	 * @param band - Price band
+	 * @return Text describing the prices in the band
+	 */
+	private String priceBandLabel(int band)
+	{
+		NumberFormat currency = NumberFormat.getCurrencyInstance(Locale.US);
+
+		if (priceBandBounds.length == 0)
+		{
+			return "Any price";
+		}
+		if (band == 0)
+		{
+			return "Under " + currency.format(priceBandBounds[0]);
+		}
+		if (band == priceBandBounds.length)
+		{
+			return currency.format(priceBandBounds[band - 1]) + " and up";
+		}
+
+		return currency.format(priceBandBounds[band - 1]) + " to " + currency.format(priceBandBounds[band]);
+	}
+
+	/**
+	 * Number of products in the index
+	 * @return the document count
+	 */
+	public int getDocumentCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documents.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package ws.utils;
+
+/**
+ * One value of a facet products can be narrowed by, with the number of products it would leave
+ * @author Team 10
+ */
+public class FacetValue
+{
+	/**
+	 * Value to request the facet with, such as a manufacturer ID
+	 */
+	private final int id;
+	/**
+	 * Text shown for the value
+	 */
+	private final String label;
+	/**
+	 * Number of products matching the value, given the other facets selected
+	 */
+	private final int count;
+
+	/**
+	 * @param id - Value to request the facet with
+	 * @param label - Text shown for the value
+	 * @param count - Number of products matching the value
+	 */
+	public FacetValue(int id, String label, int count)
+	{
+		this.id = id;
+		this.label = label;
+		this.count = count;
+	}
+
+	/**
+	 * Value to request the facet with, such as a manufacturer ID
+	 * @return the id
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Text shown for the value
+	 * @return the label
+	 */
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Number of products matching the value, given the other facets selected
+	 * @return the count
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+}
@@ -0,0 +1,107 @@
+package ws.utils;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Where the stock of the products is kept while they are sold, one implementation for each
+ *   InventoryMode. Every checkout records its sale the same way: it takes the units from the
+ *   inventory in the transaction that records the purchases, then tells the inventory that the
+ *   units were sold once the transaction commits, or gives them back if it rolls back. An
+ *   inventory runs its SQL through Database.
+ *
+ * Database loads the inventory of the configured mode once, see Database.loadInventory, and
+ *   takes no checkouts until that has succeeded, including recording the checkouts left in the
+ *   purchase log.
+ * @author Team 10
+ */
+public interface Inventory
+{
+	/**
+	 * Brings the place the stock is kept up to date with what the other modes left behind, such as
+	 *   sales held in memory or stock buckets when the server stopped. Called first, before the
+	 *   checkouts left in the purchase log are recorded through the inventory.
+	 * @throws SQLException on failure, the inventory isn't used
+	 */
+	void prepare() throws SQLException;
+
+	/**
+	 * Gets the stock ready for checkouts and starts any background work, once the checkouts left
+	 *   in the purchase log have been recorded
+	 * @throws SQLException on failure, the inventory isn't used
+	 */
+	void load() throws SQLException;
+
+	/**
+	 * Stops the background work and writes what it still holds to the product table. Called when
+	 *   the application is shut down.
+	 */
+	void close();
+
+	/**
+	 * Takes units of products for a sale, in the transaction that records it. Either every unit is
+	 *   taken or none are.
+	 * @param connection - Connection of the sale's transaction
+	 * @param units - Units of each product, sorted by product ID so rows are locked in the same
+	 *   order by every sale
+	 * @return ID of the first product without enough stock, null when every unit was taken
+	 * @throws SQLException on failure. Database gives the units back with release when the
+	 *   transaction fails.
+	 */
+	Integer take(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException;
+
+	/**
+	 * Records units sold by checkouts that didn't take them from the inventory, such as those from
+	 *   the purchase log, in the transaction recording their purchases. The buyers were already
+	 *   told the units are theirs, so a product without enough left is taken down to nothing.
+	 * @param connection - Connection of the transaction recording the purchases
+	 * @param units - Units sold of each product, sorted by product ID
+	 * @throws SQLException on failure
+	 */
+	void recordSold(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException;
+
+	/**
+	 * Gives back units taken for a sale whose transaction rolled back. Units taken from the
+	 *   database came back with the rollback.
+	 * @param units - Units taken of each product
+	 */
+	void release(Map<Integer, Integer> units);
+
+	/**
+	 * Completes the sale of units taken for a sale, once its transaction has committed
+	 * @param productId - ID of the product sold
+	 * @param purchaseIds - IDs of the purchases recording the sale, one for each unit
+	 */
+	void sold(int productId, List<Integer> purchaseIds);
+
+	/**
+	 * @return true if sales are held until they are written to the product table, so their
+	 *   purchases are recorded marked StockPending
+	 */
+	boolean holdsSales();
+
+	/**
+	 * Sets the stock of a product, such as from an edit, in the transaction making the edit. What
+	 *   the inventory holds itself is changed once the edit commits, see Database.afterCommit.
+	 * @param connection - Connection of the edit's transaction
+	 * @param productId - ID of the product
+	 * @param stock - New stock
+	 * @throws SQLException on failure
+	 */
+	void setStock(PooledConnection connection, int productId, int stock) throws SQLException;
+
+	/**
+	 * Forgets a product once its deletion has committed
+	 * @param productId - ID of the product deleted
+	 */
+	void deleted(int productId);
+
+	/**
+	 * Current stock of a product, when the product table lags behind it
+	 * @param productId - ID of the product
+	 * @return Units in stock, null when the product table is up to date or the product is unknown
+	 */
+	Integer getStock(int productId);
+}
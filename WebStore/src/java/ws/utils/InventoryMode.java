@@ -0,0 +1,64 @@
+package ws.utils;
+
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Where stock is kept while products are being sold, read from the inventory.mode setting
+ * @author Team 10
+ */
+public enum InventoryMode
+{
+	/**
+	 * Stock is kept in the product table, and each checkout's transaction decreases it
+	 */
+	DATABASE,
+	/**
+	 * Stock is kept in memory, see StockCounters, and sales are written to the product table in
+	 *   the background
+	 */
+	MEMORY,
+	/**
+	 * Stock is split across rows of the product_stock_bucket table, and each checkout takes from
+	 *   a random bucket with stock left. The product table is brought up to date in the background.
+	 */
+	SHARDED;
+
+	/**
+	 * Reads the inventory.mode setting
+	 * @return The configured mode, DATABASE when unset or unknown
+	 */
+	static InventoryMode fromSettings()
+	{
+		String setting = Settings.get("inventory.mode", "database");
+
+		try
+		{
+			return valueOf(setting.trim().toUpperCase(Locale.ENGLISH));
+		}
+		catch (IllegalArgumentException illegalArgumentException)
+		{
+			Logger.getLogger(InventoryMode.class.getName()).log(Level.WARNING, "Unknown inventory.mode " + setting + ", using database");
+			return DATABASE;
+		}
+	}
+
+	/**
+	 * Creates the inventory of the mode
+	 * @param database - Database the inventory runs its SQL through
+	 * @return The inventory, not yet loaded
+	 */
+	Inventory createInventory(Database database)
+	{
+		switch (this)
+		{
+			case MEMORY:
+				return new MemoryInventory(database);
+			case SHARDED:
+				return new ShardedInventory(database);
+			default:
+				return new DatabaseInventory(database);
+		}
+	}
+}
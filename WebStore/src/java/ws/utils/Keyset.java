@@ -0,0 +1,182 @@
+package ws.utils;
+
+/**
+ * Describes how a query is ordered for keyset pagination. Instead of skipping rows with OFFSET,
+ *   a page continues from the key of the last row shown, so each page costs the same no matter
+ *   how deep into the table it is. The key columns must uniquely identify a row.
+ * Cursors handed out to pages are the key values of a row joined with '_'.
+ * @param <T> Type of object the paged rows are mapped to
+ * @author Team 10
+ */
+public abstract class Keyset<T>
+{
+	/**
+	 * Separator between the key values of a cursor
+	 */
+	private static final String CURSOR_SEPARATOR = "_";
+	/**
+	 * Qualified names of the key columns, most significant first
+	 */
+	private final String[] columns;
+	/**
+	 * Flag set when pages list rows from the largest key to the smallest
+	 */
+	private final boolean descending;
+
+	/**
+	 * @param descending - true to list rows from the largest key to the smallest
+	 * @param columns - Qualified names of the key columns, most significant first
+	 */
+	protected Keyset(boolean descending, String... columns)
+	{
+		this.descending = descending;
+		this.columns = columns;
+	}
+
+	/**
+	 * Reads the key of a row
+	 * @param item - Row to read
+	 * @return Key values, in the order of the key columns
+	 */
+	protected abstract long[] key(T item);
+
+	/**
+	 * Converts a key value read from a cursor into a query parameter. Override for key columns
+	 *   that aren't numbers.
+	 * @param column - Position of the key column
+	 * @param value - Key value
+	 * @return Query parameter for the value
+	 */
+	protected Object toParameter(int column, long value)
+	{
+		return value;
+	}
+
+	/**
+	 * Creates the cursor of a row
+	 * @param item - Row to create the cursor of
+	 * @return Cursor to continue paging from the row
+	 */
+	public String encode(T item)
+	{
+		long[] key = key(item);
+		StringBuilder cursor = new StringBuilder();
+
+		for (int i = 0; i < key.length; i++)
+		{
+			if (i > 0)
+			{
+				cursor.append(CURSOR_SEPARATOR);
+			}
+			cursor.append(key[i]);
+		}
+
+		return cursor.toString();
+	}
+
+	/**
+	 * Reads the key values out of a cursor. Cursors come from request parameters, so anything
+	 *   malformed is ignored rather than reported.
+	 * @param cursor - Cursor to read
+	 * @return Query parameters for the key values. Null when the cursor is malformed.
+	 */
+	public Object[] decode(String cursor)
+	{
+		String[] parts = cursor.split(CURSOR_SEPARATOR);
+
+		if (parts.length != columns.length)
+		{
+			return null;
+		}
+
+		Object[] key = new Object[parts.length];
+
+		try
+		{
+			for (int i = 0; i < parts.length; i++)
+			{
+				key[i] = toParameter(i, Long.parseLong(parts[i]));
+			}
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			return null;
+		}
+
+		return key;
+	}
+
+	/**
+	 * Builds the condition selecting the rows after or before a key, expanded so a composite key
+	 *   works on servers without row constructor comparisons:
+	 *   (a > ?) OR (a = ? AND b > ?) ...
+	 * @param forward - true for the rows after the key, false for the rows before it
+	 * @return Condition with placeholders for seekParameters
+	 */
+	public String seekCondition(boolean forward)
+	{
+		String comparison = (forward != descending) ? " > ?" : " < ?";
+		StringBuilder condition = new StringBuilder("( ");
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (i > 0)
+			{
+				condition.append(" OR ");
+			}
+
+			condition.append("( ");
+			for (int j = 0; j < i; j++)
+			{
+				condition.append(columns[j]).append(" = ? AND ");
+			}
+			condition.append(columns[i]).append(comparison).append(" )");
+		}
+
+		return condition.append(" )").toString();
+	}
+
+	/**
+	 * Values for the placeholders of seekCondition
+	 * @param key - Key values from decode
+	 * @return Query parameters, in order
+	 */
+	public Object[] seekParameters(Object[] key)
+	{
+		Object[] parameters = new Object[columns.length * (columns.length + 1) / 2];
+		int position = 0;
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			for (int j = 0; j <= i; j++)
+			{
+				parameters[position++] = key[j];
+			}
+		}
+
+		return parameters;
+	}
+
+	/**
+	 * Builds the ORDER BY clause of a page. Pages before a cursor are read in reverse so the rows
+	 *   nearest the cursor come first, and must be flipped back afterwards.
+	 * @param forward - false when reading the rows before a cursor
+	 * @return ORDER BY clause
+	 */
+	public String orderBy(boolean forward)
+	{
+		String direction = (forward != descending) ? " ASC" : " DESC";
+		StringBuilder order = new StringBuilder("ORDER BY ");
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (i > 0)
+			{
+				order.append(", ");
+			}
+			order.append(columns[i]).append(direction);
+		}
+
+		return order.toString();
+	}
+}
@@ -0,0 +1,278 @@
+package ws.utils;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Inventory of the memory inventory mode. The stock of every product is held in StockCounters, so
+ *   concurrent buyers of a product reserve units without waiting on its row, and their purchases
+ *   are recorded marked StockPending. Sales are written to the product table every
+ *   inventory.writeIntervalMs, in batches of inventory.writeBatchSize.
+ * @author Team 10
+ */
+public class MemoryInventory implements Inventory
+{
+	/**
+	 * Most sales written to the product table in one transaction
+	 */
+	private static final int WRITE_BATCH_SIZE = Math.max(1, Settings.getInt("inventory.writeBatchSize", 500));
+	/**
+	 * Milliseconds between writes of the sales to the product table
+	 */
+	private static final long WRITE_INTERVAL_MS = Math.max(10, Settings.getLong("inventory.writeIntervalMs", 100));
+	/**
+	 * Database holding the product table
+	 */
+	private final Database database;
+	/**
+	 * Stock of every product
+	 */
+	private final StockCounters counters = new StockCounters();
+	/**
+	 * Writes the sales to the product table, null until loaded and once closed. Guarded by counters
+	 */
+	private Timer writer;
+
+	/**
+	 * @param database - Database holding the product table
+	 */
+	MemoryInventory(Database database)
+	{
+		this.database = database;
+	}
+
+	/**
+	 * Applies sales recorded marked StockPending that were never written, such as when the server
+	 *   stopped, and stock buckets left from the sharded inventory mode to the product table
+	 * @throws SQLException on failure
+	 */
+	public void prepare() throws SQLException
+	{
+		database.foldStockBuckets();
+		database.applyPendingSales();
+	}
+
+	/**
+	 * Loads the stock of every product into memory and starts writing sales
+	 * @throws SQLException on failure
+	 */
+	public void load() throws SQLException
+	{
+		for (Map.Entry<Integer, Integer> product : database.readStock().entrySet())
+		{
+			counters.load(product.getKey(), product.getValue());
+		}
+
+		counters.setLoaded();
+
+		synchronized (counters)
+		{
+			writer = new Timer("Inventory writer", true);
+			writer.schedule(new TimerTask()
+			{
+				@Override
+				public void run()
+				{
+					writeSales();
+				}
+			}, WRITE_INTERVAL_MS, WRITE_INTERVAL_MS);
+		}
+	}
+
+	/**
+	 * Stops the writer and writes the sales still held in memory
+	 */
+	public void close()
+	{
+		synchronized (counters)
+		{
+			if (writer != null)
+			{
+				writer.cancel();
+				writer = null;
+			}
+		}
+
+		writeSales();
+	}
+
+	/**
+	 * Reserves units of a product outside of any transaction, for checkouts that reach the
+	 *   database later, see Database.checkoutToLog
+	 * @param productId - ID of the product
+	 * @param quantity - Units to reserve
+	 * @return true if the units were reserved, false if there weren't enough
+	 */
+	public boolean reserve(int productId, int quantity)
+	{
+		return counters.reserve(productId, quantity);
+	}
+
+	/**
+	 * Returns units reserved with reserve whose checkout failed
+	 * @param productId - ID of the product
+	 * @param quantity - Units reserved
+	 */
+	public void release(int productId, int quantity)
+	{
+		counters.release(productId, quantity);
+	}
+
+	/**
+	 * Reserves the units in memory, releasing those already reserved if a product runs out
+	 * @param connection - Connection of the sale's transaction, not used
+	 * @param units - Units of each product, sorted by product ID
+	 * @return ID of the first product without enough stock, null when every unit was reserved
+	 */
+	public Integer take(PooledConnection connection, SortedMap<Integer, Integer> units)
+	{
+		for (Map.Entry<Integer, Integer> line : units.entrySet())
+		{
+			if (!counters.reserve(line.getKey(), line.getValue()))
+			{
+				release(units.headMap(line.getKey()));
+				return line.getKey();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Decreases the stock in the product rows, down to nothing. The units of logged checkouts were
+	 *   reserved when they were logged, and those recorded before the counters are loaded are read
+	 *   with the rest of the stock.
+	 * @param connection - Connection of the transaction recording the purchases
+	 * @param units - Units sold of each product, sorted by product ID
+	 * @throws SQLException on failure
+	 */
+	public void recordSold(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		database.writeSoldStock(connection, units);
+	}
+
+	/**
+	 * Returns the reserved units to the counters
+	 * @param units - Units taken of each product
+	 */
+	public void release(Map<Integer, Integer> units)
+	{
+		for (Map.Entry<Integer, Integer> line : units.entrySet())
+		{
+			counters.release(line.getKey(), line.getValue());
+		}
+	}
+
+	/**
+	 * Queues the sale to be written, one unit for each purchase, as applyPendingSales counts one
+	 *   unit per marked purchase
+	 * @param productId - ID of the product sold
+	 * @param purchaseIds - IDs of the purchases recording the sale, one for each unit
+	 */
+	public void sold(int productId, List<Integer> purchaseIds)
+	{
+		for (Integer purchaseId : purchaseIds)
+		{
+			counters.commit(productId, purchaseId, 1);
+		}
+	}
+
+	/**
+	 * @return true, sales are held in memory until they are written
+	 */
+	public boolean holdsSales()
+	{
+		return true;
+	}
+
+	/**
+	 * Sets the stock of a product. Sales held in memory haven't reached the product table, so it
+	 *   is changed by the same amount as the counters, which are changed once the edit commits.
+	 * @param connection - Connection of the edit's transaction
+	 * @param productId - ID of the product
+	 * @param stock - New stock
+	 * @throws SQLException on failure
+	 */
+	public void setStock(PooledConnection connection, final int productId, final int stock) throws SQLException
+	{
+		Integer current = counters.getStock(productId);
+
+		if (current == null)
+		{
+			database.writeProductStock(connection, productId, stock, false);
+			database.afterCommit(new Runnable()
+			{
+				public void run()
+				{
+					counters.load(productId, stock);
+				}
+			});
+			return;
+		}
+
+		final int change = stock - current;
+		database.writeProductStock(connection, productId, change, true);
+		database.afterCommit(new Runnable()
+		{
+			public void run()
+			{
+				counters.adjust(productId, change);
+			}
+		});
+	}
+
+	/**
+	 * Forgets the stock of a deleted product
+	 * @param productId - ID of the product deleted
+	 */
+	public void deleted(int productId)
+	{
+		counters.remove(productId);
+	}
+
+	/**
+	 * @param productId - ID of the product
+	 * @return Units in stock held in memory, null if the product is unknown
+	 */
+	public Integer getStock(int productId)
+	{
+		return counters.getStock(productId);
+	}
+
+	/**
+	 * Stock held in memory, for monitoring
+	 * @return the stock counters
+	 */
+	public StockCounters getStockCounters()
+	{
+		return counters;
+	}
+
+	/**
+	 * Writes the sales held in memory to the product table, in batches of WRITE_BATCH_SIZE. Batches
+	 *   that fail are kept for the next write.
+	 */
+	private void writeSales()
+	{
+		synchronized (counters)
+		{
+			List<StockCounters.Sale> sales = counters.drain(WRITE_BATCH_SIZE);
+
+			while (!sales.isEmpty())
+			{
+				if (!database.writeSales(sales))
+				{
+					counters.requeue(sales);
+					return;
+				}
+
+				counters.written(sales.size());
+				sales = counters.drain(WRITE_BATCH_SIZE);
+			}
+		}
+	}
+}
@@ -0,0 +1,695 @@
+package ws.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Product names by ID, and a prefix trie of them for suggesting products as a name is typed.
+ *
+ * Names are normalized to lower case words separated by single spaces, and every word of a name
+ *   starts a key, so "used pa" finds "Slightly used paper". The trie is compressed: a chain of
+ *   nodes with one child each is stored as a single node labelled with the whole chain. Every
+ *   node keeps the best selling products below it, so suggesting is a walk down the prefix and
+ *   doesn't depend on how many products match. Adding or removing a product only updates the
+ *   nodes on the paths of its keys.
+ *
+ * The number of suggestions kept per node is read from the suggest.maxResults setting.
+ * @author Team 10
+ */
+public class NameIndex implements ProductIndex
+{
+	/**
+	 * Most products suggested for a prefix
+	 */
+	private static final int MAX_RESULTS = Math.max(1, Settings.getInt("suggest.maxResults", 10));
+	/**
+	 * Shared empty arrays, most nodes have no products or no children
+	 */
+	private static final int[] NO_IDS = new int[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+	/**
+	 * Root of the trie, with an empty label. Guarded by lock
+	 */
+	private Node root = new Node(new char[0]);
+	/**
+	 * Indexed products, by ID. Guarded by lock
+	 */
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	/**
+	 * Lookups share the index, changes are serialized
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * Orders products best selling first, then by name
+	 */
+	private final Comparator<Integer> rank = new Comparator<Integer>()
+	{
+		public int compare(Integer a, Integer b)
+		{
+			Entry first = entries.get(a);
+			Entry second = entries.get(b);
+
+			if (first.salesCount != second.salesCount)
+			{
+				return (first.salesCount > second.salesCount) ? -1 : 1;
+			}
+
+			int order = first.key.compareTo(second.key);
+			return (order != 0) ? order : a.compareTo(b);
+		}
+	};
+
+	/**
+	 * Indexed product
+	 */
+	private static class Entry
+	{
+		/**
+		 * Name of the product, as stored
+		 */
+		final String name;
+		/**
+		 * Normalized name of the product
+		 */
+		final String key;
+		/**
+		 * Number of units sold, to rank suggestions by
+		 */
+		final int salesCount;
+
+		/**
+		 * @param name - Name of the product, as stored
+		 * @param key - Normalized name of the product
+		 * @param salesCount - Number of units sold
+		 */
+		Entry(String name, String key, int salesCount)
+		{
+			this.name = name;
+			this.key = key;
+			this.salesCount = salesCount;
+		}
+	}
+
+	/**
+	 * Node of the trie
+	 */
+	private static class Node
+	{
+		/**
+		 * Characters on the edge leading to the node
+		 */
+		char[] label;
+		/**
+		 * Child nodes, sorted by the first character of their label
+		 */
+		Node[] children = NO_CHILDREN;
+		/**
+		 * Products with a key ending at the node
+		 */
+		int[] ids = NO_IDS;
+		/**
+		 * Best ranked products at or below the node, best first
+		 */
+		int[] top = NO_IDS;
+
+		/**
+		 * @param label - Characters on the edge leading to the node
+		 */
+		Node(char[] label)
+		{
+			this.label = label;
+		}
+
+		/**
+		 * Finds the child whose label starts with a character
+		 * @param c - First character of the label
+		 * @return Position of the child, or (-(insertion point) - 1) when there is none
+		 */
+		int childIndex(char c)
+		{
+			int low = 0;
+			int high = children.length - 1;
+
+			while (low <= high)
+			{
+				int middle = (low + high) >>> 1;
+				char first = children[middle].label[0];
+
+				if (first < c)
+				{
+					low = middle + 1;
+				}
+				else if (first > c)
+				{
+					high = middle - 1;
+				}
+				else
+				{
+					return middle;
+				}
+			}
+
+			return -(low + 1);
+		}
+	}
+
+	/**
+	 * Empties the index
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			root = new Node(new char[0]);
+			entries.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes the name of a product, ranked by its sales
+	 * @param product - Product to index
+	 */
+	public void index(Product product)
+	{
+		String key = normalize(product.getName());
+
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(product.getId());
+
+			entries.put(product.getId(), new Entry(product.getName(), key, product.getSalesCount()));
+			for (String suffix : keysOf(key))
+			{
+				insert(suffix, product.getId());
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a product from the index
+	 * @param productId - ID of the product
+	 */
+	public void remove(int productId)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(productId);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Suggests products whose name has a word starting with a prefix
+	 * @param prefix - Start of the name, as typed
+	 * @param limit - Most suggestions to return, capped by the suggest.maxResults setting
+	 * @return Best selling matching products first. Empty when the prefix has no words.
+	 */
+	public List<Suggestion> suggest(String prefix, int limit)
+	{
+		String key = normalize(prefix);
+		List<Suggestion> suggestions = new ArrayList<Suggestion>();
+
+		if (key.length() == 0 || limit < 1)
+		{
+			return suggestions;
+		}
+
+		lock.readLock().lock();
+		try
+		{
+			Node node = find(key);
+
+			if (node != null)
+			{
+				for (int i = 0; i < node.top.length && i < limit; i++)
+				{
+					suggestions.add(new Suggestion(node.top[i], entries.get(node.top[i]).name));
+				}
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		return suggestions;
+	}
+
+	/**
+	 * Name of an indexed product
+	 * @param productId - ID of the product
+	 * @return Name of the product, null if it isn't indexed
+	 */
+	public String getName(int productId)
+	{
+		lock.readLock().lock();
+		try
+		{
+			Entry entry = entries.get(productId);
+			return (entry == null) ? null : entry.name;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of products in the index
+	 * @return the document count
+	 */
+	public int getDocumentCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return entries.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of nodes in the trie, for monitoring
+	 * @return the node count
+	 */
+	public int getNodeCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return countNodes(root);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts a node and the nodes below it. Lock must be held
+	 * @param node - Node to count from
+	 * @return Number of nodes
+	 */
+	private static int countNodes(Node node)
+	{
+		int count = 1;
+
+		for (Node child : node.children)
+		{
+			count += countNodes(child);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Finds the node a prefix leads to. The prefix may end part way along the node's label.
+	 *   Lock must be held.
+	 * @param prefix - Normalized prefix
+	 * @return The node, null if no key starts with the prefix
+	 */
+	private Node find(String prefix)
+	{
+		Node node = root;
+		int i = 0;
+
+		while (i < prefix.length())
+		{
+			int position = node.childIndex(prefix.charAt(i));
+
+			if (position < 0)
+			{
+				return null;
+			}
+
+			node = node.children[position];
+
+			for (int j = 0; j < node.label.length && i < prefix.length(); j++, i++)
+			{
+				if (node.label[j] != prefix.charAt(i))
+				{
+					return null;
+				}
+			}
+		}
+
+		return node;
+	}
+
+	/**
+	 * Adds a key of a product to the trie. Lock must be held for writing
+	 * @param key - Key to add
+	 * @param id - ID of the product
+	 */
+	private void insert(String key, int id)
+	{
+		List<Node> path = new ArrayList<Node>();
+		Node node = root;
+		int i = 0;
+		path.add(node);
+
+		while (i < key.length())
+		{
+			int position = node.childIndex(key.charAt(i));
+
+			if (position < 0)
+			{
+				Node leaf = new Node(key.substring(i).toCharArray());
+				node.children = insertChild(node.children, -(position + 1), leaf);
+				node = leaf;
+				path.add(node);
+				break;
+			}
+
+			Node child = node.children[position];
+			int common = 0;
+			while (common < child.label.length && i + common < key.length() && child.label[common] == key.charAt(i + common))
+			{
+				common++;
+			}
+
+			// The key leaves the label part way along, split the label there
+			if (common < child.label.length)
+			{
+				Node middle = new Node(copy(child.label, 0, common));
+				child.label = copy(child.label, common, child.label.length);
+				middle.children = new Node[] { child };
+				node.children[position] = middle;
+				child = middle;
+			}
+
+			node = child;
+			path.add(node);
+			i += common;
+		}
+
+		node.ids = add(node.ids, id);
+
+		for (int j = path.size() - 1; j >= 0; j--)
+		{
+			updateTop(path.get(j));
+		}
+	}
+
+	/**
+	 * Removes every key of a product. Lock must be held for writing
+	 * @param productId - ID of the product
+	 */
+	private void removeDocument(int productId)
+	{
+		Entry entry = entries.get(productId);
+
+		if (entry == null)
+		{
+			return;
+		}
+
+		// The entry is still needed to rank the product until all its keys are gone
+		for (String suffix : keysOf(entry.key))
+		{
+			removeKey(suffix, productId);
+		}
+
+		entries.remove(productId);
+	}
+
+	/**
+	 * Removes a key of a product from the trie, merging away nodes that are no longer needed.
+	 *   Lock must be held for writing
+	 * @param key - Key to remove
+	 * @param id - ID of the product
+	 */
+	private void removeKey(String key, int id)
+	{
+		List<Node> path = new ArrayList<Node>();
+		Node node = root;
+		int i = 0;
+		path.add(node);
+
+		while (i < key.length())
+		{
+			int position = node.childIndex(key.charAt(i));
+
+			if (position < 0 || !key.startsWith(new String(node.children[position].label), i))
+			{
+				return;
+			}
+
+			node = node.children[position];
+			path.add(node);
+			i += node.label.length;
+		}
+
+		node.ids = without(node.ids, id);
+
+		// Bottom up, so each node is updated after its children
+		for (int j = path.size() - 1; j >= 0; j--)
+		{
+			Node current = path.get(j);
+			updateTop(current);
+
+			if (j == 0 || current.ids.length > 0)
+			{
+				continue;
+			}
+
+			Node parent = path.get(j - 1);
+			int position = parent.childIndex(current.label[0]);
+
+			if (current.children.length == 0)
+			{
+				parent.children = removeChild(parent.children, position);
+			}
+			else if (current.children.length == 1)
+			{
+				Node only = current.children[0];
+				only.label = concat(current.label, only.label);
+				parent.children[position] = only;
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the best ranked products at or below a node from its own products and its
+	 *   children's best. Lock must be held for writing
+	 * @param node - Node to update
+	 */
+	private void updateTop(Node node)
+	{
+		Set<Integer> candidates = new LinkedHashSet<Integer>();
+
+		for (int id : node.ids)
+		{
+			candidates.add(id);
+		}
+		for (Node child : node.children)
+		{
+			for (int id : child.top)
+			{
+				candidates.add(id);
+			}
+		}
+
+		List<Integer> ranked = new ArrayList<Integer>(candidates);
+		Collections.sort(ranked, rank);
+
+		int[] top = new int[Math.min(ranked.size(), MAX_RESULTS)];
+		for (int i = 0; i < top.length; i++)
+		{
+			top[i] = ranked.get(i);
+		}
+
+		node.top = top;
+	}
+
+	/**
+	 * Normalizes text to lower case words of letters and digits separated by single spaces
+	 * @param text - Text to normalize, may be null
+	 * @return Normalized text
+	 */
+	private static String normalize(String text)
+	{
+		StringBuilder normalized = new StringBuilder();
+
+		if (text == null)
+		{
+			return "";
+		}
+
+		String lower = text.toLowerCase(Locale.ENGLISH);
+		boolean separator = false;
+		for (int i = 0; i < lower.length(); i++)
+		{
+			char c = lower.charAt(i);
+
+			if (Character.isLetterOrDigit(c))
+			{
+				if (separator && normalized.length() > 0)
+				{
+					normalized.append(' ');
+				}
+				normalized.append(c);
+				separator = false;
+			}
+			else
+			{
+				separator = true;
+			}
+		}
+
+		return normalized.toString();
+	}
+
+	/**
+	 * Keys of a normalized name: the name from the start of each of its words
+	 * @param key - Normalized name
+	 * @return Keys, without duplicates
+	 */
+	private static Set<String> keysOf(String key)
+	{
+		Set<String> keys = new LinkedHashSet<String>();
+
+		for (int i = 0; i < key.length(); i++)
+		{
+			if (i == 0 || key.charAt(i - 1) == ' ')
+			{
+				keys.add(key.substring(i));
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * @param source - Characters to copy from
+	 * @param from - First position to copy
+	 * @param to - Position after the last one to copy
+	 * @return Copy of the range
+	 */
+	private static char[] copy(char[] source, int from, int to)
+	{
+		char[] range = new char[to - from];
+		System.arraycopy(source, from, range, 0, range.length);
+		return range;
+	}
+
+	/**
+	 * @param first - Leading characters
+	 * @param second - Trailing characters
+	 * @return The characters joined
+	 */
+	private static char[] concat(char[] first, char[] second)
+	{
+		char[] joined = new char[first.length + second.length];
+		System.arraycopy(first, 0, joined, 0, first.length);
+		System.arraycopy(second, 0, joined, first.length, second.length);
+		return joined;
+	}
+
+	/**
+	 * @param children - Children of a node
+	 * @param position - Position to insert at
+	 * @param child - Child to insert
+	 * @return New array of children
+	 */
+	private static Node[] insertChild(Node[] children, int position, Node child)
+	{
+		Node[] inserted = new Node[children.length + 1];
+		System.arraycopy(children, 0, inserted, 0, position);
+		inserted[position] = child;
+		System.arraycopy(children, position, inserted, position + 1, children.length - position);
+		return inserted;
+	}
+
+	/**
+	 * @param children - Children of a node
+	 * @param position - Position of the child to remove
+	 * @return New array of children
+	 */
+	private static Node[] removeChild(Node[] children, int position)
+	{
+		if (children.length == 1)
+		{
+			return NO_CHILDREN;
+		}
+
+		Node[] removed = new Node[children.length - 1];
+		System.arraycopy(children, 0, removed, 0, position);
+		System.arraycopy(children, position + 1, removed, position, removed.length - position);
+		return removed;
+	}
+
+	/**
+	 * @param ids - Product IDs
+	 * @param id - ID to add
+	 * @return New array with the ID added, unless already present
+	 */
+	private static int[] add(int[] ids, int id)
+	{
+		for (int existing : ids)
+		{
+			if (existing == id)
+			{
+				return ids;
+			}
+		}
+
+		int[] added = new int[ids.length + 1];
+		System.arraycopy(ids, 0, added, 0, ids.length);
+		added[ids.length] = id;
+		return added;
+	}
+
+	/**
+	 * @param ids - Product IDs
+	 * @param id - ID to remove
+	 * @return New array without the ID
+	 */
+	private static int[] without(int[] ids, int id)
+	{
+		int[] remaining = new int[ids.length];
+		int count = 0;
+
+		for (int existing : ids)
+		{
+			if (existing != id)
+			{
+				remaining[count++] = existing;
+			}
+		}
+
+		if (count == 0)
+		{
+			return NO_IDS;
+		}
+
+		int[] trimmed = new int[count];
+		System.arraycopy(remaining, 0, trimmed, 0, count);
+		return trimmed;
+	}
+}
@@ -0,0 +1,79 @@
+package ws.utils;
+
+import java.util.List;
+
+/**
+ * One page of rows from a keyset paginated query, with the cursors of its neighbouring pages.
+ *   Pages are requested with the cursor of the page to continue from, see Keyset.
+ * @param <T> Type of the rows
+ * @author Team 10
+ */
+public class Page<T>
+{
+	/**
+	 * Rows of the page, in display order
+	 */
+	private final List<T> items;
+	/**
+	 * Cursor to request the following page with. Null on the last page.
+	 */
+	private final String nextCursor;
+	/**
+	 * Cursor to request the preceding page with. Null on the first page.
+	 */
+	private final String previousCursor;
+	/**
+	 * Maximum number of rows on the page
+	 */
+	private final int pageSize;
+
+	/**
+	 * @param items - Rows of the page, in display order
+	 * @param nextCursor - Cursor of the following page, null on the last page
+	 * @param previousCursor - Cursor of the preceding page, null on the first page
+	 * @param pageSize - Maximum number of rows on the page
+	 */
+	public Page(List<T> items, String nextCursor, String previousCursor, int pageSize)
+	{
+		this.items = items;
+		this.nextCursor = nextCursor;
+		this.previousCursor = previousCursor;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Rows of the page, in display order
+	 * @return the items
+	 */
+	public List<T> getItems()
+	{
+		return items;
+	}
+
+	/**
+	 * Cursor to request the following page with, as the "after" parameter
+	 * @return the nextCursor, null on the last page
+	 */
+	public String getNextCursor()
+	{
+		return nextCursor;
+	}
+
+	/**
+	 * Cursor to request the preceding page with, as the "before" parameter
+	 * @return the previousCursor, null on the first page
+	 */
+	public String getPreviousCursor()
+	{
+		return previousCursor;
+	}
+
+	/**
+	 * Maximum number of rows on the page
+	 * @return the pageSize
+	 */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+}
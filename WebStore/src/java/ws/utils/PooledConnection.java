@@ -0,0 +1,258 @@
+package ws.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A database connection owned by a ConnectionPool. Holds the bookkeeping the pool needs to
+ *   validate, evict and detect leaked connections, and a cache of the statements prepared on it.
+ * @author Team 10
+ */
+public class PooledConnection
+{
+	/**
+	 * Underlying JDBC connection
+	 */
+	private final Connection connection;
+	/**
+	 * Pool the connection belongs to
+	 */
+	private final ConnectionPool pool;
+	/**
+	 * Milliseconds since epoch the connection was last returned to the pool
+	 */
+	private long lastReturned;
+	/**
+	 * Milliseconds since epoch the connection was last borrowed
+	 */
+	private long borrowedAt;
+	/**
+	 * Stack trace of the code that borrowed the connection. Only recorded when leak detection is on
+	 */
+	private Throwable borrowTrace;
+	/**
+	 * Flag set once the current borrow has been reported as a possible leak
+	 */
+	private boolean leakReported;
+	/**
+	 * Statements prepared on this connection keyed by SQL, least recently used first
+	 */
+	private final Map<String, PreparedStatement> statementCache;
+	/**
+	 * Statements prepared without caching, closed when the connection is returned to the pool
+	 */
+	private final List<PreparedStatement> uncachedStatements = new ArrayList<PreparedStatement>();
+
+	/**
+	 * Wraps a newly opened connection
+	 * @param connection - Open JDBC connection
+	 * @param pool - Pool the connection belongs to
+	 * @param statementCacheSize - Maximum number of prepared statements kept open on the connection
+	 */
+	PooledConnection(Connection connection, ConnectionPool pool, final int statementCacheSize)
+	{
+		this.connection = connection;
+		this.pool = pool;
+		this.lastReturned = System.currentTimeMillis();
+		this.statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+			{
+				if (size() <= statementCacheSize)
+				{
+					return false;
+				}
+
+				closeStatement(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns a prepared statement for the query, reusing the one prepared earlier on this connection
+	 *   when possible. The statement belongs to the connection and must not be closed by the caller.
+	 * @param sql - SQL query with ? placeholders
+	 * @return Prepared statement with cleared parameters
+	 * @throws SQLException on failure
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException
+	{
+		PreparedStatement statement = statementCache.get(sql);
+
+		if (statement == null)
+		{
+			statement = connection.prepareStatement(sql);
+			statementCache.put(sql, statement);
+		}
+		else
+		{
+			statement.clearParameters();
+		}
+
+		return statement;
+	}
+
+	/**
+	 * Returns a prepared statement for an INSERT whose generated keys are needed, reusing the one
+	 *   prepared earlier on this connection when possible. Must not be closed by the caller.
+	 * @param sql - SQL insert with ? placeholders
+	 * @return Prepared statement with cleared parameters that returns generated keys
+	 * @throws SQLException on failure
+	 */
+	public PreparedStatement prepareInsert(String sql) throws SQLException
+	{
+		// Statements returning keys are prepared differently, so they get their own cache key
+		String key = "keys:" + sql;
+		PreparedStatement statement = statementCache.get(key);
+
+		if (statement == null)
+		{
+			statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			statementCache.put(key, statement);
+		}
+		else
+		{
+			statement.clearParameters();
+		}
+
+		return statement;
+	}
+
+	/**
+	 * Prepares a statement without caching it, for SQL whose shape depends on the number of rows it
+	 *   writes, such as a multi-row INSERT. Caching every shape would push the statements that are
+	 *   reused out of the cache. The statement stays open until the connection is returned to the
+	 *   pool and must not be closed by the caller.
+	 * @param sql - SQL with ? placeholders
+	 * @param returnKeys - true if the generated keys are needed
+	 * @return Prepared statement
+	 * @throws SQLException on failure
+	 */
+	public PreparedStatement prepareUncached(String sql, boolean returnKeys) throws SQLException
+	{
+		PreparedStatement statement = returnKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(sql);
+		uncachedStatements.add(statement);
+		return statement;
+	}
+
+	/**
+	 * Closes the statements prepared without caching, when the connection is returned to the pool
+	 */
+	void closeUncachedStatements()
+	{
+		for (PreparedStatement statement : uncachedStatements)
+		{
+			closeStatement(statement);
+		}
+
+		uncachedStatements.clear();
+	}
+
+	/**
+	 * Closes a statement evicted from the cache, or one that wasn't cached
+	 * @param statement - Statement to close
+	 */
+	private static void closeStatement(PreparedStatement statement)
+	{
+		try
+		{
+			statement.close();
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(PooledConnection.class.getName()).log(Level.FINE, "Failed to close statement", ex);
+		}
+	}
+
+	/**
+	 * Underlying JDBC connection. Must not be closed directly, use release() instead
+	 * @return the connection
+	 */
+	public Connection getConnection()
+	{
+		return connection;
+	}
+
+	/**
+	 * Returns the connection to the pool it was borrowed from
+	 */
+	public void release()
+	{
+		pool.release(this);
+	}
+
+	/**
+	 * Marks the connection as borrowed
+	 * @param trace - Stack trace of the borrower, may be null
+	 */
+	void leased(Throwable trace)
+	{
+		borrowedAt = System.currentTimeMillis();
+		borrowTrace = trace;
+		leakReported = false;
+	}
+
+	/**
+	 * Marks the connection as returned to the pool
+	 */
+	void returned()
+	{
+		lastReturned = System.currentTimeMillis();
+		borrowTrace = null;
+	}
+
+	/**
+	 * Milliseconds since epoch the connection was last returned to the pool
+	 * @return the lastReturned
+	 */
+	long getLastReturned()
+	{
+		return lastReturned;
+	}
+
+	/**
+	 * Milliseconds since epoch the connection was last borrowed
+	 * @return the borrowedAt
+	 */
+	long getBorrowedAt()
+	{
+		return borrowedAt;
+	}
+
+	/**
+	 * Stack trace of the code that borrowed the connection
+	 * @return the borrowTrace
+	 */
+	Throwable getBorrowTrace()
+	{
+		return borrowTrace;
+	}
+
+	/**
+	 * Flag set once the current borrow has been reported as a possible leak
+	 * @return the leakReported
+	 */
+	boolean isLeakReported()
+	{
+		return leakReported;
+	}
+
+	/**
+	 * Flag set once the current borrow has been reported as a possible leak
+	 * @param leakReported the leakReported to set
+	 */
+	void setLeakReported(boolean leakReported)
+	{
+		this.leakReported = leakReported;
+	}
+}
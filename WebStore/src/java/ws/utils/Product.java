@@ -1,6 +1,6 @@
 package ws.utils;
 
-import java.util.Vector;
+import java.util.List;
 
 /**
  *
@@ -37,9 +37,21 @@ public class Product
 	 */
 	private String description;
 	/**
-	 * Average product rating
+	 * Average product rating. Null when the product has no reviews
 	 */
 	private Double averageRating;
+	/**
+	 * Flag set once averageRating has been loaded, since null is a valid rating
+	 */
+	private boolean averageRatingLoaded;
+	/**
+	 * Number of reviews of the product
+	 */
+	private Integer reviewCount;
+	/**
+	 * Number of units of the product sold
+	 */
+	private int salesCount;
 	/**
 	 * Manufacturer's name
 	 */
@@ -47,7 +59,7 @@ public class Product
 	/**
 	 * List of reviews for this product
 	 */
-	private Vector<Review> reviews;
+	private List<Review> reviews;
 
 	/**
 	 *
@@ -70,6 +82,21 @@ public class Product
 		this.description = description;
 	}
 
+	/**
+	 * Copies the stored fields of a product, including its review count, rating and sales. Values
+	 *   loaded on demand, like the reviews and manufacturer name, aren't copied and are loaded again
+	 *   when used.
+	 * @param product - Product to copy
+	 */
+	public Product(Product product)
+	{
+		this(product.id, product.name, product.manufacturerId, product.price, product.stock, product.image, product.description);
+		this.reviewCount = product.reviewCount;
+		this.averageRating = product.averageRating;
+		this.averageRatingLoaded = product.averageRatingLoaded;
+		this.salesCount = product.salesCount;
+	}
+
 	/**
 	 * Unique product ID
 	 * @return the id
@@ -202,14 +229,65 @@ public class Product
 	 */
 	public Double getAverageRating()
 	{
-		if (averageRating == null)
+		if (!averageRatingLoaded)
 		{
-			averageRating = Database.getInstance().getReviewRating(getId());
+			setAverageRating(Database.getInstance().getReviewRating(getId()));
 		}
 
 		return averageRating;
 	}
 
+	/**
+	 * Average rating, for when it was loaded along with the product
+	 * @param averageRating the average rating to set, null when there are no reviews
+	 */
+	public void setAverageRating(Double averageRating)
+	{
+		this.averageRating = averageRating;
+		this.averageRatingLoaded = true;
+	}
+
+	/**
+	 * Number of reviews of the product
+	 * @return the reviewCount
+	 */
+	public int getReviewCount()
+	{
+		if (reviewCount == null)
+		{
+			reviewCount = getReviews().size();
+		}
+
+		return reviewCount;
+	}
+
+	/**
+	 * Number of reviews of the product, for when it was loaded along with the product
+	 * @param reviewCount the reviewCount to set
+	 */
+	public void setReviewCount(int reviewCount)
+	{
+		this.reviewCount = reviewCount;
+	}
+
+	/**
+	 * Number of units of the product sold
+	 * @return the salesCount
+	 */
+	public int getSalesCount()
+	{
+		return salesCount;
+	}
+
+	/**
+	 * Number of units of the product sold
+	 * @param salesCount the salesCount to set
+	 */
+	public void setSalesCount(int salesCount)
+	{
+		this.salesCount = salesCount;
+	}
+
 	/**
 	 * Manufacturer's name
 	 * @return Manufacturer's name
@@ -224,11 +302,20 @@ public class Product
 		return manufacturerName;
 	}
 
+	/**
+	 * Manufacturer's name, for when it was loaded along with the product
+	 * @param manufacturerName the manufacturerName to set
+	 */
+	public void setManufacturerName(String manufacturerName)
+	{
+		this.manufacturerName = manufacturerName;
+	}
+
 	/**
 	 * List of all reviews for this product
 	 * @return List of reviews for this product
 	 */
-	public Vector<Review> getReviews()
+	public List<Review> getReviews()
 	{
 		if (reviews == null)
 		{
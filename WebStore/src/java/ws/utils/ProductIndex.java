@@ -0,0 +1,27 @@
+package ws.utils;
+
+/**
+ * In-memory index over the product catalog, kept up to date by Database. Every index is loaded
+ *   with the whole catalog at startup, then told about each product that is added, edited or
+ *   deleted once the change has committed.
+ * @author Team 10
+ */
+public interface ProductIndex
+{
+	/**
+	 * Empties the index before the catalog is loaded into it
+	 */
+	void clear();
+
+	/**
+	 * Adds a product to the index, replacing any earlier version of it
+	 * @param product - Product to index, with its manufacturer name loaded
+	 */
+	void index(Product product);
+
+	/**
+	 * Removes a product from the index
+	 * @param productId - ID of the product
+	 */
+	void remove(int productId);
+}
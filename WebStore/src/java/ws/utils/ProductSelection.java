@@ -0,0 +1,78 @@
+package ws.utils;
+
+import java.util.List;
+
+/**
+ * Products matching a search and the selected facets, along with how many products each facet
+ *   value would leave. See Database.selectProducts
+ * @author Team 10
+ */
+public class ProductSelection
+{
+	/**
+	 * IDs of the matching products, in display order
+	 */
+	private final List<Integer> ids;
+	/**
+	 * Manufacturers with matching products
+	 */
+	private final List<FacetValue> manufacturers;
+	/**
+	 * Price bands with matching products
+	 */
+	private final List<FacetValue> priceBands;
+	/**
+	 * Number of matching products in stock
+	 */
+	private final int inStockCount;
+
+	/**
+	 * @param ids - IDs of the matching products, in display order
+	 * @param manufacturers - Manufacturers with matching products
+	 * @param priceBands - Price bands with matching products
+	 * @param inStockCount - Number of matching products in stock
+	 */
+	public ProductSelection(List<Integer> ids, List<FacetValue> manufacturers, List<FacetValue> priceBands, int inStockCount)
+	{
+		this.ids = ids;
+		this.manufacturers = manufacturers;
+		this.priceBands = priceBands;
+		this.inStockCount = inStockCount;
+	}
+
+	/**
+	 * IDs of the matching products, in display order
+	 * @return the ids
+	 */
+	public List<Integer> getIds()
+	{
+		return ids;
+	}
+
+	/**
+	 * Manufacturers with matching products, counted as if no manufacturer was selected
+	 * @return the manufacturers
+	 */
+	public List<FacetValue> getManufacturers()
+	{
+		return manufacturers;
+	}
+
+	/**
+	 * Price bands with matching products, counted as if no price band was selected
+	 * @return the priceBands
+	 */
+	public List<FacetValue> getPriceBands()
+	{
+		return priceBands;
+	}
+
+	/**
+	 * Number of matching products in stock, counted as if in stock wasn't selected
+	 * @return the inStockCount
+	 */
+	public int getInStockCount()
+	{
+		return inStockCount;
+	}
+}
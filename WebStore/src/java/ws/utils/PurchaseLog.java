@@ -0,0 +1,821 @@
+package ws.utils;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead log of checkouts, for the wal purchase writer. A checkout is appended to a
+ *   memory-mapped segment file and acknowledged once the segment has been forced to disk, without
+ *   waiting on the database. A background applier then records the logged purchases in the
+ *   database in log order with Database.applyLoggedPurchases, which also saves the log position
+ *   reached in the same transaction. On startup, entries after that position are read back from
+ *   the segments and applied before any checkout is taken, also when the server was restarted
+ *   with another purchase writer, see applyLeftover.
+ *
+ * Each entry is its length and a CRC32 of its contents, followed by the purchase. Segments are
+ *   files of purchases.logSegmentBytes in the purchases.logDirectory directory, numbered in the
+ *   order they were written. A zero length, or an entry failing its checksum, such as one torn by
+ *   a crash, ends a segment. A new segment is started on every startup, and segments before the
+ *   saved position are deleted.
+ *
+ * Concurrent checkouts share the force of the segment: a checkout whose entry was already forced
+ *   by another thread returns without forcing again.
+ * @author Team 10
+ */
+public class PurchaseLog
+{
+	/**
+	 * Directory the segments are written to
+	 */
+	private static final File DIRECTORY = new File(Settings.get("purchases.logDirectory", new File(System.getProperty("java.io.tmpdir"), "webstore-purchase-log").getPath()));
+	/**
+	 * Size of each segment file, in bytes
+	 */
+	private static final int SEGMENT_BYTES = (int) Math.max(64 * 1024, Math.min(Integer.MAX_VALUE, Settings.getLong("purchases.logSegmentBytes", 16 * 1024 * 1024)));
+	/**
+	 * Most entries applied to the database in one transaction
+	 */
+	private static final int APPLY_BATCH_SIZE = Math.max(1, Settings.getInt("purchases.applyBatchSize", 500));
+	/**
+	 * Milliseconds the applier waits when there is nothing to apply, and after a failure
+	 */
+	private static final long APPLY_INTERVAL_MS = Math.max(1, Settings.getLong("purchases.applyIntervalMs", 50));
+	/**
+	 * Length and checksum before each entry
+	 */
+	private static final int ENTRY_HEADER_BYTES = 8;
+	/**
+	 * Encoding of the shipping address
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/**
+	 * Database the logged purchases are applied to
+	 */
+	private final Database database;
+	/**
+	 * Durable entries not yet applied, in log order
+	 */
+	private final ConcurrentLinkedQueue<LoggedPurchase> pending = new ConcurrentLinkedQueue<LoggedPurchase>();
+	/**
+	 * Number of entries in pending, which is slow to count
+	 */
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	/**
+	 * Serializes forcing the segments to disk
+	 */
+	private final Object syncLock = new Object();
+	/**
+	 * Segment being appended to. Null until the log is opened. Guarded by this
+	 */
+	private MappedByteBuffer segment;
+	/**
+	 * File of the segment being appended to. Guarded by this
+	 */
+	private RandomAccessFile segmentFile;
+	/**
+	 * Number of the segment being appended to. Guarded by this
+	 */
+	private long segmentNumber;
+	/**
+	 * ID given to the next purchase logged. Guarded by this
+	 */
+	private int nextPurchaseId;
+	/**
+	 * Sequence number of the last entry appended. Guarded by this
+	 */
+	private long appendedSequence;
+	/**
+	 * Sequence number of the last entry forced to disk
+	 */
+	private volatile long syncedSequence;
+	/**
+	 * Flag cleared when the log is closed. Guarded by this
+	 */
+	private boolean open;
+	/**
+	 * Thread applying entries to the database. Null until the log is opened. Guarded by this
+	 */
+	private Thread applier;
+	// Statistics for monitoring
+	private final AtomicLong appendCount = new AtomicLong();
+	private final AtomicLong syncCount = new AtomicLong();
+	private final AtomicLong appliedCount = new AtomicLong();
+	private final AtomicLong applyFailureCount = new AtomicLong();
+	private volatile int recoveredCount;
+
+	/**
+	 * A purchase written to the log
+	 */
+	static class LoggedPurchase
+	{
+		/**
+		 * ID given to the purchase
+		 */
+		final int purchaseId;
+		/**
+		 * Unique ID of user making the purchase
+		 */
+		final int userId;
+		/**
+		 * Unique ID of product purchased
+		 */
+		final int productId;
+		/**
+		 * Price of the product at the time of the checkout
+		 */
+		final double price;
+		/**
+		 * Shipping price
+		 */
+		final double shippingPrice;
+		/**
+		 * Shipping address, sanitized
+		 */
+		final String shippingAddress;
+		/**
+		 * Time of the checkout, in milliseconds since the epoch
+		 */
+		final long date;
+		/**
+		 * Segment the entry is in
+		 */
+		final long segment;
+		/**
+		 * Position in the segment just after the entry, where the log is read from once it has been
+		 *   applied
+		 */
+		final int end;
+		/**
+		 * Order the entry was appended in, 0 for entries read back on startup
+		 */
+		final long sequence;
+
+		/**
+		 * @param purchaseId - ID given to the purchase
+		 * @param userId - Unique ID of user making the purchase
+		 * @param productId - Unique ID of product purchased
+		 * @param price - Price of the product
+		 * @param shippingPrice - Shipping price
+		 * @param shippingAddress - Shipping address, sanitized
+		 * @param date - Time of the checkout
+		 * @param segment - Segment the entry is in
+		 * @param end - Position in the segment just after the entry
+		 * @param sequence - Order the entry was appended in
+		 */
+		LoggedPurchase(int purchaseId, int userId, int productId, double price, double shippingPrice, String shippingAddress, long date, long segment, int end, long sequence)
+		{
+			this.purchaseId = purchaseId;
+			this.userId = userId;
+			this.productId = productId;
+			this.price = price;
+			this.shippingPrice = shippingPrice;
+			this.shippingAddress = shippingAddress;
+			this.date = date;
+			this.segment = segment;
+			this.end = end;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * @param database - Database the logged purchases are applied to
+	 */
+	PurchaseLog(Database database)
+	{
+		this.database = database;
+	}
+
+	/**
+	 * Creates the purchase log when the purchases.writer setting is wal. The log checks stock in
+	 *   memory without the database, so it needs the memory inventory mode; with any other mode
+	 *   checkouts are written directly.
+	 * @param database - Database the logged purchases are applied to
+	 * @param inventoryMode - Where stock is kept while selling
+	 * @return The purchase log, null when checkouts aren't logged
+	 */
+	static PurchaseLog fromSettings(Database database, InventoryMode inventoryMode)
+	{
+		if (!"wal".equalsIgnoreCase(Settings.get("purchases.writer", "direct").trim()))
+		{
+			return null;
+		}
+		if (inventoryMode != InventoryMode.MEMORY)
+		{
+			Logger.getLogger(PurchaseLog.class.getName()).log(Level.WARNING, "purchases.writer wal needs inventory.mode memory, using direct");
+			return null;
+		}
+
+		return new PurchaseLog(database);
+	}
+
+	/**
+	 * Opens the log: reads back the entries after the position the database reached, starts a new
+	 *   segment and starts the applier. The entries read back are left pending, to be applied by
+	 *   the caller before checkouts are taken.
+	 * @param checkpointSegment - Segment of the last entry applied to the database
+	 * @param checkpointPosition - Position after the last entry applied to the database
+	 * @param lastPurchaseId - Highest purchase ID in the database
+	 * @throws IOException on failure
+	 */
+	synchronized void open(long checkpointSegment, int checkpointPosition, int lastPurchaseId) throws IOException
+	{
+		if (segment != null)
+		{
+			return;
+		}
+
+		if (!DIRECTORY.isDirectory() && !DIRECTORY.mkdirs())
+		{
+			throw new IOException("Cannot create purchase log directory " + DIRECTORY);
+		}
+
+		long lastSegment = checkpointSegment;
+		int lastId = lastPurchaseId;
+		List<LoggedPurchase> recovered = new ArrayList<LoggedPurchase>();
+
+		for (long number : listSegments())
+		{
+			lastSegment = Math.max(lastSegment, number);
+
+			if (number >= checkpointSegment)
+			{
+				readSegment(number, (number == checkpointSegment) ? checkpointPosition : 0, recovered);
+			}
+		}
+
+		for (LoggedPurchase purchase : recovered)
+		{
+			lastId = Math.max(lastId, purchase.purchaseId);
+		}
+
+		pending.addAll(recovered);
+		pendingCount.addAndGet(recovered.size());
+		recoveredCount = recovered.size();
+		nextPurchaseId = lastId + 1;
+
+		// Appending after a torn entry would hide everything behind it, so each run gets a new segment
+		startSegment(lastSegment + 1);
+		deleteSegmentsBefore(checkpointSegment);
+		open = true;
+
+		applier = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				applyUntilClosed();
+			}
+		}, "Purchase log applier");
+		applier.setDaemon(true);
+		applier.start();
+	}
+
+	/**
+	 * Applies the entries an earlier run left in the log after the position the database reached,
+	 *   when this run doesn't use the wal purchase writer, then deletes the segments. A batch that
+	 *   fails keeps the segments, and the next attempt starts after the last batch applied.
+	 * @param database - Database the entries are applied to
+	 * @param checkpointSegment - Segment of the last entry applied to the database
+	 * @param checkpointPosition - Position after the last entry applied to the database
+	 * @return true on success
+	 */
+	static boolean applyLeftover(Database database, long checkpointSegment, int checkpointPosition)
+	{
+		List<LoggedPurchase> recovered = new ArrayList<LoggedPurchase>();
+
+		try
+		{
+			for (long number : listSegments())
+			{
+				if (number >= checkpointSegment)
+				{
+					readSegment(number, (number == checkpointSegment) ? checkpointPosition : 0, recovered);
+				}
+			}
+		}
+		catch (IOException ex)
+		{
+			Logger.getLogger(PurchaseLog.class.getName()).log(Level.SEVERE, "Failed to read purchase log", ex);
+			return false;
+		}
+
+		for (int start = 0; start < recovered.size(); start += APPLY_BATCH_SIZE)
+		{
+			if (!database.applyLoggedPurchases(recovered.subList(start, Math.min(recovered.size(), start + APPLY_BATCH_SIZE))))
+			{
+				return false;
+			}
+		}
+
+		if (!recovered.isEmpty())
+		{
+			Logger.getLogger(PurchaseLog.class.getName()).log(Level.INFO, "Applied " + recovered.size() + " purchases left in the purchase log");
+		}
+
+		deleteSegmentsBefore(Long.MAX_VALUE);
+		return true;
+	}
+
+	/**
+	 * @return true if the directory holds segments, such as those left by an earlier run
+	 */
+	static boolean hasSegments()
+	{
+		return listSegments().length > 0;
+	}
+	/**
+	 * @return true once the log has been opened
+	 */
+	synchronized boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * Numbers of the segment files in the directory
+	 * @return Segment numbers, in order
+	 */
+	private static long[] listSegments()
+	{
+		String[] names = DIRECTORY.list(new FilenameFilter()
+		{
+			public boolean accept(File directory, String name)
+			{
+				return name.startsWith("purchases-") && name.endsWith(".log");
+			}
+		});
+
+		if (names == null)
+		{
+			return new long[0];
+		}
+
+		long[] numbers = new long[names.length];
+		int count = 0;
+
+		for (String name : names)
+		{
+			try
+			{
+				numbers[count] = Long.parseLong(name.substring("purchases-".length(), name.length() - ".log".length()));
+				count++;
+			}
+			catch (NumberFormatException numberFormatException)
+			{
+				// Not a segment
+			}
+		}
+
+		long[] segments = new long[count];
+		System.arraycopy(numbers, 0, segments, 0, count);
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * @param number - Number of a segment
+	 * @return File of the segment
+	 */
+	private static File segmentFile(long number)
+	{
+		return new File(DIRECTORY, String.format("purchases-%020d.log", number));
+	}
+
+	/**
+	 * Reads the entries of a segment, up to its end or the first entry failing its checksum
+	 * @param number - Number of the segment
+	 * @param start - Position to read from
+	 * @param entries - List to add the entries to
+	 * @throws IOException on failure
+	 */
+	private static void readSegment(long number, int start, List<LoggedPurchase> entries) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(segmentFile(number), "r");
+
+		try
+		{
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			int position = start;
+
+			while (position + ENTRY_HEADER_BYTES <= buffer.limit())
+			{
+				int length = buffer.getInt(position);
+				int checksum = buffer.getInt(position + 4);
+
+				if (length <= 0 || position + ENTRY_HEADER_BYTES + length > buffer.limit())
+				{
+					break;
+				}
+
+				byte[] contents = new byte[length];
+				buffer.position(position + ENTRY_HEADER_BYTES);
+				buffer.get(contents);
+
+				if (checksum != checksum(contents))
+				{
+					Logger.getLogger(PurchaseLog.class.getName()).log(Level.WARNING, "Purchase log segment " + number + " ends with a damaged entry at " + position);
+					break;
+				}
+
+				position += ENTRY_HEADER_BYTES + length;
+				entries.add(decode(ByteBuffer.wrap(contents), number, position));
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * Creates a segment and makes it the one appended to. Lock must be held
+	 * @param number - Number of the segment
+	 * @throws IOException on failure
+	 */
+	private void startSegment(long number) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(segmentFile(number), "rw");
+
+		try
+		{
+			file.setLength(SEGMENT_BYTES);
+			file.getChannel().force(true);
+			segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+		}
+		catch (IOException ex)
+		{
+			file.close();
+			throw ex;
+		}
+
+		if (segmentFile != null)
+		{
+			segmentFile.close();
+		}
+
+		segmentFile = file;
+		segmentNumber = number;
+	}
+
+	/**
+	 * Deletes the segments before one, once every entry in them has been applied
+	 * @param number - Number of the first segment to keep
+	 */
+	private static void deleteSegmentsBefore(long number)
+	{
+		for (long segment : listSegments())
+		{
+			if (segment < number && !segmentFile(segment).delete())
+			{
+				Logger.getLogger(PurchaseLog.class.getName()).log(Level.WARNING, "Failed to delete purchase log segment " + segment);
+			}
+		}
+	}
+
+	/**
+	 * Appends a checkout to the log and waits until it is on disk
+	 * @param userId - Unique ID of user making the purchase
+	 * @param productId - Unique ID of product purchased
+	 * @param price - Price of the product
+	 * @param shippingPrice - Shipping price
+	 * @param shippingAddress - Shipping address, sanitized
+	 * @return The logged purchase, with the ID it was given
+	 * @throws IOException when the log is closed or a new segment can't be created. Nothing was
+	 *   logged.
+	 */
+	LoggedPurchase append(int userId, int productId, double price, double shippingPrice, String shippingAddress) throws IOException
+	{
+		LoggedPurchase purchase;
+
+		synchronized (this)
+		{
+			if (!open)
+			{
+				throw new IOException("Purchase log is closed");
+			}
+
+			byte[] address = toBytes(UTF8.encode(shippingAddress));
+			int length = 4 + 4 + 4 + 8 + 8 + 8 + 4 + address.length;
+
+			if (segment.remaining() < ENTRY_HEADER_BYTES + length)
+			{
+				// Forced before moving on, so a later entry is never on disk without an earlier one
+				segment.force();
+				startSegment(segmentNumber + 1);
+			}
+
+			long date = System.currentTimeMillis();
+			ByteBuffer contents = ByteBuffer.allocate(length);
+			contents.putInt(nextPurchaseId).putInt(userId).putInt(productId);
+			contents.putDouble(price).putDouble(shippingPrice).putLong(date);
+			contents.putInt(address.length).put(address);
+
+			segment.putInt(length).putInt(checksum(contents.array())).put(contents.array());
+			purchase = new LoggedPurchase(nextPurchaseId, userId, productId, price, shippingPrice, shippingAddress, date, segmentNumber, segment.position(), ++appendedSequence);
+			nextPurchaseId++;
+
+			// Queued at once to keep log order, the applier skips it until it is forced
+			pending.add(purchase);
+			pendingCount.incrementAndGet();
+		}
+
+		appendCount.incrementAndGet();
+		sync(purchase.sequence);
+		return purchase;
+	}
+
+	/**
+	 * Gives out purchase IDs for purchases recorded in the database directly rather than through
+	 *   the log, such as the purchases of an order, so they never clash with logged purchases
+	 * @param count - Number of IDs wanted
+	 * @return First of count consecutive IDs
+	 * @throws IOException when the log is closed
+	 */
+	synchronized int allocatePurchaseIds(int count) throws IOException
+	{
+		if (!open)
+		{
+			throw new IOException("Purchase log is closed");
+		}
+
+		int first = nextPurchaseId;
+		nextPurchaseId += count;
+		return first;
+	}
+
+	/**
+	 * Forces the segment to disk, unless another thread already forced the entry
+	 * @param sequence - Sequence number of the entry that must be on disk
+	 */
+	private void sync(long sequence)
+	{
+		synchronized (syncLock)
+		{
+			if (syncedSequence >= sequence)
+			{
+				return;
+			}
+
+			MappedByteBuffer buffer;
+			long target;
+
+			synchronized (this)
+			{
+				buffer = segment;
+				target = appendedSequence;
+			}
+
+			buffer.force();
+			syncedSequence = target;
+			syncCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Applies every pending entry that is on disk, in batches of purchases.applyBatchSize
+	 * @return true if everything was applied, false when a batch failed and was kept pending
+	 */
+	boolean applyPending()
+	{
+		synchronized (pending)
+		{
+			while (true)
+			{
+				List<LoggedPurchase> batch = new ArrayList<LoggedPurchase>();
+				Iterator<LoggedPurchase> entries = pending.iterator();
+				long synced = syncedSequence;
+
+				while (batch.size() < APPLY_BATCH_SIZE && entries.hasNext())
+				{
+					LoggedPurchase entry = entries.next();
+
+					if (entry.sequence > synced)
+					{
+						break;
+					}
+
+					batch.add(entry);
+				}
+
+				if (batch.isEmpty())
+				{
+					return true;
+				}
+
+				if (!database.applyLoggedPurchases(batch))
+				{
+					applyFailureCount.incrementAndGet();
+					return false;
+				}
+
+				for (int i = 0; i < batch.size(); i++)
+				{
+					pending.poll();
+				}
+				pendingCount.addAndGet(-batch.size());
+
+				appliedCount.addAndGet(batch.size());
+				deleteSegmentsBefore(batch.get(batch.size() - 1).segment);
+			}
+		}
+	}
+
+	/**
+	 * Body of the applier thread. Applies entries until the log is closed.
+	 */
+	private void applyUntilClosed()
+	{
+		while (isOpen())
+		{
+			if (pendingCount.get() == 0 || !applyPending())
+			{
+				try
+				{
+					Thread.sleep(APPLY_INTERVAL_MS);
+				}
+				catch (InterruptedException interruptedException)
+				{
+					// Woken by close
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops taking checkouts, applies what is left and closes the segment. Entries that can't be
+	 *   applied now stay on disk and are applied on the next startup.
+	 */
+	void close()
+	{
+		Thread thread;
+
+		synchronized (this)
+		{
+			if (!open)
+			{
+				return;
+			}
+
+			open = false;
+			thread = applier;
+		}
+
+		thread.interrupt();
+
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException interruptedException)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		applyPending();
+
+		synchronized (this)
+		{
+			segment.force();
+
+			try
+			{
+				segmentFile.close();
+			}
+			catch (IOException ex)
+			{
+				Logger.getLogger(PurchaseLog.class.getName()).log(Level.WARNING, "Failed to close purchase log segment", ex);
+			}
+		}
+	}
+
+	/**
+	 * Reads an entry
+	 * @param contents - Contents of the entry, after its length and checksum
+	 * @param segment - Segment the entry is in
+	 * @param end - Position in the segment just after the entry
+	 * @return The logged purchase
+	 */
+	private static LoggedPurchase decode(ByteBuffer contents, long segment, int end)
+	{
+		int purchaseId = contents.getInt();
+		int userId = contents.getInt();
+		int productId = contents.getInt();
+		double price = contents.getDouble();
+		double shippingPrice = contents.getDouble();
+		long date = contents.getLong();
+		byte[] address = new byte[contents.getInt()];
+		contents.get(address);
+
+		return new LoggedPurchase(purchaseId, userId, productId, price, shippingPrice, UTF8.decode(ByteBuffer.wrap(address)).toString(), date, segment, end, 0);
+	}
+
+	/**
+	 * @param buffer - Buffer to copy
+	 * @return The remaining bytes of the buffer
+	 */
+	private static byte[] toBytes(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @param contents - Contents of an entry
+	 * @return CRC32 of the contents
+	 */
+	private static int checksum(byte[] contents)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Directory the segments are written to
+	 * @return the directory path
+	 */
+	public String getDirectory()
+	{
+		return DIRECTORY.getPath();
+	}
+
+	/**
+	 * Number of the segment being appended to
+	 * @return the segment number
+	 */
+	public synchronized long getSegmentNumber()
+	{
+		return segmentNumber;
+	}
+
+	/**
+	 * Number of checkouts logged since startup
+	 * @return the appendCount
+	 */
+	public long getAppendCount()
+	{
+		return appendCount.get();
+	}
+
+	/**
+	 * Number of times a segment was forced to disk. Lower than appendCount when concurrent
+	 *   checkouts shared a force
+	 * @return the syncCount
+	 */
+	public long getSyncCount()
+	{
+		return syncCount.get();
+	}
+
+	/**
+	 * Number of entries read back on startup
+	 * @return the recoveredCount
+	 */
+	public int getRecoveredCount()
+	{
+		return recoveredCount;
+	}
+
+	/**
+	 * Number of entries applied to the database since startup
+	 * @return the appliedCount
+	 */
+	public long getAppliedCount()
+	{
+		return appliedCount.get();
+	}
+
+	/**
+	 * Number of batches that failed to apply and were retried
+	 * @return the applyFailureCount
+	 */
+	public long getApplyFailureCount()
+	{
+		return applyFailureCount.get();
+	}
+
+	/**
+	 * Number of logged entries not yet applied to the database
+	 * @return the pending count
+	 */
+	public int getPendingCount()
+	{
+		return pendingCount.get();
+	}
+}
@@ -0,0 +1,479 @@
+package ws.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes checkouts in groups, for the group purchase writer. A checkout is put on a bounded queue
+ *   and its thread waits while a single writer thread takes checkouts off the queue and records
+ *   them with Database.writePurchases, up to purchases.batchSize at a time in one transaction. A
+ *   batch is written once it is full or purchases.flushIntervalMs after its first checkout, so
+ *   many checkouts share one commit at the cost of a few milliseconds each.
+ *
+ * Used when the purchases.writer setting is group. When the queue is full, or the writer hasn't
+ *   taken a checkout off the queue within purchases.waitTimeoutMs, the checkout is written directly
+ *   by its own thread instead. See PurchaseLog for the wal setting.
+ * @author Team 10
+ */
+public class PurchaseWriter
+{
+	/**
+	 * Most checkouts written in one transaction
+	 */
+	private static final int BATCH_SIZE = Math.max(1, Settings.getInt("purchases.batchSize", 100));
+	/**
+	 * Longest a checkout waits for others to join its batch, in milliseconds
+	 */
+	private static final long FLUSH_INTERVAL_MS = Math.max(1, Settings.getLong("purchases.flushIntervalMs", 5));
+	/**
+	 * Longest a checkout waits for the writer to take it off the queue, in milliseconds
+	 */
+	private static final long WAIT_TIMEOUT_MS = Math.max(1, Settings.getLong("purchases.waitTimeoutMs", 1000));
+	/**
+	 * Checkouts waiting to be written
+	 */
+	private final ArrayBlockingQueue<PendingPurchase> queue = new ArrayBlockingQueue<PendingPurchase>(Math.max(1, Settings.getInt("purchases.queueSize", 1000)));
+	/**
+	 * Database the checkouts are written to
+	 */
+	private final Database database;
+	/**
+	 * Thread writing the batches. Null until the first checkout. Guarded by this
+	 */
+	private Thread writer;
+	/**
+	 * Flag cleared when the writer is closed. Guarded by this
+	 */
+	private boolean open = true;
+	// Statistics for monitoring
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong overflowCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong writtenCount = new AtomicLong();
+
+	/**
+	 * A checkout waiting on the queue for its outcome
+	 */
+	static class PendingPurchase
+	{
+		/**
+		 * State of a checkout on the queue
+		 */
+		private static final int WAITING = 0;
+		/**
+		 * State of a checkout taken off the queue by the writer
+		 */
+		private static final int CLAIMED = 1;
+		/**
+		 * State of a checkout given up on by its buyer before the writer took it
+		 */
+		private static final int CANCELLED = 2;
+		/**
+		 * Unique ID of user making the purchase
+		 */
+		final int userId;
+		/**
+		 * Unique ID of product purchased
+		 */
+		final int productId;
+		/**
+		 * Shipping price
+		 */
+		final double shippingPrice;
+		/**
+		 * Shipping address, sanitized
+		 */
+		final String shippingAddress;
+		/**
+		 * Released once the outcome is known
+		 */
+		private final CountDownLatch done = new CountDownLatch(1);
+		/**
+		 * Outcome of the checkout, set before done is released
+		 */
+		private volatile CheckoutResult result;
+		/**
+		 * WAITING until the writer claims the checkout or its buyer cancels it
+		 */
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+
+		/**
+		 * @param userId - Unique ID of user making the purchase
+		 * @param productId - Unique ID of product purchased
+		 * @param shippingPrice - Shipping price
+		 * @param shippingAddress - Shipping address, sanitized
+		 */
+		PendingPurchase(int userId, int productId, double shippingPrice, String shippingAddress)
+		{
+			this.userId = userId;
+			this.productId = productId;
+			this.shippingPrice = shippingPrice;
+			this.shippingAddress = shippingAddress;
+		}
+
+		/**
+		 * Sets the outcome of the checkout and wakes its thread. Later outcomes are ignored.
+		 *   Only called by the writer thread.
+		 * @param outcome - Outcome of the checkout
+		 */
+		void complete(CheckoutResult outcome)
+		{
+			if (done.getCount() > 0)
+			{
+				result = outcome;
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Takes the checkout off the queue for writing, unless its buyer gave up on it
+		 * @return true if the writer is to write the checkout
+		 */
+		boolean claim()
+		{
+			return state.compareAndSet(WAITING, CLAIMED);
+		}
+
+		/**
+		 * Waits for the outcome of the checkout. A checkout the writer hasn't claimed within
+		 *   purchases.waitTimeoutMs is cancelled, so it is never written. Once claimed, the wait
+		 *   lasts until the batch is written, and interrupts don't end it, as the purchase may be
+		 *   committed whether or not anyone is waiting.
+		 * @return Outcome of the checkout, null when it was cancelled
+		 */
+		CheckoutResult await()
+		{
+			long remaining = TimeUnit.MILLISECONDS.toNanos(WAIT_TIMEOUT_MS);
+			long deadline = System.nanoTime() + remaining;
+			boolean interrupted = false;
+
+			try
+			{
+				// Until the writer claims it, the checkout can still be given up on
+				while (state.get() == WAITING && remaining > 0)
+				{
+					try
+					{
+						if (done.await(remaining, TimeUnit.NANOSECONDS))
+						{
+							return result;
+						}
+					}
+					catch (InterruptedException interruptedException)
+					{
+						interrupted = true;
+					}
+
+					remaining = deadline - System.nanoTime();
+				}
+
+				if (state.compareAndSet(WAITING, CANCELLED))
+				{
+					return null;
+				}
+
+				// Claimed, so the outcome comes once its batch is written
+				while (true)
+				{
+					try
+					{
+						done.await();
+						return result;
+					}
+					catch (InterruptedException interruptedException)
+					{
+						interrupted = true;
+					}
+				}
+			}
+			finally
+			{
+				if (interrupted)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param database - Database the checkouts are written to
+	 */
+	PurchaseWriter(Database database)
+	{
+		this.database = database;
+	}
+
+	/**
+	 * Creates the purchase writer chosen by the purchases.writer setting
+	 * @param database - Database the checkouts are written to
+	 * @return A purchase writer when the setting is group, null when checkouts are written directly
+	 */
+	static PurchaseWriter fromSettings(Database database)
+	{
+		String setting = Settings.get("purchases.writer", "direct").trim();
+
+		if ("group".equalsIgnoreCase(setting))
+		{
+			return new PurchaseWriter(database);
+		}
+		if (!"direct".equalsIgnoreCase(setting) && !"wal".equalsIgnoreCase(setting))
+		{
+			Logger.getLogger(PurchaseWriter.class.getName()).log(Level.WARNING, "Unknown purchases.writer " + setting + ", using direct");
+		}
+
+		return null;
+	}
+
+	/**
+	 * Queues a checkout to be written, starting the writer thread on first use
+	 * @param userId - Unique ID of user making the purchase
+	 * @param productId - Unique ID of product purchased
+	 * @param shippingPrice - Shipping price
+	 * @param shippingAddress - Shipping address, sanitized
+	 * @return The queued checkout to wait on, null when the queue is full or the writer is closed
+	 */
+	synchronized PendingPurchase submit(int userId, int productId, double shippingPrice, String shippingAddress)
+	{
+		if (!open)
+		{
+			return null;
+		}
+
+		if (writer == null)
+		{
+			writer = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					writeBatches();
+				}
+			}, "Purchase writer");
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		PendingPurchase purchase = new PendingPurchase(userId, productId, shippingPrice, shippingAddress);
+
+		if (!queue.offer(purchase))
+		{
+			overflowCount.incrementAndGet();
+			return null;
+		}
+
+		submittedCount.incrementAndGet();
+		return purchase;
+	}
+
+	/**
+	 * Stops taking checkouts and waits for the queued ones to be written. Called when the
+	 *   application is shut down.
+	 */
+	void close()
+	{
+		Thread thread;
+
+		synchronized (this)
+		{
+			open = false;
+			thread = writer;
+		}
+
+		if (thread != null)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException interruptedException)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Body of the writer thread. Writes batches until the writer is closed and the queue is empty.
+	 */
+	private void writeBatches()
+	{
+		List<PendingPurchase> batch = new ArrayList<PendingPurchase>(BATCH_SIZE);
+
+		while (isOpen() || !queue.isEmpty())
+		{
+			try
+			{
+				PendingPurchase first = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+				if (first == null)
+				{
+					continue;
+				}
+
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+
+				// Checkouts already waiting join at once, later ones until the batch is due
+				while (batch.size() < BATCH_SIZE)
+				{
+					queue.drainTo(batch, BATCH_SIZE - batch.size());
+					long remaining = deadline - System.nanoTime();
+
+					if (batch.size() == BATCH_SIZE || remaining <= 0)
+					{
+						break;
+					}
+
+					PendingPurchase next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+					if (next == null)
+					{
+						break;
+					}
+
+					batch.add(next);
+				}
+			}
+			catch (InterruptedException interruptedException)
+			{
+				// Nothing interrupts the writer, checkouts already taken are still written
+			}
+
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * @return true until the writer is closed
+	 */
+	private synchronized boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * Writes one batch. Every checkout in it is completed, as a failure if the write didn't
+	 *   complete it.
+	 * @param batch - Checkouts to write
+	 */
+	private void write(List<PendingPurchase> batch)
+	{
+		if (batch.isEmpty())
+		{
+			return;
+		}
+
+		// Checkouts whose buyers gave up waiting are written by the buyers themselves
+		List<PendingPurchase> claimed = new ArrayList<PendingPurchase>(batch.size());
+
+		for (PendingPurchase purchase : batch)
+		{
+			if (purchase.claim())
+			{
+				claimed.add(purchase);
+			}
+			else
+			{
+				timeoutCount.incrementAndGet();
+			}
+		}
+
+		if (claimed.isEmpty())
+		{
+			return;
+		}
+
+		try
+		{
+			database.writePurchases(claimed);
+		}
+		catch (RuntimeException ex)
+		{
+			Logger.getLogger(PurchaseWriter.class.getName()).log(Level.SEVERE, "Failed to write purchases", ex);
+		}
+		finally
+		{
+			for (PendingPurchase purchase : claimed)
+			{
+				purchase.complete(CheckoutResult.failure());
+			}
+		}
+
+		batchCount.incrementAndGet();
+		writtenCount.addAndGet(claimed.size());
+	}
+
+	/**
+	 * Most checkouts written in one transaction
+	 * @return the batch size
+	 */
+	public int getBatchSize()
+	{
+		return BATCH_SIZE;
+	}
+
+	/**
+	 * Number of checkouts waiting to be written
+	 * @return the queue length
+	 */
+	public int getQueueLength()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * Number of checkouts queued
+	 * @return the submittedCount
+	 */
+	public long getSubmittedCount()
+	{
+		return submittedCount.get();
+	}
+
+	/**
+	 * Number of checkouts written directly because the queue was full
+	 * @return the overflowCount
+	 */
+	public long getOverflowCount()
+	{
+		return overflowCount.get();
+	}
+
+	/**
+	 * Number of checkouts written directly because the writer didn't take them in time
+	 * @return the timeoutCount
+	 */
+	public long getTimeoutCount()
+	{
+		return timeoutCount.get();
+	}
+
+	/**
+	 * Number of batches written
+	 * @return the batchCount
+	 */
+	public long getBatchCount()
+	{
+		return batchCount.get();
+	}
+
+	/**
+	 * Average number of checkouts per batch
+	 * @return the average batch size, 0 before the first batch
+	 */
+	public double getAverageBatchSize()
+	{
+		long batches = batchCount.get();
+
+		return (batches == 0) ? 0 : (double) writtenCount.get() / batches;
+	}
+}
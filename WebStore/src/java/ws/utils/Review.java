@@ -142,4 +142,13 @@ public class Review
 
 		return userName;
 	}
+
+	/**
+	 * Name of the user who made the review, for when it was loaded along with the review
+	 * @param userName the userName to set
+	 */
+	public void setUserName(String userName)
+	{
+		this.userName = userName;
+	}
 }
@@ -0,0 +1,68 @@
+package ws.utils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Converts rows of a query result into objects. The positions of the columns a mapper reads are
+ *   looked up once per result set, rows are then read by index instead of by column name.
+ * @param <T> Type of object each row is mapped to
+ * @author Team 10
+ */
+public abstract class RowMapper<T>
+{
+	/**
+	 * Names of the columns read by the mapper. Positions in this array match the positions in the
+	 *   index array passed to map()
+	 */
+	private final String[] columns;
+
+	/**
+	 * @param columns - Names of the columns read by the mapper
+	 */
+	protected RowMapper(String... columns)
+	{
+		this.columns = columns;
+	}
+
+	/**
+	 * Finds the result set position of every column read by the mapper
+	 * @param metaData - Meta data of the result set about to be mapped
+	 * @return Result set positions, in the order the columns were given to the constructor
+	 * @throws SQLException when the result set is missing a column
+	 */
+	public int[] resolve(ResultSetMetaData metaData) throws SQLException
+	{
+		int[] index = new int[columns.length];
+		int columnCount = metaData.getColumnCount();
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			for (int column = 1; column <= columnCount; column++)
+			{
+				if (columns[i].equalsIgnoreCase(metaData.getColumnLabel(column)))
+				{
+					index[i] = column;
+					break;
+				}
+			}
+
+			if (index[i] == 0)
+			{
+				throw new SQLException("Result set has no column " + columns[i]);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Maps the current row of a result set
+	 * @param result - Result set positioned on the row to map
+	 * @param index - Result set positions of the mapper's columns, from resolve()
+	 * @return Object created from the row
+	 * @throws SQLException on failure
+	 */
+	public abstract T map(ResultSet result, int[] index) throws SQLException;
+}
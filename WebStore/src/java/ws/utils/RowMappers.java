@@ -0,0 +1,192 @@
+package ws.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Row mappers for every data type stored in the database
+ * @author Team 10
+ */
+public class RowMappers
+{
+	/**
+	 * Maps a row of the users table to an Admin or User depending on the IsAdmin flag
+	 */
+	public static final RowMapper<Account> ACCOUNT = new RowMapper<Account>("UserId", "userName", "email", "firstName", "lastName", "phone", "address", "isadmin")
+	{
+		@Override
+		public Account map(ResultSet result, int[] index) throws SQLException
+		{
+			int id = result.getInt(index[0]);
+			String userName = Utils.unsanatize(result.getString(index[1]));
+			String email = Utils.unsanatize(result.getString(index[2]));
+			String firstName = Utils.unsanatize(result.getString(index[3]));
+			String lastName = Utils.unsanatize(result.getString(index[4]));
+			String phone = Utils.unsanatize(result.getString(index[5]));
+			String address = Utils.unsanatize(result.getString(index[6]));
+
+			if (result.getBoolean(index[7]))
+			{
+				return new Admin(id, userName, email, firstName, lastName, phone, address);
+			}
+
+			return new User(id, userName, email, firstName, lastName, phone, address);
+		}
+	};
+	/**
+	 * Maps a row of the product table, including its stored review count, rating total and sales
+	 */
+	public static final RowMapper<Product> PRODUCT = new RowMapper<Product>("ProductId", "name", "ManufacturerID", "price", "stock", "image", "description",
+			"ReviewCount", "RatingSum", "SalesCount")
+	{
+		@Override
+		public Product map(ResultSet result, int[] index) throws SQLException
+		{
+			return mapProduct(result, index);
+		}
+	};
+	/**
+	 * Maps a row of the product listing query, which also carries the manufacturer's name
+	 */
+	public static final RowMapper<Product> PRODUCT_LISTING = new RowMapper<Product>("ProductId", "name", "ManufacturerID", "price", "stock", "image", "description",
+			"ReviewCount", "RatingSum", "SalesCount", "ManufacturerName")
+	{
+		@Override
+		public Product map(ResultSet result, int[] index) throws SQLException
+		{
+			Product product = mapProduct(result, index);
+
+			String manufacturerName = result.getString(index[10]);
+			if (manufacturerName != null)
+			{
+				product.setManufacturerName(Utils.unsanatize(manufacturerName));
+			}
+
+			return product;
+		}
+	};
+	/**
+	 * Reads the product table columns of a row
+	 * @param result - Result set positioned on the row to map
+	 * @param index - Positions of the product columns, in the order PRODUCT reads them
+	 * @return Product of the row
+	 * @throws SQLException on failure
+	 */
+	private static Product mapProduct(ResultSet result, int[] index) throws SQLException
+	{
+		Product product = new Product(
+				result.getInt(index[0]),
+				Utils.unsanatize(result.getString(index[1])),
+				result.getInt(index[2]),
+				result.getDouble(index[3]),
+				result.getInt(index[4]),
+				Utils.unsanatize(result.getString(index[5])),
+				Utils.unsanatize(result.getString(index[6])));
+
+		int reviewCount = result.getInt(index[7]);
+		product.setReviewCount(reviewCount);
+
+		// Ratings are stored out of 10
+		product.setAverageRating(reviewCount == 0 ? null : result.getInt(index[8]) / (double) reviewCount / 10.0);
+		product.setSalesCount(result.getInt(index[9]));
+
+		return product;
+	}
+
+	/**
+	 * Maps a row of the manufacturer table
+	 */
+	public static final RowMapper<Manufacturer> MANUFACTURER = new RowMapper<Manufacturer>("mId", "CompanyName", "Website")
+	{
+		@Override
+		public Manufacturer map(ResultSet result, int[] index) throws SQLException
+		{
+			return new Manufacturer(
+					result.getInt(index[0]),
+					Utils.unsanatize(result.getString(index[1])),
+					Utils.unsanatize(result.getString(index[2])));
+		}
+	};
+	/**
+	 * Maps a row of the reviews table
+	 */
+	public static final RowMapper<Review> REVIEW = new RowMapper<Review>("ReviewId", "UserId", "ProductId", "Rating", "Comment")
+	{
+		@Override
+		public Review map(ResultSet result, int[] index) throws SQLException
+		{
+			return new Review(
+					result.getInt(index[0]),
+					result.getInt(index[1]),
+					result.getInt(index[2]),
+					result.getInt(index[3]),
+					Utils.unsanatize(result.getString(index[4])));
+		}
+	};
+	/**
+	 * Maps a row of the review listing query, which also carries the name of the reviewer
+	 */
+	public static final RowMapper<Review> REVIEW_WITH_USER = new RowMapper<Review>("ReviewId", "UserId", "ProductId", "Rating", "Comment", "UserName")
+	{
+		@Override
+		public Review map(ResultSet result, int[] index) throws SQLException
+		{
+			Review review = REVIEW.map(result, index);
+			review.setUserName(Utils.unsanatize(result.getString(index[5])));
+
+			return review;
+		}
+	};
+	/**
+	 * Maps a row of the purchases table
+	 */
+	public static final RowMapper<Transaction> TRANSACTION = new RowMapper<Transaction>("PurchaseId", "UserId", "ProductId", "Price", "ShippingPrice", "ShippingAddress", "date")
+	{
+		@Override
+		public Transaction map(ResultSet result, int[] index) throws SQLException
+		{
+			return mapTransaction(result, index);
+		}
+	};
+	/**
+	 * Maps a row of the transaction details query, which also carries the names of the product
+	 *   and the user
+	 */
+	public static final RowMapper<Transaction> TRANSACTION_DETAILS = new RowMapper<Transaction>("PurchaseId", "UserId", "ProductId", "Price", "ShippingPrice", "ShippingAddress", "date",
+			"ProductName", "UserName")
+	{
+		@Override
+		public Transaction map(ResultSet result, int[] index) throws SQLException
+		{
+			Transaction transaction = mapTransaction(result, index);
+
+			// Names are null when the product or user has been deleted
+			String productName = result.getString(index[7]);
+			transaction.setProductName(productName == null ? null : Utils.unsanatize(productName));
+
+			String userName = result.getString(index[8]);
+			transaction.setUserName(userName == null ? null : Utils.unsanatize(userName));
+
+			return transaction;
+		}
+	};
+
+	/**
+	 * Reads the purchases table columns of a row
+	 * @param result - Result set positioned on the row to map
+	 * @param index - Positions of the purchase columns, in the order TRANSACTION reads them
+	 * @return Transaction of the row
+	 * @throws SQLException on failure
+	 */
+	private static Transaction mapTransaction(ResultSet result, int[] index) throws SQLException
+	{
+		return new Transaction(
+				result.getInt(index[0]),
+				result.getInt(index[1]),
+				result.getInt(index[2]),
+				result.getDouble(index[3]),
+				result.getDouble(index[4]),
+				Utils.unsanatize(result.getString(index[5])),
+				result.getTimestamp(index[6]));
+	}
+}
@@ -0,0 +1,372 @@
+package ws.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index for searching products by name, manufacturer name and description.
+ *
+ * Text is split into lower case words of letters and digits. A product matches a query when it
+ *   contains every word of the query, with the last word also matching any longer word it is the
+ *   start of, so results show up while a word is still being typed. Matches are ranked by how
+ *   rare the matched words are across the catalog, how often they occur in the product, and
+ *   where: a word in the name counts more than one in the manufacturer name, which counts more
+ *   than one in the description.
+ * @author Team 10
+ */
+public class SearchIndex implements ProductIndex
+{
+	/**
+	 * Weight of a word found in the product name
+	 */
+	private static final int NAME_WEIGHT = 3;
+	/**
+	 * Weight of a word found in the manufacturer name
+	 */
+	private static final int MANUFACTURER_WEIGHT = 2;
+	/**
+	 * Weight of a word found in the description
+	 */
+	private static final int DESCRIPTION_WEIGHT = 1;
+	/**
+	 * Most words a prefix is expanded to, so a one letter prefix stays cheap
+	 */
+	private static final int MAX_PREFIX_TERMS = 64;
+	/**
+	 * Share of the score a word gets when it only matches as the start of a longer word
+	 */
+	private static final double PREFIX_MATCH_FACTOR = 0.5;
+	/**
+	 * Weighted occurrences of each word, by product ID. Sorted so prefixes are a range of words.
+	 *   Guarded by lock
+	 */
+	private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<String, Map<Integer, Integer>>();
+	/**
+	 * Words of each indexed product, to remove the product from their postings. Guarded by lock
+	 */
+	private final Map<Integer, Set<String>> documentTerms = new HashMap<Integer, Set<String>>();
+	/**
+	 * Searches share the index, changes are serialized
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Empties the index
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			postings.clear();
+			documentTerms.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes the name, manufacturer name and description of a product
+	 * @param product - Product to index, with its manufacturer name loaded
+	 */
+	public void index(Product product)
+	{
+		// Tokenized outside the lock, only the postings update blocks searches
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		addTerms(weights, product.getName(), NAME_WEIGHT);
+		addTerms(weights, product.getManufacturerName(), MANUFACTURER_WEIGHT);
+		addTerms(weights, product.getDescription(), DESCRIPTION_WEIGHT);
+
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(product.getId());
+
+			for (Map.Entry<String, Integer> weight : weights.entrySet())
+			{
+				Map<Integer, Integer> documents = postings.get(weight.getKey());
+
+				if (documents == null)
+				{
+					documents = new HashMap<Integer, Integer>();
+					postings.put(weight.getKey(), documents);
+				}
+
+				documents.put(product.getId(), weight.getValue());
+			}
+
+			documentTerms.put(product.getId(), weights.keySet());
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a product from the index
+	 * @param productId - ID of the product
+	 */
+	public void remove(int productId)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(productId);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a product from the postings of its words. Lock must be held for writing
+	 * @param productId - ID of the product
+	 */
+	private void removeDocument(int productId)
+	{
+		Set<String> terms = documentTerms.remove(productId);
+
+		if (terms == null)
+		{
+			return;
+		}
+
+		for (String term : terms)
+		{
+			Map<Integer, Integer> documents = postings.get(term);
+			documents.remove(productId);
+
+			if (documents.isEmpty())
+			{
+				postings.remove(term);
+			}
+		}
+	}
+
+	/**
+	 * Finds the products matching a query
+	 * @param query - Words to search for, as typed
+	 * @return IDs of matching products, best match first. Empty when the query has no words.
+	 */
+	public List<Integer> search(String query)
+	{
+		List<String> tokens = new ArrayList<String>(new LinkedHashSet<String>(tokenize(query)));
+
+		if (tokens.isEmpty())
+		{
+			return new ArrayList<Integer>();
+		}
+
+		final Map<Integer, Double> scores;
+
+		lock.readLock().lock();
+		try
+		{
+			scores = score(tokens);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		List<Integer> ids = new ArrayList<Integer>(scores.keySet());
+		Collections.sort(ids, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				int order = Double.compare(scores.get(b), scores.get(a));
+				return (order != 0) ? order : a.compareTo(b);
+			}
+		});
+
+		return ids;
+	}
+
+	/**
+	 * Scores the products containing every word. Lock must be held for reading
+	 * @param tokens - Words of the query, the last one is also matched as a prefix
+	 * @return Score of each matching product
+	 */
+	private Map<Integer, Double> score(List<String> tokens)
+	{
+		Map<Integer, Double> scores = null;
+
+		for (int i = 0; i < tokens.size(); i++)
+		{
+			String token = tokens.get(i);
+			Map<Integer, Double> tokenScores = new HashMap<Integer, Double>();
+
+			if (i == tokens.size() - 1)
+			{
+				int expanded = 0;
+
+				for (Map.Entry<String, Map<Integer, Integer>> term : postings.subMap(token, token + Character.MAX_VALUE).entrySet())
+				{
+					double factor = term.getKey().equals(token) ? 1 : PREFIX_MATCH_FACTOR;
+					addScores(tokenScores, term.getValue(), factor);
+
+					if (++expanded == MAX_PREFIX_TERMS)
+					{
+						break;
+					}
+				}
+			}
+			else
+			{
+				Map<Integer, Integer> documents = postings.get(token);
+
+				if (documents != null)
+				{
+					addScores(tokenScores, documents, 1);
+				}
+			}
+
+			// Products have to contain every word of the query
+			if (scores == null)
+			{
+				scores = tokenScores;
+			}
+			else
+			{
+				Map<Integer, Double> both = new HashMap<Integer, Double>();
+
+				for (Map.Entry<Integer, Double> score : tokenScores.entrySet())
+				{
+					Double previous = scores.get(score.getKey());
+
+					if (previous != null)
+					{
+						both.put(score.getKey(), previous + score.getValue());
+					}
+				}
+
+				scores = both;
+			}
+
+			if (scores.isEmpty())
+			{
+				break;
+			}
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Adds the score of one word to the products containing it. Rare words score higher, and
+	 *   repeats of a word count less and less.
+	 * @param scores - Scores to add to
+	 * @param documents - Weighted occurrences of the word, by product ID
+	 * @param factor - Multiplier of the word's score
+	 */
+	private void addScores(Map<Integer, Double> scores, Map<Integer, Integer> documents, double factor)
+	{
+		double idf = Math.log(1 + (double) documentTerms.size() / documents.size());
+
+		for (Map.Entry<Integer, Integer> document : documents.entrySet())
+		{
+			int weight = document.getValue();
+			double score = factor * idf * (weight * 2.2) / (weight + 1.2);
+			Double previous = scores.get(document.getKey());
+
+			scores.put(document.getKey(), (previous == null) ? score : previous + score);
+		}
+	}
+
+	/**
+	 * Adds the words of a text to the weighted occurrences of a product
+	 * @param weights - Weighted occurrences to add to
+	 * @param text - Text to split into words, may be null
+	 * @param weight - Weight of each occurrence
+	 */
+	private static void addTerms(Map<String, Integer> weights, String text, int weight)
+	{
+		for (String term : tokenize(text))
+		{
+			Integer previous = weights.get(term);
+			weights.put(term, (previous == null) ? weight : previous + weight);
+		}
+	}
+
+	/**
+	 * Splits text into lower case words of letters and digits
+	 * @param text - Text to split, may be null
+	 * @return Words, in order
+	 */
+	static List<String> tokenize(String text)
+	{
+		List<String> tokens = new ArrayList<String>();
+
+		if (text == null)
+		{
+			return tokens;
+		}
+
+		String lower = text.toLowerCase(Locale.ENGLISH);
+		int start = -1;
+
+		for (int i = 0; i <= lower.length(); i++)
+		{
+			boolean wordCharacter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+
+			if (wordCharacter && start < 0)
+			{
+				start = i;
+			}
+			else if (!wordCharacter && start >= 0)
+			{
+				tokens.add(lower.substring(start, i));
+				start = -1;
+			}
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Number of products in the index
+	 * @return the document count
+	 */
+	public int getDocumentCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documentTerms.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of distinct words in the index
+	 * @return the term count
+	 */
+	public int getTermCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return postings.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+}
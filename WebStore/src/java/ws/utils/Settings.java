@@ -0,0 +1,153 @@
+package ws.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Read only access to the settings in database.properties. Missing or malformed settings fall
+ *   back to the default passed in by the caller.
+ * @author Team 10
+ */
+public class Settings
+{
+	/**
+	 * Classpath location of the settings file
+	 */
+	private static final String SETTINGS_FILE = "/database.properties";
+
+	/**
+	 * Part of singleton pattern
+	 * http://en.wikipedia.org/wiki/Initialization_on_demand_holder_idiom
+	 */
+	private static class LazyHolder
+	{
+		private static final Properties properties = load();
+	}
+
+	/**
+	 * Loads the settings file from the classpath
+	 * @return Loaded settings. Empty when the file is missing or unreadable.
+	 */
+	private static Properties load()
+	{
+		Properties properties = new Properties();
+		InputStream input = Settings.class.getResourceAsStream(SETTINGS_FILE);
+
+		if (input == null)
+		{
+			Logger.getLogger(Settings.class.getName()).log(Level.WARNING, "Missing " + SETTINGS_FILE + ", using defaults");
+			return properties;
+		}
+
+		try
+		{
+			properties.load(input);
+		}
+		catch (IOException ex)
+		{
+			Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, "Failed to read " + SETTINGS_FILE, ex);
+		}
+		finally
+		{
+			try
+			{
+				input.close();
+			}
+			catch (IOException ex)
+			{
+				Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, "Failed to close " + SETTINGS_FILE, ex);
+			}
+		}
+
+		return properties;
+	}
+
+	/**
+	 * Retrieves a string setting
+	 * @param key - Name of the setting
+	 * @param defaultValue - Value to use when the setting is missing
+	 * @return Value of the setting
+	 */
+	public static String get(String key, String defaultValue)
+	{
+		String value = LazyHolder.properties.getProperty(key);
+
+		if (value == null)
+		{
+			return defaultValue;
+		}
+
+		return value.trim();
+	}
+
+	/**
+	 * Retrieves an integer setting
+	 * @param key - Name of the setting
+	 * @param defaultValue - Value to use when the setting is missing or not a number
+	 * @return Value of the setting
+	 */
+	public static int getInt(String key, int defaultValue)
+	{
+		try
+		{
+			return Integer.parseInt(get(key, Integer.toString(defaultValue)));
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			Logger.getLogger(Settings.class.getName()).log(Level.WARNING, "Invalid value for " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Retrieves a long setting
+	 * @param key - Name of the setting
+	 * @param defaultValue - Value to use when the setting is missing or not a number
+	 * @return Value of the setting
+	 */
+	public static long getLong(String key, long defaultValue)
+	{
+		try
+		{
+			return Long.parseLong(get(key, Long.toString(defaultValue)));
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			Logger.getLogger(Settings.class.getName()).log(Level.WARNING, "Invalid value for " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Retrieves a decimal setting
+	 * @param key - Name of the setting
+	 * @param defaultValue - Value to use when the setting is missing or not a number
+	 * @return Value of the setting
+	 */
+	public static double getDouble(String key, double defaultValue)
+	{
+		try
+		{
+			return Double.parseDouble(get(key, Double.toString(defaultValue)));
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			Logger.getLogger(Settings.class.getName()).log(Level.WARNING, "Invalid value for " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Retrieves a boolean setting
+	 * @param key - Name of the setting
+	 * @param defaultValue - Value to use when the setting is missing
+	 * @return Value of the setting
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue)
+	{
+		return Boolean.parseBoolean(get(key, Boolean.toString(defaultValue)));
+	}
+}
@@ -0,0 +1,225 @@
+package ws.utils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inventory of the sharded inventory mode. Each product's stock is split across inventory.buckets
+ *   rows of the product_stock_bucket table, and a sale takes from buckets with stock left in
+ *   random order, so concurrent buyers mostly lock different rows instead of all waiting on the
+ *   product row. Products sold from are rebalanced every inventory.rebalanceIntervalMs, which
+ *   also brings the product table up to date.
+ * @author Team 10
+ */
+public class ShardedInventory implements Inventory
+{
+	/**
+	 * Rows each product's stock is split across
+	 */
+	private static final int BUCKETS = Math.max(1, Math.min(100, Settings.getInt("inventory.buckets", 8)));
+	/**
+	 * Milliseconds between rebalancing runs
+	 */
+	private static final long REBALANCE_INTERVAL_MS = Math.max(10, Settings.getLong("inventory.rebalanceIntervalMs", 1000));
+	/**
+	 * Database holding the stock buckets
+	 */
+	private final Database database;
+	/**
+	 * Products sold from since their buckets were last rebalanced
+	 */
+	private final ConcurrentHashMap<Integer, Boolean> unbalancedProducts = new ConcurrentHashMap<Integer, Boolean>();
+	/**
+	 * Rebalances the buckets, null until loaded and once closed. Guarded by this
+	 */
+	private Timer rebalancer;
+
+	/**
+	 * @param database - Database holding the stock buckets
+	 */
+	ShardedInventory(Database database)
+	{
+		this.database = database;
+	}
+
+	/**
+	 * Gives stock buckets to every product without them. Sales recorded marked StockPending by the
+	 *   memory inventory mode that were never written are applied to the product table first.
+	 *   Products that already have buckets may have been sold from before the server stopped, so
+	 *   they are all rebalanced once.
+	 * @throws SQLException on failure
+	 */
+	public void prepare() throws SQLException
+	{
+		database.applyPendingSales();
+
+		for (Integer productId : database.createStockBuckets(BUCKETS))
+		{
+			unbalancedProducts.put(productId, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Starts rebalancing
+	 */
+	public void load()
+	{
+		synchronized (this)
+		{
+			rebalancer = new Timer("Inventory rebalancer", true);
+			rebalancer.schedule(new TimerTask()
+			{
+				@Override
+				public void run()
+				{
+					rebalance();
+				}
+			}, REBALANCE_INTERVAL_MS, REBALANCE_INTERVAL_MS);
+		}
+	}
+
+	/**
+	 * Stops rebalancing and rebalances the products still sold from, so the product table is up
+	 *   to date
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			if (rebalancer != null)
+			{
+				rebalancer.cancel();
+				rebalancer = null;
+			}
+		}
+
+		rebalance();
+	}
+
+	/**
+	 * Takes the units from the products' stock buckets
+	 * @param connection - Connection of the sale's transaction
+	 * @param units - Units of each product, sorted by product ID
+	 * @return ID of the first product without enough stock, null when every unit was taken
+	 * @throws SQLException on failure
+	 */
+	public Integer take(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		return database.takeFromStockBuckets(connection, units);
+	}
+
+	/**
+	 * Takes the units from the products' stock buckets, down to nothing, and marks the products to
+	 *   be rebalanced. A rebalance running before the transaction ends waits for its bucket locks.
+	 * @param connection - Connection of the transaction recording the purchases
+	 * @param units - Units sold of each product, sorted by product ID
+	 * @throws SQLException on failure
+	 */
+	public void recordSold(PooledConnection connection, SortedMap<Integer, Integer> units) throws SQLException
+	{
+		database.takeSoldFromStockBuckets(connection, units);
+
+		for (Integer productId : units.keySet())
+		{
+			unbalancedProducts.put(productId, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Nothing to give back, the rollback restored the buckets
+	 * @param units - Units taken of each product
+	 */
+	public void release(Map<Integer, Integer> units)
+	{
+	}
+
+	/**
+	 * Marks the product to be rebalanced
+	 * @param productId - ID of the product sold
+	 * @param purchaseIds - IDs of the purchases recording the sale, one for each unit
+	 */
+	public void sold(int productId, List<Integer> purchaseIds)
+	{
+		unbalancedProducts.put(productId, Boolean.TRUE);
+	}
+
+	/**
+	 * @return false, the product table is brought up to date by rebalancing
+	 */
+	public boolean holdsSales()
+	{
+		return false;
+	}
+
+	/**
+	 * Writes the stock to the product row and shares it between new buckets
+	 * @param connection - Connection of the edit's transaction
+	 * @param productId - ID of the product
+	 * @param stock - New stock
+	 * @throws SQLException on failure
+	 */
+	public void setStock(PooledConnection connection, int productId, int stock) throws SQLException
+	{
+		database.writeProductStock(connection, productId, stock, false);
+		database.distributeStock(connection, productId, stock, BUCKETS);
+	}
+
+	/**
+	 * Stops rebalancing a deleted product, its buckets went with it
+	 * @param productId - ID of the product deleted
+	 */
+	public void deleted(int productId)
+	{
+		unbalancedProducts.remove(productId);
+	}
+
+	/**
+	 * @param productId - ID of the product
+	 * @return Units left in the product's buckets, null if it has none
+	 */
+	public Integer getStock(int productId)
+	{
+		return database.readBucketStock(productId);
+	}
+
+	/**
+	 * Rows each product's stock is split across, for monitoring
+	 * @return the number of stock buckets per product
+	 */
+	public int getBucketCount()
+	{
+		return BUCKETS;
+	}
+
+	/**
+	 * Products waiting to be rebalanced, for monitoring
+	 * @return the number of products sold from since their buckets were last rebalanced
+	 */
+	public int getUnbalancedProductCount()
+	{
+		return unbalancedProducts.size();
+	}
+
+	/**
+	 * Rebalances the stock buckets of every product sold from since the last run. Products that
+	 *   fail are retried on the next run.
+	 */
+	private void rebalance()
+	{
+		for (Integer productId : new ArrayList<Integer>(unbalancedProducts.keySet()))
+		{
+			unbalancedProducts.remove(productId);
+
+			if (!database.rebalanceStockBuckets(productId, BUCKETS))
+			{
+				unbalancedProducts.put(productId, Boolean.TRUE);
+			}
+		}
+	}
+}
@@ -0,0 +1,477 @@
+package ws.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The catalog kept sorted in each order of the product list: by price, rating, newest first and
+ *   best selling first. Each order is an array of product IDs, kept sorted as products change by
+ *   moving the product to its new position, so a page in any order is a binary search for the
+ *   cursor followed by reading the next few IDs, however big the catalog.
+ *
+ * Every order sorts by one number per product, its sort key, smallest first, with ties broken by
+ *   product ID. Orders that list the largest values first use the negated value. Cursors are the
+ *   sort key and ID of the product a page ends at, so pages stay in place while products around
+ *   them change.
+ * @author Team 10
+ */
+public class SortIndex implements ProductIndex
+{
+	/**
+	 * Orders of the product list
+	 */
+	public enum Order
+	{
+		/**
+		 * Cheapest first
+		 */
+		PRICE("Price: low to high"),
+		/**
+		 * Most expensive first
+		 */
+		PRICE_DESC("Price: high to low"),
+		/**
+		 * Best rated first, products without reviews last
+		 */
+		RATING("Rating"),
+		/**
+		 * Most recently added first
+		 */
+		NEWEST("Newest"),
+		/**
+		 * Most sold first
+		 */
+		BESTSELLING("Best selling");
+
+		/**
+		 * Text describing the order
+		 */
+		private final String label;
+
+		/**
+		 * @param label - Text describing the order
+		 */
+		private Order(String label)
+		{
+			this.label = label;
+		}
+
+		/**
+		 * Text describing the order
+		 * @return the label
+		 */
+		public String getLabel()
+		{
+			return label;
+		}
+
+		/**
+		 * Reads an order from a request
+		 * @param value - Name of the order, in any case
+		 * @return The order, null when empty or unknown
+		 */
+		public static Order parse(String value)
+		{
+			if (value == null)
+			{
+				return null;
+			}
+
+			try
+			{
+				return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+			}
+			catch (IllegalArgumentException illegalArgumentException)
+			{
+				return null;
+			}
+		}
+	}
+	/**
+	 * Position in an order, read from a cursor
+	 */
+	private static class Cursor
+	{
+		/**
+		 * Sort key of the product the cursor is at
+		 */
+		final double key;
+		/**
+		 * ID of the product the cursor is at
+		 */
+		final int productId;
+
+		/**
+		 * @param key - Sort key of the product
+		 * @param productId - ID of the product
+		 */
+		Cursor(double key, int productId)
+		{
+			this.key = key;
+			this.productId = productId;
+		}
+	}
+	/**
+	 * Shared empty array for a new index
+	 */
+	private static final int[] NO_IDS = new int[0];
+	/**
+	 * Sort keys of each indexed product, one per order, by product ID. Guarded by lock
+	 */
+	private final Map<Integer, double[]> keys = new HashMap<Integer, double[]>();
+	/**
+	 * Product IDs in each order, sorted in the first counts[order] entries. Guarded by lock
+	 */
+	private final int[][] sorted = new int[Order.values().length][];
+	/**
+	 * Number of products in each sorted array. Guarded by lock
+	 */
+	private final int[] counts = new int[Order.values().length];
+	/**
+	 * Pages share the arrays, changes are serialized
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates an empty index
+	 */
+	public SortIndex()
+	{
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = NO_IDS;
+		}
+	}
+
+	/**
+	 * Empties the index
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			keys.clear();
+			for (int i = 0; i < sorted.length; i++)
+			{
+				sorted[i] = NO_IDS;
+				counts[i] = 0;
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves a product to its place in each order
+	 * @param product - Product to index, with its rating and sales loaded
+	 */
+	public void index(Product product)
+	{
+		int id = product.getId();
+		Double rating = product.getAverageRating();
+		double[] productKeys = new double[Order.values().length];
+
+		productKeys[Order.PRICE.ordinal()] = product.getPrice();
+		productKeys[Order.PRICE_DESC.ordinal()] = -product.getPrice();
+		productKeys[Order.RATING.ordinal()] = (rating == null) ? Double.POSITIVE_INFINITY : -rating;
+		productKeys[Order.NEWEST.ordinal()] = -id;
+		productKeys[Order.BESTSELLING.ordinal()] = -product.getSalesCount();
+
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(id);
+
+			for (int order = 0; order < sorted.length; order++)
+			{
+				int position = -search(order, productKeys[order], id) - 1;
+				insert(order, position, id);
+			}
+
+			keys.put(id, productKeys);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a product from each order
+	 * @param productId - ID of the product
+	 */
+	public void remove(int productId)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(productId);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a product from each order. Lock must be held for writing
+	 * @param productId - ID of the product
+	 */
+	private void removeDocument(int productId)
+	{
+		double[] productKeys = keys.get(productId);
+
+		if (productKeys == null)
+		{
+			return;
+		}
+
+		// Searching reads the keys of the product itself, so they are forgotten last
+		for (int order = 0; order < sorted.length; order++)
+		{
+			int position = search(order, productKeys[order], productId);
+			int[] ids = sorted[order];
+
+			System.arraycopy(ids, position + 1, ids, position, counts[order] - position - 1);
+			counts[order]--;
+		}
+
+		keys.remove(productId);
+	}
+
+	/**
+	 * Inserts a product into a sorted array, growing it when full. Lock must be held for writing
+	 * @param order - Position of the order
+	 * @param position - Where the product goes
+	 * @param productId - ID of the product
+	 */
+	private void insert(int order, int position, int productId)
+	{
+		int[] ids = sorted[order];
+
+		if (counts[order] == ids.length)
+		{
+			int[] grown = new int[Math.max(16, ids.length + (ids.length >> 1))];
+			System.arraycopy(ids, 0, grown, 0, counts[order]);
+			ids = grown;
+			sorted[order] = ids;
+		}
+
+		System.arraycopy(ids, position, ids, position + 1, counts[order] - position);
+		ids[position] = productId;
+		counts[order]++;
+	}
+
+	/**
+	 * Binary searches a sorted array for a sort key and product ID. Lock must be held
+	 * @param order - Position of the order
+	 * @param key - Sort key to find
+	 * @param productId - ID to find among products with the same sort key
+	 * @return Position of the product, or (-(insertion point) - 1) when it isn't there
+	 */
+	private int search(int order, double key, int productId)
+	{
+		int[] ids = sorted[order];
+		int low = 0;
+		int high = counts[order] - 1;
+
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int compare = compare(keys.get(ids[middle])[order], ids[middle], key, productId);
+
+			if (compare < 0)
+			{
+				low = middle + 1;
+			}
+			else if (compare > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	/**
+	 * Compares two products by sort key, then ID
+	 * @param key1 - Sort key of the first product
+	 * @param id1 - ID of the first product
+	 * @param key2 - Sort key of the second product
+	 * @param id2 - ID of the second product
+	 * @return Negative, zero or positive as the first product comes before, with or after the second
+	 */
+	private static int compare(double key1, int id1, double key2, int id2)
+	{
+		int order = Double.compare(key1, key2);
+
+		if (order != 0)
+		{
+			return order;
+		}
+
+		return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
+	}
+
+	/**
+	 * Reads one page of the whole catalog in an order. Cursors are read by parseCursor.
+	 * @param order - Order of the products
+	 * @param after - Cursor of the page to continue after, may be null
+	 * @param before - Cursor of the page to continue before, used when after is null, may be null
+	 * @param size - Number of products on the page
+	 * @return IDs on the page, and the cursors of its neighbouring pages
+	 */
+	public Page<Integer> page(Order order, String after, String before, int size)
+	{
+		int index = order.ordinal();
+
+		lock.readLock().lock();
+		try
+		{
+			int count = counts[index];
+			int start = 0;
+			Cursor afterCursor = parseCursor(after);
+			Cursor beforeCursor = parseCursor(before);
+
+			// Malformed cursors fall back to the first page, like keyset pagination
+			if (afterCursor != null)
+			{
+				int position = search(index, afterCursor.key, afterCursor.productId);
+				start = (position >= 0) ? position + 1 : -position - 1;
+			}
+			else if (beforeCursor != null)
+			{
+				int position = search(index, beforeCursor.key, beforeCursor.productId);
+				start = Math.max(0, ((position >= 0) ? position : -position - 1) - size);
+			}
+
+			int end = Math.min(start + size, count);
+			List<Integer> ids = new ArrayList<Integer>(Math.max(0, end - start));
+
+			for (int i = start; i < end; i++)
+			{
+				ids.add(sorted[index][i]);
+			}
+
+			return new Page<Integer>(ids,
+					(end < count) ? cursorOf(index, sorted[index][end - 1]) : null,
+					(start > 0 && start < count) ? cursorOf(index, sorted[index][start]) : null,
+					size);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sorts some of the products, such as the matches of a search, into an order
+	 * @param order - Order to sort into
+	 * @param ids - IDs of the products to sort. Products not in the index are left out.
+	 * @return Sorted IDs
+	 */
+	public List<Integer> sort(Order order, List<Integer> ids)
+	{
+		final int index = order.ordinal();
+		final Map<Integer, Double> sortKeys = new HashMap<Integer, Double>();
+
+		lock.readLock().lock();
+		try
+		{
+			for (Integer id : ids)
+			{
+				double[] productKeys = keys.get(id);
+
+				if (productKeys != null)
+				{
+					sortKeys.put(id, productKeys[index]);
+				}
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		List<Integer> result = new ArrayList<Integer>(sortKeys.keySet());
+		Collections.sort(result, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return SortIndex.compare(sortKeys.get(a), a, sortKeys.get(b), b);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Cursor of a product. Lock must be held
+	 * @param order - Position of the order
+	 * @param productId - ID of the product
+	 * @return Sort key and ID of the product
+	 */
+	private String cursorOf(int order, int productId)
+	{
+		return keys.get(productId)[order] + "_" + productId;
+	}
+
+	/**
+	 * Reads a cursor
+	 * @param cursor - Cursor from cursorOf, may be null
+	 * @return Position the cursor is at, null when empty or malformed
+	 */
+	private static Cursor parseCursor(String cursor)
+	{
+		if (cursor == null)
+		{
+			return null;
+		}
+
+		int separator = cursor.lastIndexOf('_');
+
+		try
+		{
+			if (separator > 0)
+			{
+				return new Cursor(Double.parseDouble(cursor.substring(0, separator)), Integer.parseInt(cursor.substring(separator + 1)));
+			}
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			// Falls through to the first page
+		}
+
+		return null;
+	}
+
+	/**
+	 * Number of products in the index
+	 * @return the document count
+	 */
+	public int getDocumentCount()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return keys.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,393 @@
+package ws.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stock of every product held in memory, for the memory inventory mode. A sale reserves units
+ *   from the counters, then either commits them once its purchase is recorded, or releases them
+ *   when it fails. Committed sales are queued until MemoryInventory writes them to the product
+ *   table.
+ *
+ * Each product's stock is split across stripes, updated with compare-and-set, so buyers of one
+ *   product on different threads mostly change different counters. A thread takes units from its
+ *   own stripe first and moves on to the others when it runs out.
+ *
+ * The number of stripes is read from the inventory.stripes setting, by default the number of
+ *   processors.
+ * @author Team 10
+ */
+public class StockCounters
+{
+	/**
+	 * Stripes per product, a power of two
+	 */
+	private static final int STRIPES = stripeCount(Settings.getInt("inventory.stripes", Runtime.getRuntime().availableProcessors()));
+	/**
+	 * Stripes of each loaded product, by product ID
+	 */
+	private final ConcurrentHashMap<Integer, AtomicIntegerArray> counters = new ConcurrentHashMap<Integer, AtomicIntegerArray>();
+	/**
+	 * Committed sales not yet written to the product table
+	 */
+	private final ConcurrentLinkedQueue<Sale> sold = new ConcurrentLinkedQueue<Sale>();
+	/**
+	 * Number of sales in sold, which is slow to count
+	 */
+	private final AtomicInteger soldCount = new AtomicInteger();
+	/**
+	 * Flag set once every product's stock has been loaded
+	 */
+	private volatile boolean loaded;
+	// Statistics for monitoring
+	private final AtomicLong reserveCount = new AtomicLong();
+	private final AtomicLong soldOutCount = new AtomicLong();
+	private final AtomicLong releaseCount = new AtomicLong();
+	private final AtomicLong writtenCount = new AtomicLong();
+
+	/**
+	 * Units of a product sold by a recorded purchase, waiting to be written to the product table
+	 */
+	static class Sale
+	{
+		/**
+		 * ID of the product sold
+		 */
+		final int productId;
+		/**
+		 * ID of the purchase recording the sale
+		 */
+		final int purchaseId;
+		/**
+		 * Units sold
+		 */
+		final int quantity;
+
+		/**
+		 * @param productId - ID of the product sold
+		 * @param purchaseId - ID of the purchase recording the sale
+		 * @param quantity - Units sold
+		 */
+		Sale(int productId, int purchaseId, int quantity)
+		{
+			this.productId = productId;
+			this.purchaseId = purchaseId;
+			this.quantity = quantity;
+		}
+	}
+
+	/**
+	 * Rounds the stripes setting up to a power of two
+	 * @param setting - Requested number of stripes
+	 * @return Number of stripes, between 1 and 64
+	 */
+	private static int stripeCount(int setting)
+	{
+		int count = 1;
+
+		while (count < setting && count < 64)
+		{
+			count <<= 1;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Sets the stock of a product, replacing any earlier stock
+	 * @param productId - ID of the product
+	 * @param stock - Units in stock
+	 */
+	public void load(int productId, int stock)
+	{
+		AtomicIntegerArray stripes = new AtomicIntegerArray(STRIPES);
+		int units = Math.max(0, stock);
+
+		for (int i = 0; i < STRIPES; i++)
+		{
+			stripes.set(i, units / STRIPES + ((i < units % STRIPES) ? 1 : 0));
+		}
+
+		counters.put(productId, stripes);
+	}
+
+	/**
+	 * Marks every product's stock as loaded
+	 */
+	void setLoaded()
+	{
+		loaded = true;
+	}
+
+	/**
+	 * @return true once every product's stock has been loaded
+	 */
+	public boolean isLoaded()
+	{
+		return loaded;
+	}
+
+	/**
+	 * Adds to or takes from the stock of a product, such as after an edit. Stock doesn't go below 0.
+	 * @param productId - ID of the product
+	 * @param change - Units to add, negative to take
+	 */
+	public void adjust(int productId, int change)
+	{
+		AtomicIntegerArray stripes = counters.get(productId);
+
+		if (stripes == null)
+		{
+			return;
+		}
+
+		if (change >= 0)
+		{
+			stripes.addAndGet(homeStripe(), change);
+		}
+		else
+		{
+			take(stripes, -change);
+		}
+	}
+
+	/**
+	 * Forgets a product that was deleted
+	 * @param productId - ID of the product
+	 */
+	public void remove(int productId)
+	{
+		counters.remove(productId);
+	}
+
+	/**
+	 * Reserves units of a product for a sale. Either every unit is reserved or none are.
+	 * @param productId - ID of the product
+	 * @param quantity - Units to reserve
+	 * @return true if the units were reserved, false if there weren't enough
+	 */
+	public boolean reserve(int productId, int quantity)
+	{
+		AtomicIntegerArray stripes = counters.get(productId);
+		reserveCount.incrementAndGet();
+
+		if (stripes != null)
+		{
+			int taken = take(stripes, quantity);
+
+			if (taken == quantity)
+			{
+				return true;
+			}
+
+			// Not enough across all stripes, put back what was found
+			stripes.addAndGet(homeStripe(), taken);
+		}
+
+		soldOutCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Takes units from the stripes, the current thread's stripe first
+	 * @param stripes - Stripes of the product
+	 * @param quantity - Units wanted
+	 * @return Units taken, less than quantity when the stock ran out
+	 */
+	private static int take(AtomicIntegerArray stripes, int quantity)
+	{
+		int home = homeStripe();
+		int taken = 0;
+
+		for (int i = 0; i < STRIPES && taken < quantity; i++)
+		{
+			int stripe = (home + i) & (STRIPES - 1);
+
+			while (true)
+			{
+				int units = stripes.get(stripe);
+
+				if (units == 0)
+				{
+					break;
+				}
+
+				int share = Math.min(units, quantity - taken);
+
+				if (stripes.compareAndSet(stripe, units, units - share))
+				{
+					taken += share;
+					break;
+				}
+			}
+		}
+
+		return taken;
+	}
+
+	/**
+	 * @return Stripe the current thread takes units from first
+	 */
+	private static int homeStripe()
+	{
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+
+	/**
+	 * Returns reserved units whose sale failed
+	 * @param productId - ID of the product
+	 * @param quantity - Units reserved
+	 */
+	public void release(int productId, int quantity)
+	{
+		AtomicIntegerArray stripes = counters.get(productId);
+		releaseCount.incrementAndGet();
+
+		if (stripes != null)
+		{
+			stripes.addAndGet(homeStripe(), quantity);
+		}
+	}
+
+	/**
+	 * Completes the sale of reserved units, once its purchase has been recorded. The sale is
+	 *   written to the product table later.
+	 * @param productId - ID of the product
+	 * @param purchaseId - ID of the purchase recording the sale
+	 * @param quantity - Units reserved
+	 */
+	public void commit(int productId, int purchaseId, int quantity)
+	{
+		sold.add(new Sale(productId, purchaseId, quantity));
+		soldCount.incrementAndGet();
+	}
+
+	/**
+	 * Takes committed sales off the queue to be written
+	 * @param max - Most sales to take
+	 * @return Sales, oldest first
+	 */
+	List<Sale> drain(int max)
+	{
+		List<Sale> sales = new ArrayList<Sale>();
+		Sale sale;
+
+		while (sales.size() < max && (sale = sold.poll()) != null)
+		{
+			sales.add(sale);
+			soldCount.decrementAndGet();
+		}
+
+		return sales;
+	}
+
+	/**
+	 * Puts back sales that failed to be written, to be retried
+	 * @param sales - Sales from drain
+	 */
+	void requeue(List<Sale> sales)
+	{
+		sold.addAll(sales);
+		soldCount.addAndGet(sales.size());
+	}
+
+	/**
+	 * Counts sales that were written to the product table
+	 * @param count - Number of sales written
+	 */
+	void written(int count)
+	{
+		writtenCount.addAndGet(count);
+	}
+
+	/**
+	 * Current stock of a product
+	 * @param productId - ID of the product
+	 * @return Units in stock, null if the product's stock isn't loaded
+	 */
+	public Integer getStock(int productId)
+	{
+		AtomicIntegerArray stripes = counters.get(productId);
+
+		if (stripes == null)
+		{
+			return null;
+		}
+
+		int stock = 0;
+		for (int i = 0; i < STRIPES; i++)
+		{
+			stock += stripes.get(i);
+		}
+
+		return stock;
+	}
+
+	/**
+	 * Number of stripes per product
+	 * @return the stripe count
+	 */
+	public int getStripeCount()
+	{
+		return STRIPES;
+	}
+
+	/**
+	 * Number of products with their stock loaded
+	 * @return the product count
+	 */
+	public int getProductCount()
+	{
+		return counters.size();
+	}
+
+	/**
+	 * Number of committed sales not yet written to the product table
+	 * @return the pendingCount
+	 */
+	public int getPendingCount()
+	{
+		return soldCount.get();
+	}
+
+	/**
+	 * Number of reservations asked for
+	 * @return the reserveCount
+	 */
+	public long getReserveCount()
+	{
+		return reserveCount.get();
+	}
+
+	/**
+	 * Number of reservations refused for lack of stock
+	 * @return the soldOutCount
+	 */
+	public long getSoldOutCount()
+	{
+		return soldOutCount.get();
+	}
+
+	/**
+	 * Number of reservations released after their sale failed
+	 * @return the releaseCount
+	 */
+	public long getReleaseCount()
+	{
+		return releaseCount.get();
+	}
+
+	/**
+	 * Number of sales written to the product table
+	 * @return the writtenCount
+	 */
+	public long getWrittenCount()
+	{
+		return writtenCount.get();
+	}
+}
@@ -0,0 +1,45 @@
+package ws.utils;
+
+/**
+ * Product suggested for a partly typed name. See NameIndex
+ * @author Team 10
+ */
+public class Suggestion
+{
+	/**
+	 * Unique product ID
+	 */
+	private final int id;
+	/**
+	 * Name of the product
+	 */
+	private final String name;
+
+	/**
+	 * @param id - Unique product ID
+	 * @param name - Name of the product
+	 */
+	public Suggestion(int id, String name)
+	{
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Unique product ID
+	 * @return the id
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Name of the product
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+}
@@ -40,10 +40,18 @@ public class Transaction
 	 * Name of product purchased
 	 */
 	private String productName;
+	/**
+	 * Flag set once productName has been loaded. The name is null when the product was deleted
+	 */
+	private boolean productNameLoaded;
 	/**
 	 * Name of user making transaction
 	 */
 	private String userName;
+	/**
+	 * Flag set once userName has been loaded
+	 */
+	private boolean userNameLoaded;
 
 	/**
 	 *
@@ -171,28 +179,48 @@ public class Transaction
 	 */
 	public String getProductName()
 	{
-		if (productName == null)
+		if (!productNameLoaded)
 		{
-			productName = Database.getInstance().getProductName(getProductId());
+			setProductName(Database.getInstance().getProductName(getProductId()));
 		}
 
 		return productName;
 	}
 
+	/**
+	 * Name of the product transaction is for, for when it was loaded along with the transaction
+	 * @param productName the product name to set, null if the product no longer exists
+	 */
+	public void setProductName(String productName)
+	{
+		this.productName = productName;
+		this.productNameLoaded = true;
+	}
+
 	/**
 	 * Name of the user transaction is for
 	 * @return the user name
 	 */
 	public String getUserName()
 	{
-		if (userName == null)
+		if (!userNameLoaded)
 		{
-			userName = Database.getInstance().getUserName(getUserId());
+			setUserName(Database.getInstance().getUserName(getUserId()));
 		}
 
 		return userName;
 	}
 
+	/**
+	 * Name of the user transaction is for, for when it was loaded along with the transaction
+	 * @param userName the user name to set
+	 */
+	public void setUserName(String userName)
+	{
+		this.userName = userName;
+		this.userNameLoaded = true;
+	}
+
 	/**
 	 * Date of transaction
 	 * @return the date
@@ -0,0 +1,359 @@
+package ws.utils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Database work of a single request. Every Database call made while a unit of work is bound to
+ *   the thread shares one pooled connection, borrowed on first use. The first write opens a
+ *   transaction that is committed once, when the request is done with its writes.
+ *
+ * Entities loaded during the request are kept in an identity map, so looking the same one up
+ *   again returns the object already loaded instead of querying again.
+ *
+ * Units of work are started and ended by UnitOfWorkInterceptor.
+ * @author Team 10
+ */
+public class UnitOfWork
+{
+	/**
+	 * Unit of work bound to the current thread
+	 */
+	private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<UnitOfWork>();
+	/**
+	 * Pool the connection is borrowed from
+	 */
+	private final ConnectionPool pool;
+	/**
+	 * Connection shared by the request. Null until first used
+	 */
+	private PooledConnection connection;
+	/**
+	 * Flag set while a transaction is open on the connection
+	 */
+	private boolean transactionOpen;
+	/**
+	 * Flag set when a write failed, so the transaction must not be committed
+	 */
+	private boolean rollbackOnly;
+	/**
+	 * Entities loaded during the request, by type and ID
+	 */
+	private final Map<Class<?>, Map<Integer, Object>> identityMap = new HashMap<Class<?>, Map<Integer, Object>>();
+	/**
+	 * Work to run once the transaction has committed, such as cache invalidation
+	 */
+	private final List<Runnable> afterCommit = new ArrayList<Runnable>();
+	/**
+	 * Work to run if the transaction rolls back
+	 */
+	private final List<Runnable> afterRollback = new ArrayList<Runnable>();
+
+	/**
+	 * @param pool - Pool to borrow the connection from
+	 */
+	private UnitOfWork(ConnectionPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Starts a unit of work and binds it to the current thread
+	 * @param pool - Pool to borrow the connection from
+	 * @return The new unit of work
+	 */
+	static UnitOfWork begin(ConnectionPool pool)
+	{
+		UnitOfWork unitOfWork = new UnitOfWork(pool);
+		current.set(unitOfWork);
+		return unitOfWork;
+	}
+
+	/**
+	 * Unit of work bound to the current thread
+	 * @return the unit of work, null outside of one
+	 */
+	static UnitOfWork current()
+	{
+		return current.get();
+	}
+
+	/**
+	 * Unbinds the current unit of work from the thread, so database calls made until it is resumed
+	 *   use connections and transactions of their own and commit on their own
+	 * @return The unit of work that was bound, null outside of one
+	 */
+	static UnitOfWork suspend()
+	{
+		UnitOfWork unitOfWork = current.get();
+		current.remove();
+		return unitOfWork;
+	}
+
+	/**
+	 * Binds a suspended unit of work to the thread again
+	 * @param unitOfWork - Unit of work from suspend, may be null
+	 */
+	static void resume(UnitOfWork unitOfWork)
+	{
+		if (unitOfWork != null)
+		{
+			current.set(unitOfWork);
+		}
+	}
+
+	/**
+	 * Connection shared by the request, borrowed on first use. Must not be released by the caller.
+	 * @return the connection
+	 * @throws SQLException when no connection could be borrowed
+	 */
+	PooledConnection getConnection() throws SQLException
+	{
+		if (connection == null)
+		{
+			connection = pool.borrow();
+		}
+
+		return connection;
+	}
+
+	/**
+	 * Returns the shared connection to the pool while no transaction is open, such as before
+	 *   waiting on another thread that needs a connection of its own. The next call borrows one
+	 *   again.
+	 */
+	void releaseConnection()
+	{
+		if (!transactionOpen && connection != null)
+		{
+			connection.release();
+			connection = null;
+		}
+	}
+
+	/**
+	 * @param pooledConnection - Connection to check
+	 * @return true if the connection is the one shared by this unit of work
+	 */
+	boolean owns(PooledConnection pooledConnection)
+	{
+		return pooledConnection != null && pooledConnection == connection;
+	}
+
+	/**
+	 * Opens a transaction on the shared connection, unless one is already open
+	 * @throws SQLException on failure
+	 */
+	void beginTransaction() throws SQLException
+	{
+		if (!transactionOpen)
+		{
+			getConnection().getConnection().setAutoCommit(false);
+			transactionOpen = true;
+		}
+	}
+
+	/**
+	 * @return true while a transaction is open
+	 */
+	boolean isTransactionOpen()
+	{
+		return transactionOpen;
+	}
+
+	/**
+	 * Marks the transaction as failed, it will be rolled back instead of committed
+	 */
+	void setRollbackOnly()
+	{
+		rollbackOnly = true;
+	}
+
+	/**
+	 * Looks up an entity already loaded during the request
+	 * @param type - Type of the entity
+	 * @param id - ID of the entity
+	 * @return The loaded entity, null if it hasn't been loaded
+	 */
+	<T> T find(Class<T> type, int id)
+	{
+		Map<Integer, Object> entities = identityMap.get(type);
+
+		if (entities == null)
+		{
+			return null;
+		}
+
+		return type.cast(entities.get(id));
+	}
+
+	/**
+	 * Remembers an entity loaded during the request
+	 * @param type - Type of the entity
+	 * @param id - ID of the entity
+	 * @param entity - Loaded entity
+	 */
+	<T> void register(Class<T> type, int id, T entity)
+	{
+		Map<Integer, Object> entities = identityMap.get(type);
+
+		if (entities == null)
+		{
+			entities = new HashMap<Integer, Object>();
+			identityMap.put(type, entities);
+		}
+
+		entities.put(id, entity);
+	}
+
+	/**
+	 * Forgets an entity that was changed, so the next lookup loads it again
+	 * @param type - Type of the entity
+	 * @param id - ID of the entity
+	 */
+	void forget(Class<?> type, int id)
+	{
+		Map<Integer, Object> entities = identityMap.get(type);
+
+		if (entities != null)
+		{
+			entities.remove(id);
+		}
+	}
+
+	/**
+	 * Schedules work to run once the transaction has committed. Dropped if it rolls back.
+	 * @param task - Work to run
+	 */
+	void afterCommit(Runnable task)
+	{
+		afterCommit.add(task);
+	}
+
+	/**
+	 * Schedules work to run if the transaction rolls back, such as returning something the
+	 *   transaction took that lives outside the database. Dropped if it commits.
+	 * @param task - Work to run
+	 */
+	void afterRollback(Runnable task)
+	{
+		afterRollback.add(task);
+	}
+
+	/**
+	 * Commits the open transaction, or rolls it back if a write failed. The connection stays
+	 *   bound to the request for any reads still to come.
+	 * @return true if the transaction was committed, or there was nothing to commit
+	 */
+	public boolean commit()
+	{
+		if (!transactionOpen)
+		{
+			return true;
+		}
+
+		if (rollbackOnly)
+		{
+			rollback();
+			return false;
+		}
+
+		try
+		{
+			connection.getConnection().commit();
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(UnitOfWork.class.getName()).log(Level.SEVERE, "Failed to commit unit of work", ex);
+			rollback();
+			return false;
+		}
+
+		endTransaction();
+
+		for (Runnable task : afterCommit)
+		{
+			task.run();
+		}
+		afterCommit.clear();
+		afterRollback.clear();
+
+		return true;
+	}
+
+	/**
+	 * Rolls back the open transaction, if any
+	 */
+	public void rollback()
+	{
+		if (!transactionOpen)
+		{
+			return;
+		}
+
+		try
+		{
+			connection.getConnection().rollback();
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(UnitOfWork.class.getName()).log(Level.SEVERE, "Failed to roll back unit of work", ex);
+		}
+
+		// Entities loaded during the transaction may hold changes that were just undone
+		identityMap.clear();
+		afterCommit.clear();
+		endTransaction();
+
+		for (Runnable task : afterRollback)
+		{
+			task.run();
+		}
+		afterRollback.clear();
+	}
+
+	/**
+	 * Switches the connection back to auto commit after a transaction ended
+	 */
+	private void endTransaction()
+	{
+		transactionOpen = false;
+		rollbackOnly = false;
+
+		try
+		{
+			connection.getConnection().setAutoCommit(true);
+		}
+		catch (SQLException ex)
+		{
+			Logger.getLogger(UnitOfWork.class.getName()).log(Level.SEVERE, "Failed to restore auto commit", ex);
+		}
+	}
+
+	/**
+	 * Ends the unit of work. An open transaction is rolled back, the connection is returned to the
+	 *   pool and the unit of work is unbound from the thread.
+	 */
+	public void end()
+	{
+		try
+		{
+			rollback();
+		}
+		finally
+		{
+			current.remove();
+
+			if (connection != null)
+			{
+				connection.release();
+				connection = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package ws.utils;
+
+import com.opensymphony.xwork2.Action;
+import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.interceptor.Interceptor;
+import com.opensymphony.xwork2.interceptor.PreResultListener;
+
+/**
+ * An interceptor running each request in a unit of work, so all the database calls the action makes
+ *   share one connection and its writes are committed together. Writes are committed just before
+ *   the result is rendered, or rolled back when the action fails.
+ * @author Team 10
+ */
+public class UnitOfWorkInterceptor implements Interceptor
+{
+	/**
+	 * Unused
+	 */
+	public void destroy()
+	{
+	}
+
+	/**
+	 * Unused
+	 */
+	public void init()
+	{
+	}
+
+	/**
+	 * Runs the rest of the request inside a unit of work
+	 * @param actionInvocation
+	 * @return Result of the action
+	 * @throws Exception
+	 */
+	public String intercept(ActionInvocation actionInvocation) throws Exception
+	{
+		final UnitOfWork unitOfWork = Database.getInstance().beginUnitOfWork();
+
+		try
+		{
+			// Commit before rendering, so locks aren't held while the page is written out. Pages
+			//   can still read through the unit of work's connection.
+			actionInvocation.addPreResultListener(new PreResultListener()
+			{
+				public void beforeResult(ActionInvocation invocation, String resultCode)
+				{
+					if (Action.ERROR.equals(resultCode))
+					{
+						unitOfWork.rollback();
+					}
+					else if (!unitOfWork.commit())
+					{
+						// The action's writes were undone, don't report success
+						invocation.setResultCode(Action.ERROR);
+					}
+				}
+			});
+
+			return actionInvocation.invoke();
+		}
+		finally
+		{
+			// Rolls back anything left uncommitted by an exception
+			unitOfWork.end();
+		}
+	}
+}
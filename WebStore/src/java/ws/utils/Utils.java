@@ -53,6 +53,57 @@ public class Utils
 		}
 	}
 
+	/**
+	 * Escapes a string for use inside a quoted JSON string. Characters that are special in HTML are
+	 *   escaped as well, so the output can't close a script block it is embedded in.
+	 * @param input - String to be escaped, may be null
+	 * @return Escaped string, empty for null
+	 */
+	public static String escapeJson(String input)
+	{
+		if (input == null)
+		{
+			return "";
+		}
+
+		StringBuilder sb = new StringBuilder(input.length() + 16);
+
+		for (int i = 0; i < input.length(); i++)
+		{
+			char c = input.charAt(i);
+
+			switch (c)
+			{
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == 0x2028 || c == 0x2029)
+					{
+						sb.append(String.format("\\u%04x", (int) c));
+					}
+					else
+					{
+						sb.append(c);
+					}
+			}
+		}
+
+		return sb.toString();
+	}
+
 	/**
 	 * Hashes an input string and returns the result
 	 * @param input - Input string to be hashed
@@ -0,0 +1,33 @@
+package ws.utils;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Sets up shared resources when the application starts and releases them when it's shut down.
+ * @author Team 10
+ */
+public class WebStoreContextListener implements ServletContextListener
+{
+	/**
+	 * Creates the database instance so the connection pool starts filling before the first request,
+	 *   and loads the existence filters, inventory and product indexes. The inventory goes first,
+	 *   as it may apply sales left over from the last run to the products.
+	 * @param event
+	 */
+	public void contextInitialized(ServletContextEvent event)
+	{
+		Database.getInstance().loadExistenceFilters();
+		Database.getInstance().loadInventory();
+		Database.getInstance().loadCatalog();
+	}
+
+	/**
+	 * Closes the connection pool so no connections or threads outlive the application
+	 * @param event
+	 */
+	public void contextDestroyed(ServletContextEvent event)
+	{
+		Database.getInstance().shutdown();
+	}
+}
@@ -8,6 +8,7 @@
 		<s:if test="!#session.user.admin">
 			<a href="<s:url value="/secure/user/editAccount"/>">Edit Account</a> |
 			<a href="<s:url value="/secure/user/transactionHistory"/>">Purchase History</a> |
+			<a href="<s:url value="/secure/user/viewCart"/>">Cart</a> |
 		</s:if>
 		<s:else>
 			<a href="<s:url value="/secure/admin/addUser"/>">Add User</a> |
@@ -17,6 +18,7 @@
 			<a href="<s:url value="/secure/admin/addManufacturer"/>">Add Manufacturer</a> |
 			<a href="<s:url value="/secure/admin/viewManufacturers"/>">View Manufacturers</a> |
 			<a href="<s:url value="/secure/admin/transactionHistory"/>">View Purchases</a> |
+			<a href="<s:url value="/secure/admin/viewStatistics"/>">Statistics</a> |
 		</s:else>
 		<a href="<s:url value="/logout"/>">Logout</a>
 	</s:if>
@@ -0,0 +1,188 @@
+/*
+ * Scripts of the web store pages. Every page works without them, they only spare page loads.
+ *   Pages include this at the end of their body, and each part only runs on the pages that
+ *   have its elements.
+ * @author Team 10
+ */
+(function()
+{
+	/**
+	 * Milliseconds typing has to pause before product names are suggested
+	 */
+	var SUGGEST_DELAY_MS = 250;
+
+	if (!window.XMLHttpRequest || !window.JSON)
+	{
+		return;
+	}
+
+	/**
+	 * Fetches JSON in the background
+	 * @param url - Address to fetch
+	 * @param onLoad - Called with the parsed answer
+	 * @param onError - Called when the answer isn't JSON, such as when the session expired
+	 */
+	function getJson(url, onLoad, onError)
+	{
+		var request = new XMLHttpRequest();
+
+		request.open("GET", url, true);
+		request.onreadystatechange = function()
+		{
+			if (request.readyState != 4)
+			{
+				return;
+			}
+
+			var answer;
+			try
+			{
+				answer = JSON.parse(request.responseText);
+			}
+			catch (e)
+			{
+				onError();
+				return;
+			}
+
+			onLoad(answer);
+		};
+		request.send(null);
+	}
+
+	/**
+	 * Suggests product names while typing in the search field
+	 * @param field - Search field
+	 * @param list - List to show the suggestions in, with the addresses of the suggestProducts and
+	 *   viewProduct actions in its data-url and data-product-url attributes
+	 */
+	function suggestProducts(field, list)
+	{
+		var url = list.getAttribute("data-url");
+		var productUrl = list.getAttribute("data-product-url");
+		var latest = null;
+		var timer = null;
+
+		function show(suggestions)
+		{
+			while (list.firstChild)
+			{
+				list.removeChild(list.firstChild);
+			}
+
+			for (var i = 0; i < suggestions.length; i++)
+			{
+				var item = document.createElement("li");
+				var link = document.createElement("a");
+
+				link.href = productUrl + "?productId=" + suggestions[i].id;
+				link.appendChild(document.createTextNode(suggestions[i].name));
+				item.appendChild(link);
+				list.appendChild(item);
+			}
+		}
+
+		function suggest()
+		{
+			var prefix = field.value;
+
+			timer = null;
+			if (prefix == latest)
+			{
+				return;
+			}
+			latest = prefix;
+
+			// Answers for earlier prefixes are dropped
+			getJson(url + "?prefix=" + encodeURIComponent(prefix), function(answer)
+			{
+				if (prefix == latest)
+				{
+					show(answer.suggestions);
+				}
+			}, function()
+			{
+				if (prefix == latest)
+				{
+					show([]);
+				}
+			});
+		}
+
+		field.onkeyup = function()
+		{
+			if (timer != null)
+			{
+				clearTimeout(timer);
+			}
+			timer = setTimeout(suggest, SUGGEST_DELAY_MS);
+		};
+	}
+
+	/**
+	 * Loads further reviews of a product in place of following the More reviews link
+	 * @param link - More reviews link, with the address of the viewReviews action for the product
+	 *   in its data-url attribute and the cursor of the next page in data-after
+	 * @param list - List of the reviews shown
+	 */
+	function pageReviews(link, list)
+	{
+		var url = link.getAttribute("data-url");
+		var after = link.getAttribute("data-after");
+
+		function addReview(review)
+		{
+			var item = document.createElement("li");
+			var name = document.createElement("b");
+
+			name.appendChild(document.createTextNode(review.userName));
+			item.appendChild(name);
+			item.appendChild(document.createTextNode(" - " + review.rating + " / 10"));
+			item.appendChild(document.createElement("br"));
+			item.appendChild(document.createTextNode(review.comment));
+			list.appendChild(item);
+		}
+
+		link.onclick = function()
+		{
+			getJson(url + "&after=" + encodeURIComponent(after), function(page)
+			{
+				for (var i = 0; i < page.reviews.length; i++)
+				{
+					addReview(page.reviews[i]);
+				}
+
+				if (page.nextCursor == null)
+				{
+					link.parentNode.removeChild(link);
+				}
+				else
+				{
+					after = page.nextCursor;
+				}
+			}, function()
+			{
+				// Not a page of reviews, such as an expired session. Follow the link instead.
+				window.location = link.href;
+			});
+
+			return false;
+		};
+	}
+
+	var searchField = document.getElementById("query");
+	var suggestions = document.getElementById("suggestions");
+
+	if (searchField && suggestions)
+	{
+		suggestProducts(searchField, suggestions);
+	}
+
+	var moreReviews = document.getElementById("moreReviews");
+	var reviews = document.getElementById("reviews");
+
+	if (moreReviews && reviews)
+	{
+		pageReviews(moreReviews, reviews);
+	}
+})();
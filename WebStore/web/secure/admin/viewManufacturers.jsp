@@ -21,6 +21,14 @@
 					<li><a href="<s:url action="editManufacturer"><s:param name="manufacturerId" value="#manufacturer.id"/></s:url>"><s:property value="#manufacturer.name"/></a></li>
 				</s:iterator>
 			</ol>
+			<div class="pager">
+				<s:if test="page.previousCursor != null">
+					<a href="<s:url action="viewManufacturers"><s:param name="before" value="page.previousCursor"/><s:param name="pageSize" value="page.pageSize"/></s:url>">&laquo; Previous</a>
+				</s:if>
+				<s:if test="page.nextCursor != null">
+					<a href="<s:url action="viewManufacturers"><s:param name="after" value="page.nextCursor"/><s:param name="pageSize" value="page.pageSize"/></s:url>">Next &raquo;</a>
+				</s:if>
+			</div>
 		</div>
     </body>
 </html>
@@ -0,0 +1,307 @@
+<%@taglib prefix="s" uri="/struts-tags" %>
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<!DOCTYPE HTML PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN"
+	"http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+    <head>
+        <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+		<title>Statistics</title>
+		<link rel="stylesheet" type="text/css" href="<s:url value="/main.css"/>"/>
+		<style type="text/css">
+			table.statisticsTable {
+				padding: 5px;
+			}
+			td.statisticsTableColLabel {
+				text-align: right;
+				font-weight: bold;
+			}
+		</style>
+    </head>
+    <body>
+		<div class="content">
+			<s:include value="/header.jsp" />
+			<s:actionmessage />
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Connection Pool</p>
+			</div>
+
+			<table class="statisticsTable">
+				<tr>
+					<td class="statisticsTableColLabel">Active connections:</td>
+					<td><s:property value="connectionPool.activeCount"/> / <s:property value="connectionPool.maxSize"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Idle connections:</td>
+					<td><s:property value="connectionPool.idleCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Borrows:</td>
+					<td><s:property value="connectionPool.borrowCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Borrows that waited:</td>
+					<td><s:property value="connectionPool.waitCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Average / max wait (ms):</td>
+					<td><s:property value="connectionPool.averageWaitMs"/> / <s:property value="connectionPool.maxWaitMs"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Timeouts:</td>
+					<td><s:property value="connectionPool.timeoutCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Opened / closed:</td>
+					<td><s:property value="connectionPool.createdCount"/> / <s:property value="connectionPool.destroyedCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Failed validations:</td>
+					<td><s:property value="connectionPool.validationFailureCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Possible leaks:</td>
+					<td><s:property value="connectionPool.leakCount"/></td>
+				</tr>
+			</table>
+
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Caches</p>
+			</div>
+
+			<table class="statisticsTable">
+				<tr>
+					<th>Cache</th>
+					<th>Entries</th>
+					<th>Hit rate</th>
+					<th>Hits</th>
+					<th>Missing-key hits</th>
+					<th>Misses</th>
+					<th>Evictions</th>
+					<th>Expirations</th>
+					<th>Rejections</th>
+					<th>Loads</th>
+					<th>Coalesced loads</th>
+				</tr>
+				<s:iterator value="caches" var="cache">
+					<tr>
+						<td class="statisticsTableColLabel"><s:property value="#cache.name"/></td>
+						<td><s:property value="#cache.size"/> / <s:property value="#cache.maximumSize"/></td>
+						<td>
+							<s:text name="format.percent">
+								<s:param value="#cache.hitRate"/>
+							</s:text>
+						</td>
+						<td><s:property value="#cache.hitCount"/></td>
+						<td><s:property value="#cache.negativeHitCount"/></td>
+						<td><s:property value="#cache.missCount"/></td>
+						<td><s:property value="#cache.evictionCount"/></td>
+						<td><s:property value="#cache.expirationCount"/></td>
+						<td><s:property value="#cache.rejectionCount"/></td>
+						<td><s:property value="#cache.loadCount"/></td>
+						<td><s:property value="#cache.coalescedLoadCount"/></td>
+					</tr>
+				</s:iterator>
+			</table>
+
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Existence filters</p>
+			</div>
+
+			<table class="statisticsTable">
+				<tr>
+					<th>Filter</th>
+					<th>Loaded</th>
+					<th>Keys</th>
+					<th>Memory (bytes)</th>
+					<th>Checks</th>
+					<th>Answered in memory</th>
+					<th>False positives</th>
+				</tr>
+				<s:iterator value="existenceFilters" var="filter">
+					<tr>
+						<td class="statisticsTableColLabel"><s:property value="#filter.name"/></td>
+						<td><s:property value="#filter.ready"/></td>
+						<td><s:property value="#filter.size"/> / <s:property value="#filter.capacity"/></td>
+						<td><s:property value="#filter.byteCount"/></td>
+						<td><s:property value="#filter.checkCount"/></td>
+						<td><s:property value="#filter.negativeCount"/></td>
+						<td><s:property value="#filter.falsePositiveCount"/></td>
+					</tr>
+				</s:iterator>
+			</table>
+
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Inventory</p>
+			</div>
+
+			<table class="statisticsTable">
+				<tr>
+					<td class="statisticsTableColLabel">Mode:</td>
+					<td><s:property value="inventoryMode"/></td>
+				</tr>
+				<s:if test="stockCounters.loaded">
+					<tr>
+						<td class="statisticsTableColLabel">Products in memory:</td>
+						<td><s:property value="stockCounters.productCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Stripes per product:</td>
+						<td><s:property value="stockCounters.stripeCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Reservations:</td>
+						<td><s:property value="stockCounters.reserveCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Sold out:</td>
+						<td><s:property value="stockCounters.soldOutCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Released:</td>
+						<td><s:property value="stockCounters.releaseCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Sales written:</td>
+						<td><s:property value="stockCounters.writtenCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Sales waiting to be written:</td>
+						<td><s:property value="stockCounters.pendingCount"/></td>
+					</tr>
+				</s:if>
+				<s:if test="stockBucketCount > 0">
+					<tr>
+						<td class="statisticsTableColLabel">Stock buckets per product:</td>
+						<td><s:property value="stockBucketCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Products awaiting rebalance:</td>
+						<td><s:property value="unbalancedProductCount"/></td>
+					</tr>
+				</s:if>
+			</table>
+
+			<s:if test="purchaseWriter != null">
+				<div class="sectionHeader">
+					<p class="sectionHeaderText">Purchase writer</p>
+				</div>
+
+				<table class="statisticsTable">
+					<tr>
+						<td class="statisticsTableColLabel">Batch size:</td>
+						<td><s:property value="purchaseWriter.batchSize"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Checkouts queued:</td>
+						<td><s:property value="purchaseWriter.submittedCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Checkouts waiting:</td>
+						<td><s:property value="purchaseWriter.queueLength"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Written directly, queue full:</td>
+						<td><s:property value="purchaseWriter.overflowCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Written directly, wait timed out:</td>
+						<td><s:property value="purchaseWriter.timeoutCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Batches written:</td>
+						<td><s:property value="purchaseWriter.batchCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Average batch size:</td>
+						<td>
+							<s:text name="format.decimal">
+								<s:param value="purchaseWriter.averageBatchSize"/>
+							</s:text>
+						</td>
+					</tr>
+				</table>
+			</s:if>
+
+			<s:if test="purchaseLog != null">
+				<div class="sectionHeader">
+					<p class="sectionHeaderText">Purchase log</p>
+				</div>
+
+				<table class="statisticsTable">
+					<tr>
+						<td class="statisticsTableColLabel">Directory:</td>
+						<td><s:property value="purchaseLog.directory"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Current segment:</td>
+						<td><s:property value="purchaseLog.segmentNumber"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Recovered on startup:</td>
+						<td><s:property value="purchaseLog.recoveredCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Checkouts logged:</td>
+						<td><s:property value="purchaseLog.appendCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Disk syncs:</td>
+						<td><s:property value="purchaseLog.syncCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Applied to database:</td>
+						<td><s:property value="purchaseLog.appliedCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Waiting to be applied:</td>
+						<td><s:property value="purchaseLog.pendingCount"/></td>
+					</tr>
+					<tr>
+						<td class="statisticsTableColLabel">Failed applies:</td>
+						<td><s:property value="purchaseLog.applyFailureCount"/></td>
+					</tr>
+				</table>
+			</s:if>
+
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Product search index</p>
+			</div>
+
+			<table class="statisticsTable">
+				<tr>
+					<td class="statisticsTableColLabel">Products:</td>
+					<td><s:property value="searchIndex.documentCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Words:</td>
+					<td><s:property value="searchIndex.termCount"/></td>
+				</tr>
+			</table>
+
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Product name suggestions</p>
+			</div>
+
+			<table class="statisticsTable">
+				<tr>
+					<td class="statisticsTableColLabel">Products:</td>
+					<td><s:property value="nameIndex.documentCount"/></td>
+				</tr>
+				<tr>
+					<td class="statisticsTableColLabel">Trie nodes:</td>
+					<td><s:property value="nameIndex.nodeCount"/></td>
+				</tr>
+			</table>
+
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Maintenance</p>
+			</div>
+
+			<s:form action="rebuildRatingTotals">
+				<s:hidden name="submit" value="true" />
+				<s:submit style="width: auto;" value="Rebuild product rating totals" />
+			</s:form>
+		</div>
+    </body>
+</html>
@@ -0,0 +1,5 @@
+<%@taglib prefix="s" uri="/struts-tags" %>
+<%@page contentType="application/json" pageEncoding="UTF-8" trimDirectiveWhitespaces="true"%>
+{"suggestions": [<s:iterator value="suggestions" var="suggestion" status="status"><s:if test="!#status.first">,</s:if>
+	{"id": <s:property value="#suggestion.id"/>, "name": "<s:property value="json(#suggestion.name)" escape="false"/>"}</s:iterator>
+]}
@@ -25,13 +25,24 @@
 								<s:param value="#transaction.date" />
 							</s:text>
 						</a>
-						- <s:property value="#transaction.productName"/> -
+						-
+						<s:if test="#transaction.productName != null"><s:property value="#transaction.productName"/></s:if>
+						<s:else><i>Product no longer available</i></s:else>
+						-
 						<s:text name="format.currency">
 							<s:param value="#transaction.price"/>
 						</s:text>
 					</li>
 				</s:iterator>
 			</ol>
+			<div class="pager">
+				<s:if test="page.previousCursor != null">
+					<a href="<s:url action="transactionHistory"><s:param name="before" value="page.previousCursor"/><s:param name="pageSize" value="page.pageSize"/></s:url>">&laquo; Previous</a>
+				</s:if>
+				<s:if test="page.nextCursor != null">
+					<a href="<s:url action="transactionHistory"><s:param name="after" value="page.nextCursor"/><s:param name="pageSize" value="page.pageSize"/></s:url>">Next &raquo;</a>
+				</s:if>
+			</div>
 		</div>
     </body>
 </html>
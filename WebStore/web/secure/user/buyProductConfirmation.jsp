@@ -26,6 +26,7 @@ Shipping: $5.00
 				<s:textfield name="shippingAddress" value="%{#session.user.address}" maxLength="%{@ws.utils.Constants@LEN_USER_ADDRESS}" />
 				<s:hidden name="submit" value="true" />
 				<s:hidden name="productId" value="%{product.id}"/>
+				<s:hidden name="checkoutToken" value="%{checkoutToken}"/>
 				<s:submit style="width: auto;" value="Confirm Purchase" />
 			</s:form>
 		</div>
@@ -0,0 +1,45 @@
+<%@taglib prefix="s" uri="/struts-tags" %>
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<!DOCTYPE HTML PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN"
+	"http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+    <head>
+        <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+		<title>Confirm Order</title>
+		<link rel="stylesheet" type="text/css" href="<s:url value="/main.css"/>"/>
+    </head>
+    <body>
+		<div class="content">
+			<s:include value="/header.jsp" />
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Confirmation</p>
+			</div>
+
+			<table class="transactionTable">
+				<s:iterator value="lines" var="line">
+					<tr class="transactionTableRow">
+						<td class="transactionTableColLabel"><s:property value="#line.product.name"/></td>
+						<td class="transactionTableColData">
+							<s:property value="#line.quantity"/> x <s:text name="format.currency"><s:param value="#line.product.price"/></s:text>
+							= <s:text name="format.currency"><s:param value="#line.total"/></s:text>
+						</td>
+					</tr>
+				</s:iterator>
+				<tr class="transactionTableRow">
+					<td class="transactionTableColLabel">Shipping:</td>
+					<td class="transactionTableColData"><s:text name="format.currency"><s:param value="shippingPrice"/></s:text></td>
+				</tr>
+				<tr class="transactionTableRow">
+					<td class="transactionTableColLabel">Total:</td>
+					<td class="transactionTableColData"><s:text name="format.currency"><s:param value="total"/></s:text></td>
+				</tr>
+			</table>
+			<s:form>
+				<s:textfield name="shippingAddress" value="%{#session.user.address}" maxLength="%{@ws.utils.Constants@LEN_USER_ADDRESS}" />
+				<s:hidden name="submit" value="true" />
+				<s:submit style="width: auto;" value="Confirm Order" />
+			</s:form>
+		</div>
+    </body>
+</html>
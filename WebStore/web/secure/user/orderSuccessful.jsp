@@ -0,0 +1,28 @@
+<%@taglib prefix="s" uri="/struts-tags" %>
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<!DOCTYPE HTML PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN"
+	"http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+    <head>
+        <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+		<title>Order successful</title>
+		<link rel="stylesheet" type="text/css" href="<s:url value="/main.css"/>"/>
+    </head>
+    <body>
+		<div class="content">
+			<s:include value="/header.jsp" />
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">You have successfully placed your order</p>
+			</div>
+			Ok! Your order number is <s:property value="orderId"/>.
+			<ul style="text-align: left;">
+				<s:iterator value="lines" var="line">
+					<li><s:property value="#line.quantity"/> x <s:property value="#line.product.name"/></li>
+				</s:iterator>
+			</ul>
+			Each item is listed in your
+			<a href="<s:url namespace="/secure" action="transactionHistory"/>">purchase history</a>.
+		</div>
+    </body>
+</html>
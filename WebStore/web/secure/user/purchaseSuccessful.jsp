@@ -15,7 +15,8 @@
 			<div class="sectionHeader">
 				<p class="sectionHeaderText">You have successfully purchased <i><s:property value="%{product.name}" /></i></p>
 			</div>
-			Ok!
+			Ok! Your order number is
+			<a href="<s:url namespace="/secure" action="viewTransaction"><s:param name="transactionId" value="purchaseId"/></s:url>"><s:property value="purchaseId"/></a>.
 		</div>
     </body>
 </html>
@@ -0,0 +1,62 @@
+<%@taglib prefix="s" uri="/struts-tags" %>
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<!DOCTYPE HTML PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN"
+	"http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+    <head>
+        <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+		<title>Shopping Cart</title>
+		<link rel="stylesheet" type="text/css" href="<s:url value="/main.css"/>"/>
+    </head>
+    <body>
+		<div class="content">
+			<s:include value="/header.jsp" />
+			<div class="sectionHeader">
+				<p class="sectionHeaderText">Shopping Cart</p>
+			</div>
+
+			<s:if test="lines.isEmpty()">
+				Your cart is empty.
+			</s:if>
+			<s:else>
+				<table class="transactionTable">
+					<s:iterator value="lines" var="line">
+						<tr class="transactionTableRow">
+							<td class="transactionTableColLabel">
+								<a href="<s:url namespace="/secure" action="viewProduct"><s:param name="productId" value="#line.product.id"/></s:url>"><s:property value="#line.product.name"/></a>
+							</td>
+							<td class="transactionTableColData">
+								<s:text name="format.currency"><s:param value="#line.product.price"/></s:text>
+							</td>
+							<td class="transactionTableColData">
+								<s:form action="updateCart" theme="simple">
+									<s:hidden name="productId" value="%{#line.product.id}"/>
+									<s:textfield name="quantity" value="%{#line.quantity}" size="3" />
+									<s:submit style="width: auto;" value="Update" />
+								</s:form>
+							</td>
+							<td class="transactionTableColData">
+								<s:text name="format.currency"><s:param value="#line.total"/></s:text>
+							</td>
+							<td class="transactionTableColData">
+								<s:form action="removeFromCart" theme="simple">
+									<s:hidden name="productId" value="%{#line.product.id}"/>
+									<s:submit style="width: auto;" value="Remove" />
+								</s:form>
+							</td>
+						</tr>
+					</s:iterator>
+					<tr class="transactionTableRow">
+						<td class="transactionTableColLabel">Subtotal:</td>
+						<td class="transactionTableColData" colspan="4"><s:text name="format.currency"><s:param value="subtotal"/></s:text></td>
+					</tr>
+				</table>
+
+				<s:form action="checkoutCart">
+					<s:submit style="width: auto;" value="Checkout" />
+				</s:form>
+			</s:else>
+		</div>
+    </body>
+</html>
@@ -32,6 +32,11 @@
 						<s:hidden name="productId" value="%{product.id}"/>
 						<s:submit style="width: auto;" value="Buy product" />
 					</s:form>
+					<s:form action="user/addToCart">
+						<s:hidden name="productId" value="%{product.id}"/>
+						<s:textfield name="quantity" value="1" size="3" label="Quantity" />
+						<s:submit style="width: auto;" value="Add to cart" />
+					</s:form>
 				</s:if>
 				<s:else>
 					<b>Sold out</b>
@@ -83,7 +88,7 @@
 						<div class="rightProductView">
 							<div class="viewIdeasIdea">
 								<b>Average Rating</b>:
-								<s:if test="product.reviews.isEmpty">
+								<s:if test="product.reviewCount == 0">
 									Not available
 								</s:if>
 								<s:else>
@@ -91,19 +96,24 @@
 										<s:param value="product.averageRating" />
 									</s:text>
 								</s:else>
-								<s:iterator value="product.reviews" var="review">
-									<ul>
+								<ul id="reviews">
+									<s:iterator value="reviewPage.items" var="review">
 										<li>
 											<b><s:property value="#review.userName" /></b> - <s:property value="#review.rating"/> / 10<br/>
 											<s:property value="#review.comment"/>
 										</li>
-									</ul>
-								</s:iterator>
+									</s:iterator>
+								</ul>
+								<s:if test="reviewPage.nextCursor != null">
+									<a id="moreReviews" href="<s:url action="viewProduct"><s:param name="productId" value="product.id"/><s:param name="after" value="reviewPage.nextCursor"/></s:url>"
+										data-url="<s:url action="viewReviews"><s:param name="productId" value="product.id"/></s:url>" data-after="<s:property value="reviewPage.nextCursor"/>">More reviews</a>
+								</s:if>
 							</div>
 						</div>
 					</td>
 				</tr>
 			</table>
 		</div>
+		<script type="text/javascript" src="<s:url value="/main.js"/>"></script>
 	</body>
 </html>
@@ -60,6 +60,74 @@
 				<p class="sectionHeaderText">Products</p>
 			</div>
 
+			<s:form action="viewProducts" method="get">
+				<s:textfield id="query" name="query" label="Search" autocomplete="off" />
+				<s:hidden name="manufacturerId" />
+				<s:hidden name="priceBand" />
+				<s:hidden name="inStock" />
+				<s:hidden name="sort" />
+				<s:submit style="width: auto;" value="Search" />
+			</s:form>
+			<ul id="suggestions" class="suggestions" data-url="<s:url action="suggestProducts"/>" data-product-url="<s:url action="viewProduct"/>"></ul>
+
+			<div class="facets">
+				<div class="facet">
+					<b>Manufacturer</b>:
+					<s:iterator value="selection.manufacturers" var="value">
+						<s:if test="manufacturerId == #value.id">
+							<b><s:property value="#value.label"/></b> (<s:property value="#value.count"/>)
+							<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="inStock"/></s:url>">[any]</a>
+						</s:if>
+						<s:else>
+							<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="#value.id"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="inStock"/></s:url>"><s:property value="#value.label"/></a> (<s:property value="#value.count"/>)
+						</s:else>
+					</s:iterator>
+				</div>
+				<div class="facet">
+					<b>Price</b>:
+					<s:iterator value="selection.priceBands" var="value">
+						<s:if test="priceBand == #value.id">
+							<b><s:property value="#value.label"/></b> (<s:property value="#value.count"/>)
+							<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="inStock" value="inStock"/></s:url>">[any]</a>
+						</s:if>
+						<s:else>
+							<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="#value.id"/><s:param name="inStock" value="inStock"/></s:url>"><s:property value="#value.label"/></a> (<s:property value="#value.count"/>)
+						</s:else>
+					</s:iterator>
+				</div>
+				<div class="facet">
+					<b>Availability</b>:
+					<s:if test="inStock">
+						<b>In stock</b> (<s:property value="selection.inStockCount"/>)
+						<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="priceBand"/></s:url>">[any]</a>
+					</s:if>
+					<s:else>
+						<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="true"/></s:url>">In stock</a> (<s:property value="selection.inStockCount"/>)
+					</s:else>
+				</div>
+				<div class="facet">
+					<b>Sort by</b>:
+					<s:if test="sort == null">
+						<b>Default</b>
+					</s:if>
+					<s:else>
+						<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="inStock"/></s:url>">Default</a>
+					</s:else>
+					<s:iterator value="sortOrders" var="order">
+						<s:if test="sort == #order">
+							<b><s:property value="#order.label"/></b>
+						</s:if>
+						<s:else>
+							<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="inStock"/><s:param name="sort" value="#order"/></s:url>"><s:property value="#order.label"/></a>
+						</s:else>
+					</s:iterator>
+				</div>
+			</div>
+
+			<s:if test="filtered && products.isEmpty()">
+				<p>No products match your search.</p>
+			</s:if>
+
 			<ul class="productList">
 				<s:iterator value="products" var="product">
 					<li class="productListEntry">
@@ -103,6 +171,15 @@
 					</li>
 				</s:iterator>
 			</ul>
+			<div class="pager">
+				<s:if test="page.previousCursor != null">
+					<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="inStock"/><s:param name="before" value="page.previousCursor"/><s:param name="pageSize" value="page.pageSize"/></s:url>">&laquo; Previous</a>
+				</s:if>
+				<s:if test="page.nextCursor != null">
+					<a href="<s:url action="viewProducts"><s:param name="query" value="query"/><s:param name="sort" value="sort"/><s:param name="manufacturerId" value="manufacturerId"/><s:param name="priceBand" value="priceBand"/><s:param name="inStock" value="inStock"/><s:param name="after" value="page.nextCursor"/><s:param name="pageSize" value="page.pageSize"/></s:url>">Next &raquo;</a>
+				</s:if>
+			</div>
 		</div>
+		<script type="text/javascript" src="<s:url value="/main.js"/>"></script>
     </body>
 </html>
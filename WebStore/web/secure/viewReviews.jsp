@@ -0,0 +1,5 @@
+<%@taglib prefix="s" uri="/struts-tags" %>
+<%@page contentType="application/json" pageEncoding="UTF-8" trimDirectiveWhitespaces="true"%>
+{"reviews": [<s:iterator value="reviewPage.items" var="review" status="status"><s:if test="!#status.first">,</s:if>
+	{"id": <s:property value="#review.id"/>, "userName": "<s:property value="json(#review.userName)" escape="false"/>", "rating": <s:property value="#review.rating"/>, "comment": "<s:property value="json(#review.comment)" escape="false"/>"}</s:iterator>
+], "nextCursor": <s:if test="reviewPage.nextCursor != null">"<s:property value="reviewPage.nextCursor"/>"</s:if><s:else>null</s:else>}
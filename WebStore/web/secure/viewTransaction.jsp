@@ -40,7 +40,10 @@
 				</s:if>
 				<tr class="transactionTableRow">
 					<td class="transactionTableColLabel">Product name: </td>
-					<td class="transactionTableColData"><s:property value="%{transaction.productName}"/></td>
+					<td class="transactionTableColData">
+						<s:if test="transaction.productName != null"><s:property value="%{transaction.productName}"/></s:if>
+						<s:else><i>Product no longer available</i></s:else>
+					</td>
 				</tr>
 				<tr class="transactionTableRow">
 					<td class="transactionTableColLabel">Price:</td>